@@ -0,0 +1,30 @@
+package com.payment.payment.agent.admission;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Endpoints with their own concurrency limit. Purchase streams hold their connection for
+ * as long as the client sends and are bounded by their own window instead.
+ */
+public enum AdmissionEndpoint {
+    PURCHASE, OVERRIDE, TOKEN;
+
+    /**
+     * Endpoint of a request, or null for one that isn't limited
+     */
+    static AdmissionEndpoint of(HttpMethod method, String path) {
+        if (!HttpMethod.POST.equals(method)) {
+            return null;
+        }
+        if (path.equals("/api/v1/auth/token")) {
+            return TOKEN;
+        }
+        if (path.startsWith("/api/v1/purchase/") && path.endsWith("/override")) {
+            return OVERRIDE;
+        }
+        if (path.equals("/api/v1/purchase") || path.equals("/api/v1/purchases/batch")) {
+            return PURCHASE;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+package com.payment.payment.agent.admission;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.admission.ConcurrencyLimiter.Outcome;
+import com.payment.payment.agent.model.ConcurrencyLimitStatus;
+import com.payment.payment.agent.model.PurchaseResponse;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load shedding for the purchase, override and token endpoints: each has a concurrency
+ * limit adapted to its latency ({@link ConcurrencyLimiter}). A request over its endpoint's
+ * limit is answered at once with 503 BUSY and Retry-After instead of queueing, so when OPA
+ * or the database slows down the requests admitted still complete in time.
+ *
+ * Runs before authentication, so rejected requests cost no token or database work.
+ * Responses with a 5xx status or an error count as drops; 4xx responses, cancelled requests
+ * and 503 responses with Retry-After don't count as latency samples. The latter were shed by
+ * a later stage (e.g. a full purchase queue) without doing the work the limit measures, and
+ * counting them as drops would cut the limit whenever that queue fills.
+ */
+@Component
+@ConditionalOnProperty(name = "app.admission.limit.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitFilter implements WebFilter, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    // Before Spring Security's WebFilterChainProxy (-100)
+    static final int ORDER = -200;
+
+    @Value("${app.admission.limit.purchase.initial:20}")
+    private int purchaseInitialLimit = 20;
+
+    @Value("${app.admission.limit.purchase.max:200}")
+    private int purchaseMaxLimit = 200;
+
+    @Value("${app.admission.limit.override.initial:10}")
+    private int overrideInitialLimit = 10;
+
+    @Value("${app.admission.limit.override.max:50}")
+    private int overrideMaxLimit = 50;
+
+    @Value("${app.admission.limit.token.initial:20}")
+    private int tokenInitialLimit = 20;
+
+    @Value("${app.admission.limit.token.max:100}")
+    private int tokenMaxLimit = 100;
+
+    @Value("${app.admission.limit.min:4}")
+    private int minLimit = 4;
+
+    // Share of each window's target applied to the limit
+    @Value("${app.admission.limit.smoothing:0.2}")
+    private double smoothing = 0.2;
+
+    // Latency may rise this factor over its average before the limit shrinks
+    @Value("${app.admission.limit.tolerance:1.5}")
+    private double tolerance = 1.5;
+
+    // Windows averaged into the long-term latency
+    @Value("${app.admission.limit.long-window:600}")
+    private int longWindow = 600;
+
+    @Value("${app.admission.limit.window-ms:100}")
+    private long windowMillis = 100;
+
+    @Value("${app.admission.limit.retry-after-seconds:1}")
+    private long retryAfterSeconds = 1;
+
+    private final Map<AdmissionEndpoint, ConcurrencyLimiter> limiters = new EnumMap<>(AdmissionEndpoint.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @PostConstruct
+    public void init() {
+        limiters.put(AdmissionEndpoint.PURCHASE, limiter(purchaseInitialLimit, purchaseMaxLimit));
+        limiters.put(AdmissionEndpoint.OVERRIDE, limiter(overrideInitialLimit, overrideMaxLimit));
+        limiters.put(AdmissionEndpoint.TOKEN, limiter(tokenInitialLimit, tokenMaxLimit));
+        log.info("admission:limit:init purchase={}..{} override={}..{} token={}..{} min={}",
+            purchaseInitialLimit, purchaseMaxLimit, overrideInitialLimit, overrideMaxLimit, tokenInitialLimit, tokenMaxLimit, minLimit);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        AdmissionEndpoint endpoint = AdmissionEndpoint.of(exchange.getRequest().getMethod(),
+            exchange.getRequest().getPath().pathWithinApplication().value());
+        if (endpoint == null) {
+            return chain.filter(exchange);
+        }
+        ConcurrencyLimiter limiter = limiters.get(endpoint);
+        if (!limiter.tryAcquire()) {
+            log.debug("admission:limit:rejected endpoint={} limit={}", endpoint, limiter.limit());
+            return reject(exchange.getResponse(), endpoint);
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+            .doFinally(signal -> limiter.release(start, outcome(signal, exchange.getResponse())));
+    }
+
+    public List<ConcurrencyLimitStatus> status() {
+        List<ConcurrencyLimitStatus> status = new ArrayList<>();
+        limiters.forEach((endpoint, limiter) -> status.add(ConcurrencyLimitStatus.builder()
+            .endpoint(endpoint.name())
+            .limit(limiter.limit())
+            .inflight(limiter.inflight())
+            .shortRttMillis(limiter.shortRttMillis())
+            .longRttMillis(limiter.longRttMillis())
+            .accepted(limiter.accepted())
+            .rejected(limiter.rejected())
+            .build()));
+        return status;
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, AdmissionEndpoint endpoint) {
+        PurchaseResponse body = new PurchaseResponse();
+        body.setStatus("BUSY");
+        body.setMessage("Too many concurrent " + endpoint.name().toLowerCase(Locale.ROOT) + " requests. Retry later.");
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        try {
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(objectMapper.writeValueAsBytes(body))));
+        } catch (JsonProcessingException e) {
+            return response.setComplete();
+        }
+    }
+
+    static Outcome outcome(SignalType signal, ServerHttpResponse response) {
+        HttpStatusCode status = response.getStatusCode();
+        if (signal == SignalType.CANCEL) {
+            return Outcome.IGNORED;
+        }
+        if (signal != SignalType.ON_ERROR && HttpStatus.SERVICE_UNAVAILABLE.isSameCodeAs(status)
+                && response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)) {
+            return Outcome.IGNORED;
+        }
+        if (signal == SignalType.ON_ERROR || status != null && status.is5xxServerError()) {
+            return Outcome.DROPPED;
+        }
+        return status != null && status.is4xxClientError() ? Outcome.IGNORED : Outcome.COMPLETED;
+    }
+
+    private ConcurrencyLimiter limiter(int initialLimit, int maxLimit) {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, smoothing, tolerance, longWindow,
+            TimeUnit.MILLISECONDS.toNanos(windowMillis), System::nanoTime);
+    }
+}
@@ -0,0 +1,172 @@
+package com.payment.payment.agent.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit adjusted to observed latency (gradient algorithm).
+ *
+ * Completed requests are sampled in windows of at least {@code windowNanos} and
+ * {@value #MIN_WINDOW_SAMPLES} samples. At the end of each window the window's average
+ * latency (short RTT) is compared with a slow moving average of past windows (long RTT):
+ *
+ * <pre>
+ *   gradient = clamp(tolerance * longRtt / shortRtt, 0.5, 1)
+ *   target   = limit * gradient + sqrt(limit)
+ *   limit    = limit * (1 - smoothing) + target * smoothing
+ * </pre>
+ *
+ * While latency stays within {@code tolerance} of its average the limit grows by about
+ * sqrt(limit) per window; once requests start queueing behind a slow dependency, latency
+ * rises and the limit falls towards what the dependency can serve. A window with dropped
+ * requests (errors, 5xx) backs off by 10%. Windows where the limit wasn't reached by half
+ * leave it unchanged, so a quiet period doesn't inflate it. When the long average drifts
+ * far above the short one (after an overload), it decays so the limit can recover.
+ *
+ * {@link #tryAcquire()} never waits: requests over the limit are rejected at once.
+ */
+final class ConcurrencyLimiter {
+
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final int longWindow;
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger maxInflight = new AtomicInteger();
+    private final AtomicLong windowStart;
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile double limit;
+    private volatile double shortRtt;
+    private volatile double longRtt;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double smoothing, double tolerance,
+                       int longWindow, long windowNanos, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("concurrency limits must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.longWindow = longWindow;
+        this.windowNanos = windowNanos;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowStart = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Take a slot if the number of requests in flight is under the limit
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                maxInflight.accumulateAndGet(current + 1, Math::max);
+                accepted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a slot taken at {@code startNanos}. A completed request is sampled; a dropped
+     * one counts against the limit; an ignored one (cancelled, or answered without doing
+     * the work) only frees the slot.
+     */
+    void release(long startNanos, Outcome outcome) {
+        inflight.decrementAndGet();
+        long now = nanoClock.getAsLong();
+        switch (outcome) {
+            case COMPLETED -> {
+                rttSum.add(now - startNanos);
+                samples.increment();
+            }
+            case DROPPED -> drops.increment();
+            case IGNORED -> {
+                return;
+            }
+        }
+        long start = windowStart.get();
+        if (now - start >= windowNanos && samples.sum() + drops.sum() >= MIN_WINDOW_SAMPLES
+            && windowStart.compareAndSet(start, now)) {
+            update();
+        }
+    }
+
+    enum Outcome {
+        COMPLETED, DROPPED, IGNORED
+    }
+
+    private void update() {
+        long count = samples.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        boolean dropped = drops.sumThenReset() > 0;
+        int peak = maxInflight.getAndSet(inflight.get());
+        double current = limit;
+        double target;
+        if (dropped) {
+            target = current * BACKOFF;
+        } else if (count == 0) {
+            return;
+        } else {
+            double rtt = (double) sum / count;
+            shortRtt = rtt;
+            double average = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) * 2 / (longWindow + 1);
+            if (average / rtt > 2) {
+                average *= 0.95;
+            }
+            longRtt = average;
+            if (peak < current / 2) {
+                return;
+            }
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * average / rtt));
+            target = current * gradient + Math.sqrt(current);
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, current * (1 - smoothing) + target * smoothing));
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inflight() {
+        return inflight.get();
+    }
+
+    double shortRttMillis() {
+        return shortRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    double longRttMillis() {
+        return longRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    long accepted() {
+        return accepted.sum();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,294 @@
+package com.payment.payment.agent.admission;
+
+import com.payment.payment.agent.model.AdmissionClassStatus;
+import com.payment.payment.agent.replay.LatencyHistogram;
+import com.payment.payment.agent.service.PurchaseQueueFullException;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Admission of purchases into the pipeline (OPA, database, payment) by the agent's access
+ * level, so sandbox load can't crowd out paying agents.
+ *
+ * At most app.admission.priority.capacity purchases run at once. Premium and production
+ * agents each have reserved slots that no other class may use; the rest are shared. A
+ * purchase that can't start waits in its class's queue. When a slot frees up, waiting
+ * premium and production purchases are served in weighted round robin (by their weights);
+ * sandbox purchases only start when no paying purchase is waiting, so under contention
+ * they yield to paying traffic. A purchase is rejected (503 BUSY) when its class's queue
+ * is full or it has waited app.admission.priority.max-wait-ms.
+ *
+ * Agents without a known access level are treated as sandbox. Queue waits are recorded per
+ * class since startup.
+ */
+@Component
+@ConditionalOnProperty(name = "app.admission.priority.enabled", havingValue = "true", matchIfMissing = true)
+public class PriorityAdmissionScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(PriorityAdmissionScheduler.class);
+
+    public enum PriorityClass {
+        PREMIUM, PRODUCTION, SANDBOX;
+
+        public static PriorityClass of(String accessLevel) {
+            if ("premium".equalsIgnoreCase(accessLevel)) {
+                return PREMIUM;
+            }
+            return "production".equalsIgnoreCase(accessLevel) ? PRODUCTION : SANDBOX;
+        }
+    }
+
+    @Value("${app.admission.priority.capacity:32}")
+    private int capacity = 32;
+
+    @Value("${app.admission.priority.premium.reserved:8}")
+    private int premiumReserved = 8;
+
+    @Value("${app.admission.priority.production.reserved:8}")
+    private int productionReserved = 8;
+
+    @Value("${app.admission.priority.premium.weight:3}")
+    private int premiumWeight = 3;
+
+    @Value("${app.admission.priority.production.weight:1}")
+    private int productionWeight = 1;
+
+    // Waiting purchases per class
+    @Value("${app.admission.priority.max-queue:200}")
+    private int maxQueue = 200;
+
+    @Value("${app.admission.priority.max-wait-ms:2000}")
+    private long maxWaitMillis = 2000;
+
+    private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+    private final Object lock = new Object();
+    private final int[] reserved = new int[CLASSES.length];
+    private final int[] weights = new int[CLASSES.length];
+    private final int[] running = new int[CLASSES.length];
+    // Smooth weighted round robin state of the paying classes
+    private final long[] credit = new long[CLASSES.length];
+    private final List<ArrayDeque<Waiter>> queues = new ArrayList<>();
+    private final List<LatencyHistogram> waits = new ArrayList<>();
+    private final List<LongAdder> admitted = new ArrayList<>();
+    private final List<LongAdder> rejected = new ArrayList<>();
+    private int shared;
+    private LongSupplier nanoClock = System::nanoTime;
+
+    @PostConstruct
+    public void init() {
+        if (premiumReserved < 0 || productionReserved < 0 || premiumReserved + productionReserved >= capacity) {
+            throw new IllegalArgumentException("app.admission.priority reserved slots must leave shared capacity");
+        }
+        reserved[PriorityClass.PREMIUM.ordinal()] = premiumReserved;
+        reserved[PriorityClass.PRODUCTION.ordinal()] = productionReserved;
+        weights[PriorityClass.PREMIUM.ordinal()] = Math.max(1, premiumWeight);
+        weights[PriorityClass.PRODUCTION.ordinal()] = Math.max(1, productionWeight);
+        shared = capacity - premiumReserved - productionReserved;
+        for (int c = 0; c < CLASSES.length; c++) {
+            queues.add(new ArrayDeque<>());
+            waits.add(new LatencyHistogram());
+            admitted.add(new LongAdder());
+            rejected.add(new LongAdder());
+        }
+        log.info("admission:priority:init capacity={} premiumReserved={} productionReserved={} shared={} weights={}:{}",
+            capacity, premiumReserved, productionReserved, shared, premiumWeight, productionWeight);
+    }
+
+    /**
+     * Run {@code work} once a slot for the access level's class is free; the slot is held
+     * until the work terminates or is cancelled
+     */
+    public <T> Mono<T> admit(String accessLevel, Supplier<Mono<T>> work) {
+        PriorityClass priorityClass = PriorityClass.of(accessLevel);
+        return Mono.defer(() -> {
+            Waiter waiter = new Waiter(priorityClass, nanoClock.getAsLong());
+            boolean started;
+            synchronized (lock) {
+                ArrayDeque<Waiter> queue = queues.get(priorityClass.ordinal());
+                started = queue.isEmpty() && (priorityClass != PriorityClass.SANDBOX || !payingWaiting())
+                    && canStart(priorityClass.ordinal());
+                if (started) {
+                    start(waiter);
+                } else if (queue.size() >= maxQueue) {
+                    rejected.get(priorityClass.ordinal()).increment();
+                    return Mono.error(new PurchaseQueueFullException(
+                        name(priorityClass) + " purchase queue is full (" + maxQueue + " waiting)"));
+                } else {
+                    queue.addLast(waiter);
+                }
+            }
+            Mono<Void> admission = started
+                ? Mono.empty()
+                : waiter.sink.asMono().timeout(Duration.ofMillis(maxWaitMillis), Mono.defer(() -> expire(waiter)));
+            return admission
+                .then(Mono.defer(work))
+                .doFinally(signal -> finish(waiter));
+        });
+    }
+
+    public List<AdmissionClassStatus> status() {
+        List<AdmissionClassStatus> status = new ArrayList<>();
+        synchronized (lock) {
+            for (PriorityClass priorityClass : CLASSES) {
+                int c = priorityClass.ordinal();
+                LatencyHistogram wait = waits.get(c);
+                status.add(AdmissionClassStatus.builder()
+                    .accessLevel(name(priorityClass))
+                    .reserved(reserved[c])
+                    .weight(priorityClass == PriorityClass.SANDBOX ? null : weights[c])
+                    .running(running[c])
+                    .queued(queues.get(c).size())
+                    .admitted(admitted.get(c).sum())
+                    .rejected(rejected.get(c).sum())
+                    .waitMeanMillis(wait.mean() / 1000.0)
+                    .waitP50Millis(wait.percentile(0.5) / 1000.0)
+                    .waitP99Millis(wait.percentile(0.99) / 1000.0)
+                    .waitMaxMillis(wait.max() / 1000.0)
+                    .build());
+            }
+        }
+        return status;
+    }
+
+    /**
+     * A waiter whose wait timed out: rejected if still queued, let through if a slot was
+     * granted meanwhile
+     */
+    private Mono<Void> expire(Waiter waiter) {
+        synchronized (lock) {
+            if (waiter.granted) {
+                return Mono.empty();
+            }
+            queues.get(waiter.priorityClass.ordinal()).remove(waiter);
+            waiter.abandoned = true;
+        }
+        rejected.get(waiter.priorityClass.ordinal()).increment();
+        log.debug("admission:priority:expired class={} waitedMs={}", waiter.priorityClass, maxWaitMillis);
+        return Mono.error(new PurchaseQueueFullException(
+            name(waiter.priorityClass) + " purchase waited " + maxWaitMillis + " ms for capacity"));
+    }
+
+    /**
+     * Give back the waiter's slot (or its place in the queue) and start whoever is next
+     */
+    private void finish(Waiter waiter) {
+        List<Waiter> next = new ArrayList<>();
+        synchronized (lock) {
+            if (!waiter.granted) {
+                if (!waiter.abandoned) {
+                    queues.get(waiter.priorityClass.ordinal()).remove(waiter);
+                    waiter.abandoned = true;
+                }
+                return;
+            }
+            if (waiter.released) {
+                return;
+            }
+            waiter.released = true;
+            running[waiter.priorityClass.ordinal()]--;
+            dispatch(next);
+        }
+        // Started outside the lock: their work subscribes on this thread
+        next.forEach(w -> w.sink.tryEmitEmpty());
+    }
+
+    private void dispatch(List<Waiter> next) {
+        while (true) {
+            int chosen = -1;
+            long totalWeight = 0;
+            for (PriorityClass priorityClass : CLASSES) {
+                int c = priorityClass.ordinal();
+                if (priorityClass != PriorityClass.SANDBOX && !queues.get(c).isEmpty() && canStart(c)) {
+                    credit[c] += weights[c];
+                    totalWeight += weights[c];
+                    if (chosen < 0 || credit[c] > credit[chosen]) {
+                        chosen = c;
+                    }
+                }
+            }
+            if (chosen >= 0) {
+                credit[chosen] -= totalWeight;
+            } else if (!payingWaiting() && !queues.get(PriorityClass.SANDBOX.ordinal()).isEmpty()
+                && canStart(PriorityClass.SANDBOX.ordinal())) {
+                chosen = PriorityClass.SANDBOX.ordinal();
+            } else {
+                return;
+            }
+            Waiter waiter = queues.get(chosen).pollFirst();
+            start(waiter);
+            next.add(waiter);
+        }
+    }
+
+    private void start(Waiter waiter) {
+        int c = waiter.priorityClass.ordinal();
+        waiter.granted = true;
+        running[c]++;
+        admitted.get(c).increment();
+        waits.get(c).record(TimeUnit.NANOSECONDS.toMicros(nanoClock.getAsLong() - waiter.enqueuedNanos));
+    }
+
+    /**
+     * Whether a purchase of class {@code c} may start: a free reserved slot of its own, or
+     * a free shared one
+     */
+    private boolean canStart(int c) {
+        int total = 0;
+        int sharedInUse = 0;
+        for (int k = 0; k < CLASSES.length; k++) {
+            total += running[k];
+            sharedInUse += Math.max(0, running[k] - reserved[k]);
+        }
+        if (total >= capacity) {
+            return false;
+        }
+        return running[c] < reserved[c] || sharedInUse < shared;
+    }
+
+    private boolean payingWaiting() {
+        return !queues.get(PriorityClass.PREMIUM.ordinal()).isEmpty()
+            || !queues.get(PriorityClass.PRODUCTION.ordinal()).isEmpty();
+    }
+
+    private static String name(PriorityClass priorityClass) {
+        return priorityClass.name().toLowerCase(Locale.ROOT);
+    }
+
+    void setNanoClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * A purchase waiting for or holding a slot; flags are guarded by the scheduler's lock
+     */
+    private static final class Waiter {
+        final PriorityClass priorityClass;
+        final long enqueuedNanos;
+        final Sinks.Empty<Void> sink = Sinks.empty();
+        boolean granted;
+        boolean released;
+        boolean abandoned;
+
+        Waiter(PriorityClass priorityClass, long enqueuedNanos) {
+            this.priorityClass = priorityClass;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
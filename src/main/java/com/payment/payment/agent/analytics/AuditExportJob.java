@@ -0,0 +1,288 @@
+package com.payment.payment.agent.analytics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.analytics.ColumnarFormat.Column;
+import com.payment.payment.agent.analytics.ColumnarFormat.Type;
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditQueryRepository;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.model.AuditQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental export of audit events to columnar files for offline analytics, so reports
+ * read files instead of querying audit_log on the primary.
+ *
+ * Each run continues from a high-water mark (the last exported audit_log id, kept in
+ * {@code _checkpoint.json} in the export directory) and reads in keyset pages of
+ * app.analytics.export.page-size, each its own short query. Consolidated rows are expanded
+ * to their events. Events are written to {@code day=<yyyy-MM-dd>/event_type=<type>/} with
+ * the details JSON flattened into typed {@code details.<path>} columns (see
+ * {@link ColumnarFormat}). Files are written and moved into place before the checkpoint
+ * advances; a run interrupted in between rewrites the same files.
+ *
+ * Rows younger than app.analytics.export.settle-seconds are left for a later run, so a
+ * row whose insert commits after a higher id has been exported is not skipped.
+ */
+@Component
+@ConditionalOnProperty(name = "app.analytics.export.enabled", havingValue = "true")
+public class AuditExportJob {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditExportJob.class);
+    private static final String CHECKPOINT_FILE = "_checkpoint.json";
+    private static final String DETAILS_PREFIX = "details.";
+
+    @Autowired
+    private AuditQueryRepository auditQueryRepository;
+
+    @Value("${app.analytics.export.dir:analytics-export}")
+    private String dir = "analytics-export";
+
+    @Value("${app.analytics.export.page-size:1000}")
+    private int pageSize = 1000;
+
+    // Upper bound for the audit rows behind one set of files (held in memory while written)
+    @Value("${app.analytics.export.max-rows-per-file:100000}")
+    private int maxRowsPerFile = 100_000;
+
+    @Value("${app.analytics.export.settle-seconds:30}")
+    private long settleSeconds = 30;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Clock clock = Clock.systemUTC();
+
+    @Scheduled(fixedDelayString = "${app.analytics.export.interval-ms:300000}")
+    public void run() {
+        try {
+            export();
+        } catch (Exception e) {
+            log.error("analytics:export failed error={}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Export everything settled since the checkpoint; returns the audit rows exported
+     */
+    public synchronized long export() throws IOException {
+        Files.createDirectories(Path.of(dir));
+        LocalDateTime settled = LocalDateTime.now(clock).minusSeconds(settleSeconds);
+        long lastId = checkpoint();
+        long total = 0;
+        while (true) {
+            Batch batch = read(lastId, settled);
+            if (batch.rows == 0) {
+                break;
+            }
+            int files = write(batch, lastId + 1);
+            saveCheckpoint(batch.lastId);
+            log.info("analytics:export:batch rows={} events={} files={} lastId={}", batch.rows, batch.events, files, batch.lastId);
+            lastId = batch.lastId;
+            total += batch.rows;
+            if (!batch.more) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private Batch read(long afterId, LocalDateTime settled) {
+        Batch batch = new Batch();
+        batch.lastId = afterId;
+        AuditQuery all = AuditQuery.builder().build();
+        while (batch.rows < maxRowsPerFile) {
+            int limit = (int) Math.min(pageSize, maxRowsPerFile - batch.rows);
+            List<AuditLog> rows = auditQueryRepository.findAfter(all, batch.lastId, limit);
+            for (AuditLog row : rows) {
+                if (row.getTimestamp() != null && row.getTimestamp().isAfter(settled)) {
+                    return batch;
+                }
+                for (AuditLog event : AuditStage.expand(List.of(row))) {
+                    LocalDate day = event.getTimestamp() == null ? LocalDate.EPOCH : event.getTimestamp().toLocalDate();
+                    String partition = "day=" + day + "/event_type=" + String.valueOf(event.getEventType()).replaceAll("[^A-Za-z0-9_-]", "_");
+                    batch.partitions.computeIfAbsent(partition, k -> new ArrayList<>()).add(event);
+                    batch.events++;
+                }
+                batch.rows++;
+                batch.lastId = row.getId();
+            }
+            if (rows.size() < limit) {
+                return batch;
+            }
+        }
+        batch.more = true;
+        return batch;
+    }
+
+    private int write(Batch batch, long firstId) throws IOException {
+        for (Map.Entry<String, List<AuditLog>> partition : batch.partitions.entrySet()) {
+            Path directory = Files.createDirectories(Path.of(dir, partition.getKey()));
+            String name = "part-" + firstId + "-" + batch.lastId + ColumnarFormat.FILE_SUFFIX;
+            Path tmp = directory.resolve(name + ".tmp");
+            List<AuditLog> events = partition.getValue();
+            ColumnarFormat.write(tmp, events.size(), columns(events));
+            Files.move(tmp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return batch.partitions.size();
+    }
+
+    private List<Column> columns(List<AuditLog> events) {
+        int rows = events.size();
+        List<Object> ids = new ArrayList<>(rows);
+        List<Object> transactions = new ArrayList<>(rows);
+        List<Object> agents = new ArrayList<>(rows);
+        List<Object> types = new ArrayList<>(rows);
+        List<Object> timestamps = new ArrayList<>(rows);
+        Map<String, List<Object>> details = new LinkedHashMap<>();
+        for (int row = 0; row < rows; row++) {
+            AuditLog event = events.get(row);
+            ids.add(event.getId());
+            transactions.add(event.getTransactionId());
+            agents.add(event.getAgentId());
+            types.add(event.getEventType());
+            timestamps.add(event.getTimestamp() == null ? null : event.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+            Map<String, Object> flat = new LinkedHashMap<>();
+            flatten(event.getDetails(), flat);
+            for (Map.Entry<String, Object> field : flat.entrySet()) {
+                List<Object> values = details.computeIfAbsent(field.getKey(), k -> new ArrayList<>(rows));
+                // Rows before the first one with this field have no value
+                while (values.size() < row) {
+                    values.add(null);
+                }
+                values.add(field.getValue());
+            }
+        }
+
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column("id", Type.LONG, ids));
+        columns.add(new Column("transaction_id", Type.STRING, transactions));
+        columns.add(new Column("agent_id", Type.STRING, agents));
+        columns.add(new Column("event_type", Type.STRING, types));
+        columns.add(new Column("timestamp", Type.TIMESTAMP, timestamps));
+        details.forEach((name, values) -> {
+            while (values.size() < rows) {
+                values.add(null);
+            }
+            columns.add(typed(name, values));
+        });
+        return columns;
+    }
+
+    private void flatten(String details, Map<String, Object> flat) {
+        if (details == null) {
+            return;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(details);
+        } catch (JsonProcessingException e) {
+            flat.put("details", details);
+            return;
+        }
+        if (node.isObject()) {
+            flatten(DETAILS_PREFIX, node, flat);
+        } else if (!node.isNull()) {
+            flat.put("details", node.isTextual() ? node.textValue() : node.toString());
+        }
+    }
+
+    private static void flatten(String prefix, JsonNode node, Map<String, Object> flat) {
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = prefix + field.getKey();
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                flatten(name + ".", value, flat);
+            } else if (value.isIntegralNumber() && value.canConvertToLong()) {
+                flat.put(name, value.longValue());
+            } else if (value.isNumber()) {
+                flat.put(name, value.doubleValue());
+            } else if (value.isBoolean()) {
+                flat.put(name, value.booleanValue());
+            } else if (value.isTextual()) {
+                flat.put(name, value.textValue());
+            } else if (!value.isNull()) {
+                // Arrays stay JSON text
+                flat.put(name, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Narrowest type that holds every value of the column: integers widen to DOUBLE when
+     * mixed with decimals, and any other mix falls back to STRING
+     */
+    static Column typed(String name, List<Object> values) {
+        boolean longs = true;
+        boolean numbers = true;
+        boolean booleans = true;
+        for (Object value : values) {
+            if (value != null) {
+                longs &= value instanceof Long;
+                numbers &= value instanceof Number;
+                booleans &= value instanceof Boolean;
+            }
+        }
+        if (longs) {
+            return new Column(name, Type.LONG, values);
+        }
+        if (numbers) {
+            return new Column(name, Type.DOUBLE, values.stream().map(v -> v == null ? null : (Object) ((Number) v).doubleValue()).toList());
+        }
+        if (booleans) {
+            return new Column(name, Type.BOOLEAN, values);
+        }
+        return new Column(name, Type.STRING, values.stream().map(v -> v == null ? null : (Object) String.valueOf(v)).toList());
+    }
+
+    long checkpoint() throws IOException {
+        Path file = Path.of(dir, CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0L;
+        }
+        return objectMapper.readTree(file.toFile()).path("lastId").asLong();
+    }
+
+    private void saveCheckpoint(long lastId) throws IOException {
+        Path tmp = Path.of(dir, CHECKPOINT_FILE + ".tmp");
+        Files.write(tmp, objectMapper.writeValueAsBytes(Map.of("lastId", lastId, "updatedAt", LocalDateTime.now(clock).toString())));
+        Files.move(tmp, Path.of(dir, CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Events read for one set of files, by partition directory
+     */
+    private static class Batch {
+        final Map<String, List<AuditLog>> partitions = new LinkedHashMap<>();
+        long rows;
+        long events;
+        long lastId;
+        boolean more;
+    }
+}
@@ -0,0 +1,304 @@
+package com.payment.payment.agent.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Layout of columnar export files ({@code part-<firstId>-<lastId>.acol}).
+ *
+ *   file    magic "ACOL" | version (int) | column chunks | footer | footer length (int) | magic "ACOL"
+ *   footer  row count (int) | column count (int) | per column: name | type (byte) | offset (long) | length (int)
+ *   chunk   null bitmap ((rows + 7) / 8 bytes) | values of the non-null rows:
+ *           LONG, TIMESTAMP  zigzag varint delta from the previous value (timestamps in epoch millis, UTC)
+ *           DOUBLE           8 bytes
+ *           BOOLEAN          bit-packed
+ *           STRING           dictionary size (varint) | entries (varint byte length | UTF-8) | varint entry index per value
+ *
+ * The footer is read first, so a reader fetches only the column chunks it asks for.
+ */
+public final class ColumnarFormat {
+
+    static final int MAGIC = 0x41434F4C;
+    static final int VERSION = 1;
+    static final String FILE_SUFFIX = ".acol";
+
+    private ColumnarFormat() {
+    }
+
+    public enum Type {
+        LONG, DOUBLE, BOOLEAN, STRING, TIMESTAMP
+    }
+
+    /**
+     * One column of a file; values are Long, Double, Boolean or String (TIMESTAMP as epoch
+     * millis), with nulls for missing values
+     */
+    public record Column(String name, Type type, List<Object> values) {
+    }
+
+    static void write(Path file, int rows, List<Column> columns) throws IOException {
+        Output out = new Output();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        List<long[]> directory = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            if (column.values().size() != rows) {
+                throw new IllegalArgumentException("Column " + column.name() + " has " + column.values().size() + " values for " + rows + " rows");
+            }
+            int start = out.size();
+            writeChunk(out, column);
+            directory.add(new long[]{start, out.size() - start});
+        }
+        int footerStart = out.size();
+        out.writeInt(rows);
+        out.writeInt(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            out.writeUtf8(columns.get(i).name());
+            out.write(columns.get(i).type().ordinal());
+            out.writeLong(directory.get(i)[0]);
+            out.writeInt((int) directory.get(i)[1]);
+        }
+        out.writeInt(out.size() - footerStart);
+        out.writeInt(MAGIC);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(out.buffer(), 0, out.size());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * The named columns of a file (all of them when {@code names} is null), in file order
+     */
+    public static Map<String, Column> read(Path file, Set<String> names) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = readFully(channel, size - 8, 8);
+            int footerLength = tail.getInt();
+            if (size < 16 || tail.getInt() != MAGIC || readFully(channel, 0, 8).getInt() != MAGIC) {
+                throw new IOException(file + " is not a columnar export file");
+            }
+            Input footer = new Input(readFully(channel, size - 8 - footerLength, footerLength));
+            int rows = footer.readInt();
+            int count = footer.readInt();
+            Map<String, Column> columns = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = footer.readUtf8();
+                Type type = Type.values()[footer.read()];
+                long offset = footer.readLong();
+                int length = footer.readInt();
+                if (names == null || names.contains(name)) {
+                    columns.put(name, readChunk(new Input(readFully(channel, offset, length)), name, type, rows));
+                }
+            }
+            return columns;
+        }
+    }
+
+    private static void writeChunk(Output out, Column column) {
+        List<Object> values = column.values();
+        byte[] nulls = new byte[(values.size() + 7) / 8];
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == null) {
+                nulls[i / 8] |= (byte) (1 << (i % 8));
+            }
+        }
+        out.write(nulls, 0, nulls.length);
+        switch (column.type()) {
+            case LONG, TIMESTAMP -> {
+                long previous = 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        long current = ((Number) value).longValue();
+                        long delta = current - previous;
+                        out.writeVarint((delta << 1) ^ (delta >> 63));
+                        previous = current;
+                    }
+                }
+            }
+            case DOUBLE -> values.stream().filter(v -> v != null).forEach(v -> out.writeLong(Double.doubleToLongBits(((Number) v).doubleValue())));
+            case BOOLEAN -> {
+                List<Object> present = values.stream().filter(v -> v != null).toList();
+                byte[] bits = new byte[(present.size() + 7) / 8];
+                for (int i = 0; i < present.size(); i++) {
+                    if ((Boolean) present.get(i)) {
+                        bits[i / 8] |= (byte) (1 << (i % 8));
+                    }
+                }
+                out.write(bits, 0, bits.length);
+            }
+            case STRING -> {
+                Map<String, Integer> dictionary = new LinkedHashMap<>();
+                for (Object value : values) {
+                    if (value != null) {
+                        dictionary.putIfAbsent((String) value, dictionary.size());
+                    }
+                }
+                out.writeVarint(dictionary.size());
+                dictionary.keySet().forEach(out::writeUtf8);
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeVarint(dictionary.get(value));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Column readChunk(Input in, String name, Type type, int rows) {
+        byte[] nulls = in.readBytes((rows + 7) / 8);
+        List<Object> values = new ArrayList<>(rows);
+        switch (type) {
+            case LONG, TIMESTAMP -> {
+                long previous = 0;
+                for (int i = 0; i < rows; i++) {
+                    if (isNull(nulls, i)) {
+                        values.add(null);
+                    } else {
+                        long zigzag = in.readVarint();
+                        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                        values.add(previous);
+                    }
+                }
+            }
+            case DOUBLE -> {
+                for (int i = 0; i < rows; i++) {
+                    values.add(isNull(nulls, i) ? null : Double.longBitsToDouble(in.readLong()));
+                }
+            }
+            case BOOLEAN -> {
+                int present = 0;
+                for (int i = 0; i < rows; i++) {
+                    present += isNull(nulls, i) ? 0 : 1;
+                }
+                byte[] bits = in.readBytes((present + 7) / 8);
+                int bit = 0;
+                for (int i = 0; i < rows; i++) {
+                    values.add(isNull(nulls, i) ? null : (bits[bit / 8] & (1 << (bit++ % 8))) != 0);
+                }
+            }
+            case STRING -> {
+                int size = (int) in.readVarint();
+                List<String> dictionary = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    dictionary.add(in.readUtf8());
+                }
+                for (int i = 0; i < rows; i++) {
+                    values.add(isNull(nulls, i) ? null : dictionary.get((int) in.readVarint()));
+                }
+            }
+        }
+        return new Column(name, type, values);
+    }
+
+    private static boolean isNull(byte[] nulls, int row) {
+        return (nulls[row / 8] & (1 << (row % 8))) != 0;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IOException("Corrupt columnar export file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated columnar export file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(64 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeUtf8(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int read() {
+            return buffer.get() & 0xFF;
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        long readLong() {
+            return buffer.getLong();
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readUtf8() {
+            return new String(readBytes((int) readVarint()), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.payment.payment.agent.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate top-K of one stream of keys over a sliding window, in fixed memory.
+ *
+ * Counts go to a Count-Min sketch per epoch (a ring of {@code epochs} sketches of
+ * {@code depth} x {@code width} counters); a window is the element-wise sum of the epochs
+ * it covers, so old epochs fall out as the ring turns. An estimate never undercounts and
+ * overcounts by at most e/width of the window total (with probability 1 - e^-depth).
+ *
+ * Next to the sketch, at most {@code capacity} candidate keys are kept. A key that is not
+ * a candidate replaces the weakest one once its estimate over the whole ring exceeds the
+ * floor (the weakest candidate's estimate when it was last computed). Rankings re-estimate
+ * the candidates over the requested window.
+ *
+ * Writers never block: counters are atomic adds, a slot is recycled by whichever writer
+ * first moves it to a new epoch (others wait for the few microseconds it takes to zero),
+ * and a replacement in progress makes concurrent would-be replacements give up.
+ */
+final class HeavyHitterSketch {
+
+    private static final long CLEARING = -1L;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1, 0xD3A2646C, 0xFD7046C5, 0xB55A4F09};
+
+    private final long epochMillis;
+    private final int epochs;
+    private final int depth;
+    private final int width;
+    private final int capacity;
+
+    // epoch slot -> depth * width counters
+    private final AtomicLongArray counters;
+    // epoch slot -> epoch it currently counts (or CLEARING)
+    private final AtomicLongArray slotEpochs;
+    // epoch slot -> events counted
+    private final AtomicLongArray totals;
+
+    private final Map<String, Boolean> candidates = new ConcurrentHashMap<>();
+    private final AtomicBoolean replacing = new AtomicBoolean();
+    private volatile long floor;
+
+    HeavyHitterSketch(long epochMillis, int epochs, int depth, int width, int capacity) {
+        if (epochMillis < 1 || epochs < 1 || depth < 1 || depth > SEEDS.length || width < 1 || capacity < 1) {
+            throw new IllegalArgumentException("invalid heavy-hitter sketch dimensions");
+        }
+        this.epochMillis = epochMillis;
+        this.epochs = epochs;
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        this.counters = new AtomicLongArray(epochs * depth * width);
+        this.slotEpochs = new AtomicLongArray(epochs);
+        this.totals = new AtomicLongArray(epochs);
+        for (int slot = 0; slot < epochs; slot++) {
+            slotEpochs.set(slot, Long.MIN_VALUE);
+        }
+    }
+
+    void add(String key, long nowMillis) {
+        long epoch = nowMillis / epochMillis;
+        int slot = slotFor(epoch);
+        if (slot < 0) {
+            return;
+        }
+        int base = slot * depth * width;
+        int hash = key.hashCode();
+        for (int row = 0; row < depth; row++) {
+            counters.incrementAndGet(base + row * width + column(hash, row));
+        }
+        totals.incrementAndGet(slot);
+        admit(key, epoch);
+    }
+
+    /**
+     * Candidates ranked by their estimate over the last {@code windowEpochs} epochs
+     */
+    List<Estimate> top(int windowEpochs, int limit, long nowMillis) {
+        long epoch = nowMillis / epochMillis;
+        List<Estimate> ranked = new ArrayList<>();
+        for (String key : candidates.keySet()) {
+            long count = estimate(key, epoch, windowEpochs);
+            if (count > 0) {
+                ranked.add(new Estimate(key, count));
+            }
+        }
+        ranked.sort(Comparator.comparingLong(Estimate::count).reversed().thenComparing(Estimate::key));
+        return ranked.size() > limit ? List.copyOf(ranked.subList(0, limit)) : ranked;
+    }
+
+    long estimate(String key, int windowEpochs, long nowMillis) {
+        return estimate(key, nowMillis / epochMillis, windowEpochs);
+    }
+
+    /**
+     * Events counted over the last {@code windowEpochs} epochs
+     */
+    long total(int windowEpochs, long nowMillis) {
+        long epoch = nowMillis / epochMillis;
+        long total = 0;
+        for (int slot = 0; slot < epochs; slot++) {
+            if (inWindow(slotEpochs.get(slot), epoch, windowEpochs)) {
+                total += totals.get(slot);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the overcount of any estimate over the window (e/width of its total)
+     */
+    long errorBound(int windowEpochs, long nowMillis) {
+        return (long) Math.ceil(Math.E / width * total(windowEpochs, nowMillis));
+    }
+
+    int epochs() {
+        return epochs;
+    }
+
+    long epochMillis() {
+        return epochMillis;
+    }
+
+    int candidateCount() {
+        return candidates.size();
+    }
+
+    private long estimate(String key, long epoch, int windowEpochs) {
+        int hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int offset = row * width + column(hash, row);
+            long sum = 0;
+            for (int slot = 0; slot < epochs; slot++) {
+                if (inWindow(slotEpochs.get(slot), epoch, windowEpochs)) {
+                    sum += counters.get(slot * depth * width + offset);
+                }
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    private boolean inWindow(long slotEpoch, long epoch, int windowEpochs) {
+        return slotEpoch <= epoch && slotEpoch > epoch - windowEpochs;
+    }
+
+    /**
+     * Slot counting {@code epoch}, recycling it if it still holds an older epoch; -1 for an
+     * epoch the ring has already moved past (a writer delayed by a whole ring)
+     */
+    private int slotFor(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) epochs);
+        while (true) {
+            long current = slotEpochs.get(slot);
+            if (current == epoch) {
+                return slot;
+            }
+            if (current > epoch) {
+                return -1;
+            }
+            if (current == CLEARING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (slotEpochs.compareAndSet(slot, current, CLEARING)) {
+                int base = slot * depth * width;
+                for (int i = 0; i < depth * width; i++) {
+                    counters.set(base + i, 0L);
+                }
+                totals.set(slot, 0L);
+                slotEpochs.set(slot, epoch);
+                // The epoch that just dropped out may have held the weakest candidate's counts
+                floor = 0L;
+                return slot;
+            }
+        }
+    }
+
+    private void admit(String key, long epoch) {
+        if (candidates.containsKey(key)) {
+            return;
+        }
+        if (candidates.size() < capacity) {
+            candidates.putIfAbsent(key, Boolean.TRUE);
+            return;
+        }
+        long estimate = estimate(key, epoch, epochs);
+        if (estimate <= floor || !replacing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            String weakest = null;
+            long weakestCount = Long.MAX_VALUE;
+            long secondCount = Long.MAX_VALUE;
+            for (String candidate : candidates.keySet()) {
+                long count = estimate(candidate, epoch, epochs);
+                if (count < weakestCount) {
+                    secondCount = weakestCount;
+                    weakest = candidate;
+                    weakestCount = count;
+                } else if (count < secondCount) {
+                    secondCount = count;
+                }
+            }
+            if (weakest == null || estimate <= weakestCount) {
+                floor = weakestCount == Long.MAX_VALUE ? 0L : weakestCount;
+                return;
+            }
+            candidates.remove(weakest);
+            candidates.put(key, Boolean.TRUE);
+            floor = Math.min(estimate, secondCount);
+        } finally {
+            replacing.set(false);
+        }
+    }
+
+    private int column(int hash, int row) {
+        int h = hash ^ SEEDS[row];
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % width;
+    }
+
+    record Estimate(String key, long count) {
+    }
+}
@@ -0,0 +1,179 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.model.HeavyHitter;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Agents and merchants with the most purchases and denials right now, in fixed memory
+ * whatever the number of agents.
+ *
+ * Every purchase outcome counts as a purchase of its agent and merchant; denials are also
+ * counted on their own. Each (dimension, signal) pair has a {@link HeavyHitterSketch}: a
+ * ring of app.analytics.heavy-hitters.epochs Count-Min sketches of
+ * app.analytics.heavy-hitters.epoch-seconds each plus up to
+ * app.analytics.heavy-hitters.capacity candidate keys, so counts decay as epochs leave the
+ * ring. Counts are estimates that may be high by at most the reported error bound.
+ *
+ * {@link #metrics()} is the bounded view for dashboards and alerts: a fixed set of names
+ * (the top app.analytics.heavy-hitters.metric-ranks counts per pair, plus totals) that
+ * doesn't grow with the number of agents; the same ranks are logged every report interval.
+ */
+@Component
+@ConditionalOnProperty(name = "app.analytics.heavy-hitters.enabled", havingValue = "true", matchIfMissing = true)
+public class HeavyHitterTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(HeavyHitterTracker.class);
+
+    public enum Dimension {
+        AGENT, MERCHANT
+    }
+
+    public enum Signal {
+        PURCHASES, DENIALS
+    }
+
+    @Value("${app.analytics.heavy-hitters.epoch-seconds:60}")
+    private long epochSeconds = 60;
+
+    @Value("${app.analytics.heavy-hitters.epochs:15}")
+    private int epochs = 15;
+
+    @Value("${app.analytics.heavy-hitters.depth:4}")
+    private int depth = 4;
+
+    @Value("${app.analytics.heavy-hitters.width:1024}")
+    private int width = 1024;
+
+    @Value("${app.analytics.heavy-hitters.capacity:64}")
+    private int capacity = 64;
+
+    @Value("${app.analytics.heavy-hitters.metric-ranks:5}")
+    private int metricRanks = 5;
+
+    private final Map<Dimension, Map<Signal, HeavyHitterSketch>> sketches = new EnumMap<>(Dimension.class);
+    private Clock clock = Clock.systemUTC();
+
+    @PostConstruct
+    public void init() {
+        for (Dimension dimension : Dimension.values()) {
+            Map<Signal, HeavyHitterSketch> signals = new EnumMap<>(Signal.class);
+            for (Signal signal : Signal.values()) {
+                signals.put(signal, new HeavyHitterSketch(epochSeconds * 1000, epochs, depth, width, capacity));
+            }
+            sketches.put(dimension, signals);
+        }
+        log.info("analytics:heavy-hitters:init epochSeconds={} epochs={} depth={} width={} capacity={}",
+            epochSeconds, epochs, depth, width, capacity);
+    }
+
+    @EventListener
+    public void onPurchaseOutcome(PurchaseOutcomeEvent event) {
+        if (event.getType() == null) {
+            return;
+        }
+        boolean denied = PurchaseOutcomeEvent.DENIED.equals(event.getType());
+        long now = clock.millis();
+        add(Dimension.AGENT, event.getAgentId(), denied, now);
+        add(Dimension.MERCHANT, event.getMerchant(), denied, now);
+    }
+
+    /**
+     * Keys with the highest estimated count over the last {@code window}
+     */
+    public List<HeavyHitter> top(Dimension dimension, Signal signal, Duration window, int limit) {
+        if (limit < 1 || limit > capacity) {
+            throw new IllegalArgumentException("limit must be between 1 and " + capacity);
+        }
+        HeavyHitterSketch sketch = sketches.get(dimension).get(signal);
+        int windowEpochs = windowEpochs(sketch, window);
+        long now = clock.millis();
+        long errorBound = sketch.errorBound(windowEpochs, now);
+        List<HeavyHitter> top = new ArrayList<>();
+        int rank = 0;
+        for (HeavyHitterSketch.Estimate estimate : sketch.top(windowEpochs, limit, now)) {
+            top.add(HeavyHitter.builder()
+                .dimension(dimension.name())
+                .signal(signal.name())
+                .window(window.toString())
+                .rank(++rank)
+                .key(estimate.key())
+                .count(estimate.count())
+                .errorBound(errorBound)
+                .build());
+        }
+        return top;
+    }
+
+    /**
+     * Fixed set of gauges over the whole ring: per dimension and signal, the total and the
+     * counts at ranks 1..metric-ranks (0 when there are fewer keys)
+     */
+    public Map<String, Long> metrics() {
+        long now = clock.millis();
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        sketches.forEach((dimension, signals) -> signals.forEach((signal, sketch) -> {
+            String prefix = "heavy_hitters." + dimension.name().toLowerCase(Locale.ROOT) + "." + signal.name().toLowerCase(Locale.ROOT);
+            List<HeavyHitterSketch.Estimate> top = sketch.top(sketch.epochs(), metricRanks, now);
+            metrics.put(prefix + ".total", sketch.total(sketch.epochs(), now));
+            for (int rank = 1; rank <= metricRanks; rank++) {
+                metrics.put(prefix + ".rank" + rank, rank <= top.size() ? top.get(rank - 1).count() : 0L);
+            }
+            metrics.put(prefix + ".error_bound", sketch.errorBound(sketch.epochs(), now));
+        }));
+        return metrics;
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.heavy-hitters.report-interval-ms:60000}")
+    public void report() {
+        long now = clock.millis();
+        sketches.forEach((dimension, signals) -> signals.forEach((signal, sketch) -> {
+            List<HeavyHitterSketch.Estimate> top = sketch.top(sketch.epochs(), metricRanks, now);
+            if (!top.isEmpty()) {
+                log.info("analytics:heavy-hitters dimension={} signal={} total={} top={}",
+                    dimension, signal, sketch.total(sketch.epochs(), now),
+                    top.stream().map(e -> e.key() + "=" + e.count()).toList());
+            }
+        }));
+    }
+
+    private void add(Dimension dimension, String key, boolean denied, long now) {
+        if (key == null) {
+            return;
+        }
+        Map<Signal, HeavyHitterSketch> signals = sketches.get(dimension);
+        signals.get(Signal.PURCHASES).add(key, now);
+        if (denied) {
+            signals.get(Signal.DENIALS).add(key, now);
+        }
+    }
+
+    private static int windowEpochs(HeavyHitterSketch sketch, Duration window) {
+        long epochs = (window.toMillis() + sketch.epochMillis() - 1) / sketch.epochMillis();
+        if (epochs < 1 || epochs > sketch.epochs()) {
+            throw new IllegalArgumentException("window must be between 1ms and "
+                + Duration.ofMillis(sketch.epochMillis() * sketch.epochs()));
+        }
+        return (int) epochs;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,447 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.model.SpendTotals;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running purchase totals per agent, owner and merchant, updated from purchase outcome
+ * events as they are published, so dashboards and limit checks don't aggregate audit_log.
+ *
+ * Every series (dimension, key, currency) keeps rings of tumbling buckets: 60 minutes,
+ * 48 hours and 35 days. A sliding window is summed from the finest ring that covers it,
+ * so its edge is accurate to one bucket of that ring. Approved and override-approved
+ * purchases add to the approved count and amount; denials and payment failures are counted.
+ *
+ * Buckets changed since the last snapshot are written to spend_aggregate every
+ * app.analytics.spend.snapshot-interval-ms and on shutdown, and loaded back on startup.
+ * Minute and hour rows are deleted once they leave their ring; day rows are kept as
+ * history. Totals are per instance: each instance counts the purchases it processed.
+ */
+@Component
+@ConditionalOnProperty(name = "app.analytics.spend.enabled", havingValue = "true", matchIfMissing = true)
+public class SpendAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(SpendAggregator.class);
+    private static final String DEFAULT_CURRENCY = "USD";
+
+    public enum Dimension {
+        AGENT, OWNER, MERCHANT
+    }
+
+    public enum Granularity {
+        MINUTE(60_000L, 60), HOUR(3_600_000L, 48), DAY(86_400_000L, 35);
+
+        final long millis;
+        final int slots;
+
+        Granularity(long millis, int slots) {
+            this.millis = millis;
+            this.slots = slots;
+        }
+
+        Duration horizon() {
+            return Duration.ofMillis(millis * slots);
+        }
+    }
+
+    enum Outcome {
+        APPROVED, DENIED, FAILED
+    }
+
+    @Autowired
+    private SpendRepository spendRepository;
+
+    @Value("${app.analytics.spend.node-id:${HOSTNAME:local}}")
+    private String nodeId = "local";
+
+    // dimension -> key -> currency -> series
+    private final Map<Dimension, Map<String, Map<String, Series>>> series = new ConcurrentHashMap<>();
+    private Clock clock = Clock.systemUTC();
+
+    @EventListener
+    public void onPurchaseOutcome(PurchaseOutcomeEvent event) {
+        Outcome outcome = outcome(event.getType());
+        if (outcome == null) {
+            return;
+        }
+        double amount = outcome == Outcome.APPROVED && event.getAmount() != null ? event.getAmount() : 0.0;
+        String currency = event.getCurrency() == null ? DEFAULT_CURRENCY : event.getCurrency();
+        long now = clock.millis();
+        add(Dimension.AGENT, event.getAgentId(), currency, outcome, amount, now);
+        add(Dimension.OWNER, event.getOwnerId(), currency, outcome, amount, now);
+        add(Dimension.MERCHANT, event.getMerchant(), currency, outcome, amount, now);
+    }
+
+    /**
+     * Totals over the last {@code window}, one per currency the key has purchases in
+     */
+    public List<SpendTotals> totals(Dimension dimension, String key, Duration window) {
+        Granularity granularity = granularityFor(window);
+        long to = clock.millis() / granularity.millis;
+        long from = to - (window.toMillis() + granularity.millis - 1) / granularity.millis;
+        List<SpendTotals> totals = new ArrayList<>();
+        seriesOf(dimension, key).forEach((currency, s) -> {
+            SpendTotals.SpendTotalsBuilder builder = SpendTotals.builder()
+                .dimension(dimension.name()).key(key).currency(currency).window(window.toString());
+            s.sum(granularity, from, to, builder);
+            totals.add(builder.build());
+        });
+        return totals;
+    }
+
+    /**
+     * Approved amount over the last {@code window}, for limit checks
+     */
+    public double approvedAmount(Dimension dimension, String key, String currency, Duration window) {
+        return totals(dimension, key, window).stream()
+            .filter(t -> t.getCurrency().equals(currency))
+            .mapToDouble(SpendTotals::getApprovedAmount)
+            .sum();
+    }
+
+    /**
+     * Keys with the highest approved amount over the last {@code window}
+     */
+    public List<SpendTotals> top(Dimension dimension, Duration window, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        List<SpendTotals> all = new ArrayList<>();
+        for (String key : series.getOrDefault(dimension, Map.of()).keySet()) {
+            all.addAll(totals(dimension, key, window));
+        }
+        return all.stream()
+            .filter(t -> t.getApprovedCount() + t.getDeniedCount() + t.getFailedCount() > 0)
+            .sorted(Comparator.comparingDouble(SpendTotals::getApprovedAmount).reversed())
+            .limit(limit)
+            .toList();
+    }
+
+    /**
+     * The non-empty tumbling buckets of one granularity still held in memory, oldest first
+     */
+    public List<SpendTotals> buckets(Dimension dimension, String key, Granularity granularity) {
+        long oldest = clock.millis() / granularity.millis - granularity.slots;
+        List<SpendTotals> buckets = new ArrayList<>();
+        seriesOf(dimension, key).forEach((currency, s) -> {
+            for (Bucket bucket : s.copy(granularity, oldest)) {
+                buckets.add(SpendTotals.builder()
+                    .dimension(dimension.name()).key(key).currency(currency)
+                    .granularity(granularity.name())
+                    .bucketStart(start(granularity, bucket.index))
+                    .approvedCount(bucket.approvedCount)
+                    .approvedAmount(bucket.approvedAmount)
+                    .deniedCount(bucket.deniedCount)
+                    .failedCount(bucket.failedCount)
+                    .build());
+            }
+        });
+        buckets.sort(Comparator.comparing(SpendTotals::getBucketStart).thenComparing(SpendTotals::getCurrency));
+        return buckets;
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.spend.snapshot-interval-ms:60000}")
+    public void run() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("analytics:spend:snapshot failed error={}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write changed buckets to spend_aggregate and drop series idle for longer than the
+     * day ring; returns the buckets written
+     */
+    public synchronized int snapshot() {
+        long now = clock.millis();
+        List<SpendBucket> changed = new ArrayList<>();
+        List<Runnable> markClean = new ArrayList<>();
+        series.forEach((dimension, keys) -> keys.forEach((key, currencies) -> currencies.forEach((currency, s) -> {
+            for (Granularity granularity : Granularity.values()) {
+                for (Bucket bucket : s.dirty(granularity)) {
+                    changed.add(new SpendBucket(dimension, key, currency, granularity, start(granularity, bucket.index),
+                        bucket.approvedCount, bucket.approvedAmount, bucket.deniedCount, bucket.failedCount));
+                    markClean.add(() -> s.clean(granularity, bucket.index, bucket.version));
+                }
+            }
+        })));
+        if (!changed.isEmpty()) {
+            spendRepository.save(nodeId, changed, LocalDateTime.now(clock));
+            markClean.forEach(Runnable::run);
+        }
+        for (Granularity granularity : List.of(Granularity.MINUTE, Granularity.HOUR)) {
+            spendRepository.deleteBefore(granularity, start(granularity, now / granularity.millis - granularity.slots + 1));
+        }
+        evictIdle(now);
+        log.debug("analytics:spend:snapshot buckets={}", changed.size());
+        return changed.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        run();
+    }
+
+    /**
+     * Load this instance's snapshotted buckets that are still inside their ring
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restore() {
+        try {
+            long now = clock.millis();
+            int restored = 0;
+            for (Granularity granularity : Granularity.values()) {
+                LocalDateTime since = start(granularity, now / granularity.millis - granularity.slots + 1);
+                for (SpendBucket row : spendRepository.load(nodeId, granularity, since)) {
+                    long index = row.bucketStart().toInstant(ZoneOffset.UTC).toEpochMilli() / granularity.millis;
+                    seriesFor(row.dimension(), row.key(), row.currency()).restore(granularity, index, row);
+                    restored++;
+                }
+            }
+            log.info("analytics:spend:restore node={} buckets={}", nodeId, restored);
+        } catch (Exception e) {
+            log.warn("analytics:spend:restore failed error={}", e.getMessage());
+        }
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private void add(Dimension dimension, String key, String currency, Outcome outcome, double amount, long at) {
+        if (key != null) {
+            seriesFor(dimension, key, currency).add(outcome, amount, at);
+        }
+    }
+
+    private Series seriesFor(Dimension dimension, String key, String currency) {
+        return series.computeIfAbsent(dimension, d -> new ConcurrentHashMap<>())
+            .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(currency, c -> new Series());
+    }
+
+    private Map<String, Series> seriesOf(Dimension dimension, String key) {
+        return series.getOrDefault(dimension, Map.of()).getOrDefault(key, Map.of());
+    }
+
+    private void evictIdle(long now) {
+        long idleBefore = now - Granularity.DAY.horizon().toMillis();
+        series.values().forEach(keys -> keys.values().removeIf(currencies -> {
+            currencies.values().removeIf(s -> s.idleSince(idleBefore));
+            return currencies.isEmpty();
+        }));
+    }
+
+    static Granularity granularityFor(Duration window) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        for (Granularity granularity : Granularity.values()) {
+            if (window.compareTo(granularity.horizon()) <= 0) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("window must be at most " + Granularity.DAY.horizon().toDays() + " days");
+    }
+
+    static Outcome outcome(String eventType) {
+        if (eventType == null) {
+            return null;
+        }
+        return switch (eventType) {
+            case PurchaseOutcomeEvent.APPROVED, PurchaseOutcomeEvent.OVERRIDE_APPROVED -> Outcome.APPROVED;
+            case PurchaseOutcomeEvent.DENIED -> Outcome.DENIED;
+            case PurchaseOutcomeEvent.PAYMENT_FAILED -> Outcome.FAILED;
+            default -> null;
+        };
+    }
+
+    private static LocalDateTime start(Granularity granularity, long index) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(index * granularity.millis), ZoneOffset.UTC);
+    }
+
+    /**
+     * One snapshotted bucket of a series
+     */
+    public record SpendBucket(Dimension dimension, String key, String currency, Granularity granularity,
+                              LocalDateTime bucketStart, long approvedCount, double approvedAmount,
+                              long deniedCount, long failedCount) {
+    }
+
+    private static final class Bucket {
+        long index = -1;
+        long approvedCount;
+        double approvedAmount;
+        long deniedCount;
+        long failedCount;
+        // Bumped on every change; a snapshot only clears dirty if nothing changed since it copied the bucket
+        long version;
+        boolean dirty;
+
+        void reset(long index) {
+            this.index = index;
+            approvedCount = 0;
+            approvedAmount = 0;
+            deniedCount = 0;
+            failedCount = 0;
+            dirty = false;
+        }
+
+        Bucket copy() {
+            Bucket copy = new Bucket();
+            copy.index = index;
+            copy.approvedCount = approvedCount;
+            copy.approvedAmount = approvedAmount;
+            copy.deniedCount = deniedCount;
+            copy.failedCount = failedCount;
+            copy.version = version;
+            return copy;
+        }
+    }
+
+    /**
+     * Bucket rings of one (dimension, key, currency)
+     */
+    private static final class Series {
+        private final Bucket[][] rings = new Bucket[Granularity.values().length][];
+        private long lastActivity;
+
+        Series() {
+            for (Granularity granularity : Granularity.values()) {
+                Bucket[] ring = new Bucket[granularity.slots];
+                for (int i = 0; i < ring.length; i++) {
+                    ring[i] = new Bucket();
+                }
+                rings[granularity.ordinal()] = ring;
+            }
+        }
+
+        synchronized void add(Outcome outcome, double amount, long at) {
+            for (Granularity granularity : Granularity.values()) {
+                Bucket bucket = bucket(granularity, at / granularity.millis);
+                switch (outcome) {
+                    case APPROVED -> {
+                        bucket.approvedCount++;
+                        bucket.approvedAmount += amount;
+                    }
+                    case DENIED -> bucket.deniedCount++;
+                    case FAILED -> bucket.failedCount++;
+                }
+                bucket.version++;
+                bucket.dirty = true;
+            }
+            lastActivity = Math.max(lastActivity, at);
+        }
+
+        synchronized void restore(Granularity granularity, long index, SpendBucket row) {
+            Bucket bucket = ring(granularity)[slot(granularity, index)];
+            if (bucket.index > index) {
+                return;
+            }
+            if (bucket.index < index) {
+                bucket.reset(index);
+            }
+            bucket.approvedCount += row.approvedCount();
+            bucket.approvedAmount += row.approvedAmount();
+            bucket.deniedCount += row.deniedCount();
+            bucket.failedCount += row.failedCount();
+            bucket.version++;
+            lastActivity = Math.max(lastActivity, index * granularity.millis);
+        }
+
+        synchronized void sum(Granularity granularity, long fromExclusive, long toInclusive, SpendTotals.SpendTotalsBuilder into) {
+            long approvedCount = 0;
+            double approvedAmount = 0;
+            long deniedCount = 0;
+            long failedCount = 0;
+            for (Bucket bucket : ring(granularity)) {
+                if (bucket.index > fromExclusive && bucket.index <= toInclusive) {
+                    approvedCount += bucket.approvedCount;
+                    approvedAmount += bucket.approvedAmount;
+                    deniedCount += bucket.deniedCount;
+                    failedCount += bucket.failedCount;
+                }
+            }
+            into.approvedCount(approvedCount).approvedAmount(approvedAmount).deniedCount(deniedCount).failedCount(failedCount);
+        }
+
+        synchronized List<Bucket> copy(Granularity granularity, long oldestExclusive) {
+            List<Bucket> copies = new ArrayList<>();
+            for (Bucket bucket : ring(granularity)) {
+                if (bucket.index > oldestExclusive && bucket.version > 0) {
+                    copies.add(bucket.copy());
+                }
+            }
+            return copies;
+        }
+
+        synchronized List<Bucket> dirty(Granularity granularity) {
+            List<Bucket> copies = new ArrayList<>();
+            for (Bucket bucket : ring(granularity)) {
+                if (bucket.dirty) {
+                    copies.add(bucket.copy());
+                }
+            }
+            return copies;
+        }
+
+        synchronized void clean(Granularity granularity, long index, long version) {
+            Bucket bucket = ring(granularity)[slot(granularity, index)];
+            if (bucket.index == index && bucket.version == version) {
+                bucket.dirty = false;
+            }
+        }
+
+        synchronized boolean idleSince(long before) {
+            if (lastActivity >= before) {
+                return false;
+            }
+            for (Bucket[] ring : rings) {
+                for (Bucket bucket : ring) {
+                    if (bucket.dirty) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private Bucket bucket(Granularity granularity, long index) {
+            Bucket bucket = ring(granularity)[slot(granularity, index)];
+            if (bucket.index != index) {
+                bucket.reset(index);
+            }
+            return bucket;
+        }
+
+        private Bucket[] ring(Granularity granularity) {
+            return rings[granularity.ordinal()];
+        }
+
+        private static int slot(Granularity granularity, long index) {
+            return (int) Math.floorMod(index, (long) granularity.slots);
+        }
+    }
+}
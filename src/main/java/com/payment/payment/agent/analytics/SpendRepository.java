@@ -0,0 +1,93 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.analytics.SpendAggregator.Dimension;
+import com.payment.payment.agent.analytics.SpendAggregator.Granularity;
+import com.payment.payment.agent.analytics.SpendAggregator.SpendBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot rows of the spend aggregates (spend_aggregate)
+ */
+@Repository
+public class SpendRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Upsert buckets: update the existing rows in one batch, insert the rest in another
+     */
+    public void save(String nodeId, List<SpendBucket> buckets, LocalDateTime now) {
+        int[] updated = jdbcTemplate.batchUpdate(
+            "UPDATE spend_aggregate SET approved_count = ?, approved_amount = ?, denied_count = ?, failed_count = ?, updated_at = ? "
+                + "WHERE node_id = ? AND dimension = ? AND key_id = ? AND currency = ? AND granularity = ? AND bucket_start = ?",
+            buckets, buckets.size(), (ps, b) -> {
+                ps.setLong(1, b.approvedCount());
+                ps.setBigDecimal(2, BigDecimal.valueOf(b.approvedAmount()));
+                ps.setLong(3, b.deniedCount());
+                ps.setLong(4, b.failedCount());
+                ps.setTimestamp(5, Timestamp.valueOf(now));
+                ps.setString(6, nodeId);
+                ps.setString(7, b.dimension().name());
+                ps.setString(8, b.key());
+                ps.setString(9, b.currency());
+                ps.setString(10, b.granularity().name());
+                ps.setTimestamp(11, Timestamp.valueOf(b.bucketStart()));
+            })[0];
+        List<SpendBucket> missing = new ArrayList<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            if (updated[i] == 0) {
+                missing.add(buckets.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO spend_aggregate (node_id, dimension, key_id, currency, granularity, bucket_start, "
+                + "approved_count, approved_amount, denied_count, failed_count, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            missing, missing.size(), (ps, b) -> {
+                ps.setString(1, nodeId);
+                ps.setString(2, b.dimension().name());
+                ps.setString(3, b.key());
+                ps.setString(4, b.currency());
+                ps.setString(5, b.granularity().name());
+                ps.setTimestamp(6, Timestamp.valueOf(b.bucketStart()));
+                ps.setLong(7, b.approvedCount());
+                ps.setBigDecimal(8, BigDecimal.valueOf(b.approvedAmount()));
+                ps.setLong(9, b.deniedCount());
+                ps.setLong(10, b.failedCount());
+                ps.setTimestamp(11, Timestamp.valueOf(now));
+            });
+    }
+
+    public List<SpendBucket> load(String nodeId, Granularity granularity, LocalDateTime since) {
+        return jdbcTemplate.query(
+            "SELECT dimension, key_id, currency, bucket_start, approved_count, approved_amount, denied_count, failed_count "
+                + "FROM spend_aggregate WHERE node_id = ? AND granularity = ? AND bucket_start >= ?",
+            (rs, rowNum) -> new SpendBucket(
+                Dimension.valueOf(rs.getString("dimension")),
+                rs.getString("key_id"),
+                rs.getString("currency"),
+                granularity,
+                rs.getTimestamp("bucket_start").toLocalDateTime(),
+                rs.getLong("approved_count"),
+                rs.getBigDecimal("approved_amount").doubleValue(),
+                rs.getLong("denied_count"),
+                rs.getLong("failed_count")),
+            nodeId, granularity.name(), Timestamp.valueOf(since));
+    }
+
+    public int deleteBefore(Granularity granularity, LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM spend_aggregate WHERE granularity = ? AND bucket_start < ?",
+            granularity.name(), Timestamp.valueOf(before));
+    }
+}
@@ -0,0 +1,297 @@
+package com.payment.payment.agent.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.payment.payment.agent.model.AuditQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archived audit rows on local disk. Each segment is a gzip-compressed NDJSON file
+ * ({@code <name>.ndjson.gz}, one audit_log row per line, in id order) with a manifest
+ * ({@code <name>.manifest.json}) holding the SHA-256 of the compressed file, the row count
+ * and the id and timestamp ranges. The manifest is written last, so a segment without
+ * one is incomplete and ignored; its rows are still in the database.
+ */
+@Component
+public class AuditArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditArchive.class);
+    private static final String DATA_SUFFIX = ".ndjson.gz";
+    private static final String MANIFEST_SUFFIX = ".manifest.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Value("${app.audit.archive.dir:audit-archive}")
+    private String dir = "audit-archive";
+
+    public SegmentWriter open() throws IOException {
+        Path directory = Files.createDirectories(Path.of(dir));
+        return new SegmentWriter(Files.createTempFile(directory, "segment-", ".tmp"));
+    }
+
+    /**
+     * Complete segments in id order
+     */
+    public List<Segment> segments() throws IOException {
+        Path directory = Path.of(dir);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path manifest : files.filter(f -> f.getFileName().toString().endsWith(MANIFEST_SUFFIX)).toList()) {
+                segments.add(objectMapper.readValue(manifest.toFile(), Segment.class));
+            }
+        }
+        segments.sort(Comparator.comparingLong(Segment::minId));
+        return segments;
+    }
+
+    /**
+     * Whether the segment file still matches the checksum recorded when it was written
+     */
+    public boolean verify(Segment segment) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(dataFile(segment.name())), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest()).equals(segment.sha256());
+    }
+
+    /**
+     * Matching events from every segment whose time range overlaps the query, in id order.
+     * Segments are checksum-verified before they are read and streamed one line at a time.
+     */
+    public Flux<AuditLog> read(AuditQuery query) {
+        return Mono.fromCallable(this::segments)
+            .flatMapIterable(segments -> segments)
+            .filter(segment -> overlaps(segment, query))
+            .concatMap(segment -> read(segment, query), 1)
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Flux<AuditLog> read(Segment segment, AuditQuery query) {
+        return Mono.fromCallable(() -> {
+                if (!verify(segment)) {
+                    throw new IllegalStateException("Audit archive segment " + segment.name() + " failed checksum verification");
+                }
+                // Not every event names the agent, so first collect the agent's transactions
+                return query.getAgentId() == null ? Set.<String>of() : transactionsOf(segment, query.getAgentId());
+            })
+            .flatMapMany(transactions -> Flux.using(
+                () -> reader(segment),
+                reader -> Flux.fromStream(reader.lines())
+                    .map(this::parse)
+                    .filter(row -> query.getTransactionId() == null || query.getTransactionId().equals(row.getTransactionId()))
+                    .filter(row -> query.getAgentId() == null || transactions.contains(row.getTransactionId()))
+                    .concatMapIterable(row -> AuditStage.expand(List.of(row)))
+                    .filter(event -> AuditQueryService.matches(query, event)),
+                AuditArchive::closeQuietly));
+    }
+
+    private Set<String> transactionsOf(Segment segment, String agentId) throws IOException {
+        Set<String> transactions = new HashSet<>();
+        try (BufferedReader reader = reader(segment)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                AuditLog row = parse(line);
+                if (agentId.equals(row.getAgentId())) {
+                    transactions.add(row.getTransactionId());
+                }
+            }
+        }
+        return transactions;
+    }
+
+    private BufferedReader reader(Segment segment) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(dataFile(segment.name())), 64 * 1024), StandardCharsets.UTF_8));
+    }
+
+    private AuditLog parse(String line) {
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            AuditLog row = new AuditLog();
+            row.setId(node.path("id").asLong());
+            row.setTransactionId(textOrNull(node, "transactionId"));
+            row.setAgentId(textOrNull(node, "agentId"));
+            row.setEventType(textOrNull(node, "eventType"));
+            row.setDetails(textOrNull(node, "details"));
+            String timestamp = textOrNull(node, "timestamp");
+            row.setTimestamp(timestamp == null ? null : LocalDateTime.parse(timestamp));
+            return row;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean overlaps(Segment segment, AuditQuery query) {
+        if (segment.from() == null) {
+            return true;
+        }
+        return (query.getTo() == null || segment.from().isBefore(query.getTo()))
+            && (query.getFrom() == null || !segment.to().isBefore(query.getFrom()));
+    }
+
+    private Path dataFile(String name) {
+        return Path.of(dir, name + DATA_SUFFIX);
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("audit:archive:close failed error={}", e.getMessage());
+        }
+    }
+
+    /**
+     * One archived segment as described by its manifest; timestamps are the oldest and newest row
+     */
+    public record Segment(String name, String sha256, long rows, long minId, long maxId,
+                          LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * Writes one segment to a temporary file. {@link #commit(String)} makes it durable and
+     * visible under its final name; closing without committing discards it.
+     */
+    public class SegmentWriter implements AutoCloseable {
+
+        private final Path tmp;
+        private final FileChannel channel;
+        private final MessageDigest digest = sha256();
+        private final GZIPOutputStream gzip;
+        private final BufferedWriter writer;
+        private long rows;
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private boolean committed;
+
+        private SegmentWriter(Path tmp) throws IOException {
+            this.tmp = tmp;
+            this.channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            // Digest of the compressed bytes, so verification needs no decompression
+            this.gzip = new GZIPOutputStream(new DigestOutputStream(Channels.newOutputStream(channel), digest), 64 * 1024);
+            this.writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+        }
+
+        public void append(AuditLog row) throws IOException {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("id", row.getId());
+            node.put("transactionId", row.getTransactionId());
+            node.put("agentId", row.getAgentId());
+            node.put("eventType", row.getEventType());
+            node.put("details", row.getDetails());
+            node.put("timestamp", row.getTimestamp() == null ? null : row.getTimestamp().toString());
+            writer.write(node.toString());
+            writer.write('\n');
+
+            rows++;
+            minId = Math.min(minId, row.getId());
+            maxId = Math.max(maxId, row.getId());
+            if (row.getTimestamp() != null) {
+                from = from == null || row.getTimestamp().isBefore(from) ? row.getTimestamp() : from;
+                to = to == null || row.getTimestamp().isAfter(to) ? row.getTimestamp() : to;
+            }
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public long minId() {
+            return minId;
+        }
+
+        public long maxId() {
+            return maxId;
+        }
+
+        public Segment commit(String name) throws IOException {
+            writer.flush();
+            gzip.finish();
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, dataFile(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Segment segment = new Segment(name, HexFormat.of().formatHex(digest.digest()), rows, minId, maxId, from, to);
+            Path manifestTmp = Path.of(dir, name + MANIFEST_SUFFIX + ".tmp");
+            try (FileChannel manifest = FileChannel.open(manifestTmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                manifest.write(ByteBuffer.wrap(objectMapper.writeValueAsBytes(segment)));
+                manifest.force(true);
+            }
+            Files.move(manifestTmp, Path.of(dir, name + MANIFEST_SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            log.info("audit:archive:segment name={} rows={} minId={} maxId={} sha256={}", name, rows, minId, maxId, segment.sha256());
+            return segment;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                writer.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+}
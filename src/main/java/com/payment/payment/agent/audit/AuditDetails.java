@@ -0,0 +1,42 @@
+package com.payment.payment.agent.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.codec.CompactCodec;
+
+import java.util.Base64;
+
+/**
+ * Stored form of audit_log.details. With app.audit.details-format=binary the JSON is
+ * written in the {@link CompactCodec} encoding, as base64 text behind {@link #BINARY_PREFIX}
+ * so the column type is unchanged. Reads accept both forms and always return JSON, so rows
+ * written before a format switch stay readable.
+ */
+public final class AuditDetails {
+
+    public static final String BINARY_PREFIX = "cb:";
+    public static final String JSON_FORMAT = "json";
+    public static final String BINARY_FORMAT = "binary";
+
+    private static final CompactCodec CODEC = new CompactCodec(new ObjectMapper());
+
+    private AuditDetails() {
+    }
+
+    public static String store(String json, String format) {
+        if (json == null || !BINARY_FORMAT.equals(format)) {
+            return json;
+        }
+        return BINARY_PREFIX + Base64.getEncoder().encodeToString(CODEC.encodeJson(json));
+    }
+
+    public static String read(String stored) {
+        if (!isBinary(stored)) {
+            return stored;
+        }
+        return CODEC.toJson(Base64.getDecoder().decode(stored.substring(BINARY_PREFIX.length())));
+    }
+
+    public static boolean isBinary(String stored) {
+        return stored != null && stored.startsWith(BINARY_PREFIX);
+    }
+}
@@ -0,0 +1,26 @@
+package com.payment.payment.agent.audit;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Applies app.audit.details-format to audit_log.details written through JPA; the entity
+ * always holds JSON. Instantiated by Hibernate through the Spring bean container.
+ */
+@Converter
+public class AuditDetailsConverter implements AttributeConverter<String, String> {
+
+    @Value("${app.audit.details-format:json}")
+    private String format = AuditDetails.JSON_FORMAT;
+
+    @Override
+    public String convertToDatabaseColumn(String details) {
+        return AuditDetails.store(details, format);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String stored) {
+        return AuditDetails.read(stored);
+    }
+}
@@ -1,5 +1,6 @@
 package com.payment.payment.agent.audit;
 
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -17,7 +18,37 @@ public class AuditLog {
     private Long id;
 
     private String transactionId;
+    private String agentId;
     private String eventType; // e.g., "POLICY_EVALUATION"
+    @Convert(converter = AuditDetailsConverter.class)
     private String details; // e.g., OPA request and response
     private LocalDateTime timestamp;
+
+    public static AuditLog of(String transactionId, String eventType, String details) {
+        AuditLog log = new AuditLog();
+        log.setTransactionId(transactionId);
+        log.setEventType(eventType);
+        log.setDetails(details);
+        log.setTimestamp(LocalDateTime.now());
+        log.setAgentId(agentIdOf(details));
+        return log;
+    }
+
+    /**
+     * First string "agentId" in the details JSON (including events inside an AUDIT_STAGE row),
+     * found without parsing the document
+     */
+    public static String agentIdOf(String details) {
+        if (details == null) {
+            return null;
+        }
+        String marker = "\"agentId\":\"";
+        int start = details.indexOf(marker);
+        if (start < 0) {
+            return null;
+        }
+        start += marker.length();
+        int end = details.indexOf('"', start);
+        return end < 0 ? null : details.substring(start, end);
+    }
 }
@@ -3,6 +3,13 @@ package com.payment.payment.agent.audit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
+
+    /**
+     * Audit trail of one transaction in the order the events were written
+     */
+    List<AuditLog> findByTransactionIdOrderByIdAsc(String transactionId);
 }
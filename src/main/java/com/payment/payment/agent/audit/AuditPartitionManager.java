@@ -0,0 +1,178 @@
+package com.payment.payment.agent.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Storage layout of audit_log. On PostgreSQL (after V8) the table is range-partitioned by
+ * month of timestamp into audit_log_pYYYYMM tables plus audit_log_default; H2 keeps the
+ * single table, and the retention job archives rows from it directly.
+ *
+ * Monthly partitions are created ahead of time, so inserts rarely land in the default
+ * partition. A partition whose month already has rows in the default partition is
+ * created detached, filled from the default partition and then attached.
+ */
+@Component
+public class AuditPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditPartitionManager.class);
+    private static final String PARENT = "audit_log";
+    static final String DEFAULT_PARTITION = "audit_log_default";
+    private static final String PREFIX = "audit_log_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.audit.partitions.months-ahead:2}")
+    private int monthsAhead = 2;
+
+    private volatile Boolean partitioned;
+
+    /**
+     * Whether audit_log is a partitioned PostgreSQL table
+     */
+    public boolean isPartitioned() {
+        if (partitioned == null) {
+            Boolean postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                "PostgreSQL".equals(con.getMetaData().getDatabaseProductName()));
+            partitioned = Boolean.TRUE.equals(postgres) && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?)",
+                    Boolean.class, PARENT));
+        }
+        return partitioned;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.audit.partitions.cron:0 15 0 * * *}")
+    public void maintain() {
+        try {
+            if (isPartitioned()) {
+                ensurePartitions(YearMonth.now(), monthsAhead);
+            }
+        } catch (Exception e) {
+            log.error("audit:partitions:maintain failed error={}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create the partitions of {@code month} and the following {@code ahead} months
+     */
+    public void ensurePartitions(YearMonth month, int ahead) {
+        Set<String> attached = attachedPartitions();
+        for (int i = 0; i <= ahead; i++) {
+            YearMonth target = month.plusMonths(i);
+            String name = partitionName(target);
+            if (!attached.contains(name)) {
+                createPartition(name, target);
+            }
+        }
+    }
+
+    private void createPartition(String name, YearMonth month) {
+        String from = literal(month.atDay(1));
+        String to = literal(month.plusMonths(1).atDay(1));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " (LIKE " + PARENT + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            // Rows of this month that went to the default partition would block the attach
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE timestamp >= " + from + " AND timestamp < " + to + " RETURNING *) INSERT INTO " + name + " SELECT * FROM moved");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + name + " FOR VALUES FROM (" + from + ") TO (" + to + ")");
+            log.info("audit:partitions:created name={} movedFromDefault={}", name, moved);
+        });
+    }
+
+    /**
+     * Monthly partitions, attached or left detached by an interrupted retention run,
+     * whose whole month is before {@code cutoff}, oldest first
+     */
+    public List<String> partitionsBefore(LocalDateTime cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(
+                "SELECT relname FROM pg_class WHERE relkind IN ('r', 'p') AND relname LIKE ? ORDER BY relname",
+                String.class, PREFIX + "%")) {
+            YearMonth month = monthOf(name);
+            if (month != null && !month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)) {
+                expired.add(name);
+            }
+        }
+        return expired;
+    }
+
+    public void detach(String partition) {
+        if (attachedPartitions().contains(partition)) {
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition);
+            log.info("audit:partitions:detached name={}", partition);
+        }
+    }
+
+    public void drop(String table) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        log.info("audit:partitions:dropped name={}", table);
+    }
+
+    /**
+     * Rows of {@code table} after {@code afterId}, optionally only those older than {@code before}, in id order
+     */
+    public List<AuditLog> rowsAfter(String table, long afterId, LocalDateTime before, int limit) {
+        String sql = "SELECT id, transaction_id, agent_id, event_type, details, timestamp FROM " + table + " WHERE id > ?"
+            + (before == null ? "" : " AND timestamp < ?") + " ORDER BY id LIMIT ?";
+        return before == null
+            ? jdbcTemplate.query(sql, AuditQueryRepository.ROW_MAPPER, afterId, limit)
+            : jdbcTemplate.query(sql, AuditQueryRepository.ROW_MAPPER, afterId, Timestamp.valueOf(before), limit);
+    }
+
+    /**
+     * Delete the rows of an archived id range that are older than {@code before}
+     */
+    public int deleteArchived(String table, long minId, long maxId, LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM " + table + " WHERE id BETWEEN ? AND ? AND timestamp < ?",
+            minId, maxId, Timestamp.valueOf(before));
+    }
+
+    private Set<String> attachedPartitions() {
+        return new TreeSet<>(jdbcTemplate.queryForList(
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?",
+            String.class, PARENT));
+    }
+
+    static String partitionName(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    static YearMonth monthOf(String partition) {
+        try {
+            return YearMonth.parse(partition.substring(PREFIX.length()), SUFFIX);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Table names and bounds are generated here, never taken from input
+    private static String literal(LocalDate date) {
+        return "TIMESTAMP '" + date + " 00:00:00'";
+    }
+}
@@ -0,0 +1,142 @@
+package com.payment.payment.agent.audit;
+
+import com.payment.payment.agent.model.AuditQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Filtered keyset reads of audit_log. Queries without a time range are "id > ? ... ORDER BY
+ * id LIMIT ?"; with from/to they page on (timestamp, id) instead, so the timestamp index
+ * bounds the scan to the range rather than every id after the cursor. Either way a page
+ * costs an index range scan however deep into the results it is, instead of the growing
+ * scans of OFFSET paging.
+ *
+ * An event type filter reads individual rows of that type and, through
+ * audit_stage_event_type, the consolidated AUDIT_STAGE rows holding it: two keyset queries
+ * whose pages are merged. Stage rows are returned as stored; {@link AuditQueryService}
+ * expands them.
+ */
+@Repository
+public class AuditQueryRepository {
+
+    private static final String COLUMNS = "a.id, a.transaction_id, a.agent_id, a.event_type, a.details, a.timestamp";
+
+    static final RowMapper<AuditLog> ROW_MAPPER = (rs, rowNum) -> {
+        AuditLog log = new AuditLog();
+        log.setId(rs.getLong("id"));
+        log.setTransactionId(rs.getString("transaction_id"));
+        log.setAgentId(rs.getString("agent_id"));
+        log.setEventType(rs.getString("event_type"));
+        log.setDetails(AuditDetails.read(rs.getString("details")));
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+        log.setTimestamp(timestamp == null ? null : timestamp.toLocalDateTime());
+        return log;
+    };
+
+    private static final Comparator<AuditLog> BY_ID = Comparator.comparing(AuditLog::getId);
+    private static final Comparator<AuditLog> BY_TIME = Comparator.comparing(AuditLog::getTimestamp).thenComparing(AuditLog::getId);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Upper bound for one page query, so an unselective filter cannot hold the database
+    @Value("${app.audit.query.timeout-seconds:30}")
+    private int queryTimeoutSeconds = 30;
+
+    /**
+     * Rows after the row {@code afterId} in page order: (timestamp, id) when the query has a
+     * time range, id otherwise
+     *
+     * @throws IllegalArgumentException when a time-range cursor row no longer exists
+     */
+    public List<AuditLog> findAfter(AuditQuery query, long afterId, int limit) {
+        boolean byTime = query.getFrom() != null || query.getTo() != null;
+        Timestamp afterTimestamp = null;
+        if (byTime && afterId > 0) {
+            List<Timestamp> found = jdbcTemplate.queryForList("SELECT timestamp FROM audit_log WHERE id = ?", Timestamp.class, afterId);
+            if (found.isEmpty() || found.get(0) == null) {
+                throw new IllegalArgumentException("Cursor " + afterId + " no longer exists");
+            }
+            afterTimestamp = found.get(0);
+        }
+        if (query.getEventType() == null) {
+            return select(query, "audit_log a WHERE 1 = 1", List.of(), "a", byTime, afterId, afterTimestamp, limit);
+        }
+        List<AuditLog> rows = select(query, "audit_log a WHERE a.event_type = ?", List.of(query.getEventType()),
+            "a", byTime, afterId, afterTimestamp, limit);
+        // The join repeats the timestamp so partitioned tables only probe the matching partition
+        List<AuditLog> stages = select(query,
+            "audit_stage_event_type s JOIN audit_log a ON a.id = s.audit_id AND a.timestamp = s.timestamp WHERE s.event_type = ?",
+            List.of(query.getEventType()), "s", byTime, afterId, afterTimestamp, limit);
+        return merge(rows, stages, byTime ? BY_TIME : BY_ID, limit);
+    }
+
+    // keyset is the alias whose (timestamp, id) columns drive the page, so its index is used
+    private List<AuditLog> select(AuditQuery query, String from, List<Object> fromArgs, String keyset,
+                                  boolean byTime, long afterId, Timestamp afterTimestamp, int limit) {
+        String id = keyset.equals("s") ? "s.audit_id" : "a.id";
+        String timestamp = keyset + ".timestamp";
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM " + from);
+        List<Object> args = new ArrayList<>(fromArgs);
+        if (afterTimestamp != null) {
+            sql.append(" AND (").append(timestamp).append(", ").append(id).append(") > (?, ?)");
+            args.add(afterTimestamp);
+            args.add(afterId);
+        } else if (!byTime) {
+            sql.append(" AND ").append(id).append(" > ?");
+            args.add(afterId);
+        }
+        if (query.getTransactionId() != null) {
+            sql.append(" AND a.transaction_id = ?");
+            args.add(query.getTransactionId());
+        }
+        if (query.getAgentId() != null) {
+            // Not every event names the agent (e.g. PURCHASE_REQUEST_RECEIVED), so match by owned transactions
+            sql.append(" AND a.transaction_id IN (SELECT transaction_id FROM audit_log WHERE agent_id = ?)");
+            args.add(query.getAgentId());
+        }
+        if (query.getFrom() != null) {
+            sql.append(" AND ").append(timestamp).append(" >= ?");
+            args.add(Timestamp.valueOf(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND ").append(timestamp).append(" < ?");
+            args.add(Timestamp.valueOf(query.getTo()));
+        }
+        sql.append(byTime ? " ORDER BY " + timestamp + ", " + id : " ORDER BY " + id).append(" LIMIT ?");
+        args.add(limit);
+
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            ps.setQueryTimeout(queryTimeoutSeconds);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, ROW_MAPPER);
+    }
+
+    // Both inputs are sorted and disjoint: a stage row's own type is AUDIT_STAGE, which is never indexed
+    private static List<AuditLog> merge(List<AuditLog> left, List<AuditLog> right, Comparator<AuditLog> order, int limit) {
+        List<AuditLog> merged = new ArrayList<>(Math.min(limit, left.size() + right.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < left.size() || j < right.size())) {
+            if (j >= right.size() || (i < left.size() && order.compare(left.get(i), right.get(j)) <= 0)) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,103 @@
+package com.payment.payment.agent.audit;
+
+import com.payment.payment.agent.model.AuditEventPage;
+import com.payment.payment.agent.model.AuditQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Read side of the audit trail with per-event results: consolidated AUDIT_STAGE rows are
+ * expanded and filtered like individual rows. Pages are keyed by audit_log id and come in id
+ * order, or in (timestamp, id) order when the query has a time range; since a consolidated
+ * row expands to several events, a page can hold more events than its limit.
+ */
+@Service
+public class AuditQueryService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditQueryService.class);
+
+    @Autowired
+    private AuditQueryRepository auditQueryRepository;
+
+    @Autowired
+    private AuditArchive auditArchive;
+
+    @Value("${app.audit.query.max-page-size:1000}")
+    private int maxPageSize = 1000;
+
+    // Rows per database round trip while exporting; bounds export memory
+    @Value("${app.audit.query.export-page-size:500}")
+    private int exportPageSize = 500;
+
+    public Mono<AuditEventPage> page(AuditQuery query, long after, int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            return Mono.error(new IllegalArgumentException("limit must be between 1 and " + maxPageSize));
+        }
+        return validate(query).then(fetch(query, after, limit));
+    }
+
+    /**
+     * All matching events in page order. Pages are read one at a time as the consumer asks
+     * for more, so memory stays constant however large the result is.
+     */
+    public Flux<AuditLog> export(AuditQuery query) {
+        return export(query, false);
+    }
+
+    /**
+     * As {@link #export(AuditQuery)}, optionally preceded by matching events from archived
+     * segments. Archived rows are older than, and removed from, the live table, so the
+     * combined stream has no duplicates and archived events come first.
+     */
+    public Flux<AuditLog> export(AuditQuery query, boolean includeArchived) {
+        Flux<AuditLog> live = fetch(query, 0L, exportPageSize)
+            .expand(page -> page.getNextCursor() == null ? Mono.empty() : fetch(query, page.getNextCursor(), exportPageSize))
+            .concatMapIterable(AuditEventPage::getEvents, 1);
+        return validate(query)
+            .thenMany(includeArchived ? Flux.concat(auditArchive.read(query), live) : live);
+    }
+
+    private Mono<AuditEventPage> fetch(AuditQuery query, long after, int limit) {
+        return Mono.fromCallable(() -> {
+                long start = System.nanoTime();
+                List<AuditLog> rows = auditQueryRepository.findAfter(query, after, limit);
+                log.debug("audit:query after={} rows={} elapsedMs={}", after, rows.size(), (System.nanoTime() - start) / 1_000_000);
+                Long next = rows.size() < limit ? null : rows.get(rows.size() - 1).getId();
+                return AuditEventPage.builder()
+                    .events(AuditStage.expand(rows).stream().filter(e -> matches(query, e)).toList())
+                    .nextCursor(next)
+                    .build();
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Applied after expansion, where the SQL filters only matched the enclosing row
+    static boolean matches(AuditQuery query, AuditLog event) {
+        if (query.getEventType() != null && !query.getEventType().equals(event.getEventType())) {
+            return false;
+        }
+        if (query.getFrom() == null && query.getTo() == null) {
+            return true;
+        }
+        LocalDateTime timestamp = event.getTimestamp();
+        return timestamp != null
+            && (query.getFrom() == null || !timestamp.isBefore(query.getFrom()))
+            && (query.getTo() == null || timestamp.isBefore(query.getTo()));
+    }
+
+    private static Mono<Void> validate(AuditQuery query) {
+        if (query.getFrom() != null && query.getTo() != null && !query.getFrom().isBefore(query.getTo())) {
+            return Mono.error(new IllegalArgumentException("from must be before to"));
+        }
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,132 @@
+package com.payment.payment.agent.audit;
+
+import com.payment.payment.agent.audit.AuditArchive.Segment;
+import com.payment.payment.agent.audit.AuditArchive.SegmentWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves audit rows older than the retention period from the database to the
+ * {@link AuditArchive}. Partitioned PostgreSQL tables are archived a month at a time:
+ * the partition is detached, written to a segment and dropped. Rows in the default
+ * partition, and in the single H2 table, are archived in id-ordered segments and
+ * deleted. Rows leave the database only after their segment and manifest are on disk.
+ */
+@Component
+@ConditionalOnProperty(name = "app.audit.retention.enabled", havingValue = "true")
+public class AuditRetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditRetentionJob.class);
+    private static final String TABLE = "audit_log";
+
+    @Autowired
+    private AuditPartitionManager partitionManager;
+
+    @Autowired
+    private AuditArchive auditArchive;
+
+    @Autowired
+    private AuditStageEventTypeRepository stageEventTypeRepository;
+
+    @Value("${app.audit.retention.keep:90d}")
+    private Duration keep = Duration.ofDays(90);
+
+    // Rows read per query while writing a segment
+    @Value("${app.audit.retention.batch-size:1000}")
+    private int batchSize = 1000;
+
+    // Upper bound for one row-archived segment (and the delete that follows it)
+    @Value("${app.audit.retention.segment-max-rows:100000}")
+    private int segmentMaxRows = 100_000;
+
+    private Clock clock = Clock.systemUTC();
+
+    @Scheduled(cron = "${app.audit.retention.cron:0 30 1 * * *}")
+    public void run() {
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("audit:retention failed error={}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Archive everything older than the retention period; returns the rows archived
+     */
+    public long archive() throws IOException {
+        LocalDateTime cutoff = LocalDateTime.now(clock).minus(keep);
+        long archived = 0;
+        if (partitionManager.isPartitioned()) {
+            for (String partition : partitionManager.partitionsBefore(cutoff)) {
+                archived += archivePartition(partition);
+            }
+            archived += archiveRows(AuditPartitionManager.DEFAULT_PARTITION, cutoff);
+        } else {
+            archived += archiveRows(TABLE, cutoff);
+        }
+        // The index entries share their row's timestamp, so these are exactly the archived stages
+        stageEventTypeRepository.deleteBefore(cutoff);
+        log.info("audit:retention:done cutoff={} archivedRows={}", cutoff, archived);
+        return archived;
+    }
+
+    private long archivePartition(String partition) throws IOException {
+        // Detached first, so the table is no longer written to or read from while it is archived
+        partitionManager.detach(partition);
+        long rows;
+        try (SegmentWriter writer = auditArchive.open()) {
+            copy(partition, null, Integer.MAX_VALUE, writer);
+            rows = writer.rows();
+            if (rows > 0) {
+                writer.commit(partition);
+            }
+        }
+        partitionManager.drop(partition);
+        return rows;
+    }
+
+    private long archiveRows(String table, LocalDateTime cutoff) throws IOException {
+        long total = 0;
+        while (true) {
+            try (SegmentWriter writer = auditArchive.open()) {
+                copy(table, cutoff, segmentMaxRows, writer);
+                if (writer.rows() == 0) {
+                    return total;
+                }
+                Segment segment = writer.commit(table + "-" + writer.minId() + "-" + writer.maxId());
+                partitionManager.deleteArchived(table, segment.minId(), segment.maxId(), cutoff);
+                total += segment.rows();
+            }
+        }
+    }
+
+    private void copy(String table, LocalDateTime before, int maxRows, SegmentWriter writer) throws IOException {
+        long after = 0;
+        while (writer.rows() < maxRows) {
+            List<AuditLog> rows = partitionManager.rowsAfter(table, after, before,
+                (int) Math.min(batchSize, maxRows - writer.rows()));
+            for (AuditLog row : rows) {
+                writer.append(row);
+            }
+            if (rows.size() < batchSize) {
+                return;
+            }
+            after = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
@@ -1,22 +1,128 @@
 package com.payment.payment.agent.audit;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.ledger.AuditLedger;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.outbox.OutboxRecord;
+import com.payment.payment.agent.outbox.OutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class AuditService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuditService.class);
+
     @Autowired
     private AuditLogRepository auditLogRepository;
 
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private AuditStageEventTypeRepository stageEventTypeRepository;
+
+    // Tamper-evident copy of every event, when app.audit.ledger.enabled. Written after the
+    // database, so a ledger failure is logged rather than failing an operation whose audit
+    // row is already stored.
+    @Autowired(required = false)
+    private AuditLedger auditLedger;
+
+    // direct: insert into audit_log; outbox: append to outbox_event, relayed to audit_log in batches
+    @Value("${app.audit.mode:direct}")
+    private String mode = "direct";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Transactional
     public void logEvent(String transactionId, String eventType, String details) {
-        AuditLog log = new AuditLog();
-        log.setTransactionId(transactionId);
-        log.setEventType(eventType);
-        log.setDetails(details);
-        log.setTimestamp(LocalDateTime.now());
-        auditLogRepository.save(log);
+        LocalDateTime now = LocalDateTime.now();
+        if (isOutbox()) {
+            outboxRepository.append(List.of(OutboxRecord.audit(transactionId, eventType, details, now)));
+        } else {
+            AuditLog saved = auditLogRepository.save(AuditLog.of(transactionId, eventType, details));
+            if (AuditStage.EVENT_TYPE.equals(eventType)) {
+                stageEventTypeRepository.index(List.of(saved));
+            }
+        }
+        appendToLedger(transactionId, eventType, details, now);
+    }
+
+    /**
+     * Persist several events in one repository call and one transaction
+     */
+    @Transactional
+    public void logEvents(List<AuditLog> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        logEvents(events, List.of());
+    }
+
+    /**
+     * Persist audit events together with the purchase outcomes they lead to. In outbox mode
+     * both go into one append, so the audit trail and the event stream can't disagree after
+     * a crash; in direct mode there is no event stream and the outcomes are not stored.
+     */
+    @Transactional
+    public void logEvents(List<AuditLog> events, List<PurchaseOutcomeEvent> outcomes) {
+        if (isOutbox()) {
+            List<OutboxRecord> records = new ArrayList<>();
+            for (AuditLog e : events) {
+                records.add(OutboxRecord.audit(e.getTransactionId(), e.getEventType(), e.getDetails(),
+                    e.getTimestamp() != null ? e.getTimestamp() : LocalDateTime.now()));
+            }
+            for (PurchaseOutcomeEvent outcome : outcomes) {
+                records.add(OutboxRecord.domain(outcome.getTransactionId(), outcome.getType(), toJson(outcome)));
+            }
+            if (records.isEmpty()) {
+                return;
+            }
+            outboxRepository.append(records);
+        } else {
+            if (events.isEmpty()) {
+                return;
+            }
+            stageEventTypeRepository.index(auditLogRepository.saveAll(events));
+        }
+        for (AuditLog e : events) {
+            appendToLedger(e.getTransactionId(), e.getEventType(), e.getDetails(),
+                e.getTimestamp() != null ? e.getTimestamp() : LocalDateTime.now());
+        }
+    }
+
+    private void appendToLedger(String transactionId, String eventType, String details, LocalDateTime timestamp) {
+        if (auditLedger == null) {
+            return;
+        }
+        try {
+            auditLedger.append(transactionId, eventType, details, timestamp);
+        } catch (RuntimeException e) {
+            log.error("audit:ledger:append_failed transactionId={} eventType={} error={}", transactionId, eventType, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether events go through the outbox (app.audit.mode=outbox)
+     */
+    public boolean isOutbox() {
+        return "outbox".equals(mode);
+    }
+
+    private String toJson(PurchaseOutcomeEvent outcome) {
+        try {
+            return objectMapper.writeValueAsString(outcome);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Purchase outcome " + outcome.getTransactionId() + " could not be encoded", e);
+        }
     }
 }
@@ -0,0 +1,100 @@
+package com.payment.payment.agent.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Audit events of one transaction stage (e.g. the purchase decision), collected so they can
+ * be written as a single audit_log row instead of one row per event.
+ *
+ * The row has event type {@value #EVENT_TYPE} and details
+ *
+ *   {"stage":"decision","events":[{"eventType":"PURCHASE_REQUEST_RECEIVED","timestamp":"...","details":{...}}, ...]}
+ *
+ * Readers call {@link #expand(List)} to get the original per-event rows back.
+ */
+public class AuditStage {
+
+    public static final String EVENT_TYPE = "AUDIT_STAGE";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String transactionId;
+    private final String stage;
+    private final List<AuditLog> events = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public AuditStage(String transactionId, String stage) {
+        this.transactionId = transactionId;
+        this.stage = stage;
+    }
+
+    public void add(String eventType, String details) {
+        events.add(AuditLog.of(transactionId, eventType, details));
+    }
+
+    /**
+     * The consolidated row, or null when nothing was recorded or the stage was already closed
+     */
+    public AuditLog close() {
+        if (!closed.compareAndSet(false, true)) {
+            return null;
+        }
+        synchronized (events) {
+            return events.isEmpty() ? null : consolidate(transactionId, stage, events);
+        }
+    }
+
+    public static AuditLog consolidate(String transactionId, String stage, List<AuditLog> events) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("stage", stage);
+        ArrayNode array = root.putArray("events");
+        for (AuditLog event : events) {
+            ObjectNode node = array.addObject();
+            node.put("eventType", event.getEventType());
+            node.put("timestamp", event.getTimestamp().toString());
+            // details is already JSON; embed it without re-parsing
+            node.putRawValue("details", new RawValue(event.getDetails() == null ? "null" : event.getDetails()));
+        }
+        AuditLog row = AuditLog.of(transactionId, EVENT_TYPE, root.toString());
+        row.setTimestamp(events.get(0).getTimestamp());
+        return row;
+    }
+
+    /**
+     * Replace consolidated rows by the events they hold, in order; other rows pass through
+     */
+    public static List<AuditLog> expand(List<AuditLog> rows) {
+        List<AuditLog> expanded = new ArrayList<>(rows.size());
+        for (AuditLog row : rows) {
+            if (!EVENT_TYPE.equals(row.getEventType())) {
+                expanded.add(row);
+                continue;
+            }
+            try {
+                for (JsonNode node : MAPPER.readTree(row.getDetails()).path("events")) {
+                    AuditLog event = AuditLog.of(row.getTransactionId(), node.path("eventType").asText(),
+                        node.path("details").toString());
+                    event.setId(row.getId());
+                    if (event.getAgentId() == null) {
+                        event.setAgentId(row.getAgentId());
+                    }
+                    event.setTimestamp(LocalDateTime.parse(node.path("timestamp").asText()));
+                    expanded.add(event);
+                }
+            } catch (Exception e) {
+                // Keep an unreadable row visible rather than dropping it
+                expanded.add(row);
+            }
+        }
+        return expanded;
+    }
+}
@@ -0,0 +1,64 @@
+package com.payment.payment.agent.audit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index of the event types inside consolidated AUDIT_STAGE rows (audit_stage_event_type),
+ * written with the rows themselves, so {@link AuditQueryRepository} can filter them by
+ * event type with an index range scan.
+ */
+@Repository
+public class AuditStageEventTypeRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Index the stage rows among {@code rows}; they must already have their audit_log id
+     */
+    public void index(List<AuditLog> rows) {
+        List<Object[]> entries = new ArrayList<>();
+        for (AuditLog row : rows) {
+            if (!AuditStage.EVENT_TYPE.equals(row.getEventType()) || row.getId() == null) {
+                continue;
+            }
+            Timestamp timestamp = Timestamp.valueOf(row.getTimestamp() != null ? row.getTimestamp() : LocalDateTime.now());
+            for (String eventType : eventTypes(row)) {
+                entries.add(new Object[]{eventType, row.getId(), timestamp});
+            }
+        }
+        if (!entries.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO audit_stage_event_type (event_type, audit_id, timestamp) VALUES (?, ?, ?)", entries);
+        }
+    }
+
+    /**
+     * Drop entries of stage rows older than {@code cutoff}, after retention archived them
+     */
+    public int deleteBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM audit_stage_event_type WHERE timestamp < ?", Timestamp.valueOf(cutoff));
+    }
+
+    static Set<String> eventTypes(AuditLog row) {
+        AuditLog readable = new AuditLog();
+        readable.setEventType(row.getEventType());
+        readable.setDetails(AuditDetails.read(row.getDetails()));
+        Set<String> types = new LinkedHashSet<>();
+        for (AuditLog event : AuditStage.expand(List.of(readable))) {
+            // An unreadable stage row expands to itself
+            if (!AuditStage.EVENT_TYPE.equals(event.getEventType())) {
+                types.add(event.getEventType());
+            }
+        }
+        return types;
+    }
+}
@@ -0,0 +1,106 @@
+package com.payment.payment.agent.budget;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Daily budget of one owner or agent: a {@link StripedBudget} for the current UTC day,
+ * replaced by a fresh one on the first use of each new day. Nodes without a limit still
+ * track what they use, so a limit set mid-day applies to the whole day.
+ */
+final class BudgetNode {
+
+    static final long UNLIMITED = Long.MAX_VALUE / 4;
+
+    /**
+     * Allowance of one day; reservations release into the period of the day they were made in
+     */
+    record Period(long day, StripedBudget budget) {
+    }
+
+    private final int stripes;
+    private final AtomicReference<Period> period = new AtomicReference<>();
+    private volatile long limit = UNLIMITED;
+
+    BudgetNode(int stripes) {
+        this.stripes = stripes;
+    }
+
+    /**
+     * Reserve {@code amount} from the budget of {@code day}; null when it doesn't fit.
+     * {@code usedAtStart} is what the day had already used when its period is created.
+     */
+    Period reserve(long day, long amount, LongSupplier usedAtStart) {
+        Period current = current(day, usedAtStart);
+        return current.budget().tryReserve(amount) ? current : null;
+    }
+
+    void consume(long day, long amount, LongSupplier usedAtStart) {
+        current(day, usedAtStart).budget().consume(amount);
+    }
+
+    void release(Period reserved, long amount) {
+        Period current = period.get();
+        if (current != null && current.day() == reserved.day()) {
+            current.budget().release(amount);
+        }
+    }
+
+    /**
+     * Apply a new limit (minor units, {@link #UNLIMITED} for none) to the current day in place.
+     * An unchanged limit, the case on every purchase, returns without taking the lock.
+     */
+    void limit(long limit) {
+        if (this.limit == limit) {
+            return;
+        }
+        synchronized (this) {
+            if (this.limit == limit) {
+                return;
+            }
+            this.limit = limit;
+            Period current = period.get();
+            if (current != null) {
+                current.budget().limit(limit);
+            }
+        }
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    /**
+     * The budget of {@code day}, or null if the node hasn't been used that day
+     */
+    StripedBudget budget(long day) {
+        Period current = period.get();
+        return current != null && current.day() == day ? current.budget() : null;
+    }
+
+    /**
+     * Whether the node was last used before {@code day}
+     */
+    boolean idleSince(long day) {
+        Period current = period.get();
+        return current != null && current.day() < day;
+    }
+
+    private Period current(long day, LongSupplier usedAtStart) {
+        while (true) {
+            Period current = period.get();
+            if (current != null && current.day() >= day) {
+                return current;
+            }
+            long built = limit;
+            Period next = new Period(day, new StripedBudget(built, usedAtStart.getAsLong(), stripes));
+            if (period.compareAndSet(current, next)) {
+                // In case the limit changed while the period was being built
+                if (limit != built) {
+                    next.budget().limit(limit);
+                }
+                return next;
+            }
+        }
+    }
+}
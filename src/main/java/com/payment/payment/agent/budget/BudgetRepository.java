@@ -0,0 +1,98 @@
+package com.payment.payment.agent.budget;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Owner budgets (owner_budget), sub-agent delegations (budget_delegation) and agent limits
+ * (agent_credentials)
+ */
+@Repository
+public class BudgetRepository {
+
+    /**
+     * A sub-agent's delegation, with the owner of its parent agent (agent_credentials)
+     */
+    public record Delegation(String agentId, String parentAgentId, Double dailyLimit, String parentOwnerId) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Map<String, Double> ownerLimits() {
+        Map<String, Double> limits = new HashMap<>();
+        jdbcTemplate.query("SELECT owner_id, daily_limit FROM owner_budget",
+            rs -> {
+                limits.put(rs.getString("owner_id"), rs.getBigDecimal("daily_limit").doubleValue());
+            });
+        return limits;
+    }
+
+    /**
+     * Daily spend limit of every agent (agent_credentials), null for agents without one
+     */
+    public Map<String, Double> agentLimits() {
+        Map<String, Double> limits = new HashMap<>();
+        jdbcTemplate.query("SELECT agent_id, daily_spend_limit FROM agent_credentials",
+            rs -> {
+                limits.put(rs.getString("agent_id"), toDouble(rs.getBigDecimal("daily_spend_limit")));
+            });
+        return limits;
+    }
+
+    public void saveOwnerLimit(String ownerId, double dailyLimit, LocalDateTime now) {
+        int updated = jdbcTemplate.update("UPDATE owner_budget SET daily_limit = ?, updated_at = ? WHERE owner_id = ?",
+            BigDecimal.valueOf(dailyLimit), Timestamp.valueOf(now), ownerId);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO owner_budget (owner_id, daily_limit, updated_at) VALUES (?, ?, ?)",
+                ownerId, BigDecimal.valueOf(dailyLimit), Timestamp.valueOf(now));
+        }
+    }
+
+    public List<Delegation> delegations() {
+        return jdbcTemplate.query(
+            "SELECT d.agent_id, d.parent_agent_id, d.daily_limit, p.owner_id AS parent_owner_id "
+                + "FROM budget_delegation d LEFT JOIN agent_credentials p ON p.agent_id = d.parent_agent_id",
+            (rs, rowNum) -> new Delegation(
+                rs.getString("agent_id"),
+                rs.getString("parent_agent_id"),
+                toDouble(rs.getBigDecimal("daily_limit")),
+                rs.getString("parent_owner_id")));
+    }
+
+    public void saveDelegation(String agentId, String parentAgentId, Double dailyLimit, LocalDateTime now) {
+        BigDecimal limit = dailyLimit == null ? null : BigDecimal.valueOf(dailyLimit);
+        int updated = jdbcTemplate.update(
+            "UPDATE budget_delegation SET parent_agent_id = ?, daily_limit = ?, updated_at = ? WHERE agent_id = ?",
+            parentAgentId, limit, Timestamp.valueOf(now), agentId);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO budget_delegation (agent_id, parent_agent_id, daily_limit, updated_at) VALUES (?, ?, ?, ?)",
+                agentId, parentAgentId, limit, Timestamp.valueOf(now));
+        }
+    }
+
+    public boolean deleteDelegation(String agentId) {
+        return jdbcTemplate.update("DELETE FROM budget_delegation WHERE agent_id = ?", agentId) > 0;
+    }
+
+    /**
+     * Owner of an active agent, if there is one
+     */
+    public Optional<String> ownerOf(String agentId) {
+        return jdbcTemplate.query("SELECT owner_id FROM agent_credentials WHERE agent_id = ? AND is_active = TRUE",
+            (rs, rowNum) -> rs.getString("owner_id"), agentId).stream().findFirst();
+    }
+
+    private static Double toDouble(BigDecimal value) {
+        return value == null ? null : value.doubleValue();
+    }
+}
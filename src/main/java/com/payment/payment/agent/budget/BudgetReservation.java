@@ -0,0 +1,58 @@
+package com.payment.payment.agent.budget;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Amount held on every budget above a purchase (agent, delegating agents, owner) while it
+ * is decided. Kept when the purchase is approved; released otherwise.
+ */
+public final class BudgetReservation {
+
+    record Hold(BudgetNode node, BudgetNode.Period period, long amount) {
+    }
+
+    private final List<Hold> holds;
+    private final String exceeded;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private BudgetReservation(List<Hold> holds, String exceeded) {
+        this.holds = holds;
+        this.exceeded = exceeded;
+    }
+
+    static BudgetReservation granted(List<Hold> holds) {
+        return new BudgetReservation(List.copyOf(holds), null);
+    }
+
+    static BudgetReservation refused(String exceeded) {
+        return new BudgetReservation(List.of(), exceeded);
+    }
+
+    public boolean isGranted() {
+        return exceeded == null;
+    }
+
+    /**
+     * Which budget the purchase would exceed, when it was refused
+     */
+    public String getExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Give the amount back to every budget; only the first call has an effect
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            release(holds);
+        }
+    }
+
+    static void release(List<Hold> holds) {
+        for (int i = holds.size() - 1; i >= 0; i--) {
+            Hold hold = holds.get(i);
+            hold.node().release(hold.period(), hold.amount());
+        }
+    }
+}
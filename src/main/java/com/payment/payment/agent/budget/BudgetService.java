@@ -0,0 +1,333 @@
+package com.payment.payment.agent.budget;
+
+import com.payment.payment.agent.analytics.SpendAggregator;
+import com.payment.payment.agent.analytics.SpendAggregator.Dimension;
+import com.payment.payment.agent.analytics.SpendAggregator.Granularity;
+import com.payment.payment.agent.budget.BudgetRepository.Delegation;
+import com.payment.payment.agent.cluster.AgentStateHandoff;
+import com.payment.payment.agent.model.AgentContext;
+import com.payment.payment.agent.model.BudgetStatus;
+import com.payment.payment.agent.model.SpendTotals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Daily budgets above the single purchase: per agent (agent_credentials.daily_spend_limit),
+ * per delegating agent for sub-agents (budget_delegation), and across all of an owner's
+ * agents (owner_budget, or app.budget.owner-daily-limit for owners without a row).
+ *
+ * Agent limits are read from agent_credentials on refresh, whether the agent is buying or
+ * is the parent of a sub-agent, so one agent's budget has one limit. Only an agent created
+ * since the last refresh uses its token's dailySpendLimit claim, which was issued from the
+ * same row.
+ *
+ * A purchase reserves its amount on every budget from its agent up to the owner before it
+ * is evaluated; if any of them can't take it, the ones already reserved are released and
+ * the purchase is denied. Approved purchases keep their reservation, all other outcomes
+ * release it. Owner budgets are striped (app.budget.stripes, default one per CPU), so
+ * purchases of the many agents under one owner don't contend on one counter.
+ *
+ * Budgets reset at midnight UTC. They are held in memory per instance; a day's budget is
+ * started from that day's approved amount in the spend aggregates, so a restart doesn't
+ * reset it. Amounts are summed as given, whatever the currency. With agent sharding, an
+ * agent's use of the day moves to its new owner when the ring changes; owner budgets stay
+ * per instance.
+ */
+@Service
+@ConditionalOnProperty(name = "app.budget.enabled", havingValue = "true", matchIfMissing = true)
+public class BudgetService implements AgentStateHandoff {
+
+    private static final Logger log = LoggerFactory.getLogger(BudgetService.class);
+    private static final int MAX_DELEGATION_DEPTH = 8;
+
+    public enum Level {
+        OWNER, AGENT
+    }
+
+    @Autowired
+    private BudgetRepository budgetRepository;
+
+    @Autowired(required = false)
+    private SpendAggregator spendAggregator;
+
+    // Daily cap for owners without an owner_budget row; 0 means none
+    @Value("${app.budget.owner-daily-limit:0}")
+    private double defaultOwnerDailyLimit = 0;
+
+    @Value("${app.budget.stripes:0}")
+    private int stripes = 0;
+
+    private final Map<String, BudgetNode> owners = new ConcurrentHashMap<>();
+    private final Map<String, BudgetNode> agents = new ConcurrentHashMap<>();
+    private volatile Map<String, Double> ownerLimits = Map.of();
+    // Minor units, UNLIMITED for agents without a limit
+    private volatile Map<String, Long> agentLimits = Map.of();
+    private volatile Map<String, Delegation> delegations = Map.of();
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Reserve {@code amount} on the agent's, its delegating agents' and its owner's budgets
+     */
+    public BudgetReservation reserve(AgentContext agent, Double amount) {
+        long minor = minor(amount);
+        long day = today();
+        List<BudgetReservation.Hold> holds = new ArrayList<>();
+        String agentId = agent.getAgentId();
+        for (int depth = 0; agentId != null && depth < MAX_DELEGATION_DEPTH; depth++) {
+            Delegation delegation = delegations.get(agentId);
+            BudgetNode node = agents.computeIfAbsent(agentId, k -> new BudgetNode(1));
+            node.limit(Math.min(agentLimit(agentId, agent), toMinor(delegation == null ? null : delegation.dailyLimit())));
+            if (!hold(node, Dimension.AGENT, agentId, day, minor, holds)) {
+                return refused(holds, Level.AGENT, agentId, node);
+            }
+            if (delegation == null) {
+                break;
+            }
+            agentId = delegation.parentAgentId();
+        }
+        String ownerId = agent.getOwnerId();
+        if (ownerId != null) {
+            BudgetNode node = owners.computeIfAbsent(ownerId, k -> new BudgetNode(stripeCount()));
+            node.limit(toMinor(ownerLimit(ownerId)));
+            if (!hold(node, Dimension.OWNER, ownerId, day, minor, holds)) {
+                return refused(holds, Level.OWNER, ownerId, node);
+            }
+        }
+        return BudgetReservation.granted(holds);
+    }
+
+    /**
+     * Count a purchase approved outside the budgets (an owner override) without checking them
+     */
+    public void record(String agentId, String ownerId, Double amount) {
+        long minor = minor(amount);
+        long day = today();
+        for (int depth = 0; agentId != null && depth < MAX_DELEGATION_DEPTH; depth++) {
+            String key = agentId;
+            agents.computeIfAbsent(key, k -> new BudgetNode(1)).consume(day, minor, usedAtStart(Dimension.AGENT, key, day));
+            Delegation delegation = delegations.get(key);
+            agentId = delegation == null ? null : delegation.parentAgentId();
+        }
+        if (ownerId != null) {
+            owners.computeIfAbsent(ownerId, k -> new BudgetNode(stripeCount()))
+                .consume(day, minor, usedAtStart(Dimension.OWNER, ownerId, day));
+        }
+    }
+
+    public BudgetStatus status(Level level, String key) {
+        long day = today();
+        BudgetNode node = (level == Level.OWNER ? owners : agents).get(key);
+        StripedBudget budget = node == null ? null : node.budget(day);
+        Delegation delegation = level == Level.AGENT ? delegations.get(key) : null;
+        long limit = level == Level.OWNER ? toMinor(ownerLimit(key))
+            : Math.min(agentLimits.getOrDefault(key, node != null ? node.limit() : BudgetNode.UNLIMITED),
+                toMinor(delegation == null ? null : delegation.dailyLimit()));
+        double used = budget == null ? 0.0 : budget.used() / 100.0;
+        return BudgetStatus.builder()
+            .level(level.name())
+            .key(key)
+            .day(LocalDate.ofEpochDay(day))
+            .dailyLimit(limit == BudgetNode.UNLIMITED ? null : limit / 100.0)
+            .used(used)
+            .remaining(limit == BudgetNode.UNLIMITED ? null : Math.max(0.0, limit / 100.0 - used))
+            .parentAgentId(delegation == null ? null : delegation.parentAgentId())
+            .build();
+    }
+
+    public BudgetStatus setOwnerLimit(String ownerId, double dailyLimit) {
+        budgetRepository.saveOwnerLimit(ownerId, dailyLimit, LocalDateTime.now(clock));
+        Map<String, Double> limits = new HashMap<>(ownerLimits);
+        limits.put(ownerId, dailyLimit);
+        ownerLimits = Map.copyOf(limits);
+        log.info("budget:owner:limit ownerId={} dailyLimit={}", ownerId, dailyLimit);
+        return status(Level.OWNER, ownerId);
+    }
+
+    /**
+     * Make {@code agentId} a sub-agent spending from {@code parentAgentId}'s budget; both
+     * must be active agents of the same owner
+     */
+    public BudgetStatus delegate(String agentId, String parentAgentId, Double dailyLimit) {
+        if (agentId.equals(parentAgentId)) {
+            throw new IllegalArgumentException("An agent cannot delegate to itself");
+        }
+        String owner = budgetRepository.ownerOf(agentId)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown agent: " + agentId));
+        String parentOwner = budgetRepository.ownerOf(parentAgentId)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown agent: " + parentAgentId));
+        if (!owner.equals(parentOwner)) {
+            throw new IllegalArgumentException("Sub-agent and parent agent must have the same owner");
+        }
+        for (String ancestor = parentAgentId; ancestor != null; ) {
+            if (ancestor.equals(agentId)) {
+                throw new IllegalArgumentException("Delegation would create a cycle");
+            }
+            Delegation next = delegations.get(ancestor);
+            ancestor = next == null ? null : next.parentAgentId();
+        }
+        budgetRepository.saveDelegation(agentId, parentAgentId, dailyLimit, LocalDateTime.now(clock));
+        refresh();
+        log.info("budget:delegation:saved agentId={} parentAgentId={} dailyLimit={}", agentId, parentAgentId, dailyLimit);
+        return status(Level.AGENT, agentId);
+    }
+
+    public boolean removeDelegation(String agentId) {
+        boolean removed = budgetRepository.deleteDelegation(agentId);
+        if (removed) {
+            refresh();
+            log.info("budget:delegation:removed agentId={}", agentId);
+        }
+        return removed;
+    }
+
+    /**
+     * Reload owner limits and delegations (they may be changed through another instance)
+     * and drop budgets not used today
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.budget.refresh-interval-ms:60000}", initialDelayString = "${app.budget.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            ownerLimits = Map.copyOf(budgetRepository.ownerLimits());
+            Map<String, Long> limits = new HashMap<>();
+            budgetRepository.agentLimits().forEach((agentId, limit) -> limits.put(agentId, toMinor(limit)));
+            agentLimits = Map.copyOf(limits);
+            Map<String, Delegation> loaded = new HashMap<>();
+            for (Delegation delegation : budgetRepository.delegations()) {
+                loaded.put(delegation.agentId(), delegation);
+            }
+            delegations = Map.copyOf(loaded);
+        } catch (Exception e) {
+            log.error("budget:refresh failed error={}", e.getMessage(), e);
+        }
+        long day = today();
+        owners.values().removeIf(node -> node.idleSince(day));
+        agents.values().removeIf(node -> node.idleSince(day));
+    }
+
+    @Override
+    public String name() {
+        return "budget";
+    }
+
+    @Override
+    public Collection<String> agents() {
+        return List.copyOf(agents.keySet());
+    }
+
+    @Override
+    public byte[] release(String agentId) {
+        BudgetNode node = agents.remove(agentId);
+        long day = today();
+        StripedBudget budget = node == null ? null : node.budget(day);
+        if (budget == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(2 * Long.BYTES).putLong(day).putLong(budget.used()).array();
+    }
+
+    @Override
+    public void absorb(String agentId, byte[] state) {
+        ByteBuffer buffer = ByteBuffer.wrap(state);
+        long day = buffer.getLong();
+        long used = buffer.getLong();
+        if (day == today()) {
+            agents.computeIfAbsent(agentId, k -> new BudgetNode(1)).consume(day, used, usedAtStart(Dimension.AGENT, agentId, day));
+        }
+    }
+
+    private boolean hold(BudgetNode node, Dimension dimension, String key, long day, long amount, List<BudgetReservation.Hold> holds) {
+        BudgetNode.Period period = node.reserve(day, amount, usedAtStart(dimension, key, day));
+        if (period == null) {
+            return false;
+        }
+        holds.add(new BudgetReservation.Hold(node, period, amount));
+        return true;
+    }
+
+    private BudgetReservation refused(List<BudgetReservation.Hold> holds, Level level, String key, BudgetNode node) {
+        BudgetReservation.release(holds);
+        String exceeded = String.format(Locale.ROOT, "Daily budget of %.2f for %s %s would be exceeded",
+            node.limit() / 100.0, level.name().toLowerCase(Locale.ROOT), key);
+        log.info("budget:refused level={} key={} dailyLimit={}", level, key, node.limit() / 100.0);
+        return BudgetReservation.refused(exceeded);
+    }
+
+    /**
+     * Approved amount of the day so far according to the spend aggregates, for a budget
+     * started after a restart
+     */
+    private LongSupplier usedAtStart(Dimension dimension, String key, long day) {
+        return () -> {
+            if (spendAggregator == null) {
+                return 0L;
+            }
+            LocalDateTime start = LocalDate.ofEpochDay(day).atStartOfDay();
+            double approved = 0;
+            for (SpendTotals bucket : spendAggregator.buckets(dimension, key, Granularity.DAY)) {
+                if (Objects.equals(bucket.getBucketStart(), start)) {
+                    approved += bucket.getApprovedAmount();
+                }
+            }
+            return minor(approved);
+        };
+    }
+
+    private long agentLimit(String agentId, AgentContext buyer) {
+        Long limit = agentLimits.get(agentId);
+        if (limit != null) {
+            return limit;
+        }
+        // Not known yet; only the buying agent's own claim can stand in
+        return agentId.equals(buyer.getAgentId()) ? toMinor(buyer.getDailySpendLimit()) : BudgetNode.UNLIMITED;
+    }
+
+    private Double ownerLimit(String ownerId) {
+        Double limit = ownerLimits.get(ownerId);
+        if (limit != null) {
+            return limit;
+        }
+        return defaultOwnerDailyLimit > 0 ? defaultOwnerDailyLimit : null;
+    }
+
+    private int stripeCount() {
+        return stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+    }
+
+    private long today() {
+        return LocalDate.now(clock).toEpochDay();
+    }
+
+    private static long toMinor(Double limit) {
+        return limit == null ? BudgetNode.UNLIMITED : minor(limit);
+    }
+
+    private static long minor(Double amount) {
+        return amount == null ? 0L : Math.round(amount * 100);
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
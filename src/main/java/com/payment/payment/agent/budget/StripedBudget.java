@@ -0,0 +1,146 @@
+package com.payment.payment.agent.budget;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remaining allowance of one budget (minor units), split over a number of independently
+ * updated stripes so concurrent reservations under one hot budget don't contend on one
+ * counter.
+ *
+ * A reservation takes the amount from a random stripe with a CAS; when that stripe holds
+ * less, it gathers the rest from the others and puts it all back if they don't add up.
+ * The stripes always sum to the limit minus what is reserved, so the budget is never
+ * overcommitted. Near exhaustion, a reservation can be refused while another's gather
+ * briefly holds allowance it will return.
+ *
+ * Spending recorded without a limit check (owner overrides, or usage carried over above a
+ * lowered limit) goes beyond the limit into the overdraft.
+ *
+ * A new limit is applied in place as the difference to the old one: a raise is released into
+ * the stripes, a cut is consumed from them. Reservations in flight and their releases keep
+ * working on the same counters, so nothing they hold is lost or counted twice.
+ */
+final class StripedBudget {
+
+    private long limit;
+    private final AtomicLongArray stripes;
+    private final AtomicLong overdraft = new AtomicLong();
+
+    StripedBudget(long limit, long used, int stripeCount) {
+        this.limit = limit;
+        this.stripes = new AtomicLongArray(Math.max(1, stripeCount));
+        long remaining = Math.max(0L, limit - used);
+        overdraft.set(Math.max(0L, used - limit));
+        int count = stripes.length();
+        for (int i = 0; i < count; i++) {
+            stripes.set(i, remaining / count + (i < remaining % count ? 1 : 0));
+        }
+    }
+
+    boolean tryReserve(long amount) {
+        if (amount <= 0) {
+            return true;
+        }
+        int count = stripes.length();
+        int home = count == 1 ? 0 : ThreadLocalRandom.current().nextInt(count);
+        while (true) {
+            long available = stripes.get(home);
+            if (available < amount) {
+                break;
+            }
+            if (stripes.compareAndSet(home, available, available - amount)) {
+                return true;
+            }
+        }
+        long gathered = 0;
+        for (int i = 0; i < count && gathered < amount; i++) {
+            int stripe = (home + i) % count;
+            while (true) {
+                long available = stripes.get(stripe);
+                long take = Math.min(available, amount - gathered);
+                if (take <= 0) {
+                    break;
+                }
+                if (stripes.compareAndSet(stripe, available, available - take)) {
+                    gathered += take;
+                    break;
+                }
+            }
+        }
+        if (gathered == amount) {
+            return true;
+        }
+        stripes.addAndGet(home, gathered);
+        return false;
+    }
+
+    /**
+     * Take {@code amount} whether or not it is available; what the stripes can't cover
+     * goes to the overdraft
+     */
+    void consume(long amount) {
+        long missing = amount;
+        for (int i = 0; i < stripes.length() && missing > 0; i++) {
+            while (true) {
+                long available = stripes.get(i);
+                long take = Math.min(available, missing);
+                if (take <= 0) {
+                    break;
+                }
+                if (stripes.compareAndSet(i, available, available - take)) {
+                    missing -= take;
+                    break;
+                }
+            }
+        }
+        if (missing > 0) {
+            overdraft.addAndGet(missing);
+        }
+    }
+
+    void release(long amount) {
+        // Released amounts pay the overdraft back first
+        while (amount > 0) {
+            long owed = overdraft.get();
+            if (owed == 0) {
+                break;
+            }
+            long repaid = Math.min(owed, amount);
+            if (overdraft.compareAndSet(owed, owed - repaid)) {
+                amount -= repaid;
+            }
+        }
+        if (amount > 0) {
+            int count = stripes.length();
+            stripes.addAndGet(count == 1 ? 0 : ThreadLocalRandom.current().nextInt(count), amount);
+        }
+    }
+
+    synchronized long limit() {
+        return limit;
+    }
+
+    synchronized void limit(long limit) {
+        long change = limit - this.limit;
+        this.limit = limit;
+        if (change > 0) {
+            release(change);
+        } else if (change < 0) {
+            consume(-change);
+        }
+    }
+
+    long remaining() {
+        long remaining = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            remaining += stripes.get(i);
+        }
+        return remaining;
+    }
+
+    synchronized long used() {
+        return limit - remaining() + overdraft.get();
+    }
+}
@@ -0,0 +1,200 @@
+package com.payment.payment.agent.cluster;
+
+import com.payment.payment.agent.cluster.ClusterRegistry.Node;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agent affinity across instances: agents are assigned to instances by a consistent-hash
+ * ring over the agent ID ({@link HashRing}), so an agent's in-memory state (velocity
+ * windows, budget use, pending overrides) stays on one instance without a shared store
+ * round trip per purchase.
+ *
+ * Membership comes from the {@link ClusterRegistry} (app.cluster.membership: static or
+ * redis) and is refreshed every app.cluster.refresh-interval-ms. When the ring changes,
+ * the state of agents that moved elsewhere is released from every {@link AgentStateHandoff}
+ * and parked in the registry; the new owner claims it on the agent's first request. An
+ * agent is claimed again after the following refresh, for state parked late by instances
+ * that saw the change after this one. Parked state expires after app.cluster.handoff-ttl-seconds,
+ * so claims stop then too, and the agents claimed are forgotten until the next change.
+ */
+@Service
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class AgentShardRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentShardRouter.class);
+    private static final Duration REGISTRY_TIMEOUT = Duration.ofSeconds(5);
+
+    @Autowired
+    private ClusterRegistry registry;
+
+    @Autowired(required = false)
+    private List<AgentStateHandoff> handoffs = List.of();
+
+    @Value("${app.cluster.node-id:${HOSTNAME:local}}")
+    private String nodeId = "local";
+
+    @Value("${app.cluster.node-url:http://localhost:8080}")
+    private String nodeUrl = "http://localhost:8080";
+
+    @Value("${app.cluster.virtual-nodes:128}")
+    private int virtualNodes = 128;
+
+    @Value("${app.cluster.heartbeat-ttl-seconds:15}")
+    private long heartbeatTtlSeconds = 15;
+
+    @Value("${app.cluster.handoff-ttl-seconds:600}")
+    private long handoffTtlSeconds = 600;
+
+    private Node self;
+    private volatile HashRing ring;
+    private volatile boolean reclaim;
+    // End of the claim window opened by the last ring change
+    private volatile Instant claimUntil = Instant.MIN;
+    // Agents whose parked state was claimed since the last ring change, during its claim window
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private Clock clock = Clock.systemUTC();
+
+    @PostConstruct
+    public void init() {
+        self = new Node(nodeId, nodeUrl);
+        ring = new HashRing(List.of(self), virtualNodes);
+        refresh();
+    }
+
+    /**
+     * Instance owning the agent
+     */
+    public Node owner(String agentId) {
+        Node owner = ring.owner(agentId);
+        return owner == null ? self : owner;
+    }
+
+    public boolean isLocal(String agentId) {
+        return self.id().equals(owner(agentId).id());
+    }
+
+    public Node self() {
+        return self;
+    }
+
+    public List<Node> members() {
+        return ring.nodes();
+    }
+
+    /**
+     * Absorb state parked for an agent now owned here, once per ring change
+     */
+    public Mono<Void> claim(String agentId) {
+        if (!clock.instant().isBefore(claimUntil) || !claimed.add(agentId)) {
+            return Mono.empty();
+        }
+        return registry.claim(agentId)
+            .doOnNext(states -> {
+                for (AgentStateHandoff handoff : handoffs) {
+                    byte[] state = states.get(handoff.name());
+                    if (state != null) {
+                        handoff.absorb(agentId, state);
+                    }
+                }
+                log.info("cluster:handoff:claimed agentId={} states={}", agentId, states.keySet());
+            })
+            .onErrorResume(e -> {
+                claimed.remove(agentId);
+                log.warn("cluster:handoff:claim failed agentId={} error={}", agentId, e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    @Scheduled(fixedDelayString = "${app.cluster.refresh-interval-ms:5000}", initialDelayString = "${app.cluster.refresh-interval-ms:5000}")
+    public void refresh() {
+        List<Node> members;
+        try {
+            members = registry.heartbeat(self, Duration.ofSeconds(heartbeatTtlSeconds))
+                .then(registry.members())
+                .block(REGISTRY_TIMEOUT);
+        } catch (Exception e) {
+            log.warn("cluster:refresh failed, keeping ring nodes={} error={}", ring.nodes().size(), e.getMessage());
+            return;
+        }
+        if (members == null || members.isEmpty()) {
+            log.warn("cluster:refresh no members, keeping ring nodes={}", ring.nodes().size());
+            return;
+        }
+        if (members.stream().noneMatch(node -> node.id().equals(self.id()))) {
+            log.warn("cluster:refresh node {} is not a member; its agents are owned elsewhere", self.id());
+        }
+        HashRing current = ring;
+        if (current.nodes().equals(members)) {
+            if (reclaim) {
+                reclaim = false;
+                claimed.clear();
+            } else if (!claimed.isEmpty() && !clock.instant().isBefore(claimUntil)) {
+                // Nothing parked for this change is left to claim
+                claimed.clear();
+            }
+            return;
+        }
+        HashRing next = new HashRing(members, virtualNodes);
+        ring = next;
+        claimed.clear();
+        claimUntil = clock.instant().plusSeconds(handoffTtlSeconds);
+        reclaim = true;
+        log.info("cluster:ring:changed nodes={}", members.stream().map(Node::id).toList());
+        handOff(next);
+    }
+
+    /**
+     * Release the state of agents the new ring assigns elsewhere and park it in the registry
+     */
+    private void handOff(HashRing next) {
+        Map<String, Map<String, byte[]>> released = new HashMap<>();
+        for (AgentStateHandoff handoff : handoffs) {
+            for (String agentId : handoff.agents()) {
+                Node owner = next.owner(agentId);
+                if (owner == null || owner.id().equals(self.id())) {
+                    continue;
+                }
+                byte[] state = handoff.release(agentId);
+                if (state != null) {
+                    released.computeIfAbsent(agentId, k -> new HashMap<>()).put(handoff.name(), state);
+                }
+            }
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+        Duration ttl = Duration.ofSeconds(handoffTtlSeconds);
+        try {
+            Flux.fromIterable(released.entrySet())
+                .flatMap(entry -> registry.handOff(entry.getKey(), entry.getValue(), ttl), 16)
+                .then()
+                .block(REGISTRY_TIMEOUT.multipliedBy(2));
+            log.info("cluster:handoff:released agents={}", released.size());
+        } catch (Exception e) {
+            log.error("cluster:handoff:release failed agents={} error={}", released.size(), e.getMessage(), e);
+        }
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
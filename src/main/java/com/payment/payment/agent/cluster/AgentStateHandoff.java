@@ -0,0 +1,31 @@
+package com.payment.payment.agent.cluster;
+
+import java.util.Collection;
+
+/**
+ * Per-agent state kept in memory that moves with the agent when the shard ring changes.
+ * The instance losing an agent releases its state into the {@link ClusterRegistry}; the
+ * new owner absorbs it on the agent's first request (see {@link AgentShardRouter}).
+ */
+public interface AgentStateHandoff {
+
+    /**
+     * Name of the state, unique among the handoffs of an instance
+     */
+    String name();
+
+    /**
+     * Agents this instance holds state for
+     */
+    Collection<String> agents();
+
+    /**
+     * Remove the agent's state and return it encoded, or null if there is none
+     */
+    byte[] release(String agentId);
+
+    /**
+     * Add state released by another instance to the agent's state here
+     */
+    void absorb(String agentId, byte[] state);
+}
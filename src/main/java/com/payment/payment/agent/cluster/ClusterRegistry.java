@@ -0,0 +1,41 @@
+package com.payment.payment.agent.cluster;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Membership of the instances sharing agents on the shard ring, and the parking place for
+ * agent state moving between them
+ */
+public interface ClusterRegistry {
+
+    /**
+     * An instance: its ID on the ring and the base URL clients are redirected to
+     */
+    record Node(String id, String url) {
+    }
+
+    /**
+     * Announce {@code self} as a live member for {@code ttl}
+     */
+    Mono<Void> heartbeat(Node self, Duration ttl);
+
+    /**
+     * Live members, ordered by ID
+     */
+    Mono<List<Node>> members();
+
+    /**
+     * Park state released for an agent (by {@link AgentStateHandoff} name) until its new
+     * owner claims it or {@code ttl} passes
+     */
+    Mono<Void> handOff(String agentId, Map<String, byte[]> states, Duration ttl);
+
+    /**
+     * Take the state parked for an agent; empty when there is none
+     */
+    Mono<Map<String, byte[]>> claim(String agentId);
+}
@@ -0,0 +1,89 @@
+package com.payment.payment.agent.cluster;
+
+import com.payment.payment.agent.cluster.ClusterRegistry.Node;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Consistent-hash ring of instances. Each node is placed at {@code virtualNodes} points on
+ * a 64-bit ring, and a key belongs to the node at the first point at or after its hash, so
+ * adding or removing a node only moves the keys between it and its neighbours (about 1/n
+ * of them). Immutable; membership changes build a new ring.
+ */
+final class HashRing {
+
+    private final List<Node> nodes;
+    private final long[] points;
+    private final Node[] owners;
+
+    HashRing(List<Node> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtual nodes must be at least 1");
+        }
+        List<Node> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(Node::id));
+        this.nodes = List.copyOf(sorted);
+        long[][] placed = new long[sorted.size() * virtualNodes][];
+        int i = 0;
+        for (int n = 0; n < sorted.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[i++] = new long[]{hash(sorted.get(n).id() + "#" + v), n};
+            }
+        }
+        // Ties (practically never) go to the node with the lower ID, on every instance alike
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[placed.length];
+        this.owners = new Node[placed.length];
+        for (int p = 0; p < placed.length; p++) {
+            points[p] = placed[p][0];
+            owners[p] = sorted.get((int) placed[p][1]);
+        }
+    }
+
+    /**
+     * Node owning {@code key}; null on an empty ring
+     */
+    Node owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        long hash = hash(key);
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    List<Node> nodes() {
+        return nodes;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 64-bit mix so nearby keys
+     * and point labels spread over the whole ring
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
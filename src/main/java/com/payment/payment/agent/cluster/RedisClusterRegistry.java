@@ -0,0 +1,79 @@
+package com.payment.payment.agent.cluster;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Membership by heartbeat: each instance keeps a {@code cluster:node:<id>} key (its URL)
+ * alive in Redis, and the members are the keys that haven't expired. Released agent state
+ * is parked in a {@code cluster:handoff:<agentId>} hash until the new owner takes it.
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.membership", havingValue = "redis")
+public class RedisClusterRegistry implements ClusterRegistry {
+
+    private static final String NODE_PREFIX = "cluster:node:";
+    private static final String HANDOFF_PREFIX = "cluster:handoff:";
+
+    @Autowired
+    private ReactiveRedisConnectionFactory connectionFactory;
+
+    private ReactiveRedisTemplate<String, byte[]> redisTemplate;
+
+    @PostConstruct
+    void init() {
+        redisTemplate = new ReactiveRedisTemplate<>(connectionFactory,
+            RedisSerializationContext.<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .hashKey(RedisSerializer.string())
+                .hashValue(RedisSerializer.byteArray())
+                .build());
+    }
+
+    @Override
+    public Mono<Void> heartbeat(Node self, Duration ttl) {
+        return redisTemplate.opsForValue()
+            .set(NODE_PREFIX + self.id(), self.url().getBytes(StandardCharsets.UTF_8), ttl)
+            .then();
+    }
+
+    @Override
+    public Mono<List<Node>> members() {
+        return redisTemplate.scan(ScanOptions.scanOptions().match(NODE_PREFIX + "*").count(100).build())
+            .flatMap(key -> redisTemplate.opsForValue().get(key)
+                .map(url -> new Node(key.substring(NODE_PREFIX.length()), new String(url, StandardCharsets.UTF_8))))
+            .sort(Comparator.comparing(Node::id))
+            .collectList();
+    }
+
+    @Override
+    public Mono<Void> handOff(String agentId, Map<String, byte[]> states, Duration ttl) {
+        String key = HANDOFF_PREFIX + agentId;
+        return redisTemplate.<String, byte[]>opsForHash().putAll(key, states)
+            .then(redisTemplate.expire(key, ttl))
+            .then();
+    }
+
+    @Override
+    public Mono<Map<String, byte[]>> claim(String agentId) {
+        String key = HANDOFF_PREFIX + agentId;
+        return redisTemplate.<String, byte[]>opsForHash().entries(key)
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .filter(states -> !states.isEmpty())
+            .flatMap(states -> redisTemplate.delete(key).thenReturn(states));
+    }
+}
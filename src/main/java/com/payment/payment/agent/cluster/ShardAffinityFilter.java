@@ -0,0 +1,78 @@
+package com.payment.payment.agent.cluster;
+
+import com.payment.payment.agent.cluster.ClusterRegistry.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.security.Principal;
+
+/**
+ * Routes purchase requests to the instance owning the agent (runs after authentication,
+ * the agent ID being the token subject). Every response names the instance that served it
+ * in X-Shard-Node. For an agent owned elsewhere, X-Shard-Owner and X-Shard-Owner-Url name
+ * its owner and, with app.cluster.routing=redirect, the request is answered with a 307 to
+ * the owner instead of being processed (clients re-send the same method and body);
+ * with hint (the default) it is processed here and the client is expected to stick to the
+ * owner for the following requests.
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class ShardAffinityFilter implements WebFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardAffinityFilter.class);
+
+    public static final String NODE_HEADER = "X-Shard-Node";
+    public static final String OWNER_HEADER = "X-Shard-Owner";
+    public static final String OWNER_URL_HEADER = "X-Shard-Owner-Url";
+
+    @Autowired
+    private AgentShardRouter router;
+
+    @Value("${app.cluster.routing:hint}")
+    private String routing = "hint";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!exchange.getRequest().getPath().pathWithinApplication().value().startsWith("/api/v1/purchase")) {
+            return chain.filter(exchange);
+        }
+        return exchange.getPrincipal()
+            .map(Principal::getName)
+            .defaultIfEmpty("")
+            .flatMap(agentId -> agentId.isEmpty() ? chain.filter(exchange) : route(agentId, exchange, chain));
+    }
+
+    private Mono<Void> route(String agentId, ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(NODE_HEADER, router.self().id());
+        if (router.isLocal(agentId)) {
+            return router.claim(agentId).then(chain.filter(exchange));
+        }
+        Node owner = router.owner(agentId);
+        headers.set(OWNER_HEADER, owner.id());
+        headers.set(OWNER_URL_HEADER, owner.url());
+        if (!"redirect".equalsIgnoreCase(routing)) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        String query = request.getURI().getRawQuery();
+        headers.setLocation(URI.create(owner.url() + request.getURI().getRawPath() + (query == null ? "" : "?" + query)));
+        response.setStatusCode(HttpStatus.TEMPORARY_REDIRECT);
+        log.debug("cluster:redirect agentId={} owner={}", agentId, owner.id());
+        return response.setComplete();
+    }
+}
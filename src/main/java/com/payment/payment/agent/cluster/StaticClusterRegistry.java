@@ -0,0 +1,65 @@
+package com.payment.payment.agent.cluster;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed membership from app.cluster.nodes ({@code id=url} pairs, comma-separated).
+ * Membership only changes with a restart, which loses in-memory state anyway, so there is
+ * nothing to hand off.
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.membership", havingValue = "static", matchIfMissing = true)
+public class StaticClusterRegistry implements ClusterRegistry {
+
+    @Value("${app.cluster.nodes:}")
+    private String nodes = "";
+
+    private List<Node> members = List.of();
+
+    @PostConstruct
+    public void init() {
+        List<Node> parsed = new ArrayList<>();
+        for (String entry : nodes.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("app.cluster.nodes entries must be id=url: " + entry.trim());
+            }
+            parsed.add(new Node(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim()));
+        }
+        parsed.sort(Comparator.comparing(Node::id));
+        members = List.copyOf(parsed);
+    }
+
+    @Override
+    public Mono<Void> heartbeat(Node self, Duration ttl) {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<List<Node>> members() {
+        return Mono.just(members);
+    }
+
+    @Override
+    public Mono<Void> handOff(String agentId, Map<String, byte[]> states, Duration ttl) {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Map<String, byte[]>> claim(String agentId) {
+        return Mono.empty();
+    }
+}
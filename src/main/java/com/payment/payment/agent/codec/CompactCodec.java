@@ -0,0 +1,393 @@
+package com.payment.payment.agent.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned compact binary form of JSON documents, used for audit details and cached
+ * purchase payloads.
+ *
+ *   header   0xC7 | dictionary version (byte)
+ *   value    tag byte, then for
+ *            INT      zigzag varint
+ *            DOUBLE   8 bytes, big-endian
+ *            DECIMAL  varint length | UTF-8 digits
+ *            STRING   varint length | UTF-8 (and appended to the message's string table)
+ *            REF      varint index into the message's string table
+ *            0x80 + n entry n of the static dictionary
+ *
+ * Field names and string values share one encoding: well-known ones (PurchaseRequest /
+ * PurchaseResponse fields, event types, statuses, common merchants and product types) are
+ * one byte from the static dictionary, and any other string is written once per message
+ * and referenced after that. Objects and arrays are delimited by start and end tags, so
+ * encoding and decoding stream Jackson tokens without building a tree.
+ *
+ * Payloads name the dictionary version they were written with. Dictionaries are
+ * append-only: a new version copies the previous entries and adds at the end, and every
+ * version stays registered so old payloads remain readable.
+ */
+public class CompactCodec {
+
+    public static final byte MAGIC = (byte) 0xC7;
+
+    static final int TAG_NULL = 0x00;
+    static final int TAG_FALSE = 0x01;
+    static final int TAG_TRUE = 0x02;
+    static final int TAG_START_OBJECT = 0x03;
+    static final int TAG_END_OBJECT = 0x04;
+    static final int TAG_START_ARRAY = 0x05;
+    static final int TAG_END_ARRAY = 0x06;
+    static final int TAG_INT = 0x07;
+    static final int TAG_DOUBLE = 0x08;
+    static final int TAG_DECIMAL = 0x09;
+    static final int TAG_STRING = 0x0A;
+    static final int TAG_REF = 0x0B;
+    static final int TAG_DICTIONARY = 0x80;
+
+    static final int MAX_DICTIONARY_SIZE = 128;
+    // Longer strings are rarely repeated, so they are not worth a table slot
+    private static final int MAX_TABLE_STRING = 64;
+    private static final int MAX_TABLE_SIZE = 4096;
+
+    private static final List<List<String>> DICTIONARIES = List.of(List.of(
+        // PurchaseRequest / PurchaseResponse
+        "agentId", "ownerId", "amount", "merchant", "productType", "productId", "currency",
+        "description", "category", "licenseType", "quantity", "requestId", "status",
+        "transactionId", "message", "paymentReference",
+        // Audit detail maps and consolidated stages
+        "allowed", "explanation", "retryable", "error", "overrider", "reason", "stage",
+        "events", "eventType", "timestamp", "details", "decision",
+        // Event types
+        "PURCHASE_REQUEST_RECEIVED", "PURCHASE_REQUEST_INVALID", "POLICY_EVALUATION_COMPLETED",
+        "PURCHASE_APPROVED", "PURCHASE_DENIED", "PURCHASE_FAILED", "PURCHASE_ACCEPTED",
+        "PURCHASE_OVERRIDE_APPROVED", "PURCHASE_OVERRIDE_FAILED", "AUDIT_STAGE",
+        // Statuses
+        "APPROVED", "DENIED", "PENDING", "PAYMENT_FAILED", "INVALID_REQUEST", "OVERRIDE_APPROVED",
+        "NOT_FOUND",
+        // Values
+        "USD", "EUR", "GBP", "course", "template", "api_credits", "subscription",
+        "education", "design", "api", "tools", "single_use", "unlimited", "commercial",
+        "openai_api", "udemy", "envato_market"));
+
+    public static final int VERSION = DICTIONARIES.size();
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+
+    public CompactCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        List<String> dictionary = dictionary(VERSION);
+        if (dictionary.size() > MAX_DICTIONARY_SIZE) {
+            throw new IllegalStateException("Compact dictionary has more than " + MAX_DICTIONARY_SIZE + " entries");
+        }
+        for (int i = 0; i < dictionary.size(); i++) {
+            dictionaryIndex.put(dictionary.get(i), i);
+        }
+    }
+
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    /**
+     * Encode a value as Jackson would serialize it to JSON
+     */
+    public byte[] encode(Object value) {
+        try {
+            TokenBuffer tokens = new TokenBuffer(objectMapper, false);
+            objectMapper.writeValue(tokens, value);
+            try (JsonParser parser = tokens.asParser()) {
+                return encode(parser);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encode a JSON document
+     */
+    public byte[] encodeJson(String json) {
+        try (JsonParser parser = JSON.createParser(json)) {
+            return encode(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            TokenBuffer tokens = new TokenBuffer(objectMapper, false);
+            decode(bytes, tokens);
+            try (JsonParser parser = tokens.asParser()) {
+                return objectMapper.readValue(parser, type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * JSON rendering of an encoded document, for logs, APIs and people
+     */
+    public String toJson(byte[] bytes) {
+        StringWriter json = new StringWriter(bytes.length * 2);
+        try (JsonGenerator generator = JSON.createGenerator(json)) {
+            decode(bytes, generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    private byte[] encode(JsonParser parser) throws IOException {
+        Output out = new Output();
+        out.write(MAGIC);
+        out.write(VERSION);
+        Map<String, Integer> table = new HashMap<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT -> out.write(TAG_START_OBJECT);
+                case END_OBJECT -> out.write(TAG_END_OBJECT);
+                case START_ARRAY -> out.write(TAG_START_ARRAY);
+                case END_ARRAY -> out.write(TAG_END_ARRAY);
+                case FIELD_NAME -> writeString(out, parser.currentName(), table);
+                case VALUE_STRING -> writeString(out, parser.getText(), table);
+                case VALUE_NUMBER_INT -> {
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        out.write(TAG_DECIMAL);
+                        out.writeUtf8(parser.getText());
+                    } else {
+                        out.write(TAG_INT);
+                        long value = parser.getLongValue();
+                        out.writeVarint((value << 1) ^ (value >> 63));
+                    }
+                }
+                case VALUE_NUMBER_FLOAT -> {
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                        out.write(TAG_DECIMAL);
+                        out.writeUtf8(parser.getDecimalValue().toString());
+                    } else {
+                        out.write(TAG_DOUBLE);
+                        out.writeLong(Double.doubleToLongBits(parser.getDoubleValue()));
+                    }
+                }
+                case VALUE_TRUE -> out.write(TAG_TRUE);
+                case VALUE_FALSE -> out.write(TAG_FALSE);
+                case VALUE_NULL -> out.write(TAG_NULL);
+                default -> throw new IllegalArgumentException("Unsupported JSON token " + token);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void writeString(Output out, String value, Map<String, Integer> table) {
+        Integer entry = dictionaryIndex.get(value);
+        if (entry != null) {
+            out.write(TAG_DICTIONARY + entry);
+            return;
+        }
+        Integer ref = table.get(value);
+        if (ref != null) {
+            out.write(TAG_REF);
+            out.writeVarint(ref);
+            return;
+        }
+        out.write(TAG_STRING);
+        out.writeUtf8(value);
+        if (value.length() <= MAX_TABLE_STRING && table.size() < MAX_TABLE_SIZE) {
+            table.put(value, table.size());
+        }
+    }
+
+    private static void decode(byte[] bytes, JsonGenerator generator) throws IOException {
+        if (!isEncoded(bytes)) {
+            throw new IllegalArgumentException("Not a compact-encoded payload");
+        }
+        List<String> dictionary = dictionary(bytes[1]);
+        Input in = new Input(bytes, 2);
+        List<String> table = new ArrayList<>();
+        // Per open container: true for objects, whose strings alternate between name and value
+        boolean[] objects = new boolean[16];
+        boolean[] expectName = new boolean[16];
+        int depth = 0;
+        while (in.hasMore()) {
+            int tag = in.read();
+            if (tag == TAG_END_OBJECT || tag == TAG_END_ARRAY) {
+                if (depth == 0) {
+                    throw new IllegalArgumentException("Unbalanced compact payload");
+                }
+                depth--;
+                if (tag == TAG_END_OBJECT) {
+                    generator.writeEndObject();
+                } else {
+                    generator.writeEndArray();
+                }
+                continue;
+            }
+            boolean name = depth > 0 && objects[depth - 1] && expectName[depth - 1];
+            if (depth > 0 && objects[depth - 1]) {
+                expectName[depth - 1] = !expectName[depth - 1];
+            }
+            if (name) {
+                generator.writeFieldName(readString(tag, in, dictionary, table));
+                continue;
+            }
+            switch (tag) {
+                case TAG_NULL -> generator.writeNull();
+                case TAG_FALSE -> generator.writeBoolean(false);
+                case TAG_TRUE -> generator.writeBoolean(true);
+                case TAG_INT -> {
+                    long zigzag = in.readVarint();
+                    generator.writeNumber((zigzag >>> 1) ^ -(zigzag & 1));
+                }
+                case TAG_DOUBLE -> generator.writeNumber(Double.longBitsToDouble(in.readLong()));
+                case TAG_DECIMAL -> generator.writeNumber(new BigDecimal(in.readUtf8()));
+                case TAG_START_OBJECT, TAG_START_ARRAY -> {
+                    if (depth == objects.length) {
+                        objects = Arrays.copyOf(objects, depth * 2);
+                        expectName = Arrays.copyOf(expectName, depth * 2);
+                    }
+                    objects[depth] = tag == TAG_START_OBJECT;
+                    expectName[depth] = true;
+                    depth++;
+                    if (tag == TAG_START_OBJECT) {
+                        generator.writeStartObject();
+                    } else {
+                        generator.writeStartArray();
+                    }
+                }
+                default -> generator.writeString(readString(tag, in, dictionary, table));
+            }
+        }
+        if (depth != 0) {
+            throw new IllegalArgumentException("Truncated compact payload");
+        }
+    }
+
+    private static String readString(int tag, Input in, List<String> dictionary, List<String> table) {
+        if (tag >= TAG_DICTIONARY) {
+            int entry = tag - TAG_DICTIONARY;
+            if (entry >= dictionary.size()) {
+                throw new IllegalArgumentException("Unknown dictionary entry " + entry);
+            }
+            return dictionary.get(entry);
+        }
+        if (tag == TAG_REF) {
+            return table.get((int) in.readVarint());
+        }
+        if (tag == TAG_STRING) {
+            String value = in.readUtf8();
+            if (value.length() <= MAX_TABLE_STRING && table.size() < MAX_TABLE_SIZE) {
+                table.add(value);
+            }
+            return value;
+        }
+        throw new IllegalArgumentException("Unexpected tag 0x" + Integer.toHexString(tag) + " where a string was expected");
+    }
+
+    static List<String> dictionary(int version) {
+        if (version < 1 || version > DICTIONARIES.size()) {
+            throw new IllegalArgumentException("Unsupported compact payload version " + version);
+        }
+        return DICTIONARIES.get(version - 1);
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(128);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeUtf8(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        boolean hasMore() {
+            return position < bytes.length;
+        }
+
+        int read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated compact payload");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        String readUtf8() {
+            int length = (int) readVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated compact payload");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.admission.ConcurrencyLimitFilter;
+import com.payment.payment.agent.admission.PriorityAdmissionScheduler;
+import com.payment.payment.agent.model.AdmissionClassStatus;
+import com.payment.payment.agent.model.ConcurrencyLimitStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Admission control state: adaptive concurrency limits per endpoint and priority admission
+ * per access level
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/admission")
+public class AdmissionController {
+
+    @Autowired(required = false)
+    private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+    @Autowired(required = false)
+    private PriorityAdmissionScheduler admissionScheduler;
+
+    @GetMapping("/limits")
+    public Mono<List<ConcurrencyLimitStatus>> limits() {
+        return Mono.fromSupplier(() -> concurrencyLimitFilter == null ? List.of() : concurrencyLimitFilter.status());
+    }
+
+    /**
+     * Slots, queue and queue-wait percentiles per access level
+     */
+    @GetMapping("/classes")
+    public Mono<List<AdmissionClassStatus>> classes() {
+        return Mono.fromSupplier(() -> admissionScheduler == null ? List.of() : admissionScheduler.status());
+    }
+}
@@ -0,0 +1,83 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditQueryService;
+import com.payment.payment.agent.ledger.LedgerVerifier;
+import com.payment.payment.agent.ledger.LedgerVerifier.Report;
+import com.payment.payment.agent.model.AuditEventPage;
+import com.payment.payment.agent.model.AuditQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+
+/**
+ * Audit trail queries for investigations and compliance exports
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/audit")
+public class AuditController {
+
+    @Autowired
+    private AuditQueryService auditQueryService;
+
+    @Autowired
+    private LedgerVerifier ledgerVerifier;
+
+    /**
+     * One page of matching events; pass the returned nextCursor as "after" for the next page
+     */
+    @GetMapping("/events")
+    public Mono<AuditEventPage> events(@RequestParam(required = false) String transactionId,
+                                       @RequestParam(required = false) String agentId,
+                                       @RequestParam(required = false) String eventType,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                       @RequestParam(defaultValue = "0") long after,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        return auditQueryService.page(query(transactionId, agentId, eventType, from, to), after, limit);
+    }
+
+    /**
+     * Every matching event as NDJSON, streamed page by page; with archived=true, events
+     * from archived segments come first
+     */
+    @GetMapping(value = "/events/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<AuditLog> export(@RequestParam(required = false) String transactionId,
+                                 @RequestParam(required = false) String agentId,
+                                 @RequestParam(required = false) String eventType,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                 @RequestParam(defaultValue = "false") boolean archived) {
+        return auditQueryService.export(query(transactionId, agentId, eventType, from, to), archived);
+    }
+
+    /**
+     * Verify the hash chain and Merkle roots of the audit ledger segments
+     */
+    @GetMapping("/ledger/verify")
+    public Mono<Report> verifyLedger() {
+        return Mono.fromCallable(ledgerVerifier::verify).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static AuditQuery query(String transactionId, String agentId, String eventType,
+                                    LocalDateTime from, LocalDateTime to) {
+        return AuditQuery.builder()
+            .transactionId(transactionId)
+            .agentId(agentId)
+            .eventType(eventType)
+            .from(from)
+            .to(to)
+            .build();
+    }
+}
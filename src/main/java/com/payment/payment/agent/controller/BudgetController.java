@@ -0,0 +1,65 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.budget.BudgetService;
+import com.payment.payment.agent.budget.BudgetService.Level;
+import com.payment.payment.agent.model.BudgetDelegationRequest;
+import com.payment.payment.agent.model.BudgetLimitRequest;
+import com.payment.payment.agent.model.BudgetStatus;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Daily budgets of owners (across all their agents) and agents, and sub-agent delegations
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/budgets")
+@ConditionalOnProperty(name = "app.budget.enabled", havingValue = "true", matchIfMissing = true)
+public class BudgetController {
+
+    @Autowired
+    private BudgetService budgetService;
+
+    @GetMapping("/owners/{ownerId}")
+    public Mono<BudgetStatus> owner(@PathVariable String ownerId) {
+        return Mono.fromSupplier(() -> budgetService.status(Level.OWNER, ownerId));
+    }
+
+    @PutMapping("/owners/{ownerId}")
+    public Mono<BudgetStatus> setOwnerLimit(@PathVariable String ownerId, @Valid @RequestBody BudgetLimitRequest request) {
+        return Mono.fromCallable(() -> budgetService.setOwnerLimit(ownerId, request.getDailyLimit()))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping("/agents/{agentId}")
+    public Mono<BudgetStatus> agent(@PathVariable String agentId) {
+        return Mono.fromSupplier(() -> budgetService.status(Level.AGENT, agentId));
+    }
+
+    /**
+     * Make the agent a sub-agent spending from its parent agent's budget
+     */
+    @PutMapping("/agents/{agentId}/delegation")
+    public Mono<BudgetStatus> delegate(@PathVariable String agentId, @Valid @RequestBody BudgetDelegationRequest request) {
+        return Mono.fromCallable(() -> budgetService.delegate(agentId, request.getParentAgentId(), request.getDailyLimit()))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @DeleteMapping("/agents/{agentId}/delegation")
+    public Mono<ResponseEntity<Void>> removeDelegation(@PathVariable String agentId) {
+        return Mono.fromCallable(() -> budgetService.removeDelegation(agentId))
+            .subscribeOn(Schedulers.boundedElastic())
+            .map(removed -> removed ? ResponseEntity.noContent().<Void>build() : ResponseEntity.notFound().<Void>build());
+    }
+}
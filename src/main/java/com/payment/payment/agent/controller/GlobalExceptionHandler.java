@@ -1,6 +1,8 @@
 package com.payment.payment.agent.controller;
 
+import com.payment.payment.agent.idempotency.IdempotencyConflictException;
 import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.service.PurchaseQueueFullException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -29,6 +31,22 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(response);
     }
 
+    @ExceptionHandler(IdempotencyConflictException.class)
+    public ResponseEntity<PurchaseResponse> handleIdempotencyConflict(IdempotencyConflictException ex) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setStatus("IDEMPOTENCY_CONFLICT");
+        response.setMessage(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
+    @ExceptionHandler(PurchaseQueueFullException.class)
+    public ResponseEntity<PurchaseResponse> handlePurchaseQueueFull(PurchaseQueueFullException ex) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setStatus("BUSY");
+        response.setMessage(ex.getMessage() + ". Retry later.");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(response);
+    }
+
     @ExceptionHandler(SecurityException.class)
     public ResponseEntity<PurchaseResponse> handleSecurityException(SecurityException ex) {
         PurchaseResponse response = new PurchaseResponse();
@@ -0,0 +1,53 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.analytics.HeavyHitterTracker;
+import com.payment.payment.agent.analytics.HeavyHitterTracker.Dimension;
+import com.payment.payment.agent.analytics.HeavyHitterTracker.Signal;
+import com.payment.payment.agent.model.HeavyHitter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Agents and merchants (dimension "agent" or "merchant") with the most purchases or denials
+ * over a recent window such as 1m or 15m
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/analytics/heavy-hitters")
+@ConditionalOnProperty(name = "app.analytics.heavy-hitters.enabled", havingValue = "true", matchIfMissing = true)
+public class HeavyHitterController {
+
+    @Autowired
+    private HeavyHitterTracker heavyHitterTracker;
+
+    /**
+     * Fixed set of rank and total gauges
+     */
+    @GetMapping("/metrics")
+    public Mono<Map<String, Long>> metrics() {
+        return Mono.fromSupplier(heavyHitterTracker::metrics);
+    }
+
+    @GetMapping("/{dimension}")
+    public Mono<List<HeavyHitter>> top(@PathVariable String dimension,
+                                       @RequestParam(defaultValue = "purchases") String signal,
+                                       @RequestParam(defaultValue = "5m") String window,
+                                       @RequestParam(defaultValue = "10") int limit) {
+        return Mono.fromSupplier(() -> heavyHitterTracker.top(
+            Dimension.valueOf(dimension.toUpperCase(Locale.ROOT)),
+            Signal.valueOf(signal.toUpperCase(Locale.ROOT)),
+            DurationStyle.detectAndParse(window),
+            limit));
+    }
+}
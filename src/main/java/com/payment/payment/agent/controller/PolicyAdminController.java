@@ -0,0 +1,30 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.pep.ShadowPolicyEvaluator;
+import com.payment.payment.agent.pep.ShadowPolicyEvaluator.ShadowReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Operational endpoints for policy rollout
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/policy")
+public class PolicyAdminController {
+
+    @Autowired
+    private ShadowPolicyEvaluator shadowPolicyEvaluator;
+
+    /**
+     * Decision divergence and latency impact of the candidate policy on sampled live traffic
+     */
+    @GetMapping("/shadow-report")
+    public Mono<ShadowReport> shadowReport() {
+        return Mono.fromSupplier(shadowPolicyEvaluator::report);
+    }
+}
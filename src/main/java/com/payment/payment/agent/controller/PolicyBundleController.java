@@ -0,0 +1,116 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.service.PolicyBundleService;
+import com.payment.payment.agent.service.PolicyBundleService.PolicyBundle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OPA bundle service endpoint
+ * OPA sidecars poll GET /bundles/{name} with If-None-Match; with long polling
+ * enabled they also send "Prefer: wait=N" and the request is held until a new
+ * bundle is published or N seconds pass. The bundle holds the full policy and reference
+ * data, and /bundles/** is outside the agent security chain, so a bearer token is required.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.opa.distribution", havingValue = "bundle")
+public class PolicyBundleController {
+
+    static final MediaType BUNDLE_MEDIA_TYPE = MediaType.valueOf("application/vnd.openpolicyagent.bundles");
+    private static final Pattern PREFER_WAIT = Pattern.compile("wait=(\\d+)");
+
+    @Autowired
+    private PolicyBundleService bundleService;
+
+    // Bearer token OPA presents (services[].credentials.bearer.token); required in bundle mode
+    @Value("${app.opa.bundle.token:}")
+    private String bundleToken = "";
+
+    @Value("${app.opa.bundle.max-wait-seconds:60}")
+    private long maxWaitSeconds = 60;
+
+    @PostConstruct
+    public void init() {
+        if (bundleToken == null || bundleToken.isBlank()) {
+            throw new IllegalStateException("app.opa.bundle.token must be set when app.opa.distribution=bundle");
+        }
+    }
+
+    @GetMapping("/bundles/{name}")
+    public Mono<ResponseEntity<byte[]>> getBundle(@PathVariable String name,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                  @RequestHeader(value = "Prefer", required = false) String prefer,
+                                                  @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        if (!isAuthorized(authorization)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+        if (!bundleService.getBundleName().equals(name)) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        PolicyBundle current = bundleService.current();
+        if (current == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        if (ifNoneMatch == null || !current.getEtag().equals(ifNoneMatch.trim())) {
+            return Mono.just(ok(current));
+        }
+
+        long waitSeconds = Math.min(parseWait(prefer), maxWaitSeconds);
+        if (waitSeconds <= 0) {
+            return Mono.just(notModified(current.getEtag()));
+        }
+        return bundleService.awaitChange(current.getEtag(), Duration.ofSeconds(waitSeconds))
+            .map(this::ok)
+            .defaultIfEmpty(notModified(current.getEtag()));
+    }
+
+    private ResponseEntity<byte[]> ok(PolicyBundle bundle) {
+        return ResponseEntity.ok()
+            .eTag(bundle.getEtag())
+            .contentType(BUNDLE_MEDIA_TYPE)
+            .body(bundle.getContent());
+    }
+
+    private ResponseEntity<byte[]> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private boolean isAuthorized(String authorization) {
+        String expected = "Bearer " + bundleToken;
+        return authorization != null && MessageDigest.isEqual(
+            expected.getBytes(StandardCharsets.UTF_8), authorization.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long parseWait(String prefer) {
+        if (prefer == null) {
+            return 0;
+        }
+        Matcher m = PREFER_WAIT.matcher(prefer);
+        if (!m.find()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(m.group(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
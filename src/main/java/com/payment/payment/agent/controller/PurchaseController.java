@@ -1,17 +1,27 @@
 package com.payment.payment.agent.controller;
 
+import com.payment.payment.agent.model.BatchPurchaseRequest;
+import com.payment.payment.agent.model.BatchPurchaseResponse;
 import com.payment.payment.agent.model.OverrideRequest;
 import com.payment.payment.agent.model.PurchaseRequest;
 import com.payment.payment.agent.model.PurchaseResponse;
 import com.payment.payment.agent.service.PurchaseService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import jakarta.validation.Valid;
+import java.net.URI;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -21,13 +31,58 @@ public class PurchaseController {
     @Autowired
     private PurchaseService purchaseService;
 
+    // Clients opt in per request with "Prefer: respond-async"
+    @Value("${app.purchase.async.enabled:true}")
+    private boolean asyncEnabled = true;
+
     @PostMapping("/purchase")
-    public reactor.core.publisher.Mono<PurchaseResponse> initiatePurchase(@Valid @RequestBody PurchaseRequest request) {
-        return purchaseService.processPurchase(request);
+    public Mono<ResponseEntity<PurchaseResponse>> initiatePurchase(@Valid @RequestBody PurchaseRequest request,
+                                                                   @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                                   @RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (asyncEnabled && prefersAsync(prefer)) {
+            return purchaseService.submitPurchase(request, idempotencyKey)
+                .map(response -> ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/purchase/" + response.getTransactionId()))
+                    .header("Preference-Applied", "respond-async")
+                    .body(response));
+        }
+        return purchaseService.processPurchase(request, idempotencyKey).map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/purchase/{transactionId}")
+    public Mono<ResponseEntity<PurchaseResponse>> getPurchaseStatus(@PathVariable String transactionId) {
+        return purchaseService.getPurchaseStatus(transactionId)
+            .map(ResponseEntity::ok)
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/purchases/batch")
+    public Mono<BatchPurchaseResponse> initiateBatchPurchase(@Valid @RequestBody BatchPurchaseRequest request) {
+        return purchaseService.processBatch(request);
+    }
+
+    @PostMapping(value = "/purchases/stream",
+                 consumes = MediaType.APPLICATION_NDJSON_VALUE,
+                 produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PurchaseResponse> streamPurchases(@RequestBody Flux<PurchaseRequest> requests,
+                                                  @RequestParam(defaultValue = "${app.purchase.stream.concurrency:16}") int concurrency) {
+        return purchaseService.processStream(requests, concurrency);
     }
 
     @PostMapping("/purchase/{transactionId}/override")
     public Mono<PurchaseResponse> overridePurchase(@PathVariable String transactionId, @Valid @RequestBody OverrideRequest overrideRequest) {
         return purchaseService.overridePurchase(transactionId, overrideRequest);
     }
+
+    private static boolean prefersAsync(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(",")) {
+            if (preference.trim().toLowerCase().startsWith("respond-async")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
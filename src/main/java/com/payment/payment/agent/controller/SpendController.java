@@ -0,0 +1,72 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.analytics.SpendAggregator;
+import com.payment.payment.agent.analytics.SpendAggregator.Dimension;
+import com.payment.payment.agent.analytics.SpendAggregator.Granularity;
+import com.payment.payment.agent.model.SpendTotals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Precomputed spend totals per agent, owner and merchant (dimension "agent", "owner" or
+ * "merchant"); windows are durations such as 15m, 24h or 7d
+ * Requires the "admin" agent capability (see SecurityConfig)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/analytics/spend")
+@ConditionalOnProperty(name = "app.analytics.spend.enabled", havingValue = "true", matchIfMissing = true)
+public class SpendController {
+
+    @Autowired
+    private SpendAggregator spendAggregator;
+
+    /**
+     * Keys with the highest approved amount over the window
+     */
+    @GetMapping("/{dimension}")
+    public Mono<List<SpendTotals>> top(@PathVariable String dimension,
+                                       @RequestParam(defaultValue = "24h") String window,
+                                       @RequestParam(defaultValue = "10") int limit) {
+        return Mono.fromSupplier(() -> spendAggregator.top(dimension(dimension), window(window), limit));
+    }
+
+    /**
+     * Totals of one key over the sliding window, one entry per currency
+     */
+    @GetMapping("/{dimension}/{key}")
+    public Mono<List<SpendTotals>> totals(@PathVariable String dimension,
+                                          @PathVariable String key,
+                                          @RequestParam(defaultValue = "24h") String window) {
+        return Mono.fromSupplier(() -> spendAggregator.totals(dimension(dimension), key, window(window)));
+    }
+
+    /**
+     * Tumbling buckets of one key (granularity minute, hour or day)
+     */
+    @GetMapping("/{dimension}/{key}/buckets")
+    public Mono<List<SpendTotals>> buckets(@PathVariable String dimension,
+                                           @PathVariable String key,
+                                           @RequestParam(defaultValue = "hour") String granularity) {
+        return Mono.fromSupplier(() -> spendAggregator.buckets(dimension(dimension), key,
+            Granularity.valueOf(granularity.toUpperCase(Locale.ROOT))));
+    }
+
+    private static Dimension dimension(String dimension) {
+        return Dimension.valueOf(dimension.toUpperCase(Locale.ROOT));
+    }
+
+    private static Duration window(String window) {
+        return DurationStyle.detectAndParse(window);
+    }
+}
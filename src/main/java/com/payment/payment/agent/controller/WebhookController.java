@@ -0,0 +1,76 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.model.AgentContext;
+import com.payment.payment.agent.model.WebhookRegistration;
+import com.payment.payment.agent.model.WebhookRegistrationRequest;
+import com.payment.payment.agent.service.AuthenticationContextService;
+import com.payment.payment.agent.webhook.WebhookDeadLetter;
+import com.payment.payment.agent.webhook.WebhookService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.validation.Valid;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Webhook registration for the calling agent
+ * Registered endpoints receive purchase outcome events (see WebhookDispatcher)
+ */
+@RestController
+@RequestMapping("/api/v1/webhooks")
+public class WebhookController {
+
+    @Autowired
+    private WebhookService webhookService;
+
+    @Autowired
+    private AuthenticationContextService authenticationContextService;
+
+    @PostMapping
+    public Mono<ResponseEntity<WebhookRegistration>> register(@Valid @RequestBody WebhookRegistrationRequest request) {
+        return currentAgentId()
+            .flatMap(agentId -> Mono.fromCallable(() -> webhookService.register(agentId, request))
+                .subscribeOn(Schedulers.boundedElastic()))
+            .map(registration -> ResponseEntity.status(HttpStatus.CREATED).body(registration));
+    }
+
+    @GetMapping
+    public Mono<List<WebhookRegistration>> list() {
+        return currentAgentId()
+            .flatMap(agentId -> Mono.fromCallable(() -> webhookService.list(agentId))
+                .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> delete(@PathVariable String id) {
+        return currentAgentId()
+            .flatMap(agentId -> Mono.fromCallable(() -> webhookService.delete(agentId, id))
+                .subscribeOn(Schedulers.boundedElastic()))
+            .map(deleted -> deleted ? ResponseEntity.noContent().<Void>build() : ResponseEntity.notFound().<Void>build());
+    }
+
+    /**
+     * Most recent events that could not be delivered to this agent's webhooks
+     */
+    @GetMapping("/dead-letters")
+    public Mono<List<WebhookDeadLetter>> deadLetters() {
+        return currentAgentId()
+            .flatMap(agentId -> Mono.fromCallable(() -> webhookService.deadLetters(agentId))
+                .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private Mono<String> currentAgentId() {
+        return authenticationContextService.getCurrentAgentContext().map(AgentContext::getAgentId);
+    }
+}
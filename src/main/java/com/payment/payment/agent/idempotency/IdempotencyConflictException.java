@@ -0,0 +1,11 @@
+package com.payment.payment.agent.idempotency;
+
+/**
+ * An Idempotency-Key was reused with a different request payload
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
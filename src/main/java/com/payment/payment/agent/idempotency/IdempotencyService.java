@@ -0,0 +1,112 @@
+package com.payment.payment.agent.idempotency;
+
+import com.payment.payment.agent.idempotency.IdempotencyStore.StoredResult;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for purchases.
+ *
+ * A key is scoped to the calling agent. The first request for a key runs the action;
+ * concurrent retries join the same in-flight Mono instead of starting a second purchase,
+ * and later retries get the stored result until it expires. Failed attempts and
+ * retryable outcomes (e.g. fail-closed denials while OPA is down) are not stored,
+ * so a retry after them runs again.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Value("${app.idempotency.ttl:24h}")
+    private Duration ttl = Duration.ofHours(24);
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<PurchaseResponse> execute(String scope, String idempotencyKey, String fingerprint,
+                                          Supplier<Mono<PurchaseResponse>> action) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new IllegalArgumentException(
+                "Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters"));
+        }
+        String key = scope + ":" + idempotencyKey;
+        return store.get(key)
+            .onErrorResume(e -> {
+                // Store outage degrades to in-process dedup only
+                log.warn("idempotency:store:get failed key={} error={}", key, e.getMessage());
+                return Mono.empty();
+            })
+            .flatMap(stored -> {
+                if (!stored.fingerprint().equals(fingerprint)) {
+                    return Mono.error(conflict(idempotencyKey));
+                }
+                log.info("idempotency:replay key={} txId={}", key, stored.response().getTransactionId());
+                return Mono.just(stored.response());
+            })
+            .switchIfEmpty(Mono.defer(() -> joinOrStart(key, idempotencyKey, fingerprint, action)));
+    }
+
+    private Mono<PurchaseResponse> joinOrStart(String key, String idempotencyKey, String fingerprint,
+                                               Supplier<Mono<PurchaseResponse>> action) {
+        InFlight created = new InFlight(fingerprint);
+        // Cached so joiners share one execution; the action keeps running if the first caller cancels
+        created.result = Mono.defer(action)
+            .flatMap(response -> remember(key, fingerprint, response))
+            .doFinally(signal -> inFlight.remove(key, created))
+            .cache();
+
+        InFlight existing = inFlight.putIfAbsent(key, created);
+        if (existing == null) {
+            return created.result;
+        }
+        if (!existing.fingerprint.equals(fingerprint)) {
+            return Mono.error(conflict(idempotencyKey));
+        }
+        log.info("idempotency:join key={}", key);
+        return existing.result;
+    }
+
+    private Mono<PurchaseResponse> remember(String key, String fingerprint, PurchaseResponse response) {
+        if (response.isRetryable()) {
+            return Mono.just(response);
+        }
+        return store.put(key, new StoredResult(fingerprint, response), ttl)
+            .onErrorResume(e -> {
+                log.warn("idempotency:store:put failed key={} error={}", key, e.getMessage());
+                return Mono.empty();
+            })
+            .thenReturn(response);
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static IdempotencyConflictException conflict(String idempotencyKey) {
+        return new IdempotencyConflictException(
+            "Idempotency-Key " + idempotencyKey + " was already used with a different request");
+    }
+
+    private static class InFlight {
+        final String fingerprint;
+        Mono<PurchaseResponse> result;
+
+        InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.payment.payment.agent.idempotency;
+
+import com.payment.payment.agent.model.PurchaseResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Completed results by idempotency key. Implementations expire entries after the TTL.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Stored result for the key, or empty when unknown or expired
+     */
+    Mono<StoredResult> get(String key);
+
+    Mono<Void> put(String key, StoredResult result, Duration ttl);
+
+    /**
+     * Result of a completed request together with the fingerprint of the payload that produced it
+     */
+    record StoredResult(String fingerprint, PurchaseResponse response) {
+    }
+}
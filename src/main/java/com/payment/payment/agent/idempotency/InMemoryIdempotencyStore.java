@@ -0,0 +1,72 @@
+package com.payment.payment.agent.idempotency;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Single-instance store: insertion-ordered map capped at max-entries, oldest evicted first.
+ */
+@Component
+@ConditionalOnProperty(name = "app.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Map<String, Entry> entries;
+    private Clock clock = Clock.systemUTC();
+
+    public InMemoryIdempotencyStore(@Value("${app.idempotency.max-entries:10000}") int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Mono<StoredResult> get(String key) {
+        return Mono.fromSupplier(() -> {
+            synchronized (entries) {
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.expiresAtMillis <= clock.millis()) {
+                    entries.remove(key);
+                    return null;
+                }
+                return entry.result;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Void> put(String key, StoredResult result, Duration ttl) {
+        return Mono.fromRunnable(() -> {
+            synchronized (entries) {
+                // Re-insert so a refreshed key moves to the young end of the eviction order
+                entries.remove(key);
+                entries.put(key, new Entry(result, clock.millis() + ttl.toMillis()));
+            }
+        });
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private record Entry(StoredResult result, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.payment.payment.agent.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.codec.CompactCodec;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Shared store for multi-instance deployments; Redis expires keys after the TTL.
+ * Results are stored in the {@link CompactCodec} encoding; JSON values written by
+ * earlier versions are still read.
+ */
+@Component
+@ConditionalOnProperty(name = "app.idempotency.store", havingValue = "redis")
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisIdempotencyStore.class);
+    private static final String KEY_PREFIX = "idempotency:purchase:";
+
+    @Autowired
+    private ReactiveRedisConnectionFactory connectionFactory;
+
+    private ReactiveRedisTemplate<String, byte[]> redisTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CompactCodec codec = new CompactCodec(objectMapper);
+
+    @PostConstruct
+    void init() {
+        redisTemplate = new ReactiveRedisTemplate<>(connectionFactory,
+            RedisSerializationContext.<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build());
+    }
+
+    @Override
+    public Mono<StoredResult> get(String key) {
+        return redisTemplate.opsForValue().get(KEY_PREFIX + key)
+            .flatMap(value -> {
+                try {
+                    return Mono.just(CompactCodec.isEncoded(value)
+                        ? codec.decode(value, StoredResult.class)
+                        : objectMapper.readValue(value, StoredResult.class));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("idempotency:redis:unreadable key={}", key);
+                    return Mono.empty();
+                }
+            });
+    }
+
+    @Override
+    public Mono<Void> put(String key, StoredResult result, Duration ttl) {
+        return Mono.fromCallable(() -> codec.encode(result))
+            .flatMap(value -> redisTemplate.opsForValue().set(KEY_PREFIX + key, value, ttl))
+            .then();
+    }
+}
@@ -0,0 +1,218 @@
+package com.payment.payment.agent.ledger;
+
+import com.payment.payment.agent.ledger.LedgerFormat.Scan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, hash-chained audit sink (see {@link LedgerFormat} for the layout).
+ *
+ * Records are encoded straight into a memory-mapped, pre-allocated segment by a single
+ * writer, so appends are sequential and cost no system call. A full segment is sealed with
+ * its record count, last hash and Merkle root in its last bytes and followed by a new
+ * segment anchored on its last hash. Segments keep their pre-allocated size: a file can't
+ * be truncated while it is mapped on every platform (Windows refuses), and the JDK has no
+ * way to unmap it. The mapping is forced to disk every app.audit.ledger.sync-interval-ms
+ * and on seal.
+ *
+ * On startup an unsealed last segment (from a crash) is cut back to its last record that
+ * verifies and sealed, and writing continues in a new segment.
+ */
+@Component
+@ConditionalOnProperty(name = "app.audit.ledger.enabled", havingValue = "true")
+public class AuditLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLedger.class);
+
+    @Value("${app.audit.ledger.dir:audit-ledger}")
+    private String dir = "audit-ledger";
+
+    @Value("${app.audit.ledger.segment-size-mb:64}")
+    private int segmentSizeMb = 64;
+
+    private final MessageDigest digest = LedgerFormat.sha256();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segmentIndex;
+    private long segmentRecords;
+    private long nextSeq;
+    private byte[] lastHash = LedgerFormat.ZERO_HASH;
+    private int position;
+    // Merkle root of the current segment's records
+    private final LedgerFormat.MerkleBuilder merkle = new LedgerFormat.MerkleBuilder();
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Path directory = Files.createDirectories(Path.of(dir));
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(f -> f.getFileName().toString().endsWith(".ledger")).sorted().toList();
+        }
+        if (!segments.isEmpty()) {
+            recover(segments.get(segments.size() - 1));
+        }
+        startSegment();
+        log.info("audit:ledger:open dir={} segment={} nextSeq={}", dir, segmentIndex, nextSeq);
+    }
+
+    private void recover(Path last) throws IOException {
+        try (FileChannel file = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+            Scan scan = LedgerFormat.scan(mapped);
+            if (scan.anchor == null) {
+                throw new IllegalStateException("Audit ledger segment " + last + " has an unreadable header");
+            }
+            if (!scan.sealed) {
+                if (scan.broken != null) {
+                    log.warn("audit:ledger:recover segment={} dropping tail after seq={} reason={}",
+                        scan.segmentIndex, scan.firstSeq + scan.records - 1, scan.broken);
+                }
+                // Zero the torn tail so nothing before the footer can be mistaken for a record
+                for (int i = scan.end; i < mapped.limit(); i++) {
+                    mapped.put(i, (byte) 0);
+                }
+                LedgerFormat.writeFooter(mapped, mapped.limit() - LedgerFormat.FOOTER_SIZE,
+                    scan.records, scan.lastHash, scan.merkle.root());
+                mapped.force();
+                log.info("audit:ledger:recover segment={} sealed records={}", scan.segmentIndex, scan.records);
+            }
+            segmentIndex = scan.segmentIndex + 1;
+            nextSeq = scan.firstSeq + scan.records;
+            lastHash = scan.lastHash;
+        }
+    }
+
+    /**
+     * Append one event to the chain; returns its sequence number
+     */
+    public synchronized long append(String transactionId, String eventType, String details, LocalDateTime timestamp) {
+        byte[] tx = LedgerFormat.utf8(transactionId);
+        byte[] type = LedgerFormat.utf8(eventType);
+        byte[] data = LedgerFormat.utf8(details);
+        int bodyLength = 8 + 8 + LedgerFormat.stringSize(tx) + LedgerFormat.stringSize(type) + LedgerFormat.stringSize(data);
+        int recordLength = 4 + bodyLength + LedgerFormat.HASH_SIZE;
+        try {
+            if (buffer == null) {
+                // A previous roll failed after sealing
+                startSegment();
+            } else if (position + recordLength > capacity()) {
+                if (segmentRecords == 0) {
+                    throw new IllegalArgumentException("Audit event of " + recordLength + " bytes does not fit in a ledger segment");
+                }
+                seal();
+                startSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long seq = nextSeq;
+        int bodyStart = position + 4;
+        buffer.position(bodyStart);
+        buffer.putLong(seq);
+        buffer.putLong(timestamp.toInstant(ZoneOffset.UTC).toEpochMilli());
+        LedgerFormat.putString(buffer, tx);
+        LedgerFormat.putString(buffer, type);
+        LedgerFormat.putString(buffer, data);
+
+        // Hashed straight from the mapping, no intermediate copy of the body
+        digest.update(lastHash);
+        digest.update(buffer.slice(bodyStart, bodyLength));
+        byte[] hash = digest.digest();
+        buffer.put(bodyStart + bodyLength, hash);
+        // Length last: publishes the complete record to readers of the mapping
+        buffer.putInt(position, bodyLength);
+
+        position += recordLength;
+        merkle.add(hash);
+        lastHash = hash;
+        nextSeq++;
+        segmentRecords++;
+        return seq;
+    }
+
+    @Scheduled(fixedDelayString = "${app.audit.ledger.sync-interval-ms:1000}")
+    public synchronized void sync() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            seal();
+        }
+    }
+
+    /**
+     * Seal the current segment now (e.g. before handing segments to auditors)
+     */
+    public synchronized void roll() throws IOException {
+        if (buffer != null) {
+            seal();
+        }
+        startSegment();
+    }
+
+    Path directory() {
+        return Path.of(dir);
+    }
+
+    private void startSegment() throws IOException {
+        Path segmentFile = Path.of(dir, LedgerFormat.fileName(segmentIndex));
+        channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentSizeMb * 1024 * 1024);
+        } catch (IOException e) {
+            // Leave nothing behind, so the next attempt can create the segment again
+            channel.close();
+            Files.deleteIfExists(segmentFile);
+            throw e;
+        }
+        buffer.putInt(0, LedgerFormat.SEGMENT_MAGIC);
+        buffer.putInt(4, LedgerFormat.VERSION);
+        buffer.putLong(8, segmentIndex);
+        buffer.putLong(16, nextSeq);
+        buffer.put(24, lastHash);
+        position = LedgerFormat.HEADER_SIZE;
+        segmentRecords = 0;
+        merkle.clear();
+    }
+
+    private void seal() throws IOException {
+        // In the space capacity() keeps free; the zero length at position ends the records
+        LedgerFormat.writeFooter(buffer, buffer.capacity() - LedgerFormat.FOOTER_SIZE, segmentRecords, lastHash,
+            merkle.root());
+        buffer.force();
+        channel.close();
+        buffer = null;
+        log.info("audit:ledger:sealed segment={} records={}", segmentIndex, segmentRecords);
+        segmentIndex++;
+    }
+
+    // Room for records, keeping space for the footer
+    private int capacity() {
+        return buffer.capacity() - LedgerFormat.FOOTER_SIZE;
+    }
+}
@@ -0,0 +1,236 @@
+package com.payment.payment.agent.ledger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-disk layout of audit ledger segments ({@code segment-<index>.ledger}).
+ *
+ *   header  magic "ALSG" | version | segment index (long) | first seq (long) | anchor hash (32)
+ *   record  body length (int) | body | hash (32)
+ *   body    seq (long) | epoch millis (long) | transactionId | eventType | details
+ *           (strings as int byte length, -1 for null, then UTF-8 bytes)
+ *   footer  magic "ALSF" | record count (long) | last hash (32) | Merkle root (32)
+ *
+ * Record hashes chain: hash = SHA-256(previous hash | body). The first record of a segment
+ * chains from the header's anchor, which is the last hash of the previous segment (zeros
+ * for the first segment). The body length is written last, so a reader never sees a
+ * partially written record; a zero length marks the end of the records. The footer is
+ * written when the segment is sealed, as the last bytes of the file; segments are kept at
+ * their pre-allocated size, so zeros may separate the records from the footer.
+ */
+final class LedgerFormat {
+
+    static final int SEGMENT_MAGIC = 0x414C5347;
+    static final int FOOTER_MAGIC = 0x414C5346;
+    static final int VERSION = 1;
+    static final int HASH_SIZE = 32;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + HASH_SIZE;
+    static final int FOOTER_SIZE = 4 + 8 + HASH_SIZE + HASH_SIZE;
+    static final byte[] ZERO_HASH = new byte[HASH_SIZE];
+
+    private LedgerFormat() {
+    }
+
+    static String fileName(long segmentIndex) {
+        return String.format("segment-%012d.ledger", segmentIndex);
+    }
+
+    static int stringSize(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Merkle root over the record hashes: parents are SHA-256(0x01 | left | right), an odd
+     * node is carried up unchanged, and an empty segment has the SHA-256 of nothing
+     */
+    static byte[] merkleRoot(List<byte[]> leaves) {
+        MerkleBuilder builder = new MerkleBuilder();
+        leaves.forEach(builder::add);
+        return builder.root();
+    }
+
+    /**
+     * Builds the {@link #merkleRoot} of hashes added one at a time, keeping only the roots of
+     * the complete subtrees so far (one per set bit of the count) instead of every leaf
+     */
+    static final class MerkleBuilder {
+        private final MessageDigest digest = sha256();
+        // Roots of complete subtrees, largest first, and their heights
+        private final List<byte[]> nodes = new ArrayList<>();
+        private final List<Integer> heights = new ArrayList<>();
+
+        void add(byte[] leaf) {
+            byte[] node = leaf;
+            int height = 0;
+            while (!heights.isEmpty() && heights.get(heights.size() - 1) == height) {
+                heights.remove(heights.size() - 1);
+                node = parent(nodes.remove(nodes.size() - 1), node);
+                height++;
+            }
+            nodes.add(node);
+            heights.add(height);
+        }
+
+        byte[] root() {
+            if (nodes.isEmpty()) {
+                return digest.digest();
+            }
+            // Smaller subtrees are the odd nodes carried up; they join from the right
+            byte[] node = nodes.get(nodes.size() - 1);
+            for (int i = nodes.size() - 2; i >= 0; i--) {
+                node = parent(nodes.get(i), node);
+            }
+            return node;
+        }
+
+        void clear() {
+            nodes.clear();
+            heights.clear();
+        }
+
+        private byte[] parent(byte[] left, byte[] right) {
+            digest.update((byte) 0x01);
+            digest.update(left);
+            digest.update(right);
+            return digest.digest();
+        }
+    }
+
+    /**
+     * Walk a segment, recomputing every hash. Stops at the end of the records or at the
+     * first record that does not verify.
+     */
+    static Scan scan(ByteBuffer buffer) {
+        Scan scan = new Scan();
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC) {
+            scan.broken = "bad segment header";
+            return scan;
+        }
+        if (buffer.getInt(4) != VERSION) {
+            scan.broken = "unsupported segment version " + buffer.getInt(4);
+            return scan;
+        }
+        scan.segmentIndex = buffer.getLong(8);
+        scan.firstSeq = buffer.getLong(16);
+        scan.anchor = bytes(buffer, 24, HASH_SIZE);
+        scan.lastHash = scan.anchor;
+
+        int footerStart = sealedFooterStart(buffer);
+        int end = footerStart >= 0 ? footerStart : buffer.limit();
+        MessageDigest digest = sha256();
+        int position = HEADER_SIZE;
+        long expectedSeq = scan.firstSeq;
+        while (position + 4 <= end) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int bodyStart = position + 4;
+            if (length < 16 || bodyStart + length + HASH_SIZE > end) {
+                scan.brokenSeq = expectedSeq;
+                scan.broken = "truncated or corrupt record at offset " + position;
+                break;
+            }
+            long seq = buffer.getLong(bodyStart);
+            if (seq != expectedSeq) {
+                scan.brokenSeq = expectedSeq;
+                scan.broken = "sequence gap: expected " + expectedSeq + " but found " + seq;
+                break;
+            }
+            digest.update(scan.lastHash);
+            digest.update(buffer.slice(bodyStart, length));
+            byte[] hash = digest.digest();
+            if (!Arrays.equals(hash, bytes(buffer, bodyStart + length, HASH_SIZE))) {
+                scan.brokenSeq = seq;
+                scan.broken = "hash mismatch at seq " + seq;
+                break;
+            }
+            scan.merkle.add(hash);
+            scan.lastHash = hash;
+            scan.records++;
+            expectedSeq++;
+            position = bodyStart + length + HASH_SIZE;
+        }
+        scan.end = position;
+
+        if (footerStart >= 0 && scan.broken == null) {
+            scan.sealed = true;
+            long count = buffer.getLong(footerStart + 4);
+            if (count != scan.records) {
+                scan.brokenSeq = scan.firstSeq + Math.min(count, scan.records);
+                scan.broken = "footer counts " + count + " records but " + scan.records + " verify";
+            } else if (!Arrays.equals(scan.lastHash, bytes(buffer, footerStart + 12, HASH_SIZE))) {
+                scan.brokenSeq = scan.firstSeq + scan.records - 1;
+                scan.broken = "footer last hash does not match the chain";
+            } else if (!Arrays.equals(scan.merkle.root(), bytes(buffer, footerStart + 12 + HASH_SIZE, HASH_SIZE))) {
+                scan.brokenSeq = scan.firstSeq;
+                scan.broken = "Merkle root mismatch";
+            }
+        }
+        return scan;
+    }
+
+    static void writeFooter(ByteBuffer buffer, int position, long records, byte[] lastHash, byte[] merkleRoot) {
+        buffer.putInt(position, FOOTER_MAGIC);
+        buffer.putLong(position + 4, records);
+        buffer.put(position + 12, lastHash);
+        buffer.put(position + 12 + HASH_SIZE, merkleRoot);
+    }
+
+    private static int sealedFooterStart(ByteBuffer buffer) {
+        int start = buffer.limit() - FOOTER_SIZE;
+        return start >= HEADER_SIZE && buffer.getInt(start) == FOOTER_MAGIC ? start : -1;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return bytes;
+    }
+
+    /**
+     * Result of walking one segment
+     */
+    static class Scan {
+        long segmentIndex;
+        long firstSeq;
+        byte[] anchor;
+        byte[] lastHash;
+        long records;
+        // Offset just past the last verified record
+        int end;
+        boolean sealed;
+        // Merkle root of the verified records so far, in O(log records) memory
+        final MerkleBuilder merkle = new MerkleBuilder();
+        // Null when the segment verified
+        String broken;
+        long brokenSeq = -1;
+    }
+}
@@ -0,0 +1,27 @@
+package com.payment.payment.agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Priority admission state of one access level: slots, queue and queue waits since startup
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AdmissionClassStatus {
+    private String accessLevel;
+    private int reserved;
+
+    // Round-robin weight among waiting paying classes; sandbox has none (served last)
+    private Integer weight;
+    private int running;
+    private int queued;
+    private long admitted;
+    private long rejected;
+    private double waitMeanMillis;
+    private double waitP50Millis;
+    private double waitP99Millis;
+    private double waitMaxMillis;
+}
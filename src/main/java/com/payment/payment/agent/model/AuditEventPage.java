@@ -0,0 +1,16 @@
+package com.payment.payment.agent.model;
+
+import com.payment.payment.agent.audit.AuditLog;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class AuditEventPage {
+    private List<AuditLog> events;
+
+    // Pass as "after" to get the next page; null on the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.payment.payment.agent.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters of an audit event query; null fields match everything
+ */
+@Data
+@Builder
+public class AuditQuery {
+    private String transactionId;
+    // Events of transactions owned by this agent
+    private String agentId;
+    private String eventType;
+    // Inclusive lower and exclusive upper bound on the event timestamp
+    private LocalDateTime from;
+    private LocalDateTime to;
+}
@@ -0,0 +1,16 @@
+package com.payment.payment.agent.model;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Several purchases submitted in one call.
+ * Items are validated individually so one bad item does not reject the batch.
+ */
+@Data
+public class BatchPurchaseRequest {
+    @NotEmpty(message = "At least one purchase is required")
+    private List<PurchaseRequest> purchases;
+}
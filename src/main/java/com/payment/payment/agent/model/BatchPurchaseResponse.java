@@ -0,0 +1,34 @@
+package com.payment.payment.agent.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Per-item results in request order, each with its own transaction ID
+ */
+@Data
+public class BatchPurchaseResponse {
+    private int total;
+    private int approved;
+    private int denied;
+    private int invalid;
+    private int failed;
+    private List<PurchaseResponse> results;
+
+    public static BatchPurchaseResponse of(List<PurchaseResponse> results) {
+        BatchPurchaseResponse response = new BatchPurchaseResponse();
+        response.setResults(results);
+        response.setTotal(results.size());
+        for (PurchaseResponse result : results) {
+            switch (result.getStatus()) {
+                case "APPROVED" -> response.approved++;
+                case "DENIED" -> response.denied++;
+                case "INVALID_REQUEST" -> response.invalid++;
+                case "ERROR" -> response.failed++;
+                default -> { }
+            }
+        }
+        return response;
+    }
+}
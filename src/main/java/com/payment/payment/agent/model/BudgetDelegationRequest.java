@@ -0,0 +1,16 @@
+package com.payment.payment.agent.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class BudgetDelegationRequest {
+
+    @NotBlank(message = "Parent agent ID is required")
+    private String parentAgentId;
+
+    // Daily limit of the sub-agent within the parent's budget; empty means only the parent's applies
+    @PositiveOrZero(message = "Daily limit cannot be negative")
+    private Double dailyLimit;
+}
@@ -0,0 +1,13 @@
+package com.payment.payment.agent.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class BudgetLimitRequest {
+
+    @NotNull(message = "Daily limit is required")
+    @PositiveOrZero(message = "Daily limit cannot be negative")
+    private Double dailyLimit;
+}
@@ -0,0 +1,31 @@
+package com.payment.payment.agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Today's budget of one owner or agent (amounts summed as given, whatever the currency)
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BudgetStatus {
+    private String level;
+    private String key;
+
+    // UTC day the budget applies to
+    private LocalDate day;
+
+    // Daily limit; absent when the owner or agent has none
+    private Double dailyLimit;
+
+    // Approved purchases plus purchases still being decided
+    private double used;
+    private Double remaining;
+
+    // Agent that delegated this agent its budget, if any
+    private String parentAgentId;
+}
@@ -0,0 +1,20 @@
+package com.payment.payment.agent.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Current adaptive concurrency limit of one endpoint
+ */
+@Data
+@Builder
+public class ConcurrencyLimitStatus {
+    private String endpoint;
+    private int limit;
+    private int inflight;
+    // Average latency of the last sample window and its long-term average
+    private double shortRttMillis;
+    private double longRttMillis;
+    private long accepted;
+    private long rejected;
+}
@@ -0,0 +1,23 @@
+package com.payment.payment.agent.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One ranked agent or merchant by its estimated purchases or denials over a sliding window
+ */
+@Data
+@Builder
+public class HeavyHitter {
+    private String dimension;
+    private String signal;
+
+    // Sliding window length (ISO-8601)
+    private String window;
+    private int rank;
+    private String key;
+
+    // Estimated count, never lower than the true count and at most errorBound higher
+    private long count;
+    private long errorBound;
+}
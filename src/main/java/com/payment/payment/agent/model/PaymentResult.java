@@ -0,0 +1,22 @@
+package com.payment.payment.agent.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Payment processing result
+ */
+@Data
+@Builder
+public class PaymentResult {
+    private boolean success;
+    private String transactionId;  // Payment processor transaction ID
+    private String message;
+    private LocalDateTime processedAt;
+    private Map<String, Object> metadata;
+    // Failure was transient (timeout, gateway unavailable, merchant busy); the purchase may be retried
+    private boolean retryable;
+}
@@ -0,0 +1,71 @@
+package com.payment.payment.agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Final outcome of a purchase, published as an application event when a decision or
+ * override completes. Delivered to agents by the webhook dispatcher and counted by the
+ * spend aggregates.
+ */
+@Data
+@Builder
+public class PurchaseOutcomeEvent {
+
+    public static final String APPROVED = "purchase.approved";
+    public static final String DENIED = "purchase.denied";
+    public static final String OVERRIDE_APPROVED = "purchase.override_approved";
+    public static final String PAYMENT_FAILED = "purchase.payment_failed";
+
+    private String eventId;
+    private String type;
+    private String transactionId;
+    private String agentId;
+    private String status;
+    private String message;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String paymentReference;
+
+    // What was bought, when the outcome is for a known request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String ownerId;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String merchant;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double amount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String currency;
+
+    // ISO-8601 UTC
+    private String occurredAt;
+
+    public static PurchaseOutcomeEvent of(String type, String agentId, PurchaseResponse response) {
+        return PurchaseOutcomeEvent.builder()
+            .eventId(UUID.randomUUID().toString())
+            .type(type)
+            .transactionId(response.getTransactionId())
+            .agentId(agentId)
+            .status(response.getStatus())
+            .message(response.getMessage())
+            .paymentReference(response.getPaymentReference())
+            .occurredAt(Instant.now().toString())
+            .build();
+    }
+
+    public static PurchaseOutcomeEvent of(String type, PurchaseRequest request, PurchaseResponse response) {
+        PurchaseOutcomeEvent event = of(type, request.getAgentId(), response);
+        event.setOwnerId(request.getOwnerId());
+        event.setMerchant(request.getMerchant());
+        event.setAmount(request.getAmount());
+        event.setCurrency(request.getCurrency());
+        return event;
+    }
+}
@@ -37,4 +37,7 @@ public class PurchaseRequest {
     // Optional metadata for digital goods
     private String licenseType;  // "single_use", "unlimited", "commercial"
     private Integer quantity = 1;  // Number of licenses/credits
+
+    // Optional client correlation ID, echoed in the response (used by the streaming endpoint)
+    private String requestId;
 }
@@ -1,5 +1,7 @@
 package com.payment.payment.agent.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
@@ -7,4 +9,16 @@ public class PurchaseResponse {
     private String status;
     private String transactionId;
     private String message;
+
+    // Payment provider reference, set once the payment has gone through
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String paymentReference;
+
+    // Echo of PurchaseRequest.requestId; streamed responses arrive out of order
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String requestId;
+
+    // Outcome caused by a transient failure; a retry may succeed, so it must not be replayed
+    @JsonIgnore
+    private boolean retryable;
 }
@@ -0,0 +1,30 @@
+package com.payment.payment.agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Purchase outcomes of one agent, owner or merchant in one currency, over a sliding window
+ * or in one tumbling bucket
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SpendTotals {
+    private String dimension;
+    private String key;
+    private String currency;
+
+    // Sliding window length (ISO-8601), or the bucket start (UTC) and granularity of a tumbling bucket
+    private String window;
+    private LocalDateTime bucketStart;
+    private String granularity;
+
+    private long approvedCount;
+    private double approvedAmount;
+    private long deniedCount;
+    private long failedCount;
+}
@@ -0,0 +1,31 @@
+package com.payment.payment.agent.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Purchases of one agent over the last minute, hour and day, including the purchase being
+ * decided. Sent to OPA as input.velocity.
+ */
+@Data
+@Builder
+public class VelocitySnapshot {
+    private Window minute;
+    private Window hour;
+    private Window day;
+
+    // Thresholds this purchase exceeded; empty when it is within all of them
+    private List<String> exceeded;
+
+    @Data
+    @Builder
+    public static class Window {
+        private long count;
+        private double amount;
+
+        // Estimated, exact for a handful of merchants and increasingly approximate past ~40
+        private long distinctMerchants;
+    }
+}
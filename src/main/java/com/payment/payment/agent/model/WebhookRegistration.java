@@ -0,0 +1,21 @@
+package com.payment.payment.agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class WebhookRegistration {
+    private String id;
+    private String url;
+    private List<String> eventTypes;
+    private LocalDateTime createdAt;
+
+    // Signing secret; only returned when the webhook is registered
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String secret;
+}
@@ -0,0 +1,16 @@
+package com.payment.payment.agent.model;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class WebhookRegistrationRequest {
+
+    @NotBlank(message = "Webhook URL is required")
+    private String url;
+
+    // Event types to deliver (e.g. "purchase.denied"); empty means all
+    private List<String> eventTypes;
+}
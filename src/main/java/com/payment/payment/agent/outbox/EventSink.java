@@ -0,0 +1,17 @@
+package com.payment.payment.agent.outbox;
+
+import java.util.List;
+
+/**
+ * Downstream destination for domain events relayed from the outbox.
+ *
+ * Delivery is at-least-once: a batch is published again if the relay fails before
+ * recording its checkpoint, so consumers should de-duplicate on the event ID.
+ */
+public interface EventSink {
+
+    /**
+     * Publish a batch in order; throw to have the whole batch retried on the next run
+     */
+    void publish(List<OutboxRecord> events) throws Exception;
+}
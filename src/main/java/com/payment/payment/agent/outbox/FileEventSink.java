@@ -0,0 +1,104 @@
+package com.payment.payment.agent.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for a message broker: appends each event as an NDJSON line
+ * ({"id":..,"type":..,"aggregateId":..,"occurredAt":..,"payload":{..}}) to
+ * {dir}/events.ndjson and syncs the file before the batch is acknowledged.
+ *
+ * A file that would grow past max-file-size-mb is rotated to events-{epochMillis}.ndjson
+ * first, and only the newest max-files files are kept.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.sink", havingValue = "file", matchIfMissing = true)
+public class FileEventSink implements EventSink {
+
+    static final String CURRENT = "events.ndjson";
+    private static final Logger log = LoggerFactory.getLogger(FileEventSink.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.outbox.sink.file.dir:outbox-events}")
+    private String dir = "outbox-events";
+
+    @Value("${app.outbox.sink.file.max-file-size-mb:64}")
+    private int maxFileSizeMb = 64;
+
+    // Including the file being written
+    @Value("${app.outbox.sink.file.max-files:10}")
+    private int maxFiles = 10;
+
+    private long maxFileBytes = 64L * 1024 * 1024;
+
+    @PostConstruct
+    public void init() {
+        maxFileBytes = (long) maxFileSizeMb * 1024 * 1024;
+    }
+
+    @Override
+    public synchronized void publish(List<OutboxRecord> events) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (OutboxRecord event : events) {
+            ObjectNode line = objectMapper.createObjectNode();
+            line.put("id", event.id());
+            line.put("type", event.eventType());
+            line.put("aggregateId", event.aggregateId());
+            line.put("occurredAt", event.occurredAt().toString());
+            line.set("payload", objectMapper.readTree(event.payload()));
+            lines.append(objectMapper.writeValueAsString(line)).append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        Path directory = Path.of(dir);
+        Files.createDirectories(directory);
+        Path file = directory.resolve(CURRENT);
+        if (Files.exists(file) && Files.size(file) > 0 && Files.size(file) + bytes.length > maxFileBytes) {
+            rotate(directory, file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void rotate(Path directory, Path file) throws IOException {
+        long stamp = System.currentTimeMillis();
+        Path rotated;
+        while (Files.exists(rotated = directory.resolve(String.format("events-%013d.ndjson", stamp)))) {
+            stamp++;
+        }
+        Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+        List<Path> old;
+        try (Stream<Path> files = Files.list(directory)) {
+            // Zero-padded stamps sort by name
+            old = files.filter(p -> p.getFileName().toString().matches("events-\\d+\\.ndjson"))
+                .sorted()
+                .toList();
+        }
+        for (int i = 0; i < old.size() - Math.max(0, maxFiles - 1); i++) {
+            Files.deleteIfExists(old.get(i));
+        }
+        log.info("outbox:sink:rotated file={}", rotated.getFileName());
+    }
+}
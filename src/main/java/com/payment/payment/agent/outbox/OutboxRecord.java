@@ -0,0 +1,22 @@
+package com.payment.payment.agent.outbox;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of outbox_event. {@code id} is null until the row is written.
+ */
+public record OutboxRecord(Long id, String kind, String aggregateId, String eventType, String payload,
+                           LocalDateTime occurredAt, LocalDateTime createdAt) {
+
+    public static final String AUDIT = "audit";
+    public static final String DOMAIN = "domain";
+
+    public static OutboxRecord audit(String transactionId, String eventType, String details, LocalDateTime occurredAt) {
+        return new OutboxRecord(null, AUDIT, transactionId, eventType, details, occurredAt, LocalDateTime.now());
+    }
+
+    public static OutboxRecord domain(String transactionId, String eventType, String payload) {
+        LocalDateTime now = LocalDateTime.now();
+        return new OutboxRecord(null, DOMAIN, transactionId, eventType, payload, now, now);
+    }
+}
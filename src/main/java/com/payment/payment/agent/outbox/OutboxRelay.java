@@ -0,0 +1,141 @@
+package com.payment.payment.agent.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drains outbox_event in id order, in batches, for two consumers with their own checkpoints:
+ *
+ *   audit_log  - audit events are copied into audit_log in the same transaction that advances
+ *                the checkpoint, so each event lands exactly once
+ *   event_sink - domain events are published to the {@link EventSink} and the checkpoint is
+ *                advanced afterwards (at-least-once; a failed batch is retried on the next run)
+ *
+ * Each consumer's checkpoint row is locked for the batch, so several instances can run the
+ * relay safely. Identity values are allocated before commit, so an id can become visible after
+ * a higher one; the relay stops at such a gap until it is older than gap-timeout-ms (after
+ * which it is treated as a rolled-back insert). Rows both consumers have passed are deleted.
+ */
+@Component
+@ConditionalOnProperty(name = "app.audit.mode", havingValue = "outbox")
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    static final String AUDIT_CONSUMER = "audit_log";
+    static final String SINK_CONSUMER = "event_sink";
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired(required = false)
+    private EventSink eventSink;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.outbox.batch-size:1000}")
+    private int batchSize = 1000;
+
+    // Upper bound on batches per consumer per run, so one run cannot starve the scheduler
+    @Value("${app.outbox.max-batches-per-run:50}")
+    private int maxBatchesPerRun = 50;
+
+    @Value("${app.outbox.gap-timeout-ms:5000}")
+    private long gapTimeoutMs = 5000;
+
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms:200}")
+    public void relay() {
+        try {
+            drain(AUDIT_CONSUMER);
+            if (eventSink != null) {
+                drain(SINK_CONSUMER);
+            }
+            long done = outboxRepository.checkpoint(AUDIT_CONSUMER);
+            if (eventSink != null) {
+                done = Math.min(done, outboxRepository.checkpoint(SINK_CONSUMER));
+            }
+            int deleted = outboxRepository.deleteUpTo(done);
+            if (deleted > 0) {
+                log.debug("outbox:cleanup deleted={} upToId={}", deleted, done);
+            }
+        } catch (RuntimeException e) {
+            log.error("outbox:relay failed error={}", e.getMessage());
+        }
+    }
+
+    /**
+     * Relay batches for one consumer until it is caught up; returns the number of events passed
+     */
+    int drain(String consumer) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int total = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Integer relayed;
+            try {
+                relayed = transaction.execute(status -> relayBatch(consumer));
+            } catch (RuntimeException e) {
+                log.warn("outbox:relay:batch_failed consumer={} error={}", consumer, e.getMessage());
+                break;
+            }
+            total += relayed == null ? 0 : relayed;
+            if (relayed == null || relayed < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int relayBatch(String consumer) {
+        long checkpoint = outboxRepository.lockCheckpoint(consumer);
+        List<OutboxRecord> ready = contiguous(checkpoint, outboxRepository.fetchAfter(checkpoint, batchSize),
+            LocalDateTime.now().minus(Duration.ofMillis(gapTimeoutMs)));
+        if (ready.isEmpty()) {
+            return 0;
+        }
+
+        String kind = AUDIT_CONSUMER.equals(consumer) ? OutboxRecord.AUDIT : OutboxRecord.DOMAIN;
+        List<OutboxRecord> events = ready.stream().filter(r -> kind.equals(r.kind())).toList();
+        if (AUDIT_CONSUMER.equals(consumer)) {
+            outboxRepository.insertAuditLogs(events);
+        } else if (!events.isEmpty()) {
+            try {
+                eventSink.publish(events);
+            } catch (Exception e) {
+                throw new IllegalStateException("Event sink publish failed: " + e.getMessage(), e);
+            }
+        }
+
+        long lastId = ready.get(ready.size() - 1).id();
+        outboxRepository.saveCheckpoint(consumer, lastId);
+        log.info("outbox:relay consumer={} events={} scanned={} lastId={}", consumer, events.size(), ready.size(), lastId);
+        return ready.size();
+    }
+
+    /**
+     * Leading run of rows with no unexplained id gap after {@code checkpoint}
+     */
+    static List<OutboxRecord> contiguous(long checkpoint, List<OutboxRecord> rows, LocalDateTime gapCutoff) {
+        List<OutboxRecord> ready = new ArrayList<>(rows.size());
+        long expected = checkpoint + 1;
+        for (OutboxRecord row : rows) {
+            if (row.id() != expected && row.createdAt().isAfter(gapCutoff)) {
+                break;
+            }
+            ready.add(row);
+            expected = row.id() + 1;
+        }
+        return ready;
+    }
+}
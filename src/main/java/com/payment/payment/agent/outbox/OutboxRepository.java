@@ -0,0 +1,136 @@
+package com.payment.payment.agent.outbox;
+
+import com.payment.payment.agent.audit.AuditDetails;
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.audit.AuditStageEventTypeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain JDBC access to the outbox tables, so appends and relay batches are single
+ * batched statements rather than per-entity inserts.
+ */
+@Repository
+public class OutboxRepository {
+
+    private static final RowMapper<OutboxRecord> ROW_MAPPER = (rs, rowNum) -> new OutboxRecord(
+        rs.getLong("id"),
+        rs.getString("kind"),
+        rs.getString("aggregate_id"),
+        rs.getString("event_type"),
+        rs.getString("payload"),
+        rs.getTimestamp("occurred_at").toLocalDateTime(),
+        rs.getTimestamp("created_at").toLocalDateTime());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuditStageEventTypeRepository stageEventTypeRepository;
+
+    @Value("${app.audit.details-format:json}")
+    private String auditDetailsFormat = AuditDetails.JSON_FORMAT;
+
+    public void append(List<OutboxRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO outbox_event (kind, aggregate_id, event_type, payload, occurred_at, created_at) VALUES (?, ?, ?, ?, ?, ?)",
+            records, records.size(), (ps, r) -> {
+                ps.setString(1, r.kind());
+                ps.setString(2, r.aggregateId());
+                ps.setString(3, r.eventType());
+                ps.setString(4, r.payload());
+                ps.setTimestamp(5, Timestamp.valueOf(r.occurredAt()));
+                ps.setTimestamp(6, Timestamp.valueOf(r.createdAt()));
+            });
+    }
+
+    /**
+     * Events after {@code afterId} in id order
+     */
+    public List<OutboxRecord> fetchAfter(long afterId, int limit) {
+        return jdbcTemplate.query(
+            "SELECT id, kind, aggregate_id, event_type, payload, occurred_at, created_at FROM outbox_event WHERE id > ? ORDER BY id LIMIT ?",
+            ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Read a consumer's checkpoint and lock it until the surrounding transaction ends,
+     * so only one relay instance processes a consumer at a time
+     */
+    public long lockCheckpoint(String consumer) {
+        Long lastId = jdbcTemplate.queryForObject(
+            "SELECT last_id FROM outbox_checkpoint WHERE consumer = ? FOR UPDATE", Long.class, consumer);
+        return lastId == null ? 0L : lastId;
+    }
+
+    public long checkpoint(String consumer) {
+        Long lastId = jdbcTemplate.queryForObject(
+            "SELECT last_id FROM outbox_checkpoint WHERE consumer = ?", Long.class, consumer);
+        return lastId == null ? 0L : lastId;
+    }
+
+    public void saveCheckpoint(String consumer, long lastId) {
+        jdbcTemplate.update("UPDATE outbox_checkpoint SET last_id = ?, updated_at = CURRENT_TIMESTAMP WHERE consumer = ?",
+            lastId, consumer);
+    }
+
+    /**
+     * Copy audit events into audit_log, keeping their original timestamps, and index the
+     * event types of consolidated stage rows
+     */
+    public void insertAuditLogs(List<OutboxRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<AuditLog> stages = jdbcTemplate.execute((ConnectionCallback<List<AuditLog>>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO audit_log (transaction_id, agent_id, event_type, details, timestamp) VALUES (?, ?, ?, ?, ?)",
+                    new String[]{"id"})) {
+                for (OutboxRecord r : records) {
+                    ps.setString(1, r.aggregateId());
+                    ps.setString(2, AuditLog.agentIdOf(r.payload()));
+                    ps.setString(3, r.eventType());
+                    ps.setString(4, AuditDetails.store(r.payload(), auditDetailsFormat));
+                    ps.setTimestamp(5, Timestamp.valueOf(r.occurredAt()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                // Generated keys come back in insert order
+                List<AuditLog> inserted = new ArrayList<>();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (OutboxRecord r : records) {
+                        if (!keys.next()) {
+                            throw new IllegalStateException("audit_log insert returned fewer keys than rows");
+                        }
+                        if (AuditStage.EVENT_TYPE.equals(r.eventType())) {
+                            AuditLog row = AuditLog.of(r.aggregateId(), r.eventType(), r.payload());
+                            row.setId(keys.getLong(1));
+                            row.setTimestamp(r.occurredAt());
+                            inserted.add(row);
+                        }
+                    }
+                }
+                return inserted;
+            }
+        });
+        stageEventTypeRepository.index(stages);
+    }
+
+    public int deleteUpTo(long id) {
+        return jdbcTemplate.update("DELETE FROM outbox_event WHERE id <= ?", id);
+    }
+}
@@ -0,0 +1,47 @@
+package com.payment.payment.agent.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes each event as an entry of a Redis Stream. A batch is sent as one pipeline.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.sink", havingValue = "redis")
+public class RedisStreamEventSink implements EventSink {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${app.outbox.sink.redis.stream:purchase-events}")
+    private String stream = "purchase-events";
+
+    @Override
+    public void publish(List<OutboxRecord> events) {
+        byte[] key = stream.getBytes(StandardCharsets.UTF_8);
+        RedisSerializer<String> serializer = RedisSerializer.string();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (OutboxRecord event : events) {
+                Map<byte[], byte[]> fields = new LinkedHashMap<>();
+                fields.put(serializer.serialize("id"), serializer.serialize(String.valueOf(event.id())));
+                fields.put(serializer.serialize("type"), serializer.serialize(event.eventType()));
+                fields.put(serializer.serialize("aggregateId"), serializer.serialize(String.valueOf(event.aggregateId())));
+                fields.put(serializer.serialize("occurredAt"), serializer.serialize(event.occurredAt().toString()));
+                fields.put(serializer.serialize("payload"), serializer.serialize(event.payload()));
+                connection.streamCommands().xAdd(StreamRecords.rawBytes(fields).withStreamKey(key));
+            }
+            return null;
+        });
+    }
+}
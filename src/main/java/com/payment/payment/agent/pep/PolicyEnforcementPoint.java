@@ -1,13 +1,20 @@
 package com.payment.payment.agent.pep;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.payment.agent.model.AgentContext;
 import com.payment.payment.agent.model.PurchaseRequest;
+import com.payment.payment.agent.model.VelocitySnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,17 +24,32 @@ public class PolicyEnforcementPoint {
     @Autowired
     private WebClient opaWebClient;
 
+    @Autowired
+    private ShadowPolicyEvaluator shadowEvaluator;
+
     private static final Logger log = LoggerFactory.getLogger(PolicyEnforcementPoint.class);
 
-    public Mono<PolicyDecision> evaluatePolicy(PurchaseRequest request, String userId) {
+    /**
+     * Evaluate a purchase against the active policy.
+     * The verified agent limits and capabilities travel in the input, so the
+     * decision depends only on the input and the reference data synced to OPA.
+     */
+    public Mono<PolicyDecision> evaluatePolicy(PurchaseRequest request, AgentContext agentContext) {
+        return evaluatePolicy(request, agentContext, null);
+    }
+
+    /**
+     * Evaluate a purchase with the agent's recent purchase velocity as input.velocity
+     */
+    public Mono<PolicyDecision> evaluatePolicy(PurchaseRequest request, AgentContext agentContext, VelocitySnapshot velocity) {
         log.debug("=== OPA POLICY EVALUATION START ===");
         log.debug("Request: {}", request);
-        log.debug("User ID: {}", userId);
+        log.debug("Agent ID: {}", agentContext.getAgentId());
 
-        // This is a simplified request to OPA. In a real scenario, you would send more context.
-        OpaRequest opaRequest = new OpaRequest(new OpaInput(request, userId));
+        OpaRequest opaRequest = new OpaRequest(new OpaInput(request, agentContext, velocity));
         log.debug("OPA Request prepared");
 
+        long start = System.nanoTime();
         return opaWebClient.post()
                 .uri("/v1/data/payments")
                 .body(Mono.just(opaRequest), OpaRequest.class)
@@ -38,6 +60,8 @@ public class PolicyEnforcementPoint {
                     PolicyDecision decision = convertToPolicyDecision(response);
                     log.info("OPA decision: allowed={}, explanation={}", decision.isAllowed(), decision.getExplanation());
                     log.debug("=== OPA POLICY EVALUATION END ===");
+                    // Candidate policy runs off the response path; it cannot change this decision
+                    shadowEvaluator.maybeEvaluate(opaRequest, decision, System.nanoTime() - start);
                     return decision;
                 })
                 .onErrorResume(throwable -> {
@@ -50,6 +74,20 @@ public class PolicyEnforcementPoint {
                 });
     }
     
+    /**
+     * Evaluate a raw OPA input document against a policy package.
+     * Used for offline replay: no shadow sampling and no fallback decision,
+     * so transport and OPA errors surface to the caller.
+     */
+    public Mono<PolicyDecision> evaluateInput(String policyPackage, JsonNode input) {
+        return opaWebClient.post()
+                .uri("/v1/data/" + policyPackage.replace('.', '/'))
+                .bodyValue(Map.of("input", input))
+                .retrieve()
+                .bodyToMono(OpaResponse.class)
+                .map(this::convertToPolicyDecision);
+    }
+
     private PolicyDecision convertToPolicyDecision(OpaResponse opaResponse) {
         PolicyDecision decision = new PolicyDecision();
         if (opaResponse.getResult() != null) {
@@ -65,6 +103,7 @@ public class PolicyEnforcementPoint {
     private PolicyDecision createErrorDecision(String reason) {
         PolicyDecision decision = new PolicyDecision();
         decision.setAllowed(false);
+        decision.setFallback(true);
         decision.setExplanation(List.of(reason != null && !reason.isBlank() ? reason : "Policy evaluation failed due to system error"));
         return decision;
     }
@@ -98,10 +137,12 @@ public class PolicyEnforcementPoint {
     private static class OpaInput {
         private final PurchaseRequest purchase;
         private final User user;
+        private final VelocitySnapshot velocity;
 
-        public OpaInput(PurchaseRequest purchase, String userId) {
+        public OpaInput(PurchaseRequest purchase, AgentContext agentContext, VelocitySnapshot velocity) {
             this.purchase = purchase;
-            this.user = new User(userId);
+            this.user = new User(agentContext);
+            this.velocity = velocity;
         }
 
         public PurchaseRequest getPurchase() {
@@ -111,18 +152,73 @@ public class PolicyEnforcementPoint {
         public User getUser() {
             return user;
         }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public VelocitySnapshot getVelocity() {
+            return velocity;
+        }
     }
 
+    /**
+     * Verified agent claims as seen by the policy (input.user)
+     */
     private static class User {
         private final String id;
+        private final String ownerId;
+        private final String agentType;
+        private final String accessLevel;
+        private final List<String> capabilities;
+        private final Double perTransactionLimit;
+        private final Double dailySpendLimit;
+        private final Double monthlySpendLimit;
 
-        public User(String id) {
-            this.id = id;
+        public User(AgentContext agentContext) {
+            this.id = agentContext.getAgentId();
+            this.ownerId = agentContext.getOwnerId();
+            this.agentType = agentContext.getAgentType();
+            this.accessLevel = agentContext.getAccessLevel();
+            // Sorted so identical claims always produce identical input documents
+            List<String> caps = agentContext.getCapabilities() == null
+                ? new ArrayList<>()
+                : new ArrayList<>(agentContext.getCapabilities());
+            Collections.sort(caps);
+            this.capabilities = caps;
+            this.perTransactionLimit = agentContext.getPerTransactionLimit();
+            this.dailySpendLimit = agentContext.getDailySpendLimit();
+            this.monthlySpendLimit = agentContext.getMonthlySpendLimit();
         }
 
         public String getId() {
             return id;
         }
+
+        public String getOwnerId() {
+            return ownerId;
+        }
+
+        public String getAgentType() {
+            return agentType;
+        }
+
+        public String getAccessLevel() {
+            return accessLevel;
+        }
+
+        public List<String> getCapabilities() {
+            return capabilities;
+        }
+
+        public Double getPerTransactionLimit() {
+            return perTransactionLimit;
+        }
+
+        public Double getDailySpendLimit() {
+            return dailySpendLimit;
+        }
+
+        public Double getMonthlySpendLimit() {
+            return monthlySpendLimit;
+        }
     }
 
     static class OpaResponse {
@@ -163,6 +259,8 @@ public class PolicyEnforcementPoint {
     public static class PolicyDecision {
         private boolean allowed;
         private List<String> explanation;
+        // Fail-closed decision made because OPA could not be reached, not a policy outcome
+        private boolean fallback;
         
         public boolean isAllowed() {
             return allowed;
@@ -179,5 +277,13 @@ public class PolicyEnforcementPoint {
         public void setExplanation(List<String> explanation) {
             this.explanation = explanation;
         }
+
+        public boolean isFallback() {
+            return fallback;
+        }
+
+        public void setFallback(boolean fallback) {
+            this.fallback = fallback;
+        }
     }
 }
@@ -0,0 +1,323 @@
+package com.payment.payment.agent.pep;
+
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.OpaResponse;
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
+import com.payment.payment.agent.service.OpaPolicyService;
+import lombok.Builder;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates a candidate policy package alongside the active one on a sample of live purchases.
+ *
+ * The shadow call is fire-and-forget: it is subscribed after the primary decision is made,
+ * errors are swallowed and the result only lands in a bounded ring buffer used for reporting.
+ *
+ * A candidate loaded from app.opa.shadow.policy.path is pushed like the primary policy: a
+ * scheduled re-check retries the push until OPA acknowledges it, and re-installs it if OPA
+ * loses it. Purchases are not shadowed until then. A response without a result (the
+ * candidate package isn't defined in OPA) counts as an error, never as a deny.
+ */
+@Component
+public class ShadowPolicyEvaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShadowPolicyEvaluator.class);
+    private static final int MAX_REPORTED_DIVERGENCES = 20;
+
+    @Autowired
+    private WebClient opaWebClient;
+
+    @Autowired
+    private OpaPolicyService opaPolicyService;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${app.opa.shadow.enabled:false}")
+    private boolean enabled;
+
+    // Rego package of the candidate policy, e.g. "payments_candidate"
+    @Value("${app.opa.shadow.package:payments_candidate}")
+    private String candidatePackage = "payments_candidate";
+
+    // Optional: candidate policy to load into OPA at startup
+    @Value("${app.opa.shadow.policy.path:}")
+    private String candidatePolicyPath;
+
+    @Value("${app.opa.shadow.sample-rate:0.1}")
+    private double sampleRate = 0.1;
+
+    @Value("${app.opa.shadow.timeout-ms:2000}")
+    private long timeoutMs = 2000;
+
+    @Value("${app.opa.shadow.buffer-size:1000}")
+    private int bufferSize = 1000;
+
+    private AtomicReferenceArray<ShadowResult> buffer;
+    private final AtomicLong cursor = new AtomicLong();
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder divergences = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    // Candidate read from candidatePolicyPath; null when the package is managed outside the app
+    private volatile String candidatePolicy;
+    // Whether OPA has acknowledged the candidate; a package managed outside the app is assumed loaded
+    private volatile boolean candidateLoaded = true;
+    private final AtomicBoolean pushing = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        buffer = new AtomicReferenceArray<>(Math.max(1, bufferSize));
+        if (enabled && candidatePolicyPath != null && !candidatePolicyPath.isBlank()) {
+            candidateLoaded = false;
+            loadCandidatePolicy();
+        }
+    }
+
+    /**
+     * Push the candidate until OPA acknowledges it; afterwards only check that OPA still has it
+     */
+    @Scheduled(fixedDelayString = "${app.opa.policy.recheck-interval-ms:10000}", initialDelayString = "${app.opa.policy.recheck-interval-ms:10000}")
+    public void recheck() {
+        String rego = candidatePolicy;
+        if (!enabled || rego == null || !pushing.compareAndSet(false, true)) {
+            return;
+        }
+        Mono<Boolean> missing = candidateLoaded
+            ? opaWebClient.get()
+                .uri("/v1/policies/" + candidatePolicyId())
+                .retrieve()
+                .toBodilessEntity()
+                .then(Mono.just(false))
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(true))
+            : Mono.just(true);
+        missing
+            .flatMap(push -> push ? pushCandidate(rego) : Mono.empty())
+            .doFinally(s -> pushing.set(false))
+            .subscribe(
+                v -> { },
+                e -> log.warn("shadow:candidate push failed, retrying on next re-check: {}", e.getMessage()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Possibly run the candidate policy for this purchase. Never blocks and never throws.
+     */
+    public void maybeEvaluate(Object opaRequest, PolicyDecision primary, long primaryLatencyNanos) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        if (!candidateLoaded) {
+            skipped.increment();
+            return;
+        }
+        try {
+            evaluate(opaRequest, primary, primaryLatencyNanos).subscribe(
+                r -> { },
+                e -> log.debug("shadow:evaluate failed: {}", e.getMessage()));
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.debug("shadow:evaluate failed to start: {}", e.getMessage());
+        }
+    }
+
+    Mono<ShadowResult> evaluate(Object opaRequest, PolicyDecision primary, long primaryLatencyNanos) {
+        long start = System.nanoTime();
+        return opaWebClient.post()
+            .uri("/v1/data/" + candidatePackage.replace('.', '/'))
+            .bodyValue(opaRequest)
+            .retrieve()
+            .bodyToMono(OpaResponse.class)
+            .timeout(Duration.ofMillis(timeoutMs))
+            .flatMap(response -> {
+                if (response.getResult() == null) {
+                    if (candidatePolicy != null) {
+                        // OPA lost the candidate (e.g. restarted); stop shadowing until it is pushed again
+                        candidateLoaded = false;
+                    }
+                    return Mono.error(new IllegalStateException("candidate package " + candidatePackage + " is not defined in OPA"));
+                }
+                long shadowNanos = System.nanoTime() - start;
+                return Mono.just(record(primary, primaryLatencyNanos, response.getResult().isAllow(),
+                    response.getResult().getExplanation(), shadowNanos));
+            })
+            .doOnError(e -> errors.increment());
+    }
+
+    private ShadowResult record(PolicyDecision primary, long primaryNanos, boolean shadowAllowed,
+                                List<String> shadowExplanation, long shadowNanos) {
+        boolean diverged = primary.isAllowed() != shadowAllowed;
+        ShadowResult result = ShadowResult.builder()
+            .evaluatedAt(Instant.now())
+            .primaryAllowed(primary.isAllowed())
+            .shadowAllowed(shadowAllowed)
+            .diverged(diverged)
+            .primaryLatencyMicros(primaryNanos / 1000)
+            .shadowLatencyMicros(shadowNanos / 1000)
+            .primaryExplanation(primary.getExplanation())
+            .shadowExplanation(shadowExplanation)
+            .build();
+        evaluated.increment();
+        if (diverged) {
+            divergences.increment();
+            log.info("shadow:divergence primaryAllowed={} shadowAllowed={} shadowExplanation={}",
+                primary.isAllowed(), shadowAllowed, shadowExplanation);
+        }
+        int slot = (int) (cursor.getAndIncrement() % buffer.length());
+        buffer.set(slot, result);
+        return result;
+    }
+
+    /**
+     * Summary of the shadow results currently held in the buffer plus lifetime counters.
+     */
+    public ShadowReport report() {
+        List<ShadowResult> recent = new ArrayList<>(buffer.length());
+        for (int i = 0; i < buffer.length(); i++) {
+            ShadowResult r = buffer.get(i);
+            if (r != null) {
+                recent.add(r);
+            }
+        }
+        long[] primary = recent.stream().mapToLong(ShadowResult::getPrimaryLatencyMicros).sorted().toArray();
+        long[] shadow = recent.stream().mapToLong(ShadowResult::getShadowLatencyMicros).sorted().toArray();
+        double meanDelta = recent.stream()
+            .mapToLong(r -> r.getShadowLatencyMicros() - r.getPrimaryLatencyMicros())
+            .average().orElse(0);
+        List<ShadowResult> recentDivergences = recent.stream()
+            .filter(ShadowResult::isDiverged)
+            .sorted((a, b) -> b.getEvaluatedAt().compareTo(a.getEvaluatedAt()))
+            .limit(MAX_REPORTED_DIVERGENCES)
+            .toList();
+        long windowDivergences = recent.stream().filter(ShadowResult::isDiverged).count();
+
+        return ShadowReport.builder()
+            .enabled(enabled)
+            .candidatePackage(candidatePackage)
+            .sampleRate(sampleRate)
+            .evaluated(evaluated.sum())
+            .divergences(divergences.sum())
+            .errors(errors.sum())
+            .candidateLoaded(candidateLoaded)
+            .skipped(skipped.sum())
+            .windowSize(recent.size())
+            .windowDivergenceRate(recent.isEmpty() ? 0 : (double) windowDivergences / recent.size())
+            .primaryLatencyP50Micros(percentile(primary, 0.50))
+            .primaryLatencyP95Micros(percentile(primary, 0.95))
+            .shadowLatencyP50Micros(percentile(shadow, 0.50))
+            .shadowLatencyP95Micros(percentile(shadow, 0.95))
+            .meanLatencyDeltaMicros(meanDelta)
+            .recentDivergences(recentDivergences)
+            .build();
+    }
+
+    private void loadCandidatePolicy() {
+        try {
+            Resource resource = resourceLoader.getResource(candidatePolicyPath);
+            String rego;
+            try (InputStream in = resource.getInputStream()) {
+                rego = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            candidatePolicy = rego;
+        } catch (Exception e) {
+            log.warn("shadow:candidate load failed: {}", e.getMessage());
+            return;
+        }
+        if (pushing.compareAndSet(false, true)) {
+            pushCandidate(candidatePolicy)
+                .doFinally(s -> pushing.set(false))
+                .subscribe(
+                    v -> { },
+                    e -> log.warn("shadow:candidate push failed, retrying on next re-check: {}", e.getMessage()));
+        }
+    }
+
+    private Mono<Void> pushCandidate(String rego) {
+        return opaPolicyService.pushPolicy(candidatePolicyId(), rego)
+            .doOnSuccess(v -> {
+                candidateLoaded = true;
+                log.info("shadow:candidate loaded package={}", candidatePackage);
+            });
+    }
+
+    private String candidatePolicyId() {
+        return candidatePackage.replace('.', '_');
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    /**
+     * Outcome of one shadow evaluation
+     */
+    @Data
+    @Builder
+    public static class ShadowResult {
+        private Instant evaluatedAt;
+        private boolean primaryAllowed;
+        private boolean shadowAllowed;
+        private boolean diverged;
+        private long primaryLatencyMicros;
+        private long shadowLatencyMicros;
+        private List<String> primaryExplanation;
+        private List<String> shadowExplanation;
+    }
+
+    /**
+     * Shadow mode report: lifetime counters plus latency and divergence stats over the buffer
+     */
+    @Data
+    @Builder
+    public static class ShadowReport {
+        private boolean enabled;
+        private String candidatePackage;
+        private double sampleRate;
+        private long evaluated;
+        private long divergences;
+        private long errors;
+        // False while a candidate from app.opa.shadow.policy.path waits for OPA to acknowledge it
+        private boolean candidateLoaded;
+        // Sampled purchases not shadowed because the candidate wasn't loaded
+        private long skipped;
+        private int windowSize;
+        private double windowDivergenceRate;
+        private long primaryLatencyP50Micros;
+        private long primaryLatencyP95Micros;
+        private long shadowLatencyP50Micros;
+        private long shadowLatencyP95Micros;
+        private double meanLatencyDeltaMicros;
+        private List<ShadowResult> recentDivergences;
+    }
+}
@@ -0,0 +1,95 @@
+package com.payment.payment.agent.replay;
+
+import com.payment.payment.agent.pep.PolicyEnforcementPoint;
+import com.payment.payment.agent.replay.DecisionReplayer.ReplayReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Command-line replay mode, enabled by setting app.replay.input:
+ *
+ *   java -jar payment-agent.jar --app.replay.input=capture.ndjson \
+ *        --app.replay.baseline=decisions-v41.ndjson --app.replay.output=decisions-v42.ndjson
+ *
+ * Evaluates every input against the OPA configured by opa.url, logs the report and
+ * exits with status 1 when decisions regressed (see {@link ReplayReport#hasRegressions()}).
+ */
+@Component
+@ConditionalOnProperty(name = "app.replay.input")
+public class DecisionReplayRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(DecisionReplayRunner.class);
+
+    @Autowired
+    private PolicyEnforcementPoint pep;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Value("${app.replay.input}")
+    private String input;
+
+    @Value("${app.replay.baseline:}")
+    private String baseline;
+
+    // Decisions NDJSON; usable as the baseline of a later run
+    @Value("${app.replay.output:}")
+    private String output;
+
+    @Value("${app.replay.diff-output:}")
+    private String diffOutput;
+
+    @Value("${app.replay.package:payments}")
+    private String policyPackage;
+
+    @Value("${app.replay.concurrency:256}")
+    private int concurrency;
+
+    @Value("${app.replay.exit:true}")
+    private boolean exitWhenDone;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        log.info("replay:start input={} baseline={} package={} concurrency={}",
+            input, blankToNone(baseline), policyPackage, concurrency);
+
+        DecisionReplayer replayer = new DecisionReplayer(in -> pep.evaluateInput(policyPackage, in), concurrency);
+        ReplayReport report = replayer.replay(Path.of(input), pathOrNull(baseline), pathOrNull(output), pathOrNull(diffOutput));
+
+        log.info("replay:done records={} allowed={} denied={} errors={} elapsedMs={} throughput={}/s",
+            report.getRecords(), report.getAllowed(), report.getDenied(), report.getErrors(),
+            report.getElapsedMillis(), String.format("%.1f", report.getThroughputPerSecond()));
+        log.info("replay:latency meanUs={} p50Us={} p90Us={} p99Us={} p999Us={} maxUs={}",
+            String.format("%.1f", report.getLatencyMeanMicros()), report.getLatencyP50Micros(), report.getLatencyP90Micros(),
+            report.getLatencyP99Micros(), report.getLatencyP999Micros(), report.getLatencyMaxMicros());
+        if (pathOrNull(baseline) != null) {
+            log.info("replay:diff compared={} allowToDeny={} denyToAllow={} explanationChanges={} errorChanges={} baselineMissing={} baselineExtra={}",
+                report.getCompared(), report.getAllowToDeny(), report.getDenyToAllow(), report.getExplanationChanges(),
+                report.getErrorChanges(), report.getBaselineMissing(), report.getBaselineExtra());
+            report.getSampleDiffs().forEach(d -> log.info("replay:diff {}", d));
+        }
+
+        if (exitWhenDone) {
+            int code = report.hasRegressions() ? 1 : 0;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private static Path pathOrNull(String value) {
+        return value == null || value.isBlank() ? null : Path.of(value);
+    }
+
+    private static String blankToNone(String value) {
+        return value == null || value.isBlank() ? "none" : value;
+    }
+}
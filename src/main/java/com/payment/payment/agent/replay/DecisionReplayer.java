@@ -0,0 +1,329 @@
+package com.payment.payment.agent.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
+import lombok.Builder;
+import lombok.Data;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Streams an NDJSON file of OPA inputs through a policy evaluator and compares the
+ * decisions against a baseline.
+ *
+ * Input lines are either {"input": {...}} (as in test_opa.json) or a bare input document.
+ * Lines are read lazily and at most {@code concurrency} evaluations are in flight;
+ * results are consumed in input order, so memory stays constant for any file size.
+ *
+ * The decisions file written by one run is a valid baseline for the next. Baselines may
+ * also be raw OPA responses ({"result": {"allow": ...}}), one per input line.
+ */
+public class DecisionReplayer {
+
+    private static final int MAX_SAMPLE_DIFFS = 20;
+
+    private final Function<JsonNode, Mono<PolicyDecision>> evaluator;
+    private final int concurrency;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public DecisionReplayer(Function<JsonNode, Mono<PolicyDecision>> evaluator, int concurrency) {
+        this.evaluator = evaluator;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Replay {@code input}. {@code baseline}, {@code decisionsOut} and {@code diffOut} are optional.
+     */
+    public ReplayReport replay(Path input, Path baseline, Path decisionsOut, Path diffOut) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        Tally tally = new Tally();
+        long start = System.nanoTime();
+
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedReader base = baseline == null ? null : Files.newBufferedReader(baseline, StandardCharsets.UTF_8);
+             BufferedWriter decisions = decisionsOut == null ? null : Files.newBufferedWriter(decisionsOut, StandardCharsets.UTF_8);
+             BufferedWriter diffs = diffOut == null ? null : Files.newBufferedWriter(diffOut, StandardCharsets.UTF_8)) {
+
+            Flux.<InputLine, Long>generate(() -> 0L, (lineNo, sink) -> {
+                    try {
+                        String line;
+                        long n = lineNo;
+                        do {
+                            line = in.readLine();
+                            n++;
+                        } while (line != null && line.isBlank());
+                        if (line == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(new InputLine(n, line));
+                        }
+                        return n;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapSequential(line -> evaluate(line, latency), concurrency, 1)
+                .doOnNext(outcome -> consume(outcome, base, decisions, diffs, tally))
+                .then()
+                .block();
+
+            if (base != null) {
+                while (nextNonBlank(base) != null) {
+                    tally.baselineExtra++;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        return ReplayReport.builder()
+            .records(tally.records)
+            .allowed(tally.allowed)
+            .denied(tally.denied)
+            .errors(tally.errors)
+            .compared(tally.compared)
+            .allowToDeny(tally.allowToDeny)
+            .denyToAllow(tally.denyToAllow)
+            .explanationChanges(tally.explanationChanges)
+            .errorChanges(tally.errorChanges)
+            .baselineMissing(tally.baselineMissing)
+            .baselineExtra(tally.baselineExtra)
+            .elapsedMillis(elapsedNanos / 1_000_000)
+            .throughputPerSecond(tally.records * 1_000_000_000.0 / elapsedNanos)
+            .latencyMeanMicros(latency.mean())
+            .latencyP50Micros(latency.percentile(0.50))
+            .latencyP90Micros(latency.percentile(0.90))
+            .latencyP99Micros(latency.percentile(0.99))
+            .latencyP999Micros(latency.percentile(0.999))
+            .latencyMaxMicros(latency.max())
+            .sampleDiffs(tally.sampleDiffs)
+            .build();
+    }
+
+    private Mono<Outcome> evaluate(InputLine line, LatencyHistogram latency) {
+        JsonNode input;
+        try {
+            JsonNode node = objectMapper.readTree(line.text);
+            input = node.has("input") ? node.get("input") : node;
+        } catch (IOException e) {
+            return Mono.just(Outcome.failed(line.number, "unparseable input"));
+        }
+        return Mono.defer(() -> {
+                long t0 = System.nanoTime();
+                return evaluator.apply(input)
+                    .doOnNext(d -> latency.record((System.nanoTime() - t0) / 1_000));
+            })
+            .map(decision -> Outcome.decided(line.number, decision))
+            .onErrorResume(e -> Mono.just(Outcome.failed(line.number, errorMessage(e))))
+            .defaultIfEmpty(Outcome.failed(line.number, "no decision"));
+    }
+
+    private void consume(Outcome outcome, BufferedReader base, Writer decisions, Writer diffs, Tally tally) {
+        tally.records++;
+        if (outcome.error != null) {
+            tally.errors++;
+        } else if (outcome.allow) {
+            tally.allowed++;
+        } else {
+            tally.denied++;
+        }
+        try {
+            ObjectNode record = outcome.toJson(objectMapper);
+            if (decisions != null) {
+                decisions.write(objectMapper.writeValueAsString(record));
+                decisions.write('\n');
+            }
+            if (base == null) {
+                return;
+            }
+            String expectedLine = nextNonBlank(base);
+            if (expectedLine == null) {
+                tally.baselineMissing++;
+                return;
+            }
+            tally.compared++;
+            Outcome expected = parseBaseline(outcome.line, expectedLine);
+            String kind = classify(expected, outcome, tally);
+            if (kind != null) {
+                ObjectNode diff = objectMapper.createObjectNode();
+                diff.put("line", outcome.line);
+                diff.put("kind", kind);
+                diff.set("baseline", expected.toJson(objectMapper));
+                diff.set("current", record);
+                String json = objectMapper.writeValueAsString(diff);
+                if (diffs != null) {
+                    diffs.write(json);
+                    diffs.write('\n');
+                }
+                if (tally.sampleDiffs.size() < MAX_SAMPLE_DIFFS) {
+                    tally.sampleDiffs.add(json);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String classify(Outcome expected, Outcome actual, Tally tally) {
+        if ((expected.error != null) != (actual.error != null)) {
+            tally.errorChanges++;
+            return "error";
+        }
+        if (expected.error != null) {
+            return null;
+        }
+        if (expected.allow && !actual.allow) {
+            tally.allowToDeny++;
+            return "allow_to_deny";
+        }
+        if (!expected.allow && actual.allow) {
+            tally.denyToAllow++;
+            return "deny_to_allow";
+        }
+        if (!Objects.equals(expected.explanation, actual.explanation)) {
+            tally.explanationChanges++;
+            return "explanation";
+        }
+        return null;
+    }
+
+    private Outcome parseBaseline(long line, String text) {
+        try {
+            JsonNode node = objectMapper.readTree(text);
+            if (node.hasNonNull("error")) {
+                return Outcome.failed(line, node.get("error").asText());
+            }
+            JsonNode decision = node.has("result") ? node.get("result") : node;
+            List<String> explanation = new ArrayList<>();
+            decision.path("explanation").forEach(e -> explanation.add(e.asText()));
+            return new Outcome(line, decision.path("allow").asBoolean(false), explanation, null);
+        } catch (IOException e) {
+            return Outcome.failed(line, "unparseable baseline");
+        }
+    }
+
+    private static String nextNonBlank(BufferedReader reader) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && line.isBlank());
+        return line;
+    }
+
+    private static String errorMessage(Throwable e) {
+        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        message = message.replaceAll("\n|\r", " ").trim();
+        return message.length() > 200 ? message.substring(0, 200) + "..." : message;
+    }
+
+    private record InputLine(long number, String text) {
+    }
+
+    /**
+     * Mutable counters; only touched from the ordered consumer, so no synchronization needed
+     */
+    private static class Tally {
+        long records;
+        long allowed;
+        long denied;
+        long errors;
+        long compared;
+        long allowToDeny;
+        long denyToAllow;
+        long explanationChanges;
+        long errorChanges;
+        long baselineMissing;
+        long baselineExtra;
+        final List<String> sampleDiffs = new ArrayList<>();
+    }
+
+    private static class Outcome {
+        final long line;
+        final boolean allow;
+        final List<String> explanation;
+        final String error;
+
+        Outcome(long line, boolean allow, List<String> explanation, String error) {
+            this.line = line;
+            this.allow = allow;
+            this.explanation = explanation == null ? List.of() : explanation;
+            this.error = error;
+        }
+
+        static Outcome decided(long line, PolicyDecision decision) {
+            return new Outcome(line, decision.isAllowed(), decision.getExplanation(), null);
+        }
+
+        static Outcome failed(long line, String error) {
+            return new Outcome(line, false, List.of(), error);
+        }
+
+        ObjectNode toJson(ObjectMapper mapper) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("line", line);
+            if (error != null) {
+                node.put("error", error);
+            } else {
+                node.put("allow", allow);
+                ArrayNode reasons = node.putArray("explanation");
+                explanation.forEach(reasons::add);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Summary of one replay run
+     */
+    @Data
+    @Builder
+    public static class ReplayReport {
+        private long records;
+        private long allowed;
+        private long denied;
+        private long errors;
+        private long compared;
+        private long allowToDeny;
+        private long denyToAllow;
+        private long explanationChanges;
+        private long errorChanges;
+        private long baselineMissing;
+        private long baselineExtra;
+        private long elapsedMillis;
+        private double throughputPerSecond;
+        private double latencyMeanMicros;
+        private long latencyP50Micros;
+        private long latencyP90Micros;
+        private long latencyP99Micros;
+        private long latencyP999Micros;
+        private long latencyMaxMicros;
+        private List<String> sampleDiffs;
+
+        /**
+         * True when decisions flipped, evaluation failed, or the baseline did not line up
+         */
+        public boolean hasRegressions() {
+            return errors > 0 || allowToDeny > 0 || denyToAllow > 0 || errorChanges > 0
+                || baselineMissing > 0 || baselineExtra > 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.payment.payment.agent.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking per-key concurrency limit.
+ *
+ * A call that would exceed the limit for its key fails immediately with
+ * {@link BulkheadFullException} instead of queueing, so one slow merchant can only
+ * tie up {@code maxConcurrent} calls and never stalls the others.
+ */
+public class KeyedBulkhead {
+
+    private final int maxConcurrent;
+    private final Map<String, AtomicInteger> inUse = new ConcurrentHashMap<>();
+
+    public KeyedBulkhead(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Run {@code call} holding a permit for {@code key}; the permit is released on
+     * completion, error or cancellation.
+     */
+    public <T> Mono<T> run(String key, Supplier<Mono<T>> call) {
+        return Mono.using(
+            () -> acquire(key),
+            counter -> call.get(),
+            AtomicInteger::decrementAndGet);
+    }
+
+    public int inUse(String key) {
+        AtomicInteger counter = inUse.get(key);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private AtomicInteger acquire(String key) {
+        AtomicInteger counter = inUse.computeIfAbsent(key, k -> new AtomicInteger());
+        while (true) {
+            int current = counter.get();
+            if (current >= maxConcurrent) {
+                throw new BulkheadFullException("Concurrency limit of " + maxConcurrent + " reached for " + key);
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return counter;
+            }
+        }
+    }
+
+    public static class BulkheadFullException extends RuntimeException {
+        public BulkheadFullException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,69 +1,70 @@
 package com.payment.payment.agent.service;
 
+import com.payment.payment.agent.model.PaymentResult;
 import com.payment.payment.agent.model.PurchaseRequest;
-import lombok.Data;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Mock payment processor for testing and development
  * Simulates real payment gateway behavior without actual charges
  * Perfect for side projects and demos
+ *
+ * Latency is simulated with Mono.delay, so no thread is held while "waiting" on the gateway.
  */
 @Service
-public class MockPaymentProcessor {
-
-    private final Random random = new Random();
+@ConditionalOnProperty(name = "app.payment.gateway", havingValue = "mock", matchIfMissing = true)
+public class MockPaymentProcessor implements PaymentGateway {
 
     /**
      * Process payment (mock implementation)
      * Simulates various real-world payment scenarios
      */
-    public Mono<PaymentResult> processPayment(PurchaseRequest request) {
-        return Mono.fromCallable(() -> {
-            // Simulate processing delay
-            Thread.sleep(100 + random.nextInt(200)); // 100-300ms delay
-            
-            // Simulate different outcomes based on amount
-            if (request.getAmount() > 10000) {
-                return createFailedResult("Amount too high for demo processor");
-            }
-            
-            if (request.getMerchant().contains("test_fail")) {
-                return createFailedResult("Merchant not supported");
-            }
-            
-            // 95% success rate for realistic simulation
-            if (random.nextInt(100) < 5) {
-                return createFailedResult("Random processing failure (simulated)");
-            }
-            
-            return createSuccessResult(request);
-        });
+    @Override
+    public Mono<PaymentResult> processPayment(PurchaseRequest request, String idempotencyKey) {
+        // Simulate processing delay
+        return Mono.delay(Duration.ofMillis(100 + ThreadLocalRandom.current().nextInt(200))) // 100-300ms delay
+            .flatMap(tick -> {
+                // Simulate different outcomes based on amount
+                if (request.getAmount() > 10000) {
+                    return Mono.just(createFailedResult("Amount too high for demo processor"));
+                }
+
+                if (request.getMerchant().contains("test_fail")) {
+                    return Mono.just(createFailedResult("Merchant not supported"));
+                }
+
+                // 95% success rate for realistic simulation
+                if (ThreadLocalRandom.current().nextInt(100) < 5) {
+                    return Mono.error(new PaymentGatewayException("Random processing failure (simulated)", true));
+                }
+
+                return Mono.just(createSuccessResult(request, idempotencyKey));
+            });
     }
 
     /**
      * Refund payment (mock implementation)
      */
+    @Override
     public Mono<PaymentResult> refundPayment(String transactionId, double amount) {
-        return Mono.fromCallable(() -> {
-            Thread.sleep(50 + random.nextInt(100)); // Faster for refunds
-            
-            return PaymentResult.builder()
+        return Mono.delay(Duration.ofMillis(50 + ThreadLocalRandom.current().nextInt(100))) // Faster for refunds
+            .map(tick -> PaymentResult.builder()
                 .success(true)
                 .transactionId(transactionId)
                 .message("Refund processed successfully")
                 .processedAt(LocalDateTime.now())
                 .metadata(Map.of("refund_amount", amount))
-                .build();
-        });
+                .build());
     }
 
-    private PaymentResult createSuccessResult(PurchaseRequest request) {
+    private PaymentResult createSuccessResult(PurchaseRequest request, String idempotencyKey) {
         return PaymentResult.builder()
             .success(true)
             .transactionId(java.util.UUID.randomUUID().toString())
@@ -73,7 +74,8 @@ public class MockPaymentProcessor {
                 "merchant", request.getMerchant(),
                 "product_type", request.getProductType(),
                 "amount", request.getAmount(),
-                "currency", request.getCurrency()
+                "currency", request.getCurrency(),
+                "idempotency_key", idempotencyKey
             ))
             .build();
     }
@@ -87,17 +89,4 @@ public class MockPaymentProcessor {
             .metadata(Map.of("failure_reason", reason))
             .build();
     }
-
-    /**
-     * Payment processing result
-     */
-    @Data
-    @lombok.Builder
-    public static class PaymentResult {
-        private boolean success;
-        private String transactionId;  // Payment processor transaction ID
-        private String message;
-        private LocalDateTime processedAt;
-        private Map<String, Object> metadata;
-    }
-}
\ No newline at end of file
+}
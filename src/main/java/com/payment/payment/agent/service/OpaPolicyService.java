@@ -7,93 +7,391 @@ import org.springframework.core.io.ResourceLoader;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 
+/**
+ * Loads the Rego policy, keeps OPA in sync with it and publishes policy versions.
+ *
+ * Filesystem policies are watched with a WatchService and reloaded within the
+ * debounce window of a change; classpath and jar resources are read through
+ * their input stream and are treated as immutable. In push mode a new policy only
+ * counts as live (and bumps the version) once OPA has acknowledged the PUT; in
+ * bundle mode it is live as soon as PolicyBundleService can serve it. Whether to
+ * push is decided against the live version, not the last file read, and a scheduled
+ * re-check keeps pushing until OPA has acknowledged the loaded policy. The re-check
+ * never rereads the policy: file changes come from the watcher, and jar resources
+ * cannot change at runtime.
+ */
 @Service
 public class OpaPolicyService {
-    
+
+    static final String POLICY_ID = "payments";
+    public static final String DISTRIBUTION_BUNDLE = "bundle";
+
     @Autowired
     private WebClient opaWebClient;
-    
+
     @Autowired
     private ResourceLoader resourceLoader;
-    
+
     @Value("${opa.url}")
     private String opaUrl;
-    
+
     @Value("${app.opa.policy.path:classpath:policies/comprehensive_policy.rego}")
     private String policyPath;
-    
-    private String currentPolicy;
+
+    // "push": PUT the policy to opa.url; "bundle": OPA instances pull it from /bundles/{name}
+    @Value("${app.opa.distribution:push}")
+    private String distributionMode = "push";
+
+    @Value("${app.opa.policy.push-retries:3}")
+    private int pushRetries = 3;
+
+    @Value("${app.opa.policy.push-backoff-ms:200}")
+    private long pushBackoffMs = 200;
+
+    @Value("${app.opa.policy.watch.debounce-ms:300}")
+    private long watchDebounceMs = 300;
+
+    private volatile String currentPolicy;
+    private volatile String currentPolicyHash;
+    private volatile PolicyVersion livePolicy;
+    private final AtomicLong policyVersion = new AtomicLong();
+    private final AtomicBoolean pushing = new AtomicBoolean();
+    private final Sinks.Many<PolicyVersion> versionSink = Sinks.many().replay().latest();
+
+    private volatile WatchService watchService;
+    private Thread watchThread;
+
     private static final Logger log = LoggerFactory.getLogger(OpaPolicyService.class);
-    
+
     @PostConstruct
     public void loadInitialPolicy() {
         try {
             loadPolicyFromPath();
-            updateOpaPolicy();
+            syncWithOpa();
+            startWatching();
         } catch (Exception e) {
             log.warn("opa:policy:init failed: {}", e.getMessage());
         }
     }
-    
-    public void loadPolicyFromPath() throws IOException {
+
+    @PreDestroy
+    public void stopWatching() {
+        WatchService ws = watchService;
+        watchService = null;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException e) {
+                log.debug("opa:policy:watch close failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the policy through the resource's input stream so classpath entries
+     * inside a packaged jar work the same as files on disk.
+     *
+     * @return true when the content hash differs from the previously loaded policy
+     */
+    public boolean loadPolicyFromPath() throws IOException {
         Resource resource = resourceLoader.getResource(policyPath);
-        Path path = Paths.get(resource.getURI());
-        currentPolicy = Files.readString(path);
-    }
-    
-    public void updateOpaPolicy() {
-        // Update OPA with the new policy
-        String policyName = "payments";
-        
-        opaWebClient.put()
-            .uri("/v1/policies/" + policyName)
+        String policy;
+        try (InputStream in = resource.getInputStream()) {
+            policy = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String hash = sha256(policy);
+        boolean changed = !hash.equals(currentPolicyHash);
+        currentPolicy = policy;
+        currentPolicyHash = hash;
+        return changed;
+    }
+
+    /**
+     * Push the loaded policy to OPA. Emits the new live version once OPA has acknowledged it;
+     * errors after the configured retries instead of failing silently.
+     */
+    public Mono<PolicyVersion> updateOpaPolicy() {
+        String policy = currentPolicy;
+        String hash = currentPolicyHash;
+        if (policy == null) {
+            return Mono.error(new IllegalStateException("No policy loaded"));
+        }
+        PolicyVersion live = livePolicy;
+        if (live != null && live.getHash().equals(hash)) {
+            return Mono.just(live);
+        }
+        if (isBundleDistribution()) {
+            // Sidecars pull the new version via ETag long-polling; nothing to push
+            return Mono.fromCallable(() -> markLive(policy, hash))
+                .doOnNext(v -> log.info("opa:policy:bundle published version={} hash={}", v.getVersion(), shortHash(v.getHash())));
+        }
+        return pushPolicy(POLICY_ID, policy)
+            .then(Mono.fromCallable(() -> markLive(policy, hash)))
+            .doOnNext(v -> log.info("opa:policy:update acknowledged version={} hash={}", v.getVersion(), shortHash(v.getHash())))
+            .doOnError(e -> log.warn("opa:policy:update failed: {}", e.getMessage()));
+    }
+
+    /**
+     * PUT a Rego module to OPA with retry on transient failures. Client errors
+     * (e.g. a compile error in the policy) are not retried.
+     */
+    public Mono<Void> pushPolicy(String policyId, String rego) {
+        return opaWebClient.put()
+            .uri("/v1/policies/" + policyId)
             .contentType(MediaType.TEXT_PLAIN)
-            .bodyValue(currentPolicy)
-            .exchangeToMono(clientResponse -> {
-                if (clientResponse.statusCode().is2xxSuccessful()) {
-                    return clientResponse.bodyToMono(String.class)
-                        .defaultIfEmpty("")
-                        .doOnNext(body -> log.info("opa:policy:update success"));
-                }
-                return clientResponse.bodyToMono(String.class)
-                    .defaultIfEmpty("")
-                    .doOnNext(body -> log.warn("opa:policy:update failed: status={} body={}", clientResponse.statusCode(), body))
-                    .then(Mono.empty());
-            })
-            .subscribe();
+            .bodyValue(rego)
+            .retrieve()
+            .toBodilessEntity()
+            .retryWhen(Retry.backoff(pushRetries, Duration.ofMillis(pushBackoffMs))
+                .filter(OpaPolicyService::isTransient)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+            .then();
     }
-    
-    // Scheduled task to periodically check for policy updates
-    @Scheduled(fixedRate = 300000) // Run every 5 minutes
+
+    /**
+     * Reload the policy and push it unless OPA already has it live.
+     * Triggered by the filesystem watcher and the scheduled re-check; also safe to call manually.
+     */
     public void checkForPolicyUpdates() {
         try {
-            String previousPolicy = currentPolicy;
-            loadPolicyFromPath();
-            
-            // If policy has changed, update OPA
-            if (!currentPolicy.equals(previousPolicy)) {
-                log.info("opa:policy:change detected -> updating");
-                updateOpaPolicy();
+            if (loadPolicyFromPath()) {
+                log.info("opa:policy:change detected hash={}", shortHash(currentPolicyHash));
             }
+            syncWithOpa();
         } catch (Exception e) {
             log.warn("opa:policy:check failed: {}", e.getMessage());
         }
     }
-    
+
+    /**
+     * Retry a push that failed (e.g. OPA started after the app). Once the loaded policy is
+     * live, only checks that OPA still has it (a restarted OPA comes back empty) and
+     * re-installs it if not.
+     */
+    @Scheduled(fixedDelayString = "${app.opa.policy.recheck-interval-ms:10000}", initialDelayString = "${app.opa.policy.recheck-interval-ms:10000}")
+    public void recheck() {
+        if (currentPolicy == null) {
+            // The initial load failed; nothing else will read the policy
+            checkForPolicyUpdates();
+            return;
+        }
+        PolicyVersion live = livePolicy;
+        if (live == null || !live.getHash().equals(currentPolicyHash)) {
+            syncWithOpa();
+        } else if (!isBundleDistribution()) {
+            reinstallIfMissing(live);
+        }
+    }
+
+    /**
+     * GET the policy from OPA and push the live version again when OPA doesn't have it.
+     * The version is unchanged: OPA is only catching up with what was already live.
+     */
+    private void reinstallIfMissing(PolicyVersion live) {
+        if (!pushing.compareAndSet(false, true)) {
+            return;
+        }
+        opaWebClient.get()
+            .uri("/v1/policies/" + POLICY_ID)
+            .retrieve()
+            .toBodilessEntity()
+            .then(Mono.just(false))
+            .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(true))
+            .flatMap(missing -> {
+                if (!missing) {
+                    return Mono.empty();
+                }
+                log.info("opa:policy:missing reinstalling version={} hash={}", live.getVersion(), shortHash(live.getHash()));
+                return pushPolicy(POLICY_ID, live.getPolicy());
+            })
+            .doFinally(s -> pushing.set(false))
+            .subscribe(
+                v -> { },
+                e -> log.warn("opa:policy:verify failed, retrying on next re-check: {}", e.getMessage()));
+    }
+
+    /**
+     * Push the loaded policy when it differs from the live version; at most one push at a time
+     */
+    private void syncWithOpa() {
+        String hash = currentPolicyHash;
+        PolicyVersion live = livePolicy;
+        if (hash == null || (live != null && live.getHash().equals(hash)) || !pushing.compareAndSet(false, true)) {
+            return;
+        }
+        updateOpaPolicy()
+            .doFinally(s -> pushing.set(false))
+            .subscribe(
+                v -> { },
+                e -> log.warn("opa:policy:sync push failed, retrying on next re-check: {}", e.getMessage()));
+    }
+
+    public boolean isBundleDistribution() {
+        return DISTRIBUTION_BUNDLE.equalsIgnoreCase(distributionMode);
+    }
+
     public String getCurrentPolicy() {
         return currentPolicy;
     }
-    
-    // Removed JSON wrapper; OPA expects raw Rego text for policy PUT
-}
\ No newline at end of file
+
+    public String getCurrentPolicyHash() {
+        return currentPolicyHash;
+    }
+
+    /**
+     * Version of the policy OPA has acknowledged; 0 until the first successful push.
+     */
+    public long getPolicyVersion() {
+        return policyVersion.get();
+    }
+
+    /**
+     * Stream of live policy versions. New subscribers receive the current version first.
+     */
+    public Flux<PolicyVersion> policyVersions() {
+        return versionSink.asFlux();
+    }
+
+    private synchronized PolicyVersion markLive(String policy, String hash) {
+        PolicyVersion live = livePolicy;
+        if (live != null && live.getHash().equals(hash)) {
+            return live;
+        }
+        PolicyVersion next = new PolicyVersion(policyVersion.incrementAndGet(), hash, policy, Instant.now());
+        livePolicy = next;
+        versionSink.tryEmitNext(next);
+        return next;
+    }
+
+    private void startWatching() throws IOException {
+        Resource resource = resourceLoader.getResource(policyPath);
+        if (!resource.isFile()) {
+            log.info("opa:policy:watch disabled; {} is not on the filesystem", policyPath);
+            return;
+        }
+        Path file = resource.getFile().toPath().toAbsolutePath();
+        Path dir = file.getParent();
+        WatchService ws = FileSystems.getDefault().newWatchService();
+        dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = ws;
+
+        watchThread = new Thread(() -> watchLoop(ws, file), "opa-policy-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("opa:policy:watch started path={}", file);
+    }
+
+    private void watchLoop(WatchService ws, Path file) {
+        Path fileName = file.getFileName();
+        while (watchService == ws) {
+            try {
+                WatchKey key = ws.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // Editors often write via temp file + rename, so CREATE counts as well as MODIFY
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        relevant = true;
+                    }
+                }
+                key.reset();
+                if (relevant) {
+                    // Let a burst of writes settle before reading the file once
+                    Thread.sleep(watchDebounceMs);
+                    WatchKey pending;
+                    while ((pending = ws.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    checkForPolicyUpdates();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof WebClientResponseException wcre) {
+            return wcre.getStatusCode().is5xxServerError();
+        }
+        return true;
+    }
+
+    static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String shortHash(String hash) {
+        return hash == null ? "none" : hash.substring(0, Math.min(12, hash.length()));
+    }
+
+    /**
+     * A policy revision that OPA has acknowledged
+     */
+    public static class PolicyVersion {
+        private final long version;
+        private final String hash;
+        private final String policy;
+        private final Instant activatedAt;
+
+        public PolicyVersion(long version, String hash, String policy, Instant activatedAt) {
+            this.version = version;
+            this.hash = hash;
+            this.policy = policy;
+            this.activatedAt = activatedAt;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public Instant getActivatedAt() {
+            return activatedAt;
+        }
+    }
+}
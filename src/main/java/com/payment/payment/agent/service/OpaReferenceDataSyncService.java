@@ -0,0 +1,181 @@
+package com.payment.payment.agent.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes reference data (e.g. the merchant allowlist) to OPA under data.reference.
+ *
+ * Agent limits and capabilities travel in the policy input; only data that is
+ * not agent-specific lives here. After the first full PUT of a document, only
+ * the difference is sent as a JSON Patch, so unchanged data costs nothing.
+ * In bundle distribution mode the documents ship inside the policy bundle instead.
+ */
+@Service
+public class OpaReferenceDataSyncService {
+
+    static final MediaType JSON_PATCH = MediaType.valueOf("application/json-patch+json");
+
+    private static final Logger log = LoggerFactory.getLogger(OpaReferenceDataSyncService.class);
+
+    @Autowired
+    private WebClient opaWebClient;
+
+    @Value("${app.opa.distribution:push}")
+    private String distributionMode = "push";
+
+    @Value("${app.opa.reference.digital-goods-merchants:udemy,coursera,envato_market,creative_market,openai_api,anthropic_api,replicate_api,figma_templates,notion_templates}")
+    private List<String> digitalGoodsMerchants = new ArrayList<>();
+
+    // Force a full PUT every N cycles so an OPA restart (which drops pushed data) self-heals
+    @Value("${app.opa.reference.full-resync-every:10}")
+    private int fullResyncEvery = 10;
+
+    // Last snapshot OPA acknowledged, per document name
+    private final Map<String, Set<String>> published = new ConcurrentHashMap<>();
+    private final AtomicLong cycles = new AtomicLong();
+
+    @PostConstruct
+    public void initialSync() {
+        syncReferenceData();
+    }
+
+    @Scheduled(fixedDelayString = "${app.opa.reference.sync-interval-ms:60000}", initialDelayString = "${app.opa.reference.sync-interval-ms:60000}")
+    public void syncReferenceData() {
+        sync().subscribe(
+            count -> log.debug("opa:reference:sync documents={}", count),
+            e -> log.warn("opa:reference:sync failed: {}", e.getMessage()));
+    }
+
+    /**
+     * Sync every reference document and emit the number of documents that changed.
+     */
+    public Mono<Long> sync() {
+        if (OpaPolicyService.DISTRIBUTION_BUNDLE.equalsIgnoreCase(distributionMode)) {
+            return Mono.just(0L);
+        }
+        boolean forceFull = fullResyncEvery > 0 && cycles.getAndIncrement() % fullResyncEvery == 0;
+        return Flux.fromIterable(desiredReferenceData().entrySet())
+            .concatMap(entry -> syncDocument(entry.getKey(), entry.getValue(), forceFull))
+            .filter(Boolean::booleanValue)
+            .count();
+    }
+
+    /**
+     * Reference documents by name, as they should appear under data.reference
+     */
+    public Map<String, Set<String>> desiredReferenceData() {
+        Map<String, Set<String>> documents = new LinkedHashMap<>();
+        documents.put("digital_goods_merchants", normalize(digitalGoodsMerchants));
+        return documents;
+    }
+
+    private Mono<Boolean> syncDocument(String name, Set<String> desired, boolean forceFull) {
+        Set<String> previous = published.get(name);
+        if (previous == null || forceFull) {
+            return putDocument(name, desired);
+        }
+        List<Map<String, Object>> ops = patchOperations(previous, desired);
+        if (ops.isEmpty()) {
+            return Mono.just(false);
+        }
+        return opaWebClient.patch()
+            .uri("/v1/data/reference/" + name)
+            .contentType(JSON_PATCH)
+            .bodyValue(ops)
+            .retrieve()
+            .toBodilessEntity()
+            .map(response -> {
+                published.put(name, desired);
+                log.info("opa:reference:patch document={} ops={}", name, ops.size());
+                return true;
+            })
+            .onErrorResume(e -> {
+                // Our view of OPA's state is no longer trustworthy; fall back to a full PUT next time
+                published.remove(name);
+                log.warn("opa:reference:patch failed document={} error={}", name, e.getMessage());
+                return Mono.just(false);
+            });
+    }
+
+    private Mono<Boolean> putDocument(String name, Set<String> desired) {
+        return opaWebClient.put()
+            .uri("/v1/data/reference/" + name)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asObject(desired))
+            .retrieve()
+            .toBodilessEntity()
+            .map(response -> {
+                published.put(name, desired);
+                log.info("opa:reference:put document={} entries={}", name, desired.size());
+                return true;
+            })
+            .onErrorResume(e -> {
+                published.remove(name);
+                log.warn("opa:reference:put failed document={} error={}", name, e.getMessage());
+                return Mono.just(false);
+            });
+    }
+
+    /**
+     * RFC 6902 operations turning the previously published set into the desired one.
+     * Sets are stored in OPA as objects keyed by member so that membership tests are O(1).
+     */
+    static List<Map<String, Object>> patchOperations(Set<String> previous, Set<String> desired) {
+        List<Map<String, Object>> ops = new ArrayList<>();
+        for (String member : previous) {
+            if (!desired.contains(member)) {
+                ops.add(Map.of("op", "remove", "path", "/" + escapePointer(member)));
+            }
+        }
+        for (String member : desired) {
+            if (!previous.contains(member)) {
+                ops.add(Map.of("op", "add", "path", "/" + escapePointer(member), "value", true));
+            }
+        }
+        return ops;
+    }
+
+    static String escapePointer(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    static Map<String, Boolean> asObject(Set<String> members) {
+        Map<String, Boolean> object = new LinkedHashMap<>();
+        for (String member : members) {
+            object.put(member, true);
+        }
+        return object;
+    }
+
+    private static Set<String> normalize(List<String> values) {
+        Set<String> out = new TreeSet<>();
+        if (values == null) {
+            return out;
+        }
+        for (String v : values) {
+            if (v != null && !v.isBlank()) {
+                out.add(v.trim());
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,104 @@
+package com.payment.payment.agent.service;
+
+import com.payment.payment.agent.model.PaymentResult;
+import com.payment.payment.agent.model.PurchaseRequest;
+import com.payment.payment.agent.service.KeyedBulkhead.BulkheadFullException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Payment stage run after a purchase is approved (by policy or by owner override).
+ *
+ * Each merchant gets its own bulkhead so a slow provider cannot absorb all capacity.
+ * Every attempt is bounded by a timeout, and transient failures are retried with
+ * jittered exponential backoff. The purchase transaction ID is the provider
+ * idempotency key, so a retry after a timed-out attempt cannot double-charge.
+ * The returned Mono never errors; failures become a PaymentResult with success=false.
+ */
+@Service
+public class PaymentExecutionService {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentExecutionService.class);
+
+    @Autowired
+    private PaymentGateway paymentGateway;
+
+    @Value("${app.payment.bulkhead.max-concurrent-per-merchant:20}")
+    private int maxConcurrentPerMerchant = 20;
+
+    @Value("${app.payment.attempt-timeout-ms:2000}")
+    private long attemptTimeoutMs = 2000;
+
+    @Value("${app.payment.max-retries:2}")
+    private int maxRetries = 2;
+
+    @Value("${app.payment.retry-backoff-ms:100}")
+    private long retryBackoffMs = 100;
+
+    @Value("${app.payment.retry-jitter:0.5}")
+    private double retryJitter = 0.5;
+
+    private KeyedBulkhead bulkhead;
+
+    @PostConstruct
+    public void init() {
+        bulkhead = new KeyedBulkhead(maxConcurrentPerMerchant);
+    }
+
+    public Mono<PaymentResult> execute(PurchaseRequest request, String transactionId) {
+        String merchant = request.getMerchant();
+        long start = System.nanoTime();
+        return bulkhead.run(merchant, () -> Mono.defer(() -> paymentGateway.processPayment(request, transactionId))
+                .timeout(Duration.ofMillis(attemptTimeoutMs))
+                .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(retryBackoffMs))
+                    .jitter(retryJitter)
+                    .filter(PaymentExecutionService::isTransient)
+                    .doBeforeRetry(signal -> log.warn("payment:retry txId={} merchant={} attempt={} error={}",
+                        transactionId, merchant, signal.totalRetries() + 1, signal.failure().getMessage()))
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure())))
+            .doOnNext(result -> log.info("payment:done txId={} merchant={} success={} elapsedMs={}",
+                transactionId, merchant, result.isSuccess(), (System.nanoTime() - start) / 1_000_000))
+            .onErrorResume(e -> {
+                log.warn("payment:failed txId={} merchant={} error={}", transactionId, merchant, e.getMessage());
+                return Mono.just(failure(e));
+            });
+    }
+
+    int inUse(String merchant) {
+        return bulkhead.inUse(merchant);
+    }
+
+    static boolean isTransient(Throwable e) {
+        return e instanceof TimeoutException
+            || (e instanceof PaymentGatewayException gatewayError && gatewayError.isTransientFailure());
+    }
+
+    private static PaymentResult failure(Throwable e) {
+        String reason;
+        if (e instanceof BulkheadFullException) {
+            reason = "Merchant is busy, retry later";
+        } else if (e instanceof TimeoutException) {
+            reason = "Payment provider timed out";
+        } else {
+            reason = e.getMessage() == null ? "Payment provider error" : e.getMessage();
+        }
+        return PaymentResult.builder()
+            .success(false)
+            .message("Payment failed: " + reason)
+            .processedAt(LocalDateTime.now())
+            .metadata(Map.of("failure_reason", reason))
+            .retryable(e instanceof BulkheadFullException || isTransient(e))
+            .build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.payment.payment.agent.service;
+
+import com.payment.payment.agent.model.PaymentResult;
+import com.payment.payment.agent.model.PurchaseRequest;
+import reactor.core.publisher.Mono;
+
+/**
+ * Charges and refunds against a payment provider.
+ *
+ * Implementations must not block the subscribing thread. A decline is a successful
+ * Mono with {@code success=false}; transient problems are signalled as
+ * {@link PaymentGatewayException} with {@code transientFailure=true}, which callers may retry.
+ */
+public interface PaymentGateway {
+
+    /**
+     * Charge for a purchase. {@code idempotencyKey} is passed to the provider so a retried
+     * charge whose first attempt actually went through is not taken twice.
+     */
+    Mono<PaymentResult> processPayment(PurchaseRequest request, String idempotencyKey);
+
+    Mono<PaymentResult> refundPayment(String transactionId, double amount);
+}
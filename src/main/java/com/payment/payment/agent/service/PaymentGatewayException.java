@@ -0,0 +1,18 @@
+package com.payment.payment.agent.service;
+
+/**
+ * Payment provider call failed before a charge decision was made
+ */
+public class PaymentGatewayException extends RuntimeException {
+
+    private final boolean transientFailure;
+
+    public PaymentGatewayException(String message, boolean transientFailure) {
+        super(message);
+        this.transientFailure = transientFailure;
+    }
+
+    public boolean isTransientFailure() {
+        return transientFailure;
+    }
+}
@@ -0,0 +1,211 @@
+package com.payment.payment.agent.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.service.OpaPolicyService.PolicyVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds OPA bundles (gzipped tarballs) from the live policy and reference data.
+ *
+ * One bundle is built per policy version and shared by every OPA instance that
+ * polls /bundles/{name}, so distribution cost does not grow with the number of
+ * sidecars. Long-polling callers wait on the version stream instead of re-polling.
+ */
+@Service
+@ConditionalOnProperty(name = "app.opa.distribution", havingValue = "bundle")
+public class PolicyBundleService {
+
+    private static final Logger log = LoggerFactory.getLogger(PolicyBundleService.class);
+
+    @Autowired
+    private OpaPolicyService opaPolicyService;
+
+    @Autowired
+    private OpaReferenceDataSyncService referenceDataService;
+
+    @Value("${app.opa.bundle.name:payments}")
+    private String bundleName = "payments";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicReference<PolicyBundle> current = new AtomicReference<>();
+    private final Sinks.Many<PolicyBundle> bundles = Sinks.many().replay().latest();
+    private Disposable subscription;
+
+    @PostConstruct
+    public void init() {
+        subscription = opaPolicyService.policyVersions().subscribe(this::publish,
+            e -> log.error("opa:bundle:version stream failed", e));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    public String getBundleName() {
+        return bundleName;
+    }
+
+    public PolicyBundle current() {
+        return current.get();
+    }
+
+    /**
+     * Emit the current bundle if its ETag differs from the caller's; otherwise wait up
+     * to {@code wait} for the next one. Completes empty when nothing changed in time.
+     */
+    public Mono<PolicyBundle> awaitChange(String knownEtag, Duration wait) {
+        PolicyBundle now = current.get();
+        if (now != null && !now.getEtag().equals(knownEtag)) {
+            return Mono.just(now);
+        }
+        return bundles.asFlux()
+            .filter(b -> !b.getEtag().equals(knownEtag))
+            .next()
+            .timeout(wait, Mono.empty());
+    }
+
+    void publish(PolicyVersion version) {
+        try {
+            PolicyBundle bundle = build(version);
+            current.set(bundle);
+            bundles.tryEmitNext(bundle);
+            log.info("opa:bundle:published name={} revision={} bytes={}", bundleName, bundle.getRevision(), bundle.getContent().length);
+        } catch (IOException e) {
+            log.error("opa:bundle:build failed version={}", version.getVersion(), e);
+        }
+    }
+
+    PolicyBundle build(PolicyVersion version) throws IOException {
+        Map<String, Object> referenceData = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> doc : referenceDataService.desiredReferenceData().entrySet()) {
+            referenceData.put(doc.getKey(), OpaReferenceDataSyncService.asObject(doc.getValue()));
+        }
+        byte[] data = toJson(referenceData);
+        // Revision covers both policy and data so either change invalidates cached copies
+        String revision = OpaPolicyService.sha256(version.getHash() + ":" + new String(data, StandardCharsets.UTF_8)).substring(0, 32);
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("revision", revision);
+        manifest.put("roots", List.of(OpaPolicyService.POLICY_ID, "reference"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            writeTarEntry(gzip, "/.manifest", toJson(manifest));
+            writeTarEntry(gzip, "/" + OpaPolicyService.POLICY_ID + "/policy.rego", version.getPolicy().getBytes(StandardCharsets.UTF_8));
+            writeTarEntry(gzip, "/reference/data.json", data);
+            gzip.write(new byte[1024]); // two zero blocks terminate the archive
+        }
+        return new PolicyBundle(revision, "\"" + revision + "\"", version.getVersion(), bytes.toByteArray());
+    }
+
+    private byte[] toJson(Object value) throws IOException {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Failed to serialize bundle document", e);
+        }
+    }
+
+    /**
+     * Minimal ustar entry writer; bundles only need regular files.
+     * mtime is fixed so identical content always yields identical bytes.
+     */
+    static void writeTarEntry(OutputStream out, String name, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IOException("Tar entry name too long: " + name);
+        }
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        writeOctal(header, 124, 12, content.length);
+        writeOctal(header, 136, 12, 0);
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        header[156] = '0';
+        byte[] magic = "ustar\u000000".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 257, magic.length);
+
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        byte[] sum = String.format("%06o", checksum).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(sum, 0, header, 148, 6);
+        header[154] = 0;
+        header[155] = ' ';
+
+        out.write(header);
+        out.write(content);
+        int padding = (512 - (content.length % 512)) % 512;
+        out.write(new byte[padding]);
+    }
+
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        byte[] digits = String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * An immutable, ready-to-serve bundle
+     */
+    public static class PolicyBundle {
+        private final String revision;
+        private final String etag;
+        private final long policyVersion;
+        private final byte[] content;
+
+        public PolicyBundle(String revision, String etag, long policyVersion, byte[] content) {
+            this.revision = revision;
+            this.etag = etag;
+            this.policyVersion = policyVersion;
+            this.content = content;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getPolicyVersion() {
+            return policyVersion;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
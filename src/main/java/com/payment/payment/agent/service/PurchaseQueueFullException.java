@@ -0,0 +1,12 @@
+package com.payment.payment.agent.service;
+
+/**
+ * The asynchronous purchase queue or a priority admission queue is at capacity, or the
+ * purchase waited too long for admission; the client should retry later
+ */
+public class PurchaseQueueFullException extends RuntimeException {
+
+    public PurchaseQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -1,11 +1,19 @@
 package com.payment.payment.agent.service;
 
+import com.payment.payment.agent.model.BatchPurchaseRequest;
+import com.payment.payment.agent.model.BatchPurchaseResponse;
 import com.payment.payment.agent.model.OverrideRequest;
 import com.payment.payment.agent.model.PurchaseRequest;
 import com.payment.payment.agent.model.PurchaseResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface PurchaseService {
     reactor.core.publisher.Mono<PurchaseResponse> processPurchase(PurchaseRequest request);
+    Mono<PurchaseResponse> processPurchase(PurchaseRequest request, String idempotencyKey);
+    Mono<PurchaseResponse> submitPurchase(PurchaseRequest request, String idempotencyKey);
+    Mono<PurchaseResponse> getPurchaseStatus(String transactionId);
+    Mono<BatchPurchaseResponse> processBatch(BatchPurchaseRequest batch);
+    Flux<PurchaseResponse> processStream(Flux<PurchaseRequest> requests, int concurrency);
     Mono<PurchaseResponse> overridePurchase(String transactionId, OverrideRequest overrideRequest);
 }
@@ -1,24 +1,60 @@
 package com.payment.payment.agent.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.payment.payment.agent.admission.PriorityAdmissionScheduler;
+import com.payment.payment.agent.audit.AuditLog;
 import com.payment.payment.agent.audit.AuditService;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.budget.BudgetReservation;
+import com.payment.payment.agent.budget.BudgetService;
+import com.payment.payment.agent.cluster.AgentStateHandoff;
+import com.payment.payment.agent.idempotency.IdempotencyService;
+import com.payment.payment.agent.model.AgentContext;
+import com.payment.payment.agent.model.BatchPurchaseRequest;
+import com.payment.payment.agent.model.BatchPurchaseResponse;
 import com.payment.payment.agent.model.OverrideRequest;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
 import com.payment.payment.agent.model.PurchaseRequest;
 import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.model.VelocitySnapshot;
 import com.payment.payment.agent.pep.PolicyEnforcementPoint;
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
+import com.payment.payment.agent.velocity.VelocityEngine;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
-public class PurchaseServiceImpl implements PurchaseService {
+public class PurchaseServiceImpl implements PurchaseService, AgentStateHandoff {
 
     @Autowired
     private PolicyEnforcementPoint pep;
@@ -32,6 +68,50 @@ public class PurchaseServiceImpl implements PurchaseService {
     @Autowired
     private AuthenticationContextService authenticationContextService;
 
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PaymentExecutionService paymentExecutionService;
+
+    @Autowired
+    private PurchaseWorkQueue purchaseWorkQueue;
+
+    @Autowired
+    private PurchaseStatusService purchaseStatusService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private VelocityEngine velocityEngine;
+
+    @Autowired(required = false)
+    private BudgetService budgetService;
+
+    @Autowired(required = false)
+    private PriorityAdmissionScheduler admissionScheduler;
+
+    @Value("${app.purchase.batch.max-size:50}")
+    private int maxBatchSize = 50;
+
+    // Items of one batch evaluated against OPA at the same time
+    @Value("${app.purchase.batch.concurrency:8}")
+    private int batchConcurrency = 8;
+
+    // Upper bound for the per-stream window a client may request
+    @Value("${app.purchase.stream.max-concurrency:64}")
+    private int maxStreamConcurrency = 64;
+
+    // One audit_log row per transaction stage instead of one per event (see AuditStage)
+    @Value("${app.audit.consolidate:false}")
+    private boolean consolidateAudit = false;
+
+    private static final String STAGE_DECISION = "decision";
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private static final Logger log = LoggerFactory.getLogger(PurchaseServiceImpl.class);
 
@@ -44,59 +124,374 @@ public class PurchaseServiceImpl implements PurchaseService {
         String transactionId = UUID.randomUUID().toString();
         log.info("purchase:start txId={}, request={}", transactionId, safeToString(request));
 
+        return authenticationContextService.getCurrentAgentContext()
+            .flatMap(agentContext -> processAudited(agentContext, request, transactionId));
+    }
+
+    /**
+     * Process a purchase under an Idempotency-Key. Retries with the same key and payload
+     * return the original result (same transaction ID) without re-evaluating or re-auditing.
+     */
+    @Override
+    public Mono<PurchaseResponse> processPurchase(PurchaseRequest request, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return processPurchase(request);
+        }
+        String fingerprint = fingerprint(request);
+        return authenticationContextService.getCurrentAgentContext()
+            .flatMap(agentContext -> idempotencyService.execute(agentContext.getAgentId(), idempotencyKey, fingerprint, () -> {
+                String transactionId = UUID.randomUUID().toString();
+                log.info("purchase:start txId={}, idempotencyKey={}, request={}", transactionId, idempotencyKey, safeToString(request));
+                return processAudited(agentContext, request, transactionId);
+            }));
+    }
+
+    /**
+     * Accept a purchase for asynchronous processing and return PENDING straight away.
+     * The pipeline runs on the bounded purchase work queue; the outcome is available from
+     * {@link #getPurchaseStatus(String)}. With an Idempotency-Key, retries get the same
+     * PENDING response (and transaction ID) instead of queueing a second purchase.
+     */
+    @Override
+    public Mono<PurchaseResponse> submitPurchase(PurchaseRequest request, String idempotencyKey) {
         return authenticationContextService.getCurrentAgentContext()
             .flatMap(agentContext -> {
-                String agentId = agentContext.getAgentId();
-                log.debug("agentId: {}", agentId);
-
-                logAuditEvent(transactionId, "PURCHASE_REQUEST_RECEIVED", request);
-                log.debug("audit: PURCHASE_REQUEST_RECEIVED");
-
-                try {
-                    log.debug("validation:start");
-                    requestValidationService.validatePurchaseRequest(request);
-                    log.debug("validation:ok");
-                } catch (IllegalArgumentException e) {
-                    log.warn("validation:failed txId={}, reason={}", transactionId, e.getMessage());
-                    PurchaseResponse response = new PurchaseResponse();
-                    response.setTransactionId(transactionId);
-                    response.setStatus("INVALID_REQUEST");
-                    response.setMessage("Invalid purchase request: " + e.getMessage());
-                    logAuditEvent(transactionId, "PURCHASE_REQUEST_INVALID", Map.of("error", e.getMessage()));
-                    log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
-                    return Mono.just(response);
+                if (idempotencyKey == null) {
+                    return Mono.fromSupplier(() -> enqueue(agentContext, request));
                 }
+                return idempotencyService.execute(agentContext.getAgentId(), idempotencyKey, fingerprint(request),
+                    () -> Mono.fromSupplier(() -> enqueue(agentContext, request)));
+            });
+    }
 
-                log.debug("policy:evaluate:start txId={}", transactionId);
-                return pep.evaluatePolicy(request, agentId)
-                    .map(decision -> {
-                        boolean allowed = decision.isAllowed();
-                        log.info("policy:evaluate:result txId={} allowed={} explanation={}", transactionId, allowed, decision.getExplanation());
+    private PurchaseResponse enqueue(AgentContext agentContext, PurchaseRequest request) {
+        String transactionId = UUID.randomUUID().toString();
+        String agentId = agentContext.getAgentId();
+        PurchaseResponse pending = new PurchaseResponse();
+        pending.setTransactionId(transactionId);
+        pending.setStatus("PENDING");
+        pending.setMessage("Purchase accepted for processing. Poll GET /api/v1/purchase/" + transactionId + " for the result.");
 
-                        logAuditEvent(transactionId, "POLICY_EVALUATION_COMPLETED", Map.of("allowed", allowed, "agentId", agentId, "explanation", decision.getExplanation()));
+        // Tracked before queueing so a fast worker's result is never overwritten by PENDING
+        purchaseStatusService.track(agentId, pending);
+        try {
+            purchaseWorkQueue.submit(() -> {
+                log.info("purchase:start txId={}, mode=async, request={}", transactionId, safeToString(request));
+                return processAudited(agentContext, request, transactionId)
+                    .onErrorResume(e -> {
+                        logAuditEvent(transactionId, "PURCHASE_FAILED", Map.of("message", String.valueOf(e.getMessage())));
+                        return Mono.just(failedResponse(transactionId, e));
+                    })
+                    .doOnNext(response -> purchaseStatusService.track(agentId, response));
+            });
+        } catch (PurchaseQueueFullException e) {
+            purchaseStatusService.forget(transactionId);
+            log.warn("purchase:async:rejected agentId={} reason=queue_full", agentId);
+            throw e;
+        }
+        logAuditEvent(transactionId, "PURCHASE_ACCEPTED", Map.of("agentId", agentId, "message", pending.getMessage()));
+        log.info("purchase:accepted txId={} agentId={} queued={}", transactionId, agentId, purchaseWorkQueue.waiting());
+        return pending;
+    }
 
-                        PurchaseResponse response = new PurchaseResponse();
-                        response.setTransactionId(transactionId);
+    @Override
+    public Mono<PurchaseResponse> getPurchaseStatus(String transactionId) {
+        return authenticationContextService.getCurrentAgentContext()
+            .flatMap(agentContext -> purchaseStatusService.find(agentContext.getAgentId(), transactionId));
+    }
 
-                        if (allowed) {
-                            log.info("purchase:approved txId={}", transactionId);
-                            response.setStatus("APPROVED");
-                            response.setMessage("Purchase approved by policy and ready for payment processing.");
-                            logAuditEvent(transactionId, "PURCHASE_APPROVED", response);
-                        } else {
-                            log.info("purchase:denied txId={} explanation={}", transactionId, decision.getExplanation());
-                            response.setStatus("DENIED");
-                            response.setMessage("Purchase denied by policy. Owner approval may be possible.");
-                            deniedTransactions.put(transactionId, request);
-                            logAuditEvent(transactionId, "PURCHASE_DENIED", Map.of("message", response.getMessage(), "explanation", decision.getExplanation()));
-                        }
+    /**
+     * Process several purchases with a single context lookup.
+     * Items are evaluated concurrently (bounded), each admitted like a single purchase, and
+     * their audit events are written in one batch.
+     * An item that fails gets an ERROR result like in a stream; the buffered audit events are
+     * written whether the batch completes, fails or is cancelled.
+     */
+    @Override
+    public Mono<BatchPurchaseResponse> processBatch(BatchPurchaseRequest batch) {
+        List<PurchaseRequest> items = batch.getPurchases();
+        if (items == null || items.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("At least one purchase is required"));
+        }
+        if (items.size() > maxBatchSize) {
+            return Mono.error(new IllegalArgumentException(
+                "Batch of " + items.size() + " purchases exceeds the maximum of " + maxBatchSize));
+        }
 
-                        log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
+        return authenticationContextService.getCurrentAgentContext()
+            .flatMap(agentContext -> {
+                log.info("purchase:batch:start agentId={} size={}", agentContext.getAgentId(), items.size());
+                BufferedAuditWriter audit = new BufferedAuditWriter(STAGE_DECISION);
+                return Flux.range(0, items.size())
+                    .flatMapSequential(i -> {
+                        PurchaseRequest item = items.get(i);
+                        String transactionId = UUID.randomUUID().toString();
+                        log.info("purchase:start txId={}, batchIndex={}, request={}", transactionId, i, safeToString(item));
+                        String violation = constraintViolation(item);
+                        if (violation != null) {
+                            return Mono.just(invalidResponse(transactionId, item, violation, audit));
+                        }
+                        return admitted(agentContext, () -> processForAgent(agentContext, item, transactionId, audit))
+                            .onErrorResume(e -> Mono.just(failedResponse(transactionId, e)));
+                    }, batchConcurrency)
+                    .collectList()
+                    .map(results -> {
+                        audit.flush();
+                        BatchPurchaseResponse response = BatchPurchaseResponse.of(results);
+                        log.info("purchase:batch:end agentId={} size={} approved={} denied={} invalid={} failed={}",
+                            agentContext.getAgentId(), response.getTotal(), response.getApproved(),
+                            response.getDenied(), response.getInvalid(), response.getFailed());
                         return response;
-                    });
+                    })
+                    // Decisions already made keep their audit rows if the batch fails or is cancelled
+                    .doFinally(signal -> audit.flush());
+            });
+    }
+
+    /**
+     * Process an open-ended stream of purchases for one agent.
+     * At most {@code concurrency} items are in flight; responses are emitted as soon as each
+     * decision completes (not in request order), so a slow item does not hold up the rest.
+     * Demand is propagated upstream, so a fast client cannot make the server buffer its stream.
+     */
+    @Override
+    public Flux<PurchaseResponse> processStream(Flux<PurchaseRequest> requests, int concurrency) {
+        int window = Math.max(1, Math.min(concurrency, maxStreamConcurrency));
+        return authenticationContextService.getCurrentAgentContext()
+            .flatMapMany(agentContext -> {
+                log.info("purchase:stream:start agentId={} window={}", agentContext.getAgentId(), window);
+                return requests
+                    .flatMap(item -> {
+                        String transactionId = UUID.randomUUID().toString();
+                        log.info("purchase:start txId={}, request={}", transactionId, safeToString(item));
+                        String violation = constraintViolation(item);
+                        Mono<PurchaseResponse> result = violation != null
+                            ? Mono.fromSupplier(() -> invalidResponse(transactionId, item, violation, this::logAuditEvent))
+                            : processAudited(agentContext, item, transactionId);
+                        return result
+                            .onErrorResume(e -> Mono.just(failedResponse(transactionId, e)))
+                            .doOnNext(response -> response.setRequestId(item.getRequestId()));
+                    }, window)
+                    .doOnComplete(() -> log.info("purchase:stream:end agentId={}", agentContext.getAgentId()))
+                    .doOnCancel(() -> log.info("purchase:stream:cancelled agentId={}", agentContext.getAgentId()));
+            });
+    }
+
+    /**
+     * Run the pipeline for one purchase, once admitted by the agent's access level (see
+     * {@link PriorityAdmissionScheduler}). With app.audit.consolidate or the outbox audit mode,
+     * its audit events and outcome are buffered per subscription and written in one call when
+     * the decision stage ends (on success, error or cancel): as a single {@link AuditStage} row
+     * when consolidating, and in one outbox append with the outcome event in outbox mode.
+     */
+    private Mono<PurchaseResponse> processAudited(AgentContext agentContext, PurchaseRequest request, String transactionId) {
+        return admitted(agentContext, () -> runAudited(agentContext, request, transactionId));
+    }
+
+    private Mono<PurchaseResponse> admitted(AgentContext agentContext, Supplier<Mono<PurchaseResponse>> work) {
+        if (admissionScheduler == null) {
+            return work.get();
+        }
+        return admissionScheduler.admit(agentContext.getAccessLevel(), work);
+    }
+
+    private Mono<PurchaseResponse> runAudited(AgentContext agentContext, PurchaseRequest request, String transactionId) {
+        if (!consolidateAudit && !auditService.isOutbox()) {
+            return processForAgent(agentContext, request, transactionId, this::logAuditEvent);
+        }
+        return Mono.deferContextual(ctx -> {
+                BufferedAuditWriter audit = ctx.get(BufferedAuditWriter.class);
+                return processForAgent(agentContext, request, transactionId, audit)
+                    .doOnSuccess(response -> audit.flush())
+                    .doOnError(e -> audit.flush())
+                    .doOnCancel(audit::flush);
+            })
+            // A fresh buffer per subscription
+            .contextWrite(ctx -> ctx.put(BufferedAuditWriter.class, new BufferedAuditWriter(STAGE_DECISION)));
+    }
+
+    private Mono<PurchaseResponse> processForAgent(AgentContext agentContext, PurchaseRequest request,
+                                                   String transactionId, AuditWriter audit) {
+        String agentId = agentContext.getAgentId();
+        log.debug("agentId: {}", agentId);
+
+        // Agent identity always comes from the verified JWT, never from the request body
+        request.setAgentId(agentId);
+        request.setOwnerId(agentContext.getOwnerId());
+
+        audit.write(transactionId, "PURCHASE_REQUEST_RECEIVED", request);
+        log.debug("audit: PURCHASE_REQUEST_RECEIVED");
+
+        try {
+            log.debug("validation:start");
+            requestValidationService.validatePurchaseRequest(request);
+            log.debug("validation:ok");
+        } catch (IllegalArgumentException e) {
+            log.warn("validation:failed txId={}, reason={}", transactionId, e.getMessage());
+            PurchaseResponse response = new PurchaseResponse();
+            response.setTransactionId(transactionId);
+            response.setStatus("INVALID_REQUEST");
+            response.setMessage("Invalid purchase request: " + e.getMessage());
+            audit.write(transactionId, "PURCHASE_REQUEST_INVALID", Map.of("error", e.getMessage()));
+            log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
+            return Mono.just(response);
+        }
+
+        // Velocity limits are enforced here, before OPA; the windows also go to OPA as input.velocity
+        VelocitySnapshot velocity = null;
+        if (velocityEngine != null) {
+            velocity = velocityEngine.record(agentId, request.getMerchant(), request.getAmount());
+            if (!velocity.getExceeded().isEmpty()) {
+                audit.write(transactionId, "VELOCITY_LIMIT_EXCEEDED", Map.of("agentId", agentId, "exceeded", velocity.getExceeded(), "velocity", velocity));
+                return Mono.just(denied(transactionId, request, velocity.getExceeded(), false, audit));
+            }
+        }
+
+        // Held on the agent, delegating agent and owner budgets until the purchase is decided
+        BudgetReservation reservation = budgetService == null ? null : budgetService.reserve(agentContext, request.getAmount());
+        if (reservation != null && !reservation.isGranted()) {
+            audit.write(transactionId, "BUDGET_EXCEEDED", Map.of("agentId", agentId, "exceeded", reservation.getExceeded()));
+            return Mono.just(denied(transactionId, request, List.of(reservation.getExceeded()), false, audit));
+        }
+
+        log.debug("policy:evaluate:start txId={}", transactionId);
+        Mono<PolicyDecision> evaluation = velocity == null
+            ? pep.evaluatePolicy(request, agentContext)
+            : pep.evaluatePolicy(request, agentContext, velocity);
+        Mono<PurchaseResponse> decided = evaluation
+            .flatMap(decision -> {
+                boolean allowed = decision.isAllowed();
+                log.info("policy:evaluate:result txId={} allowed={} explanation={}", transactionId, allowed, decision.getExplanation());
+
+                audit.write(transactionId, "POLICY_EVALUATION_COMPLETED", Map.of("allowed", allowed, "agentId", agentId, "explanation", decision.getExplanation()));
+
+                if (allowed) {
+                    log.info("purchase:approved txId={}", transactionId);
+                    return paymentExecutionService.execute(request, transactionId)
+                        .map(payment -> {
+                            PurchaseResponse response = new PurchaseResponse();
+                            response.setTransactionId(transactionId);
+                            if (payment.isSuccess()) {
+                                response.setStatus("APPROVED");
+                                response.setMessage("Purchase approved by policy and payment completed.");
+                                response.setPaymentReference(payment.getTransactionId());
+                                audit.write(transactionId, "PURCHASE_APPROVED", response);
+                                publishOutcome(PurchaseOutcomeEvent.APPROVED, request, response, audit);
+                            } else {
+                                response.setStatus("PAYMENT_FAILED");
+                                response.setMessage("Purchase approved by policy but " + lowerFirst(payment.getMessage()));
+                                response.setRetryable(payment.isRetryable());
+                                audit.write(transactionId, "PAYMENT_FAILED", Map.of("message", payment.getMessage(), "retryable", payment.isRetryable()));
+                                publishOutcome(PurchaseOutcomeEvent.PAYMENT_FAILED, request, response, audit);
+                            }
+                            log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
+                            return response;
+                        });
+                }
+
+                return Mono.just(denied(transactionId, request, decision.getExplanation(), decision.isFallback(), audit));
+            });
+        return reservation == null ? decided : keepIfApproved(decided, reservation);
+    }
+
+    /**
+     * Keep the budget reservation for an approved purchase; release it for any other
+     * outcome, an error or a cancellation before the outcome
+     */
+    private static Mono<PurchaseResponse> keepIfApproved(Mono<PurchaseResponse> decided, BudgetReservation reservation) {
+        AtomicBoolean settled = new AtomicBoolean();
+        return decided
+            .doOnNext(response -> {
+                settled.set(true);
+                if (!"APPROVED".equals(response.getStatus())) {
+                    reservation.release();
+                }
+            })
+            .doOnError(e -> reservation.release())
+            .doOnCancel(() -> {
+                if (!settled.get()) {
+                    reservation.release();
+                }
             });
     }
 
+    /**
+     * Deny a purchase; the owner can still approve it through an override
+     */
+    private PurchaseResponse denied(String transactionId, PurchaseRequest request, List<String> explanation,
+                                    boolean retryable, AuditWriter audit) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(transactionId);
+        response.setRetryable(retryable);
+        log.info("purchase:denied txId={} explanation={}", transactionId, explanation);
+        response.setStatus("DENIED");
+        response.setMessage("Purchase denied by policy. Owner approval may be possible.");
+        deniedTransactions.put(transactionId, request);
+        audit.write(transactionId, "PURCHASE_DENIED", Map.of("message", response.getMessage(), "explanation", explanation));
+        publishOutcome(PurchaseOutcomeEvent.DENIED, request, response, audit);
+
+        log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
+        return response;
+    }
+
+    private static String lowerFirst(String message) {
+        return message == null || message.isEmpty() ? "payment failed" : Character.toLowerCase(message.charAt(0)) + message.substring(1);
+    }
+
+    /**
+     * Bean-validation check for batch items, which are not covered by @Valid on the controller
+     */
+    private String constraintViolation(PurchaseRequest item) {
+        if (item == null) {
+            return "Purchase request cannot be null";
+        }
+        if (validator == null) {
+            return null;
+        }
+        return validator.validate(item).stream()
+            .map(ConstraintViolation::getMessage)
+            .sorted()
+            .findFirst()
+            .orElse(null);
+    }
+
+    private PurchaseResponse failedResponse(String transactionId, Throwable error) {
+        log.error("purchase:failed txId={} error={}", transactionId, error.getMessage());
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus("ERROR");
+        response.setMessage("Purchase could not be processed. Retry with a new request.");
+        return response;
+    }
+
+    private PurchaseResponse invalidResponse(String transactionId, PurchaseRequest item, String reason, AuditWriter audit) {
+        log.warn("validation:failed txId={}, reason={}", transactionId, reason);
+        if (item != null) {
+            audit.write(transactionId, "PURCHASE_REQUEST_RECEIVED", item);
+        }
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus("INVALID_REQUEST");
+        response.setMessage("Invalid purchase request: " + reason);
+        audit.write(transactionId, "PURCHASE_REQUEST_INVALID", Map.of("error", reason));
+        log.info("purchase:end txId={} status={} message={}", transactionId, response.getStatus(), response.getMessage());
+        return response;
+    }
+
+    /**
+     * Hash of the client-supplied fields; server-populated identity fields are excluded
+     */
+    private String fingerprint(PurchaseRequest request) {
+        ObjectNode node = objectMapper.valueToTree(request);
+        node.remove(List.of("agentId", "ownerId", "requestId"));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(node)));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Unable to fingerprint purchase request", e);
+        }
+    }
+
     private String safeToString(PurchaseRequest request) {
         try {
             return objectMapper.writeValueAsString(request);
@@ -120,34 +515,163 @@ public class PurchaseServiceImpl implements PurchaseService {
                 }
 
                 // Any override request is treated as approval (current design)
-                try {
-                    log.info("override:approved txId={} reason={}", transactionId, overrideRequest.getReason());
-                    PurchaseResponse response = new PurchaseResponse();
-                    response.setTransactionId(transactionId);
-                    response.setStatus("OVERRIDE_APPROVED");
-                    response.setMessage("Purchase override approved by owner: " + overrideRequest.getReason());
-                    logAuditEvent(transactionId, "PURCHASE_OVERRIDE_APPROVED", Map.of("overrider", overrideRequest.getUserId(), "reason", overrideRequest.getReason()));
-                    deniedTransactions.remove(transactionId); // Clean up
-                    return Mono.just(response);
-                } catch (Exception e) {
-                    log.error("override:payment_failed txId={} error={}", transactionId, e.getMessage());
-                    PurchaseResponse response = new PurchaseResponse();
-                    response.setTransactionId(transactionId);
-                    response.setStatus("PAYMENT_FAILED");
-                    response.setMessage("Payment processing failed during override: " + e.getMessage());
-                    logAuditEvent(transactionId, "PURCHASE_OVERRIDE_FAILED", Map.of("error", e.getMessage()));
-                    return Mono.just(response);
-                }
+                log.info("override:approved txId={} reason={}", transactionId, overrideRequest.getReason());
+                return paymentExecutionService.execute(originalRequest, transactionId)
+                    .map(payment -> {
+                        BufferedAuditWriter audit = new BufferedAuditWriter(null);
+                        PurchaseResponse response = new PurchaseResponse();
+                        response.setTransactionId(transactionId);
+                        if (payment.isSuccess()) {
+                            response.setStatus("OVERRIDE_APPROVED");
+                            response.setMessage("Purchase override approved by owner: " + overrideRequest.getReason());
+                            response.setPaymentReference(payment.getTransactionId());
+                            audit.write(transactionId, "PURCHASE_OVERRIDE_APPROVED", Map.of("overrider", overrideRequest.getUserId(), "reason", overrideRequest.getReason()));
+                            deniedTransactions.remove(transactionId); // Clean up
+                            if (budgetService != null) {
+                                budgetService.record(originalRequest.getAgentId(), originalRequest.getOwnerId(), originalRequest.getAmount());
+                            }
+                            purchaseStatusService.update(response);
+                            publishOutcome(PurchaseOutcomeEvent.OVERRIDE_APPROVED, originalRequest, response, audit);
+                        } else {
+                            // Keep the denied transaction so the owner can retry the override
+                            log.error("override:payment_failed txId={} error={}", transactionId, payment.getMessage());
+                            response.setStatus("PAYMENT_FAILED");
+                            response.setMessage("Payment processing failed during override: " + payment.getMessage());
+                            response.setRetryable(payment.isRetryable());
+                            audit.write(transactionId, "PURCHASE_OVERRIDE_FAILED", Map.of("error", payment.getMessage()));
+                            publishOutcome(PurchaseOutcomeEvent.PAYMENT_FAILED, originalRequest, response, audit);
+                        }
+                        audit.flush();
+                        return response;
+                    });
             }));
     }
 
+    // Denied purchases still open to an owner override move with their agent between shards
+
+    @Override
+    public String name() {
+        return "overrides";
+    }
+
+    @Override
+    public Collection<String> agents() {
+        Set<String> agents = new HashSet<>();
+        deniedTransactions.values().forEach(request -> agents.add(request.getAgentId()));
+        return agents;
+    }
+
+    @Override
+    public byte[] release(String agentId) {
+        Map<String, PurchaseRequest> released = new HashMap<>();
+        deniedTransactions.forEach((transactionId, request) -> {
+            if (agentId.equals(request.getAgentId()) && deniedTransactions.remove(transactionId, request)) {
+                released.put(transactionId, request);
+            }
+        });
+        if (released.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(released);
+        } catch (JsonProcessingException e) {
+            deniedTransactions.putAll(released);
+            throw new IllegalStateException("Pending overrides of agent " + agentId + " could not be encoded", e);
+        }
+    }
+
+    @Override
+    public void absorb(String agentId, byte[] state) {
+        try {
+            deniedTransactions.putAll(objectMapper.readValue(state, new TypeReference<Map<String, PurchaseRequest>>() {}));
+        } catch (IOException e) {
+            log.warn("purchase:overrides:unreadable agentId={} error={}", agentId, e.getMessage());
+        }
+    }
+
+    /**
+     * Outcome notification for webhooks; listeners must not block. The outcome also goes to
+     * the audit writer, which stores it with the purchase's audit events in outbox mode.
+     */
+    private void publishOutcome(String type, PurchaseRequest request, PurchaseResponse response, AuditWriter audit) {
+        PurchaseOutcomeEvent event = PurchaseOutcomeEvent.of(type, request, response);
+        audit.outcome(event);
+        eventPublisher.publishEvent(event);
+    }
+
     private void logAuditEvent(String transactionId, String eventType, Object data) {
+        auditService.logEvent(transactionId, eventType, auditDetails(data));
+    }
+
+    private String auditDetails(Object data) {
         try {
-            String details = objectMapper.writeValueAsString(data);
-            auditService.logEvent(transactionId, eventType, details);
+            return objectMapper.writeValueAsString(data);
         } catch (JsonProcessingException e) {
             // Log a serialization failure, but don't fail the operation
-            auditService.logEvent(transactionId, eventType, "{\"error\":\"Failed to serialize audit data.\"}");
+            return "{\"error\":\"Failed to serialize audit data.\"}";
+        }
+    }
+
+    @FunctionalInterface
+    private interface AuditWriter {
+        void write(String transactionId, String eventType, Object data);
+
+        /**
+         * Keep the purchase's outcome event with its audit events. Immediate writers are only
+         * used in direct audit mode, which has no event stream to store it in.
+         */
+        default void outcome(PurchaseOutcomeEvent event) {
+        }
+    }
+
+    /**
+     * Collects the audit events and outcomes of one purchase, or of concurrently processed
+     * batch items, and saves them together
+     */
+    private class BufferedAuditWriter implements AuditWriter {
+        private final Queue<AuditLog> events = new ConcurrentLinkedQueue<>();
+        private final Queue<PurchaseOutcomeEvent> outcomes = new ConcurrentLinkedQueue<>();
+        // Stage the events are consolidated into with app.audit.consolidate; null for one row per event
+        private final String stage;
+
+        BufferedAuditWriter(String stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public void write(String transactionId, String eventType, Object data) {
+            events.add(AuditLog.of(transactionId, eventType, auditDetails(data)));
+        }
+
+        @Override
+        public void outcome(PurchaseOutcomeEvent event) {
+            outcomes.add(event);
+        }
+
+        /**
+         * Write what was buffered since the last flush; safe to call more than once
+         */
+        void flush() {
+            List<AuditLog> rows = new ArrayList<>();
+            for (AuditLog row; (row = events.poll()) != null; ) {
+                rows.add(row);
+            }
+            List<PurchaseOutcomeEvent> outcomeEvents = new ArrayList<>();
+            for (PurchaseOutcomeEvent event; (event = outcomes.poll()) != null; ) {
+                outcomeEvents.add(event);
+            }
+            if (rows.isEmpty() && outcomeEvents.isEmpty()) {
+                return;
+            }
+            if (consolidateAudit && stage != null) {
+                Map<String, List<AuditLog>> byTransaction = new LinkedHashMap<>();
+                rows.forEach(e -> byTransaction.computeIfAbsent(e.getTransactionId(), k -> new ArrayList<>()).add(e));
+                rows = new ArrayList<>(byTransaction.size());
+                for (Map.Entry<String, List<AuditLog>> entry : byTransaction.entrySet()) {
+                    rows.add(AuditStage.consolidate(entry.getKey(), stage, entry.getValue()));
+                }
+            }
+            auditService.logEvents(rows, outcomeEvents);
         }
     }
 }
@@ -0,0 +1,177 @@
+package com.payment.payment.agent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditLogRepository;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Status lookups for GET /api/v1/purchase/{transactionId}.
+ *
+ * Async purchases are tracked in a bounded in-memory index while they are pending and for
+ * a while after they finish, so polling does not touch the database. Anything not in the
+ * index (evicted, expired, processed synchronously or before a restart) is rebuilt from
+ * the transaction's audit trail. Transactions of other agents are reported as not found.
+ */
+@Service
+public class PurchaseStatusService {
+
+    private static final Logger log = LoggerFactory.getLogger(PurchaseStatusService.class);
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Value("${app.purchase.async.status-ttl:1h}")
+    private Duration ttl = Duration.ofHours(1);
+
+    private final Map<String, Entry> index;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Clock clock = Clock.systemUTC();
+
+    public PurchaseStatusService(@Value("${app.purchase.async.status-max-entries:100000}") int maxEntries) {
+        this.index = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Start tracking, or record the latest state of, a transaction owned by agentId
+     */
+    public void track(String agentId, PurchaseResponse response) {
+        synchronized (index) {
+            index.remove(response.getTransactionId());
+            index.put(response.getTransactionId(), new Entry(agentId, response, clock.millis() + ttl.toMillis()));
+        }
+    }
+
+    /**
+     * Record a new state for a transaction that is already tracked (e.g. after an override)
+     */
+    public void update(PurchaseResponse response) {
+        synchronized (index) {
+            Entry entry = index.get(response.getTransactionId());
+            if (entry != null) {
+                index.put(response.getTransactionId(), new Entry(entry.agentId, response, clock.millis() + ttl.toMillis()));
+            }
+        }
+    }
+
+    public void forget(String transactionId) {
+        synchronized (index) {
+            index.remove(transactionId);
+        }
+    }
+
+    /**
+     * Current status of the transaction, or empty when it is unknown or belongs to another agent
+     */
+    public Mono<PurchaseResponse> find(String agentId, String transactionId) {
+        Entry entry = indexed(transactionId);
+        if (entry != null) {
+            return agentId.equals(entry.agentId) ? Mono.just(entry.response) : Mono.empty();
+        }
+        return Mono.fromCallable(() -> AuditStage.expand(auditLogRepository.findByTransactionIdOrderByIdAsc(transactionId)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(events -> Mono.justOrEmpty(fromAuditTrail(agentId, transactionId, events)))
+            .doOnNext(r -> log.debug("purchase:status:audit txId={} status={}", transactionId, r.getStatus()));
+    }
+
+    private Entry indexed(String transactionId) {
+        synchronized (index) {
+            Entry entry = index.get(transactionId);
+            if (entry != null && entry.expiresAtMillis <= clock.millis()) {
+                index.remove(transactionId);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private PurchaseResponse fromAuditTrail(String agentId, String transactionId, List<AuditLog> events) {
+        String owner = null;
+        PurchaseResponse response = null;
+        for (AuditLog event : events) {
+            JsonNode details = readDetails(event.getDetails());
+            String status = statusFor(event.getEventType());
+            if (owner == null && details.hasNonNull("agentId")) {
+                owner = details.get("agentId").asText();
+            }
+            // ACCEPTED is written after queueing, so a fast worker's events can precede it
+            if (status == null || ("PENDING".equals(status) && response != null)) {
+                continue;
+            }
+            response = new PurchaseResponse();
+            response.setTransactionId(transactionId);
+            response.setStatus(status);
+            response.setMessage(details.hasNonNull("message") ? details.get("message").asText() : defaultMessage(status));
+            if (details.hasNonNull("paymentReference")) {
+                response.setPaymentReference(details.get("paymentReference").asText());
+            }
+        }
+        return agentId.equals(owner) ? response : null;
+    }
+
+    private static String statusFor(String eventType) {
+        return switch (eventType) {
+            case "PURCHASE_ACCEPTED" -> "PENDING";
+            case "PURCHASE_REQUEST_RECEIVED", "POLICY_EVALUATION_COMPLETED" -> "PROCESSING";
+            case "PURCHASE_APPROVED" -> "APPROVED";
+            case "PURCHASE_DENIED" -> "DENIED";
+            case "PURCHASE_REQUEST_INVALID" -> "INVALID_REQUEST";
+            case "PAYMENT_FAILED" -> "PAYMENT_FAILED";
+            case "PURCHASE_OVERRIDE_APPROVED" -> "OVERRIDE_APPROVED";
+            case "PURCHASE_FAILED" -> "ERROR";
+            // e.g. PURCHASE_OVERRIDE_FAILED leaves the purchase denied
+            default -> null;
+        };
+    }
+
+    private static String defaultMessage(String status) {
+        return switch (status) {
+            case "PENDING" -> "Purchase accepted and waiting to be processed.";
+            case "PROCESSING" -> "Purchase is being processed.";
+            case "OVERRIDE_APPROVED" -> "Purchase override approved by owner.";
+            case "INVALID_REQUEST" -> "Invalid purchase request.";
+            default -> "Purchase " + status.toLowerCase().replace('_', ' ') + ".";
+        };
+    }
+
+    private JsonNode readDetails(String details) {
+        try {
+            return details == null ? objectMapper.createObjectNode() : objectMapper.readTree(details);
+        } catch (Exception e) {
+            return objectMapper.createObjectNode();
+        }
+    }
+
+    int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private record Entry(String agentId, PurchaseResponse response, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.payment.payment.agent.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded queue for purchases accepted in async mode.
+ *
+ * Submitting never blocks: when {@code capacity} jobs are waiting the submit is
+ * rejected so bursts turn into fast 503s instead of unbounded memory growth.
+ * Up to {@code workers} jobs run at once.
+ */
+@Component
+public class PurchaseWorkQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(PurchaseWorkQueue.class);
+
+    @Value("${app.purchase.async.queue-capacity:1000}")
+    private int capacity = 1000;
+
+    @Value("${app.purchase.async.workers:16}")
+    private int workers = 16;
+
+    private final Sinks.Many<Supplier<Mono<?>>> jobs = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private Disposable subscription;
+
+    @PostConstruct
+    public void start() {
+        subscription = jobs.asFlux()
+            .flatMap(job -> {
+                waiting.decrementAndGet();
+                return Mono.defer(job)
+                    .onErrorResume(e -> {
+                        log.error("purchase:async:job failed error={}", e.getMessage());
+                        return Mono.empty();
+                    });
+            }, workers)
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Queue a job, or throw {@link PurchaseQueueFullException} when the queue is full
+     */
+    public void submit(Supplier<Mono<?>> job) {
+        int current;
+        do {
+            current = waiting.get();
+            if (current >= capacity) {
+                throw new PurchaseQueueFullException("Purchase queue is full (" + capacity + " waiting)");
+            }
+        } while (!waiting.compareAndSet(current, current + 1));
+        // Submits come from many request threads; spin briefly on concurrent emission
+        jobs.emitNext(job, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+}
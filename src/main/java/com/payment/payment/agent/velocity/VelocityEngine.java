@@ -0,0 +1,155 @@
+package com.payment.payment.agent.velocity;
+
+import com.payment.payment.agent.cluster.AgentStateHandoff;
+import com.payment.payment.agent.model.VelocitySnapshot;
+import com.payment.payment.agent.velocity.VelocityWheel.Window;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Purchase velocity per agent, checked before a purchase reaches OPA.
+ *
+ * Every purchase that passes request validation is counted (whatever its outcome, so an
+ * agent that keeps firing stays over the limit) in a {@link VelocityWheel}: purchase count,
+ * amount and distinct merchants over the last minute, hour and day. The purchase is then
+ * checked against the app.velocity.max-* thresholds (0 disables one); one that exceeds any
+ * is denied without calling OPA. Otherwise the snapshot goes to OPA as input.velocity, so
+ * policies can add their own velocity rules.
+ *
+ * Amounts are summed as given, in minor units, whatever the currency. Memory is fixed at
+ * app.velocity.capacity agent rows (584 bytes each); beyond that, the least recently active
+ * agent among a few candidates loses its counts. With agent sharding, an agent's windows
+ * move to its new owner when the ring changes.
+ */
+@Component
+@ConditionalOnProperty(name = "app.velocity.enabled", havingValue = "true", matchIfMissing = true)
+public class VelocityEngine implements AgentStateHandoff {
+
+    private static final Logger log = LoggerFactory.getLogger(VelocityEngine.class);
+
+    @Value("${app.velocity.capacity:16384}")
+    private int capacity = 16384;
+
+    @Value("${app.velocity.max-purchases-per-minute:60}")
+    private long maxPurchasesPerMinute = 60;
+
+    @Value("${app.velocity.max-purchases-per-hour:600}")
+    private long maxPurchasesPerHour = 600;
+
+    @Value("${app.velocity.max-amount-per-hour:0}")
+    private double maxAmountPerHour = 0;
+
+    @Value("${app.velocity.max-amount-per-day:0}")
+    private double maxAmountPerDay = 0;
+
+    @Value("${app.velocity.max-merchants-per-hour:0}")
+    private long maxMerchantsPerHour = 0;
+
+    private VelocityWheel wheel;
+    private Clock clock = Clock.systemUTC();
+
+    @PostConstruct
+    public void init() {
+        wheel = new VelocityWheel(capacity);
+        log.info("velocity:init capacity={} maxPerMinute={} maxPerHour={} maxAmountPerHour={} maxAmountPerDay={} maxMerchantsPerHour={}",
+            capacity, maxPurchasesPerMinute, maxPurchasesPerHour, maxAmountPerHour, maxAmountPerDay, maxMerchantsPerHour);
+    }
+
+    /**
+     * Count a purchase and return the agent's windows including it, with any thresholds exceeded
+     */
+    public VelocitySnapshot record(String agentId, String merchant, Double amount) {
+        long now = clock.millis();
+        long amountMinor = amount == null ? 0L : Math.round(amount * 100);
+        wheel.add(agentId, merchant, amountMinor, now);
+        VelocitySnapshot snapshot = read(agentId, now);
+        List<String> exceeded = snapshot.getExceeded();
+        check(exceeded, "purchases in the last minute", snapshot.getMinute().getCount(), maxPurchasesPerMinute);
+        check(exceeded, "purchases in the last hour", snapshot.getHour().getCount(), maxPurchasesPerHour);
+        check(exceeded, "amount in the last hour", snapshot.getHour().getAmount(), maxAmountPerHour);
+        check(exceeded, "amount in the last day", snapshot.getDay().getAmount(), maxAmountPerDay);
+        check(exceeded, "distinct merchants in the last hour", snapshot.getHour().getDistinctMerchants(), maxMerchantsPerHour);
+        if (!exceeded.isEmpty()) {
+            log.warn("velocity:exceeded agentId={} exceeded={} evictions={}", agentId, exceeded, wheel.evictions());
+        }
+        return snapshot;
+    }
+
+    /**
+     * The agent's current windows, without counting anything
+     */
+    public VelocitySnapshot snapshot(String agentId) {
+        return read(agentId, clock.millis());
+    }
+
+    @Override
+    public String name() {
+        return "velocity";
+    }
+
+    @Override
+    public Collection<String> agents() {
+        return wheel.agents();
+    }
+
+    @Override
+    public byte[] release(String agentId) {
+        long[] slots = wheel.export(agentId, clock.millis());
+        if (slots == null) {
+            return null;
+        }
+        wheel.remove(agentId);
+        ByteBuffer buffer = ByteBuffer.allocate(slots.length * Long.BYTES);
+        buffer.asLongBuffer().put(slots);
+        return buffer.array();
+    }
+
+    @Override
+    public void absorb(String agentId, byte[] state) {
+        long[] slots = new long[state.length / Long.BYTES];
+        ByteBuffer.wrap(state).asLongBuffer().get(slots);
+        wheel.merge(agentId, slots, clock.millis());
+    }
+
+    private VelocitySnapshot read(String agentId, long now) {
+        return VelocitySnapshot.builder()
+            .minute(window(agentId, Window.MINUTE, now))
+            .hour(window(agentId, Window.HOUR, now))
+            .day(window(agentId, Window.DAY, now))
+            .exceeded(new ArrayList<>())
+            .build();
+    }
+
+    private VelocitySnapshot.Window window(String agentId, Window window, long now) {
+        long[] totals = wheel.read(agentId, window, now);
+        return VelocitySnapshot.Window.builder()
+            .count(totals[0])
+            .amount(totals[1] / 100.0)
+            .distinctMerchants(totals[2])
+            .build();
+    }
+
+    private static void check(List<String> exceeded, String what, double value, double limit) {
+        if (limit > 0 && value > limit) {
+            exceeded.add(String.format("%s %s exceeds the agent velocity limit of %s", formatted(value), what, formatted(limit)));
+        }
+    }
+
+    private static String formatted(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
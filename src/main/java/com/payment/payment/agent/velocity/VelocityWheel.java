@@ -0,0 +1,313 @@
+package com.payment.payment.agent.velocity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-agent purchase counters over the last minute, hour and day in one preallocated table.
+ *
+ * Each agent owns a row of three wheels of six slots: 10 seconds (the last minute),
+ * 10 minutes (the last hour) and 4 hours (the last day). A slot holds the slot index it
+ * counts, the purchase count, the amount in minor units and a 64-bit merchant bitmap.
+ * Amounts saturate at {@link Long#MAX_VALUE} instead of wrapping, in a slot and in a
+ * window's sum. A window is the sum of its wheel's slots still in range, so it slides in
+ * steps of one slot.
+ *
+ * Rows are found by open addressing on the agent ID ({@value #PROBES} probes). When all
+ * probed rows belong to other agents, the least recently active one is taken over, so
+ * memory stays at {@code capacity} rows whatever the number of agents; the evicted agent
+ * starts again from zero. Updates are atomic adds and ORs; a slot is recycled by the
+ * writer that first moves it to a new index, and other writers spin until it is zeroed.
+ */
+final class VelocityWheel {
+
+    enum Window {
+        MINUTE(10_000L), HOUR(600_000L), DAY(14_400_000L);
+
+        final long slotMillis;
+
+        Window(long slotMillis) {
+            this.slotMillis = slotMillis;
+        }
+    }
+
+    static final int SLOTS = 6;
+    static final int PROBES = 8;
+
+    private static final int FIELDS = 4;
+    private static final int COUNT = 1;
+    private static final int AMOUNT = 2;
+    private static final int MERCHANTS = 3;
+    private static final int LAST_SEEN = 0;
+    private static final int ROW_LONGS = 1 + Window.values().length * SLOTS * FIELDS;
+    private static final long CLEARING = -1L;
+
+    private final int capacity;
+    private final AtomicReferenceArray<String> owners;
+    private final AtomicLongArray rows;
+    private final AtomicLong evictions = new AtomicLong();
+
+    VelocityWheel(int capacity) {
+        if (capacity < PROBES) {
+            throw new IllegalArgumentException("velocity capacity must be at least " + PROBES);
+        }
+        this.capacity = capacity;
+        this.owners = new AtomicReferenceArray<>(capacity);
+        this.rows = new AtomicLongArray(capacity * ROW_LONGS);
+    }
+
+    /**
+     * Count one purchase of {@code agentId}
+     */
+    void add(String agentId, String merchant, long amountMinor, long nowMillis) {
+        int row = claim(agentId, nowMillis);
+        long amount = Math.max(amountMinor, 0L);
+        long merchantBit = merchant == null ? 0L : 1L << (mix(merchant.hashCode()) & 63);
+        for (Window window : Window.values()) {
+            int slot = slot(row, window, nowMillis / window.slotMillis);
+            if (slot < 0) {
+                continue;
+            }
+            rows.incrementAndGet(slot + COUNT);
+            if (amount != 0) {
+                rows.getAndAccumulate(slot + AMOUNT, amount, VelocityWheel::saturatedAdd);
+            }
+            if (merchantBit != 0) {
+                rows.getAndAccumulate(slot + MERCHANTS, merchantBit, (a, b) -> a | b);
+            }
+        }
+        rows.set(row * ROW_LONGS + LAST_SEEN, nowMillis);
+    }
+
+    /**
+     * The slots of {@code agentId} still in range (index, count, amount and merchant
+     * bitmap for each slot of each wheel, out-of-range slots as zeros), or null for an
+     * agent without a row
+     */
+    long[] export(String agentId, long nowMillis) {
+        int row = find(agentId);
+        if (row < 0) {
+            return null;
+        }
+        long[] slots = new long[ROW_LONGS - 1];
+        for (Window window : Window.values()) {
+            long index = nowMillis / window.slotMillis;
+            for (int s = 0; s < SLOTS; s++) {
+                int base = offset(row, window, s);
+                long tag = rows.get(base);
+                if (tag <= index && tag > index - SLOTS) {
+                    int i = base - row * ROW_LONGS - 1;
+                    slots[i] = tag;
+                    slots[i + COUNT] = rows.get(base + COUNT);
+                    slots[i + AMOUNT] = rows.get(base + AMOUNT);
+                    slots[i + MERCHANTS] = rows.get(base + MERCHANTS);
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Add slots exported by {@link #export} (on this or another instance) to the counts of
+     * {@code agentId}; slots already out of range are ignored
+     */
+    void merge(String agentId, long[] slots, long nowMillis) {
+        if (slots.length != ROW_LONGS - 1) {
+            throw new IllegalArgumentException("velocity slots must have " + (ROW_LONGS - 1) + " values");
+        }
+        int row = claim(agentId, nowMillis);
+        for (Window window : Window.values()) {
+            long index = nowMillis / window.slotMillis;
+            for (int s = 0; s < SLOTS; s++) {
+                int i = (window.ordinal() * SLOTS + s) * FIELDS;
+                long tag = slots[i];
+                if (tag > index || tag <= index - SLOTS) {
+                    continue;
+                }
+                int slot = slot(row, window, tag);
+                if (slot < 0) {
+                    continue;
+                }
+                rows.addAndGet(slot + COUNT, slots[i + COUNT]);
+                rows.getAndAccumulate(slot + AMOUNT, Math.max(slots[i + AMOUNT], 0L), VelocityWheel::saturatedAdd);
+                rows.getAndAccumulate(slot + MERCHANTS, slots[i + MERCHANTS], (a, b) -> a | b);
+            }
+        }
+    }
+
+    /**
+     * Drop the row of {@code agentId}; true if it had one
+     */
+    boolean remove(String agentId) {
+        int row = find(agentId);
+        if (row < 0) {
+            return false;
+        }
+        for (Window window : Window.values()) {
+            for (int s = 0; s < SLOTS; s++) {
+                rows.set(offset(row, window, s), 0L);
+            }
+        }
+        return owners.compareAndSet(row, agentId, null);
+    }
+
+    /**
+     * Agents that currently have a row
+     */
+    List<String> agents() {
+        List<String> agents = new ArrayList<>();
+        for (int row = 0; row < capacity; row++) {
+            String owner = owners.get(row);
+            if (owner != null) {
+                agents.add(owner);
+            }
+        }
+        return agents;
+    }
+
+    /**
+     * Count, amount (minor units) and estimated distinct merchants of {@code agentId} over
+     * {@code window}; zeros for an agent without a row
+     */
+    long[] read(String agentId, Window window, long nowMillis) {
+        int row = find(agentId);
+        if (row < 0) {
+            return new long[3];
+        }
+        long index = nowMillis / window.slotMillis;
+        long count = 0;
+        long amount = 0;
+        long merchants = 0;
+        for (int s = 0; s < SLOTS; s++) {
+            int base = offset(row, window, s);
+            long tag = rows.get(base);
+            if (tag <= index && tag > index - SLOTS) {
+                count += rows.get(base + COUNT);
+                amount = saturatedAdd(amount, rows.get(base + AMOUNT));
+                merchants |= rows.get(base + MERCHANTS);
+            }
+        }
+        return new long[]{count, amount, distinct(merchants)};
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Linear-counting estimate of the distinct values hashed into a 64-bit bitmap
+     */
+    static long distinct(long bitmap) {
+        int zeros = Long.SIZE - Long.bitCount(bitmap);
+        if (zeros == 0) {
+            return Math.round(Long.SIZE * Math.log(Long.SIZE));
+        }
+        return Math.round(-Long.SIZE * Math.log((double) zeros / Long.SIZE));
+    }
+
+    /**
+     * Sum of two non-negative amounts, {@link Long#MAX_VALUE} when it overflows
+     */
+    static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private int find(String agentId) {
+        int start = mix(agentId.hashCode());
+        for (int p = 0; p < PROBES; p++) {
+            int row = Math.floorMod(start + p, capacity);
+            if (agentId.equals(owners.get(row))) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private int claim(String agentId, long nowMillis) {
+        int start = mix(agentId.hashCode());
+        while (true) {
+            int oldest = -1;
+            long oldestSeen = Long.MAX_VALUE;
+            String oldestOwner = null;
+            for (int p = 0; p < PROBES; p++) {
+                int row = Math.floorMod(start + p, capacity);
+                String owner = owners.get(row);
+                if (agentId.equals(owner)) {
+                    return row;
+                }
+                if (owner == null) {
+                    if (owners.compareAndSet(row, null, agentId)) {
+                        rows.set(row * ROW_LONGS + LAST_SEEN, nowMillis);
+                        return row;
+                    }
+                    owner = owners.get(row);
+                    if (agentId.equals(owner)) {
+                        return row;
+                    }
+                }
+                long seen = rows.get(row * ROW_LONGS + LAST_SEEN);
+                if (owner != null && seen < oldestSeen) {
+                    oldest = row;
+                    oldestSeen = seen;
+                    oldestOwner = owner;
+                }
+            }
+            if (oldest >= 0 && owners.compareAndSet(oldest, oldestOwner, agentId)) {
+                // Out-of-range tags make every slot count as empty until it is recycled
+                for (Window window : Window.values()) {
+                    for (int s = 0; s < SLOTS; s++) {
+                        rows.set(offset(oldest, window, s), 0L);
+                    }
+                }
+                rows.set(oldest * ROW_LONGS + LAST_SEEN, nowMillis);
+                evictions.incrementAndGet();
+                return oldest;
+            }
+        }
+    }
+
+    /**
+     * Offset of the slot counting slot index {@code index}, recycled if it still holds an
+     * older index; -1 if the wheel has already moved past it
+     */
+    private int slot(int row, Window window, long index) {
+        int base = offset(row, window, (int) (index % SLOTS));
+        while (true) {
+            long tag = rows.get(base);
+            if (tag == index) {
+                return base;
+            }
+            if (tag > index) {
+                return -1;
+            }
+            if (tag == CLEARING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (rows.compareAndSet(base, tag, CLEARING)) {
+                rows.set(base + COUNT, 0L);
+                rows.set(base + AMOUNT, 0L);
+                rows.set(base + MERCHANTS, 0L);
+                rows.set(base, index);
+                return base;
+            }
+        }
+    }
+
+    private static int offset(int row, Window window, int slot) {
+        return row * ROW_LONGS + 1 + (window.ordinal() * SLOTS + slot) * FIELDS;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
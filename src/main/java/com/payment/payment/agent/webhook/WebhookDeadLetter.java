@@ -0,0 +1,33 @@
+package com.payment.payment.agent.webhook;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * An event that could not be delivered to a webhook endpoint
+ */
+@Entity
+@Table(name = "webhook_dead_letter")
+@Data
+public class WebhookDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String endpointId;  // null when the event was dropped before endpoint lookup
+    private String agentId;
+    private String eventId;
+    private String eventType;
+    private String transactionId;
+    private String payload;
+    private Integer attempts;
+    private String lastError;
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
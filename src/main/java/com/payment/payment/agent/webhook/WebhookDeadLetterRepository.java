@@ -0,0 +1,12 @@
+package com.payment.payment.agent.webhook;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface WebhookDeadLetterRepository extends JpaRepository<WebhookDeadLetter, Long> {
+
+    List<WebhookDeadLetter> findTop100ByAgentIdOrderByIdDesc(String agentId);
+}
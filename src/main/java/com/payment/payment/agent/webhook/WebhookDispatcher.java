@@ -0,0 +1,319 @@
+package com.payment.payment.agent.webhook;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.service.EncryptionService;
+import com.payment.payment.agent.service.KeyedBulkhead;
+import com.payment.payment.agent.service.KeyedBulkhead.BulkheadFullException;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers purchase outcome events to agent webhooks.
+ *
+ * Events wait on a bounded queue and are collected into batches (up to batch-size
+ * events or batch-window-ms). Each batch resolves its endpoints with one query and
+ * posts every endpoint the events addressed to it as one signed request:
+ *
+ *   {"events":[{...},{...}]}
+ *   X-Webhook-Id: delivery id, stable across retries
+ *   X-Webhook-Timestamp: epoch seconds of the attempt
+ *   X-Webhook-Signature: sha256=hex(HMAC-SHA256(secret, timestamp + "." + body))
+ *
+ * Requests share a pooled keep-alive connection pool. At most max-concurrent-per-endpoint
+ * requests are open per endpoint. Timeouts, connection errors, 408, 429 and 5xx are retried
+ * with jittered exponential backoff. Other 4xx, exhausted retries and queue overflow go to
+ * the dead-letter table. The URL is checked again before each attempt (see
+ * {@link WebhookUrlValidator}), so a host that now resolves to an internal address is
+ * dead-lettered instead of called.
+ */
+@Component
+@ConditionalOnProperty(name = "app.webhooks.enabled", havingValue = "true", matchIfMissing = true)
+public class WebhookDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private WebhookEndpointRepository endpointRepository;
+
+    @Autowired
+    private WebhookDeadLetterRepository deadLetterRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    @Autowired
+    private WebhookUrlValidator urlValidator;
+
+    @Value("${app.webhooks.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${app.webhooks.batch-size:50}")
+    private int batchSize = 50;
+
+    @Value("${app.webhooks.batch-window-ms:200}")
+    private long batchWindowMs = 200;
+
+    @Value("${app.webhooks.max-concurrent-per-endpoint:4}")
+    private int maxConcurrentPerEndpoint = 4;
+
+    // Deliveries (including those waiting for a retry) in progress across all endpoints
+    @Value("${app.webhooks.max-in-flight:256}")
+    private int maxInFlight = 256;
+
+    @Value("${app.webhooks.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${app.webhooks.backoff-ms:500}")
+    private long backoffMs = 500;
+
+    @Value("${app.webhooks.max-backoff-ms:30000}")
+    private long maxBackoffMs = 30000;
+
+    @Value("${app.webhooks.timeout-ms:5000}")
+    private long timeoutMs = 5000;
+
+    @Value("${app.webhooks.max-connections:200}")
+    private int maxConnections = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Sinks.Many<PurchaseOutcomeEvent> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger queued = new AtomicInteger();
+    private KeyedBulkhead bulkhead;
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+    private Disposable subscription;
+
+    @PostConstruct
+    public void start() {
+        bulkhead = new KeyedBulkhead(maxConcurrentPerEndpoint);
+        connectionProvider = ConnectionProvider.builder("webhooks")
+            .maxConnections(maxConnections)
+            .maxIdleTime(Duration.ofSeconds(30))
+            .pendingAcquireTimeout(Duration.ofMillis(timeoutMs))
+            .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(timeoutMs, 2000))
+            .responseTimeout(Duration.ofMillis(timeoutMs));
+        webClient = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+
+        subscription = queue.asFlux()
+            .doOnNext(event -> queued.decrementAndGet())
+            .bufferTimeout(batchSize, Duration.ofMillis(batchWindowMs), true)
+            .concatMap(this::resolveDeliveries)
+            .flatMap(this::deliver, maxInFlight)
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    @EventListener
+    public void onPurchaseOutcome(PurchaseOutcomeEvent event) {
+        publish(event);
+    }
+
+    /**
+     * Queue an event for delivery; never blocks the caller
+     */
+    public void publish(PurchaseOutcomeEvent event) {
+        int current;
+        do {
+            current = queued.get();
+            if (current >= queueCapacity) {
+                log.warn("webhook:queue_full eventId={} txId={}", event.getEventId(), event.getTransactionId());
+                deadLetter(null, List.of(event), 0, "Webhook queue full").subscribe();
+                return;
+            }
+        } while (!queued.compareAndSet(current, current + 1));
+        queue.emitNext(event, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private Flux<Delivery> resolveDeliveries(List<PurchaseOutcomeEvent> batch) {
+        Set<String> agentIds = batch.stream().map(PurchaseOutcomeEvent::getAgentId).collect(Collectors.toSet());
+        return Mono.fromCallable(() -> endpointRepository.findByAgentIdInAndActiveTrue(agentIds))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMapIterable(endpoints -> {
+                Map<String, List<WebhookEndpoint>> byAgent = endpoints.stream()
+                    .collect(Collectors.groupingBy(WebhookEndpoint::getAgentId));
+                Map<WebhookEndpoint, List<PurchaseOutcomeEvent>> perEndpoint = new LinkedHashMap<>();
+                for (PurchaseOutcomeEvent event : batch) {
+                    for (WebhookEndpoint endpoint : byAgent.getOrDefault(event.getAgentId(), List.of())) {
+                        if (endpoint.subscribesTo(event.getType())) {
+                            perEndpoint.computeIfAbsent(endpoint, e -> new ArrayList<>()).add(event);
+                        }
+                    }
+                }
+                return perEndpoint.entrySet().stream()
+                    .map(e -> new Delivery(UUID.randomUUID().toString(), e.getKey(), e.getValue()))
+                    .toList();
+            })
+            .onErrorResume(e -> {
+                log.error("webhook:resolve failed events={} error={}", batch.size(), e.getMessage());
+                return Flux.empty();
+            });
+    }
+
+    private Mono<Void> deliver(Delivery delivery) {
+        WebhookEndpoint endpoint = delivery.endpoint();
+        AtomicInteger attempts = new AtomicInteger();
+        String body;
+        String secret;
+        try {
+            body = objectMapper.writeValueAsString(Map.of("events", delivery.events()));
+            secret = encryptionService.decrypt(endpoint.getEncryptedSecret());
+        } catch (Exception e) {
+            return deadLetter(endpoint, delivery.events(), 0, "Unable to prepare delivery: " + e.getMessage());
+        }
+
+        return Mono.defer(() -> {
+                attempts.incrementAndGet();
+                // Resolving the host blocks
+                return Mono.fromRunnable(() -> urlValidator.validate(endpoint.getUrl()))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(bulkhead.run(endpoint.getId(), () -> post(endpoint, delivery.id(), body, secret)));
+            })
+            .retryWhen(Retry.backoff(Math.max(0, maxAttempts - 1), Duration.ofMillis(backoffMs))
+                .maxBackoff(Duration.ofMillis(maxBackoffMs))
+                .jitter(0.5)
+                .filter(WebhookDispatcher::isTransient))
+            .doOnSuccess(v -> log.info("webhook:delivered endpointId={} deliveryId={} events={} attempts={}",
+                endpoint.getId(), delivery.id(), delivery.events().size(), attempts.get()))
+            .onErrorResume(e -> {
+                Throwable cause = Exceptions.isRetryExhausted(e) ? e.getCause() : e;
+                log.warn("webhook:failed endpointId={} deliveryId={} attempts={} error={}",
+                    endpoint.getId(), delivery.id(), attempts.get(), describe(cause));
+                return deadLetter(endpoint, delivery.events(), attempts.get(), describe(cause));
+            });
+    }
+
+    private Mono<Void> post(WebhookEndpoint endpoint, String deliveryId, String body, String secret) {
+        String timestamp = String.valueOf(Instant.now().getEpochSecond());
+        return webClient.post()
+            .uri(endpoint.getUrl())
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-Webhook-Id", deliveryId)
+            .header("X-Webhook-Timestamp", timestamp)
+            .header("X-Webhook-Signature", "sha256=" + sign(secret, timestamp + "." + body))
+            .bodyValue(body)
+            .retrieve()
+            .toBodilessEntity()
+            .then();
+    }
+
+    private Mono<Void> deadLetter(WebhookEndpoint endpoint, List<PurchaseOutcomeEvent> events, int attempts, String error) {
+        return Mono.fromRunnable(() -> {
+                List<WebhookDeadLetter> rows = new ArrayList<>(events.size());
+                for (PurchaseOutcomeEvent event : events) {
+                    WebhookDeadLetter row = new WebhookDeadLetter();
+                    row.setEndpointId(endpoint == null ? null : endpoint.getId());
+                    row.setAgentId(event.getAgentId());
+                    row.setEventId(event.getEventId());
+                    row.setEventType(event.getType());
+                    row.setTransactionId(event.getTransactionId());
+                    row.setPayload(toJson(event));
+                    row.setAttempts(attempts);
+                    row.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+                    rows.add(row);
+                }
+                deadLetterRepository.saveAll(rows);
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .onErrorResume(e -> {
+                log.error("webhook:dead_letter failed events={} error={}", events.size(), e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    static boolean isTransient(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        return error instanceof BulkheadFullException
+            || error instanceof WebClientRequestException
+            || error instanceof TimeoutException;
+    }
+
+    static String sign(String secret, String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to sign webhook payload", e);
+        }
+    }
+
+    private String toJson(PurchaseOutcomeEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            return "{\"eventId\":\"" + event.getEventId() + "\"}";
+        }
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return "HTTP " + response.getStatusCode().value();
+        }
+        return error.getClass().getSimpleName() + ": " + error.getMessage();
+    }
+
+    private record Delivery(String id, WebhookEndpoint endpoint, List<PurchaseOutcomeEvent> events) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.payment.payment.agent.webhook;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+@Entity
+@Table(name = "webhook_endpoint")
+@Data
+public class WebhookEndpoint {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String agentId;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Column(nullable = false)
+    private String encryptedSecret;  // HMAC signing secret, AES-GCM encrypted
+
+    private String eventTypes;  // comma-separated; empty means all events
+
+    @Column(nullable = false)
+    private Boolean active = true;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public List<String> eventTypeList() {
+        if (eventTypes == null || eventTypes.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(eventTypes.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    public boolean subscribesTo(String eventType) {
+        List<String> types = eventTypeList();
+        return types.isEmpty() || types.contains(eventType);
+    }
+}
@@ -0,0 +1,23 @@
+package com.payment.payment.agent.webhook;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WebhookEndpointRepository extends JpaRepository<WebhookEndpoint, String> {
+
+    List<WebhookEndpoint> findByAgentIdAndActiveTrue(String agentId);
+
+    /**
+     * Endpoints for every agent in one dispatch batch
+     */
+    List<WebhookEndpoint> findByAgentIdInAndActiveTrue(Collection<String> agentIds);
+
+    Optional<WebhookEndpoint> findByIdAndAgentId(String id, String agentId);
+
+    long countByAgentIdAndActiveTrue(String agentId);
+}
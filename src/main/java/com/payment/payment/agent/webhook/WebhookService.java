@@ -0,0 +1,118 @@
+package com.payment.payment.agent.webhook;
+
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.model.WebhookRegistration;
+import com.payment.payment.agent.model.WebhookRegistrationRequest;
+import com.payment.payment.agent.service.EncryptionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-agent webhook registration. Each endpoint gets its own signing secret, returned
+ * once at registration and stored encrypted.
+ */
+@Service
+public class WebhookService {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookService.class);
+    private static final Set<String> EVENT_TYPES = Set.of(
+        PurchaseOutcomeEvent.APPROVED, PurchaseOutcomeEvent.DENIED,
+        PurchaseOutcomeEvent.OVERRIDE_APPROVED, PurchaseOutcomeEvent.PAYMENT_FAILED);
+
+    @Autowired
+    private WebhookEndpointRepository endpointRepository;
+
+    @Autowired
+    private WebhookDeadLetterRepository deadLetterRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    @Autowired
+    private WebhookUrlValidator urlValidator;
+
+    @Value("${app.webhooks.max-endpoints-per-agent:5}")
+    private int maxEndpointsPerAgent = 5;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public WebhookRegistration register(String agentId, WebhookRegistrationRequest request) {
+        urlValidator.validate(request.getUrl());
+        List<String> eventTypes = request.getEventTypes() == null ? List.of() : request.getEventTypes();
+        for (String type : eventTypes) {
+            if (!EVENT_TYPES.contains(type)) {
+                throw new IllegalArgumentException("Unknown event type: " + type + " (expected one of " + EVENT_TYPES + ")");
+            }
+        }
+        if (endpointRepository.countByAgentIdAndActiveTrue(agentId) >= maxEndpointsPerAgent) {
+            throw new IllegalArgumentException("An agent can register at most " + maxEndpointsPerAgent + " webhooks");
+        }
+
+        String secret = newSecret();
+        WebhookEndpoint endpoint = new WebhookEndpoint();
+        endpoint.setId(UUID.randomUUID().toString());
+        endpoint.setAgentId(agentId);
+        endpoint.setUrl(request.getUrl());
+        endpoint.setEventTypes(String.join(",", eventTypes));
+        try {
+            endpoint.setEncryptedSecret(encryptionService.encrypt(secret));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to store webhook secret", e);
+        }
+        endpointRepository.save(endpoint);
+        log.info("webhook:registered agentId={} endpointId={} url={}", agentId, endpoint.getId(), endpoint.getUrl());
+
+        WebhookRegistration registration = toRegistration(endpoint);
+        registration.setSecret(secret);
+        return registration;
+    }
+
+    public List<WebhookRegistration> list(String agentId) {
+        return endpointRepository.findByAgentIdAndActiveTrue(agentId).stream()
+            .map(WebhookService::toRegistration)
+            .toList();
+    }
+
+    /**
+     * Deactivate one of the agent's endpoints; false when it does not exist
+     */
+    public boolean delete(String agentId, String endpointId) {
+        return endpointRepository.findByIdAndAgentId(endpointId, agentId)
+            .filter(WebhookEndpoint::getActive)
+            .map(endpoint -> {
+                endpoint.setActive(false);
+                endpointRepository.save(endpoint);
+                log.info("webhook:deleted agentId={} endpointId={}", agentId, endpointId);
+                return true;
+            })
+            .orElse(false);
+    }
+
+    public List<WebhookDeadLetter> deadLetters(String agentId) {
+        return deadLetterRepository.findTop100ByAgentIdOrderByIdDesc(agentId);
+    }
+
+    private String newSecret() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return "whsec_" + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static WebhookRegistration toRegistration(WebhookEndpoint endpoint) {
+        return WebhookRegistration.builder()
+            .id(endpoint.getId())
+            .url(endpoint.getUrl())
+            .eventTypes(endpoint.eventTypeList())
+            .createdAt(endpoint.getCreatedAt())
+            .build();
+    }
+}
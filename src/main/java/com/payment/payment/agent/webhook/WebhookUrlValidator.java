@@ -0,0 +1,88 @@
+package com.payment.payment.agent.webhook;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+
+/**
+ * Checks webhook URLs when they are registered and again before each delivery attempt,
+ * since DNS can change in between. Only https to public addresses is accepted, so an agent
+ * can't make the service post signed payloads into its own network (OPA, cloud metadata,
+ * the database console).
+ */
+@Component
+public class WebhookUrlValidator {
+
+    // Plain http is only meant for local development
+    @Value("${app.webhooks.allow-http:false}")
+    private boolean allowHttp = false;
+
+    // Loopback and private targets are only meant for local development
+    @Value("${app.webhooks.allow-private-addresses:false}")
+    private boolean allowPrivateAddresses = false;
+
+    private HostResolver resolver = InetAddress::getAllByName;
+
+    /**
+     * @throws IllegalArgumentException when the URL may not receive webhooks
+     */
+    public URI validate(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Webhook URL is not a valid URI");
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase();
+        if (!scheme.equals("https") && !(allowHttp && scheme.equals("http"))) {
+            throw new IllegalArgumentException("Webhook URL must use https");
+        }
+        String host = uri.getHost();
+        if (host == null || host.isBlank()) {
+            throw new IllegalArgumentException("Webhook URL must include a host");
+        }
+        if (allowPrivateAddresses) {
+            return uri;
+        }
+        InetAddress[] addresses;
+        try {
+            addresses = resolver.resolve(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Webhook host " + host + " could not be resolved");
+        }
+        // Every address counts: the connection may use any of them
+        for (InetAddress address : addresses) {
+            if (isInternal(address)) {
+                throw new IllegalArgumentException("Webhook host " + host + " resolves to a non-public address");
+            }
+        }
+        return uri;
+    }
+
+    static boolean isInternal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet6Address) {
+            // Unique local fc00::/7, the IPv6 counterpart of the private IPv4 ranges
+            return (bytes[0] & 0xfe) == 0xfc;
+        }
+        // Carrier-grade NAT 100.64.0.0/10
+        return address instanceof Inet4Address && (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64;
+    }
+
+    void setResolver(HostResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    interface HostResolver {
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+}
@@ -0,0 +1,16 @@
+-- Daily budgets above the per-agent limits (budget/BudgetService): a cap across all of an
+-- owner's agents, and agents delegating part of their budget to sub-agents
+CREATE TABLE IF NOT EXISTS owner_budget (
+    owner_id VARCHAR(255) PRIMARY KEY,
+    daily_limit DECIMAL(19, 4) NOT NULL,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS budget_delegation (
+    agent_id VARCHAR(255) PRIMARY KEY,
+    parent_agent_id VARCHAR(255) NOT NULL,
+    daily_limit DECIMAL(19, 4),             -- NULL: only the parent's budget applies
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_budget_delegation_parent ON budget_delegation (parent_agent_id);
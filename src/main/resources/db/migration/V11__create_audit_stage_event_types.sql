@@ -0,0 +1,26 @@
+-- Event types held by each consolidated AUDIT_STAGE row of audit_log, so the audit query
+-- API can filter stage rows by event type through an index instead of searching details.
+-- timestamp is the stage row's, for time-ordered paging and retention.
+CREATE TABLE IF NOT EXISTS audit_stage_event_type (
+    event_type VARCHAR(255) NOT NULL,
+    audit_id BIGINT NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (event_type, audit_id)
+);
+CREATE INDEX IF NOT EXISTS idx_audit_stage_event_type_time ON audit_stage_event_type(event_type, timestamp, audit_id);
+CREATE INDEX IF NOT EXISTS idx_audit_stage_event_type_retention ON audit_stage_event_type(timestamp);
+
+-- Time-ordered paging of event type filters on individual rows
+CREATE INDEX IF NOT EXISTS idx_audit_log_event_type_time ON audit_log(event_type, timestamp, id);
+
+-- Index the stage rows written before this migration. Rows in the compact binary form
+-- can't be read in SQL; they are only found by the other filters.
+INSERT INTO audit_stage_event_type (event_type, audit_id, timestamp)
+SELECT t.event_type, a.id, a.timestamp
+FROM audit_log a
+JOIN (VALUES
+    ('PURCHASE_REQUEST_RECEIVED'), ('PURCHASE_REQUEST_INVALID'), ('POLICY_EVALUATION_COMPLETED'),
+    ('PURCHASE_APPROVED'), ('PURCHASE_DENIED'), ('PURCHASE_FAILED'), ('PAYMENT_FAILED'),
+    ('BUDGET_EXCEEDED'), ('VELOCITY_LIMIT_EXCEEDED')
+) AS t(event_type) ON a.details LIKE '%"eventType":"' || t.event_type || '"%'
+WHERE a.event_type = 'AUDIT_STAGE' AND a.timestamp IS NOT NULL;
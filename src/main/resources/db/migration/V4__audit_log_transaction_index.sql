@@ -0,0 +1,3 @@
+-- Index for purchase status lookups by transaction (H2 compatible)
+CREATE INDEX IF NOT EXISTS idx_audit_log_transaction_id
+ON audit_log(transaction_id);
@@ -0,0 +1,30 @@
+-- Agent webhook endpoints for purchase outcome events
+CREATE TABLE IF NOT EXISTS webhook_endpoint (
+    id VARCHAR(36) PRIMARY KEY,
+    agent_id VARCHAR(255) NOT NULL,
+    url VARCHAR(2048) NOT NULL,
+    encrypted_secret TEXT NOT NULL,
+    event_types VARCHAR(500),  -- comma-separated; empty means all events
+    active BOOLEAN NOT NULL DEFAULT true,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_endpoint_agent
+ON webhook_endpoint(agent_id);
+
+-- Events that could not be delivered after all retries
+CREATE TABLE IF NOT EXISTS webhook_dead_letter (
+    id BIGSERIAL PRIMARY KEY,
+    endpoint_id VARCHAR(36),
+    agent_id VARCHAR(255) NOT NULL,
+    event_id VARCHAR(36) NOT NULL,
+    event_type VARCHAR(100) NOT NULL,
+    transaction_id VARCHAR(255),
+    payload TEXT NOT NULL,
+    attempts INT NOT NULL,
+    last_error VARCHAR(1000),
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_dead_letter_agent
+ON webhook_dead_letter(agent_id);
@@ -0,0 +1,20 @@
+-- Transactional outbox for audit and domain events (app.audit.mode=outbox)
+CREATE TABLE IF NOT EXISTS outbox_event (
+    id BIGSERIAL PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL,  -- 'audit' (relayed to audit_log) or 'domain' (relayed to the event sink)
+    aggregate_id VARCHAR(255),  -- transaction ID
+    event_type VARCHAR(255) NOT NULL,
+    payload TEXT,
+    occurred_at TIMESTAMP WITHOUT TIME ZONE NOT NULL,  -- event time, becomes audit_log.timestamp
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL    -- insert time, used by the relay's gap check
+);
+
+-- Last outbox_event.id each relay consumer has processed
+CREATE TABLE IF NOT EXISTS outbox_checkpoint (
+    consumer VARCHAR(100) PRIMARY KEY,
+    last_id BIGINT NOT NULL,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO outbox_checkpoint (consumer, last_id) VALUES ('audit_log', 0);
+INSERT INTO outbox_checkpoint (consumer, last_id) VALUES ('event_sink', 0);
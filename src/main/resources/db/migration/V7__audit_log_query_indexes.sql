@@ -0,0 +1,7 @@
+-- Owning agent of an audit row, copied from the event details on write
+ALTER TABLE audit_log ADD COLUMN IF NOT EXISTS agent_id VARCHAR(255);
+
+-- Audit query API: every filter is paired with id for keyset pagination
+CREATE INDEX IF NOT EXISTS idx_audit_log_agent_id ON audit_log(agent_id, id);
+CREATE INDEX IF NOT EXISTS idx_audit_log_event_type ON audit_log(event_type, id);
+CREATE INDEX IF NOT EXISTS idx_audit_log_timestamp ON audit_log(timestamp, id);
@@ -0,0 +1,18 @@
+-- Snapshots of the in-memory spend aggregates (analytics/SpendAggregator), one row per
+-- instance, series and time bucket
+CREATE TABLE IF NOT EXISTS spend_aggregate (
+    node_id VARCHAR(100) NOT NULL,
+    dimension VARCHAR(20) NOT NULL,         -- AGENT, OWNER or MERCHANT
+    key_id VARCHAR(255) NOT NULL,
+    currency VARCHAR(3) NOT NULL,
+    granularity VARCHAR(10) NOT NULL,       -- MINUTE, HOUR or DAY
+    bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    approved_count BIGINT NOT NULL,
+    approved_amount DECIMAL(19, 4) NOT NULL,
+    denied_count BIGINT NOT NULL,
+    failed_count BIGINT NOT NULL,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (node_id, dimension, key_id, currency, granularity, bucket_start)
+);
+
+CREATE INDEX IF NOT EXISTS idx_spend_aggregate_bucket ON spend_aggregate (granularity, bucket_start);
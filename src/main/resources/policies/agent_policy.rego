@@ -43,8 +43,8 @@ deny_reasons contains reason if {
 }
 
 # Check agent spending limits
-check_agent_spend_limit := sprintf("Purchase amount %v exceeds agent limit of %v", [input.purchase.amount, get_agent_limit(input.user.id)]) if {
-    input.purchase.amount > get_agent_limit(input.user.id)
+check_agent_spend_limit := sprintf("Purchase amount %v exceeds agent limit of %v", [input.purchase.amount, agent_limit]) if {
+    input.purchase.amount > agent_limit
 } else := ""
 
 # Digital goods only policy for agents  
@@ -54,7 +54,7 @@ check_digital_goods_only := sprintf("Agent can only purchase from digital goods
 
 # Check agent capabilities
 check_agent_capabilities := sprintf("Agent lacks required capability for merchant '%v'", [input.purchase.merchant]) if {
-    not agent_has_capability(input.user.id, required_capability_for_merchant(input.purchase.merchant))
+    not agent_has_capability(required_capability_for_merchant(input.purchase.merchant))
 } else := ""
 
 # Time-based restrictions for agents (e.g., no purchases during maintenance hours)
@@ -64,47 +64,21 @@ check_time_restrictions := "Agent purchases restricted during maintenance window
     hour < 4
 } else := ""
 
-# Get spending limit for agent with default fallback
-get_agent_limit(agent_id) := limit if {
-    limit := agent_limits[agent_id]
+# Per-transaction limit comes from the verified agent claims in the input,
+# with a conservative fallback for agents that have no limit configured
+agent_limit := input.user.perTransactionLimit if {
+    is_number(input.user.perTransactionLimit)
 } else := 500
 
-# Agent-specific spending limits
-agent_limits := {
-    "demo-agent-001": 1000,
-    "openai-agent-123": 2000,
-    "claude-agent-456": 1500,
-    "production-agent-789": 5000
-}
-
-# Digital goods merchants (courses, templates, designs, API credits)
-digital_goods_merchants := {
-    "udemy",
-    "coursera", 
-    "envato_market",
-    "creative_market",
-    "openai_api",
-    "anthropic_api",
-    "replicate_api",
-    "figma_templates",
-    "notion_templates"
-}
-
-# Helper function to check if merchant sells digital goods
+# Digital goods merchants (courses, templates, designs, API credits) are
+# reference data pushed by OpaReferenceDataSyncService to data.reference
 is_digital_goods_merchant(merchant) if {
-    digital_goods_merchants[merchant]
-}
-
-# Agent capabilities mapping
-agent_capabilities := {
-    "demo-agent-001": ["digital_goods", "api_calls"],
-    "openai-agent-123": ["digital_goods", "api_calls", "subscriptions"], 
-    "claude-agent-456": ["digital_goods"]
+    data.reference.digital_goods_merchants[merchant]
 }
 
-# Helper function to check agent capabilities
-agent_has_capability(agent_id, capability) if {
-    agent_capabilities[agent_id][_] == capability
+# Capabilities come from the verified agent claims in the input
+agent_has_capability(capability) if {
+    input.user.capabilities[_] == capability
 }
 
 # Required capability for each merchant
@@ -0,0 +1,186 @@
+package com.payment.payment.agent.admission;
+
+import com.payment.payment.agent.admission.ConcurrencyLimiter.Outcome;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the adaptive concurrency limit and the load-shedding filter
+ */
+class ConcurrencyLimiterTest {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BASE_RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void tryAcquire_RejectsOverTheLimitWithoutWaiting() {
+        // Given
+        ConcurrencyLimiter limiter = limiter(2, 200);
+
+        // When
+        boolean first = limiter.tryAcquire();
+        boolean second = limiter.tryAcquire();
+        boolean third = limiter.tryAcquire();
+        limiter.release(0, Outcome.IGNORED);
+        boolean afterRelease = limiter.tryAcquire();
+
+        // Then
+        assertTrue(first && second && afterRelease);
+        assertFalse(third);
+        assertEquals(3, limiter.accepted());
+        assertEquals(1, limiter.rejected());
+    }
+
+    @Test
+    void steadyLatencyUnderFullLoad_GrowsTheLimit() {
+        // Given
+        ConcurrencyLimiter limiter = limiter(10, 100);
+
+        // When - the limit is used up and latency doesn't change
+        for (int w = 0; w < 200; w++) {
+            runWindow(limiter, limiter.limit(), BASE_RTT);
+        }
+
+        // Then
+        assertEquals(100, limiter.limit());
+    }
+
+    @Test
+    void slowDependency_KeepsTheLimitNearWhatItServes() {
+        // Given - a dependency serving 40 requests at a time; beyond that requests queue
+        ConcurrencyLimiter limiter = limiter(20, 1000);
+
+        // When - demand always exceeds the limit
+        int peak = 0;
+        for (int w = 0; w < 300; w++) {
+            int inflight = limiter.limit();
+            runWindow(limiter, inflight, BASE_RTT * Math.max(1, inflight) / 40);
+            peak = Math.max(peak, limiter.limit());
+        }
+        int settled = limiter.limit();
+        // the dependency slows down to serving 10 at a time
+        for (int w = 0; w < 100; w++) {
+            int inflight = limiter.limit();
+            runWindow(limiter, inflight, BASE_RTT * Math.max(10, inflight) / 10);
+        }
+        int slowed = limiter.limit();
+
+        // Then - the limit stays near what the dependency serves instead of growing unbounded,
+        // so latency (and with it goodput) stays near its best
+        assertTrue(settled >= 30 && settled <= 100, "settled at " + settled);
+        assertTrue(peak <= 120, "peak " + peak);
+        assertTrue(slowed < settled / 2, "slowed to " + slowed);
+    }
+
+    @Test
+    void drops_BackOffTheLimit() {
+        // Given
+        ConcurrencyLimiter limiter = limiter(50, 100);
+
+        // When - a window of failed requests
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        now.addAndGet(WINDOW);
+        for (int i = 0; i < 20; i++) {
+            limiter.release(now.get() - BASE_RTT, Outcome.DROPPED);
+        }
+
+        // Then
+        assertEquals(49, limiter.limit());
+    }
+
+    @Test
+    void filter_AnswersRequestsOverTheLimitWith503() {
+        // Given - a purchase limit of one, taken by a request still in progress
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter();
+        ReflectionTestUtils.setField(filter, "purchaseInitialLimit", 1);
+        ReflectionTestUtils.setField(filter, "minLimit", 1);
+        filter.init();
+        AtomicInteger reachedHandler = new AtomicInteger();
+        Disposable inProgress = filter.filter(purchase("/api/v1/purchase"), exchange -> {
+            reachedHandler.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+
+        // When
+        MockServerWebExchange rejected = purchase("/api/v1/purchase");
+        filter.filter(rejected, exchange -> {
+            reachedHandler.incrementAndGet();
+            return Mono.empty();
+        }).block();
+        MockServerWebExchange token = purchase("/api/v1/auth/token");
+        filter.filter(token, exchange -> {
+            reachedHandler.incrementAndGet();
+            return Mono.empty();
+        }).block();
+        inProgress.dispose();
+
+        // Then - the token endpoint has its own limit
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+        assertEquals("1", rejected.getResponse().getHeaders().getFirst("Retry-After"));
+        assertTrue(rejected.getResponse().getBodyAsString().block().contains("\"status\":\"BUSY\""));
+        assertEquals(2, reachedHandler.get());
+        assertEquals(0, filter.status().get(0).getInflight());
+        assertEquals(1, filter.status().get(0).getRejected());
+    }
+
+    @Test
+    void outcome_ShedResponsesAreNotDrops() {
+        // Given - a purchase shed by the full queue behind the filter, and a failed one
+        MockServerHttpResponse shed = new MockServerHttpResponse();
+        shed.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        shed.getHeaders().set("Retry-After", "1");
+        MockServerHttpResponse unavailable = new MockServerHttpResponse();
+        unavailable.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        MockServerHttpResponse ok = new MockServerHttpResponse();
+        ok.setStatusCode(HttpStatus.OK);
+
+        // Then
+        assertEquals(Outcome.IGNORED, ConcurrencyLimitFilter.outcome(SignalType.ON_COMPLETE, shed));
+        assertEquals(Outcome.DROPPED, ConcurrencyLimitFilter.outcome(SignalType.ON_COMPLETE, unavailable));
+        assertEquals(Outcome.DROPPED, ConcurrencyLimitFilter.outcome(SignalType.ON_ERROR, shed));
+        assertEquals(Outcome.COMPLETED, ConcurrencyLimitFilter.outcome(SignalType.ON_COMPLETE, ok));
+    }
+
+    /**
+     * One sample window: rounds of {@code inflight} requests each taking {@code rtt}, enough
+     * for the window's minimum number of samples
+     */
+    private void runWindow(ConcurrencyLimiter limiter, int inflight, long rtt) {
+        int rounds = (10 + inflight - 1) / inflight;
+        for (int r = 0; r < rounds; r++) {
+            int acquired = 0;
+            for (int i = 0; i < inflight && limiter.tryAcquire(); i++) {
+                acquired++;
+            }
+            now.addAndGet(r == rounds - 1 ? Math.max(rtt, WINDOW) : 0);
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(now.get() - rtt, Outcome.COMPLETED);
+            }
+        }
+    }
+
+    private ConcurrencyLimiter limiter(int initial, int max) {
+        return new ConcurrencyLimiter(initial, 1, max, 0.2, 1.5, 600, WINDOW, now::get);
+    }
+
+    private static MockServerWebExchange purchase(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post(path));
+    }
+}
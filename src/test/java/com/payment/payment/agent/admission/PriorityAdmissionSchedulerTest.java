@@ -0,0 +1,192 @@
+package com.payment.payment.agent.admission;
+
+import com.payment.payment.agent.model.AdmissionClassStatus;
+import com.payment.payment.agent.service.PurchaseQueueFullException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for priority admission by access level: reserved slots, weighted round robin,
+ * sandbox yielding, queue limits and queue-wait metrics
+ */
+class PriorityAdmissionSchedulerTest {
+
+    private PriorityAdmissionScheduler scheduler;
+    private final AtomicLong now = new AtomicLong();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final List<Sinks.Empty<Void>> running = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // 10 slots: 2 reserved for premium, 2 for production, 6 shared
+        scheduler = scheduler(10, 200, 60_000);
+    }
+
+    @Test
+    void sandbox_IsCappedAtTheSharedSlotsSoReservedOnesStayFree() {
+        // When
+        for (int i = 0; i < 8; i++) {
+            submit("sandbox", "s" + i);
+        }
+        submit("premium", "p0");
+        submit("premium", "p1");
+        submit("production", "r0");
+        submit("production", "r1");
+
+        // Then - six sandbox purchases run, paying ones start at once on their reserved slots
+        assertEquals(List.of("s0", "s1", "s2", "s3", "s4", "s5", "p0", "p1", "r0", "r1"), started);
+        assertEquals(2, status("sandbox").getQueued());
+    }
+
+    @Test
+    void contention_ServesPayingClassesByWeightAndSandboxLast() {
+        // Given - every slot busy, then a backlog of every class
+        for (int i = 0; i < 8; i++) {
+            submit("premium", "busy" + i);
+        }
+        submit("production", "busy8");
+        submit("production", "busy9");
+        for (int i = 0; i < 4; i++) {
+            submit("sandbox", "s" + i);
+            submit("production", "r" + i);
+            submit("premium", "p" + i);
+        }
+        started.clear();
+
+        // When - slots free up one at a time
+        for (int i = 0; i < 12; i++) {
+            finishOldest();
+        }
+
+        // Then - premium:production 3:1 while both wait, sandbox only once neither does
+        assertEquals(List.of("p0", "p1", "r0", "p2", "p3", "r1", "r2", "r3", "s0", "s1", "s2", "s3"), started);
+    }
+
+    @Test
+    void reservedSlots_AreUsedByTheirClassEvenWhenSharedOnesAreTaken() {
+        // Given - production holds its reserved slots and all shared ones
+        for (int i = 0; i < 8; i++) {
+            submit("production", "r" + i);
+        }
+        submit("production", "waiting");
+
+        // When
+        submit("premium", "p0");
+        submit("sandbox", "s0");
+
+        // Then
+        assertTrue(started.contains("p0"));
+        assertFalse(started.contains("waiting"));
+        assertFalse(started.contains("s0"));
+        assertEquals(1, status("production").getQueued());
+        assertEquals(1, status("sandbox").getQueued());
+    }
+
+    @Test
+    void fullQueueAndLongWaits_AreRejected() {
+        // Given - all 6 slots busy, a queue of one per class and a 50 ms wait
+        scheduler = scheduler(6, 1, 50);
+        for (int i = 0; i < 4; i++) {
+            submit("premium", "busy" + i);
+        }
+        submit("production", "busy4");
+        submit("production", "busy5");
+        submit("sandbox", "queued");
+
+        // When
+        PurchaseQueueFullException full = assertThrows(PurchaseQueueFullException.class,
+            () -> scheduler.admit("sandbox", () -> Mono.just("over")).block());
+        PurchaseQueueFullException waited = assertThrows(PurchaseQueueFullException.class,
+            () -> scheduler.admit("production", () -> Mono.just("late")).block());
+
+        // Then
+        assertEquals("sandbox purchase queue is full (1 waiting)", full.getMessage());
+        assertEquals("production purchase waited 50 ms for capacity", waited.getMessage());
+        assertTrue(status("sandbox").getRejected() >= 1);
+        assertEquals(1, status("production").getRejected());
+        assertEquals(0, status("production").getQueued());
+    }
+
+    @Test
+    void cancelledAndFinishedPurchases_GiveBackTheirPlaceAndSlot() {
+        // Given - all slots busy and a waiting premium purchase
+        for (int i = 0; i < 8; i++) {
+            submit("production", "busy" + i);
+        }
+        submit("premium", "busy8");
+        submit("premium", "busy9");
+        Disposable cancelled = scheduler.admit("premium", () -> record("cancelled")).subscribe();
+        submit("premium", "p0");
+
+        // When
+        cancelled.dispose();
+        scheduler.admit("premium", () -> Mono.error(new IllegalStateException("OPA down"))).subscribe(v -> { }, e -> { });
+        finishOldest();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        finishOldest();
+
+        // Then - the failed purchase still returned its slot
+        assertFalse(started.contains("cancelled"));
+        assertTrue(started.contains("p0"));
+        AdmissionClassStatus premium = status("premium");
+        assertEquals(0, premium.getQueued());
+        assertEquals(3, premium.getRunning());
+        assertEquals(4, premium.getAdmitted());
+        assertEquals(40.0, premium.getWaitMaxMillis(), 2.0);
+    }
+
+    @Test
+    void accessLevels_MapToClassesWithUnknownAsSandbox() {
+        assertEquals(PriorityAdmissionScheduler.PriorityClass.PREMIUM, PriorityAdmissionScheduler.PriorityClass.of("Premium"));
+        assertEquals(PriorityAdmissionScheduler.PriorityClass.PRODUCTION, PriorityAdmissionScheduler.PriorityClass.of("production"));
+        assertEquals(PriorityAdmissionScheduler.PriorityClass.SANDBOX, PriorityAdmissionScheduler.PriorityClass.of(null));
+        assertEquals(PriorityAdmissionScheduler.PriorityClass.SANDBOX, PriorityAdmissionScheduler.PriorityClass.of("trial"));
+    }
+
+    private PriorityAdmissionScheduler scheduler(int capacity, int maxQueue, long maxWaitMillis) {
+        PriorityAdmissionScheduler created = new PriorityAdmissionScheduler();
+        ReflectionTestUtils.setField(created, "capacity", capacity);
+        ReflectionTestUtils.setField(created, "premiumReserved", 2);
+        ReflectionTestUtils.setField(created, "productionReserved", 2);
+        ReflectionTestUtils.setField(created, "maxQueue", maxQueue);
+        ReflectionTestUtils.setField(created, "maxWaitMillis", maxWaitMillis);
+        created.init();
+        created.setNanoClock(now::get);
+        return created;
+    }
+
+    /**
+     * Admit a purchase that runs until {@link #finishOldest()} completes it
+     */
+    private void submit(String accessLevel, String name) {
+        scheduler.admit(accessLevel, () -> record(name)).subscribe(v -> { }, e -> { });
+    }
+
+    private Mono<Void> record(String name) {
+        started.add(name);
+        Sinks.Empty<Void> done = Sinks.empty();
+        running.add(done);
+        return done.asMono();
+    }
+
+    private void finishOldest() {
+        running.remove(0).tryEmitEmpty();
+    }
+
+    private AdmissionClassStatus status(String accessLevel) {
+        List<AdmissionClassStatus> all = new ArrayList<>(scheduler.status());
+        return all.stream().filter(s -> s.getAccessLevel().equals(accessLevel)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,199 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.analytics.ColumnarFormat.Column;
+import com.payment.payment.agent.analytics.ColumnarFormat.Type;
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditQueryRepository;
+import com.payment.payment.agent.audit.AuditStage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the columnar audit export against an embedded H2 database with the real migrations
+ * Covers partitioning, typed detail columns, the high-water mark and the file format
+ */
+class AuditExportJobTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 2, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AuditExportJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V1__create_tables.sql")
+            .addScript("db/migration/V4__audit_log_transaction_index.sql")
+            .addScript("db/migration/V7__audit_log_query_indexes.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        AuditQueryRepository repository = new AuditQueryRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+
+        job = new AuditExportJob();
+        ReflectionTestUtils.setField(job, "auditQueryRepository", repository);
+        ReflectionTestUtils.setField(job, "dir", dir.toString());
+        ReflectionTestUtils.setField(job, "pageSize", 4);
+        job.setClock(Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void export_PartitionsByDayAndEventTypeWithTypedDetailColumns() throws IOException {
+        // Given - purchases on two days, one of them consolidated
+        insertPurchase("tx-1", NOW.minusDays(1), "udemy", 25.0, true);
+        insertPurchase("tx-2", NOW.minusDays(1), "envato_market", 40.5, false);
+        insert(AuditStage.consolidate("tx-3", "decision", List.of(
+            event("tx-3", "PURCHASE_REQUEST_RECEIVED", "{\"merchant\":\"udemy\",\"amount\":12,\"quantity\":2}", NOW.minusHours(1)),
+            event("tx-3", "POLICY_EVALUATION_COMPLETED", "{\"allowed\":true,\"agentId\":\"agent-1\",\"decision\":{\"risk\":3}}", NOW.minusHours(1)))));
+
+        // When
+        long exported = job.export();
+
+        // Then
+        assertEquals(5, exported);
+        assertEquals(List.of(
+            "day=2025-06-01/event_type=POLICY_EVALUATION_COMPLETED",
+            "day=2025-06-01/event_type=PURCHASE_REQUEST_RECEIVED",
+            "day=2025-06-02/event_type=POLICY_EVALUATION_COMPLETED",
+            "day=2025-06-02/event_type=PURCHASE_REQUEST_RECEIVED"), partitions());
+
+        Map<String, Column> received = ColumnarFormat.read(file("day=2025-06-01/event_type=PURCHASE_REQUEST_RECEIVED"), null);
+        assertEquals(List.of("id", "transaction_id", "agent_id", "event_type", "timestamp", "details.merchant", "details.amount"),
+            List.copyOf(received.keySet()));
+        assertEquals(Type.DOUBLE, received.get("details.amount").type());
+        assertEquals(Arrays.asList(25.0, 40.5), received.get("details.amount").values());
+        assertEquals(List.of("udemy", "envato_market"), received.get("details.merchant").values());
+        assertEquals(NOW.minusDays(1).toInstant(ZoneOffset.UTC).toEpochMilli(), received.get("timestamp").values().get(0));
+
+        Map<String, Column> policy = ColumnarFormat.read(file("day=2025-06-01/event_type=POLICY_EVALUATION_COMPLETED"), null);
+        assertEquals(Type.BOOLEAN, policy.get("details.allowed").type());
+        assertEquals(Arrays.asList(true, false), policy.get("details.allowed").values());
+        assertEquals(Arrays.asList("agent-1", null), policy.get("agent_id").values());
+
+        Map<String, Column> stage = ColumnarFormat.read(file("day=2025-06-02/event_type=POLICY_EVALUATION_COMPLETED"), null);
+        assertEquals(Type.LONG, stage.get("details.decision.risk").type());
+        assertEquals(List.of(3L), stage.get("details.decision.risk").values());
+    }
+
+    @Test
+    void export_ContinuesFromTheCheckpointAndWaitsForRecentRows() throws IOException {
+        // Given - one exported purchase, then one new and one not yet settled
+        insertPurchase("tx-1", NOW.minusHours(2), "udemy", 25.0, true);
+        assertEquals(2, job.export());
+        insertPurchase("tx-2", NOW.minusHours(1), "udemy", 30.0, true);
+        insertPurchase("tx-3", NOW.minusSeconds(5), "udemy", 35.0, true);
+
+        // When
+        long second = job.export();
+
+        // Then
+        assertEquals(2, second);
+        assertEquals(4, job.checkpoint());
+        List<Object> amounts = new ArrayList<>();
+        for (Path file : files()) {
+            Column amount = ColumnarFormat.read(file, Set.of("details.amount")).get("details.amount");
+            if (amount != null) {
+                amounts.addAll(amount.values());
+            }
+        }
+        assertEquals(List.of(25.0, 30.0), amounts.stream().sorted().toList());
+        assertEquals(0, job.export());
+    }
+
+    @Test
+    void export_LargeBacklog_IsWrittenInBoundedFiles() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(job, "maxRowsPerFile", 10);
+        for (int i = 0; i < 13; i++) {
+            insertPurchase("tx-" + i, NOW.minusHours(1), "udemy", i, true);
+        }
+
+        // When
+        long exported = job.export();
+
+        // Then - 26 rows in batches of 10, 10 and 6, two event types each
+        assertEquals(26, exported);
+        assertEquals(6, files().size());
+        assertEquals(26, job.checkpoint());
+        long rows = 0;
+        for (Path file : files()) {
+            rows += ColumnarFormat.read(file, Set.of("id")).get("id").values().size();
+        }
+        assertEquals(26, rows);
+    }
+
+    @Test
+    void typed_MixedValues_WidenToTheNarrowestCommonType() {
+        assertEquals(Type.LONG, AuditExportJob.typed("c", Arrays.asList(1L, null, 2L)).type());
+        assertEquals(Arrays.asList(1.0, 2.5), AuditExportJob.typed("c", Arrays.asList(1L, 2.5)).values());
+        assertEquals(Arrays.asList("1", "true"), AuditExportJob.typed("c", Arrays.asList(1L, true)).values());
+    }
+
+    private List<String> partitions() throws IOException {
+        return files().stream().map(f -> dir.relativize(f.getParent()).toString()).distinct().sorted().toList();
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(f -> f.toString().endsWith(ColumnarFormat.FILE_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private Path file(String partition) throws IOException {
+        try (Stream<Path> files = Files.list(dir.resolve(partition))) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    private void insertPurchase(String transactionId, LocalDateTime at, String merchant, double amount, boolean allowed) {
+        insert(event(transactionId, "PURCHASE_REQUEST_RECEIVED",
+            "{\"merchant\":\"" + merchant + "\",\"amount\":" + amount + "}", at));
+        insert(event(transactionId, "POLICY_EVALUATION_COMPLETED",
+            "{\"allowed\":" + allowed + (allowed ? ",\"agentId\":\"agent-1\"" : "") + "}", at));
+    }
+
+    private static AuditLog event(String transactionId, String eventType, String details, LocalDateTime at) {
+        AuditLog log = AuditLog.of(transactionId, eventType, details);
+        log.setTimestamp(at);
+        return log;
+    }
+
+    private void insert(AuditLog log) {
+        jdbcTemplate.update("INSERT INTO audit_log (transaction_id, agent_id, event_type, details, timestamp) VALUES (?, ?, ?, ?, ?)",
+            log.getTransactionId(), log.getAgentId(), log.getEventType(), log.getDetails(), Timestamp.valueOf(log.getTimestamp()));
+    }
+}
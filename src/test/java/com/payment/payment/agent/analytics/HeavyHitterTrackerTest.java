@@ -0,0 +1,171 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.analytics.HeavyHitterTracker.Dimension;
+import com.payment.payment.agent.analytics.HeavyHitterTracker.Signal;
+import com.payment.payment.agent.model.HeavyHitter;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.model.PurchaseRequest;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the heavy-hitter tracker: ranking, decay, bounded memory and metrics
+ */
+class HeavyHitterTrackerTest {
+
+    private static final Instant T0 = Instant.parse("2025-06-02T10:00:00Z");
+
+    private HeavyHitterTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new HeavyHitterTracker();
+        ReflectionTestUtils.setField(tracker, "capacity", 8);
+        ReflectionTestUtils.setField(tracker, "metricRanks", 3);
+        tracker.init();
+        at(T0);
+    }
+
+    @Test
+    void top_RanksAgentsAndMerchantsByPurchasesAndDenials() {
+        // Given
+        outcomes(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 5);
+        outcomes(PurchaseOutcomeEvent.DENIED, "agent-2", "envato_market", 7);
+        outcomes(PurchaseOutcomeEvent.PAYMENT_FAILED, "agent-3", "udemy", 1);
+
+        // When
+        List<HeavyHitter> purchases = tracker.top(Dimension.AGENT, Signal.PURCHASES, Duration.ofMinutes(5), 5);
+        List<HeavyHitter> denials = tracker.top(Dimension.AGENT, Signal.DENIALS, Duration.ofMinutes(5), 5);
+        List<HeavyHitter> merchants = tracker.top(Dimension.MERCHANT, Signal.PURCHASES, Duration.ofMinutes(5), 1);
+
+        // Then
+        assertEquals(List.of("agent-2", "agent-1", "agent-3"), purchases.stream().map(HeavyHitter::getKey).toList());
+        assertEquals(List.of(7L, 5L, 1L), purchases.stream().map(HeavyHitter::getCount).toList());
+        assertEquals(1, purchases.get(0).getRank());
+        assertEquals(List.of("agent-2"), denials.stream().map(HeavyHitter::getKey).toList());
+        assertEquals("envato_market", merchants.get(0).getKey());
+    }
+
+    @Test
+    void top_OldEpochsDecayOutOfTheWindow() {
+        // Given - a burst 10 minutes ago and a smaller one now
+        at(T0.minusSeconds(600));
+        outcomes(PurchaseOutcomeEvent.DENIED, "agent-old", "udemy", 20);
+        at(T0);
+        outcomes(PurchaseOutcomeEvent.DENIED, "agent-new", "udemy", 3);
+
+        // Then
+        assertEquals(List.of("agent-new"), keys(tracker.top(Dimension.AGENT, Signal.DENIALS, Duration.ofMinutes(5), 5)));
+        assertEquals(List.of("agent-old", "agent-new"), keys(tracker.top(Dimension.AGENT, Signal.DENIALS, Duration.ofMinutes(15), 5)));
+
+        // When - the ring has turned past the burst
+        at(T0.plusSeconds(600));
+        outcomes(PurchaseOutcomeEvent.DENIED, "agent-new", "udemy", 1);
+
+        // Then
+        assertEquals(List.of("agent-new"), keys(tracker.top(Dimension.AGENT, Signal.DENIALS, Duration.ofMinutes(15), 5)));
+        assertThrows(IllegalArgumentException.class,
+            () -> tracker.top(Dimension.AGENT, Signal.DENIALS, Duration.ofHours(1), 5));
+    }
+
+    @Test
+    void top_ManyDistinctAgents_KeepsTheHeavyOnesInBoundedCandidates() {
+        // Given - two runaway agents hidden among 5000 agents with one purchase each
+        for (int i = 0; i < 5000; i++) {
+            outcomes(PurchaseOutcomeEvent.APPROVED, "agent-" + i, "udemy", 1);
+            if (i % 50 == 0) {
+                outcomes(PurchaseOutcomeEvent.APPROVED, "runaway-1", "udemy", 3);
+                outcomes(PurchaseOutcomeEvent.DENIED, "runaway-2", "udemy", 2);
+            }
+        }
+
+        // When
+        List<HeavyHitter> top = tracker.top(Dimension.AGENT, Signal.PURCHASES, Duration.ofMinutes(15), 2);
+
+        // Then
+        assertEquals(List.of("runaway-1", "runaway-2"), keys(top));
+        assertTrue(top.get(0).getCount() >= 300);
+        assertTrue(top.get(0).getCount() <= 300 + top.get(0).getErrorBound());
+        HeavyHitterSketch sketch = sketch(Dimension.AGENT, Signal.PURCHASES);
+        assertTrue(sketch.candidateCount() <= 8);
+    }
+
+    @Test
+    void add_ConcurrentWriters_LoseNoCounts() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < 8; t++) {
+            writers.add(executor.submit(() -> outcomes(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 1000)));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(8000, tracker.top(Dimension.AGENT, Signal.PURCHASES, Duration.ofMinutes(1), 1).get(0).getCount());
+    }
+
+    @Test
+    void metrics_AreAFixedSetOfNames() {
+        // Given
+        Map<String, Long> empty = tracker.metrics();
+        for (int i = 0; i < 100; i++) {
+            outcomes(PurchaseOutcomeEvent.DENIED, "agent-" + i, "merchant-" + i, i + 1);
+        }
+
+        // When
+        Map<String, Long> metrics = tracker.metrics();
+
+        // Then - 2 dimensions x 2 signals x (total, 3 ranks, error bound)
+        assertEquals(20, metrics.size());
+        assertEquals(empty.keySet(), metrics.keySet());
+        assertEquals(5050L, metrics.get("heavy_hitters.agent.denials.total"));
+        assertEquals(100L, metrics.get("heavy_hitters.merchant.denials.rank1"));
+    }
+
+    private void outcomes(String type, String agentId, String merchant, int times) {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAgentId(agentId);
+        request.setMerchant(merchant);
+        request.setAmount(10.0);
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId("tx-" + agentId);
+        for (int i = 0; i < times; i++) {
+            tracker.onPurchaseOutcome(PurchaseOutcomeEvent.of(type, request, response));
+        }
+    }
+
+    private HeavyHitterSketch sketch(Dimension dimension, Signal signal) {
+        @SuppressWarnings("unchecked")
+        Map<Dimension, Map<Signal, HeavyHitterSketch>> sketches =
+            (Map<Dimension, Map<Signal, HeavyHitterSketch>>) ReflectionTestUtils.getField(tracker, "sketches");
+        return sketches.get(dimension).get(signal);
+    }
+
+    private void at(Instant time) {
+        tracker.setClock(Clock.fixed(time, ZoneOffset.UTC));
+    }
+
+    private static List<String> keys(List<HeavyHitter> top) {
+        return top.stream().map(HeavyHitter::getKey).toList();
+    }
+}
@@ -0,0 +1,184 @@
+package com.payment.payment.agent.analytics;
+
+import com.payment.payment.agent.analytics.SpendAggregator.Dimension;
+import com.payment.payment.agent.analytics.SpendAggregator.Granularity;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.model.PurchaseRequest;
+import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.model.SpendTotals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the in-memory spend aggregates and their snapshots (embedded H2, real migration)
+ * Covers dimensions, sliding and tumbling windows, snapshot/restore and ranking
+ */
+class SpendAggregatorTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 2, 10, 0);
+
+    private EmbeddedDatabase database;
+    private SpendRepository repository;
+    private SpendAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V9__create_spend_aggregates.sql")
+            .build();
+        repository = new SpendRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", new JdbcTemplate(database));
+        aggregator = aggregator();
+        at(T0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void outcomes_UpdateAgentOwnerAndMerchantTotals() {
+        // When
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 25.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.OVERRIDE_APPROVED, "agent-2", "udemy", 40.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.DENIED, "agent-1", "envato_market", 900.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.PAYMENT_FAILED, "agent-1", "udemy", 10.0));
+
+        // Then
+        SpendTotals agent = only(aggregator.totals(Dimension.AGENT, "agent-1", Duration.ofHours(1)));
+        assertEquals(1, agent.getApprovedCount());
+        assertEquals(25.0, agent.getApprovedAmount());
+        assertEquals(1, agent.getDeniedCount());
+        assertEquals(1, agent.getFailedCount());
+        assertEquals(65.0, only(aggregator.totals(Dimension.OWNER, "owner-1", Duration.ofHours(1))).getApprovedAmount());
+        assertEquals(65.0, aggregator.approvedAmount(Dimension.MERCHANT, "udemy", "USD", Duration.ofDays(1)));
+        assertTrue(aggregator.totals(Dimension.AGENT, "agent-3", Duration.ofHours(1)).isEmpty());
+    }
+
+    @Test
+    void slidingWindows_CountOnlyBucketsInsideTheWindow() {
+        // Given - purchases 3 hours, 50 minutes and 5 minutes ago
+        at(T0.minusHours(3));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 100.0));
+        at(T0.minusMinutes(50));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 20.0));
+        at(T0.minusMinutes(5));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 3.0));
+        at(T0);
+
+        // Then
+        assertEquals(3.0, aggregator.approvedAmount(Dimension.AGENT, "agent-1", "USD", Duration.ofMinutes(10)));
+        assertEquals(23.0, aggregator.approvedAmount(Dimension.AGENT, "agent-1", "USD", Duration.ofHours(1)));
+        assertEquals(123.0, aggregator.approvedAmount(Dimension.AGENT, "agent-1", "USD", Duration.ofHours(24)));
+        assertEquals(123.0, aggregator.approvedAmount(Dimension.AGENT, "agent-1", "USD", Duration.ofDays(30)));
+        assertThrows(IllegalArgumentException.class,
+            () -> aggregator.totals(Dimension.AGENT, "agent-1", Duration.ofDays(60)));
+    }
+
+    @Test
+    void buckets_AreTumblingAndOrdered() {
+        // Given
+        at(T0.minusHours(2).plusMinutes(10));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 1.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 2.0));
+        at(T0.plusMinutes(30));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.DENIED, "agent-1", "udemy", 4.0));
+
+        // When
+        List<SpendTotals> hours = aggregator.buckets(Dimension.AGENT, "agent-1", Granularity.HOUR);
+
+        // Then
+        assertEquals(List.of(T0.minusHours(2), T0), hours.stream().map(SpendTotals::getBucketStart).toList());
+        assertEquals(3.0, hours.get(0).getApprovedAmount());
+        assertEquals(1, hours.get(1).getDeniedCount());
+    }
+
+    @Test
+    void snapshot_WritesChangedBucketsAndRestoresThemAfterRestart() {
+        // Given
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 25.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 5.0));
+
+        // When - 3 dimensions x 3 granularities, then nothing changed
+        int written = aggregator.snapshot();
+        int unchanged = aggregator.snapshot();
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.DENIED, "agent-1", "udemy", 5.0));
+        int updated = aggregator.snapshot();
+
+        SpendAggregator restarted = aggregator();
+        at(restarted, T0.plusMinutes(10));
+        restarted.restore();
+
+        // Then
+        assertEquals(9, written);
+        assertEquals(0, unchanged);
+        assertEquals(9, updated);
+        SpendTotals agent = only(restarted.totals(Dimension.AGENT, "agent-1", Duration.ofHours(1)));
+        assertEquals(2, agent.getApprovedCount());
+        assertEquals(30.0, agent.getApprovedAmount());
+        assertEquals(1, agent.getDeniedCount());
+        assertEquals(30.0, restarted.approvedAmount(Dimension.OWNER, "owner-1", "USD", Duration.ofDays(7)));
+    }
+
+    @Test
+    void top_RanksKeysByApprovedAmount() {
+        // Given
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-1", "udemy", 10.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-2", "openai_api", 70.0));
+        aggregator.onPurchaseOutcome(outcome(PurchaseOutcomeEvent.APPROVED, "agent-3", "envato_market", 30.0));
+
+        // When
+        List<SpendTotals> top = aggregator.top(Dimension.MERCHANT, Duration.ofHours(24), 2);
+
+        // Then
+        assertEquals(List.of("openai_api", "envato_market"), top.stream().map(SpendTotals::getKey).toList());
+    }
+
+    private SpendAggregator aggregator() {
+        SpendAggregator created = new SpendAggregator();
+        ReflectionTestUtils.setField(created, "spendRepository", repository);
+        return created;
+    }
+
+    private void at(LocalDateTime time) {
+        at(aggregator, time);
+    }
+
+    private static void at(SpendAggregator target, LocalDateTime time) {
+        target.setClock(Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private static SpendTotals only(List<SpendTotals> totals) {
+        assertEquals(1, totals.size());
+        return totals.get(0);
+    }
+
+    private static PurchaseOutcomeEvent outcome(String type, String agentId, String merchant, double amount) {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAgentId(agentId);
+        request.setOwnerId("owner-1");
+        request.setMerchant(merchant);
+        request.setAmount(amount);
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId("tx-" + agentId);
+        response.setStatus("APPROVED");
+        return PurchaseOutcomeEvent.of(type, request, response);
+    }
+}
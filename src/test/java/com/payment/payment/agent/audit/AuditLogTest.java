@@ -361,4 +361,16 @@ class AuditLogTest {
         // When & Then
         assertEquals(auditLog1.hashCode(), auditLog2.hashCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void of_CopiesAgentIdFromDetails() {
+        // When
+        AuditLog withAgent = AuditLog.of("tx-1", "POLICY_EVALUATION_COMPLETED", "{\"allowed\":true,\"agentId\":\"agent-7\"}");
+        AuditLog withoutAgent = AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"agentId\":null,\"amount\":50.0}");
+
+        // Then
+        assertEquals("agent-7", withAgent.getAgentId());
+        assertNull(withoutAgent.getAgentId());
+        assertNull(AuditLog.agentIdOf(null));
+    }
+}
@@ -0,0 +1,282 @@
+package com.payment.payment.agent.audit;
+
+import com.payment.payment.agent.model.AuditEventPage;
+import com.payment.payment.agent.model.AuditQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for audit queries against an embedded H2 database with the real migrations
+ * Covers filters, keyset paging, consolidated rows and streaming export
+ */
+class AuditQueryServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AuditQueryService service;
+    private AuditStageEventTypeRepository stageEventTypeRepository;
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V1__create_tables.sql")
+            .addScript("db/migration/V4__audit_log_transaction_index.sql")
+            .addScript("db/migration/V7__audit_log_query_indexes.sql")
+            .addScript("db/migration/V11__create_audit_stage_event_types.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        stageEventTypeRepository = new AuditStageEventTypeRepository();
+        ReflectionTestUtils.setField(stageEventTypeRepository, "jdbcTemplate", jdbcTemplate);
+        AuditQueryRepository repository = new AuditQueryRepository() {
+            @Override
+            public List<AuditLog> findAfter(AuditQuery query, long afterId, int limit) {
+                queries.incrementAndGet();
+                return super.findAfter(query, afterId, limit);
+            }
+        };
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+        service = new AuditQueryService();
+        ReflectionTestUtils.setField(service, "auditQueryRepository", repository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void page_WalksAllResultsWithKeysetCursor() {
+        // Given - 25 transactions of 3 events each
+        for (int i = 0; i < 25; i++) {
+            insertPurchase("tx-" + i, "agent-1", T0.plusMinutes(i), "PURCHASE_APPROVED");
+        }
+
+        // When
+        List<AuditLog> all = new ArrayList<>();
+        Long cursor = 0L;
+        int pages = 0;
+        while (cursor != null) {
+            AuditEventPage page = service.page(AuditQuery.builder().agentId("agent-1").build(), cursor, 10).block();
+            all.addAll(page.getEvents());
+            cursor = page.getNextCursor();
+            pages++;
+        }
+
+        // Then
+        assertEquals(75, all.size());
+        assertEquals(75, all.stream().map(AuditLog::getId).distinct().count());
+        assertEquals(8, pages);
+    }
+
+    @Test
+    void page_AgentFilter_IncludesEventsThatDoNotNameTheAgent() {
+        // Given
+        insertPurchase("tx-1", "agent-1", T0, "PURCHASE_APPROVED");
+        insertPurchase("tx-2", "agent-2", T0, "PURCHASE_DENIED");
+
+        // When
+        AuditEventPage page = service.page(AuditQuery.builder().agentId("agent-1").build(), 0, 100).block();
+
+        // Then
+        assertEquals(List.of("PURCHASE_REQUEST_RECEIVED", "POLICY_EVALUATION_COMPLETED", "PURCHASE_APPROVED"),
+            page.getEvents().stream().map(AuditLog::getEventType).toList());
+        assertTrue(page.getEvents().stream().allMatch(e -> "tx-1".equals(e.getTransactionId())));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void page_ConsolidatedRows_AreFilteredPerEvent() {
+        // Given - one purchase per row, one consolidated
+        insertPurchase("tx-1", "agent-1", T0, "PURCHASE_DENIED");
+        insert(AuditStage.consolidate("tx-2", "decision", List.of(
+            event("tx-2", "PURCHASE_REQUEST_RECEIVED", "{\"amount\":900.0}", T0.plusMinutes(1)),
+            event("tx-2", "POLICY_EVALUATION_COMPLETED", "{\"allowed\":false,\"agentId\":\"agent-2\"}", T0.plusMinutes(1)),
+            event("tx-2", "PURCHASE_DENIED", "{\"message\":\"denied\"}", T0.plusMinutes(1)))));
+
+        // When
+        List<AuditLog> denied = service.page(AuditQuery.builder().eventType("PURCHASE_DENIED").build(), 0, 100).block().getEvents();
+        List<AuditLog> agent2 = service.page(AuditQuery.builder().agentId("agent-2").build(), 0, 100).block().getEvents();
+
+        // Then
+        assertEquals(List.of("tx-1", "tx-2"), denied.stream().map(AuditLog::getTransactionId).toList());
+        assertTrue(denied.stream().allMatch(e -> "PURCHASE_DENIED".equals(e.getEventType())));
+        assertEquals(3, agent2.size());
+        assertTrue(agent2.stream().allMatch(e -> "agent-2".equals(e.getAgentId())));
+    }
+
+    @Test
+    void page_BinaryDetails_AreMatchedAndReturnedAsJson() {
+        // Given - a consolidated row stored in the compact binary form, next to a JSON row
+        insertPurchase("tx-1", "agent-1", T0, "PURCHASE_APPROVED");
+        AuditLog stage = AuditStage.consolidate("tx-2", "decision", List.of(
+            event("tx-2", "PURCHASE_REQUEST_RECEIVED", "{\"amount\":900.0}", T0.plusMinutes(1)),
+            event("tx-2", "PURCHASE_DENIED", "{\"message\":\"denied\"}", T0.plusMinutes(1))));
+        String json = stage.getDetails();
+        stage.setDetails(AuditDetails.store(json, AuditDetails.BINARY_FORMAT));
+        insert(stage);
+
+        // When
+        List<AuditLog> denied = service.page(AuditQuery.builder().eventType("PURCHASE_DENIED").build(), 0, 100).block().getEvents();
+        List<AuditLog> tx2 = service.page(AuditQuery.builder().transactionId("tx-2").build(), 0, 100).block().getEvents();
+
+        // Then
+        assertTrue(stage.getDetails().length() < json.length());
+        assertEquals(1, denied.size());
+        assertEquals("{\"message\":\"denied\"}", denied.get(0).getDetails());
+        assertEquals(List.of("PURCHASE_REQUEST_RECEIVED", "PURCHASE_DENIED"), tx2.stream().map(AuditLog::getEventType).toList());
+    }
+
+    @Test
+    void page_TimeRange_IsFromInclusiveToExclusive() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            insertPurchase("tx-" + i, "agent-1", T0.plusHours(i), "PURCHASE_APPROVED");
+        }
+
+        // When
+        AuditEventPage page = service.page(AuditQuery.builder()
+            .eventType("PURCHASE_APPROVED").from(T0.plusHours(1)).to(T0.plusHours(3)).build(), 0, 100).block();
+
+        // Then
+        assertEquals(List.of("tx-1", "tx-2"), page.getEvents().stream().map(AuditLog::getTransactionId).toList());
+    }
+
+    @Test
+    void page_EventType_MatchesIndexedStageEventsOnly() {
+        // Given - a stage whose details mention PURCHASE_DENIED without holding that event
+        insert(AuditStage.consolidate("tx-1", "decision", List.of(
+            event("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"note\":\"\\\"eventType\\\":\\\"PURCHASE_DENIED\\\"\"}", T0),
+            event("tx-1", "PURCHASE_APPROVED", "{}", T0))));
+
+        // When
+        List<AuditLog> denied = service.page(AuditQuery.builder().eventType("PURCHASE_DENIED").build(), 0, 100).block().getEvents();
+        List<AuditLog> wildcard = service.page(AuditQuery.builder().eventType("PURCHASE_%").build(), 0, 100).block().getEvents();
+        List<AuditLog> approved = service.page(AuditQuery.builder().eventType("PURCHASE_APPROVED").build(), 0, 100).block().getEvents();
+
+        // Then
+        assertTrue(denied.isEmpty());
+        assertTrue(wildcard.isEmpty());
+        assertEquals(List.of("tx-1"), approved.stream().map(AuditLog::getTransactionId).toList());
+    }
+
+    @Test
+    void page_TimeRange_WalksRowsAndStagesInTimeOrder() {
+        // Given - ids out of time order, stages between individual rows
+        for (int i = 9; i >= 0; i--) {
+            if (i % 3 == 0) {
+                insert(AuditStage.consolidate("tx-" + i, "decision", List.of(
+                    event("tx-" + i, "PURCHASE_REQUEST_RECEIVED", "{}", T0.plusMinutes(i)),
+                    event("tx-" + i, "PURCHASE_DENIED", "{}", T0.plusMinutes(i)))));
+            } else {
+                insert(event("tx-" + i, "PURCHASE_DENIED", "{}", T0.plusMinutes(i)));
+            }
+        }
+        AuditQuery query = AuditQuery.builder()
+            .eventType("PURCHASE_DENIED").from(T0.plusMinutes(1)).to(T0.plusMinutes(9)).build();
+
+        // When
+        List<String> seen = new ArrayList<>();
+        Long cursor = 0L;
+        while (cursor != null) {
+            AuditEventPage page = service.page(query, cursor, 3).block();
+            page.getEvents().forEach(e -> seen.add(e.getTransactionId()));
+            cursor = page.getNextCursor();
+        }
+
+        // Then
+        assertEquals(List.of("tx-1", "tx-2", "tx-3", "tx-4", "tx-5", "tx-6", "tx-7", "tx-8"), seen);
+    }
+
+    @Test
+    void page_TimeRange_CursorRowGone_IsRejected() {
+        // Given
+        insertPurchase("tx-1", "agent-1", T0, "PURCHASE_APPROVED");
+        AuditQuery query = AuditQuery.builder().from(T0).build();
+        Long cursor = service.page(query, 0, 1).block().getNextCursor();
+        jdbcTemplate.update("DELETE FROM audit_log WHERE id = ?", cursor);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> service.page(query, cursor, 1).block());
+    }
+
+    @Test
+    void page_InvalidArguments_AreRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> service.page(AuditQuery.builder().build(), 0, 0).block());
+        assertThrows(IllegalArgumentException.class,
+            () -> service.page(AuditQuery.builder().build(), 0, 5000).block());
+        assertThrows(IllegalArgumentException.class,
+            () -> service.page(AuditQuery.builder().from(T0).to(T0).build(), 0, 10).block());
+    }
+
+    @Test
+    void export_StreamsEveryPageAndReadsOnlyWhatIsConsumed() {
+        // Given
+        ReflectionTestUtils.setField(service, "exportPageSize", 50);
+        for (int i = 0; i < 400; i++) {
+            insertPurchase("tx-" + i, "agent-1", T0.plusSeconds(i), "PURCHASE_APPROVED");
+        }
+
+        // When
+        Long count = service.export(AuditQuery.builder().build()).count().block();
+        int fullExportQueries = queries.getAndSet(0);
+        List<AuditLog> head = service.export(AuditQuery.builder().build()).take(60).collectList().block();
+
+        // Then - 1200 rows in 24 full pages plus the empty last one
+        assertEquals(1200L, count);
+        assertEquals(25, fullExportQueries);
+        assertEquals(60, head.size());
+        assertTrue(queries.get() <= 3, "read " + queries.get() + " pages for 60 events");
+    }
+
+    private void insertPurchase(String transactionId, String agentId, LocalDateTime at, String outcome) {
+        insert(event(transactionId, "PURCHASE_REQUEST_RECEIVED", "{\"amount\":50.0}", at));
+        insert(event(transactionId, "POLICY_EVALUATION_COMPLETED", "{\"allowed\":true,\"agentId\":\"" + agentId + "\"}", at));
+        insert(event(transactionId, outcome, "{\"status\":\"done\"}", at));
+    }
+
+    private static AuditLog event(String transactionId, String eventType, String details, LocalDateTime at) {
+        AuditLog log = AuditLog.of(transactionId, eventType, details);
+        log.setTimestamp(at);
+        return log;
+    }
+
+    private void insert(AuditLog log) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO audit_log (transaction_id, agent_id, event_type, details, timestamp) VALUES (?, ?, ?, ?, ?)",
+                new String[]{"id"});
+            ps.setString(1, log.getTransactionId());
+            ps.setString(2, log.getAgentId());
+            ps.setString(3, log.getEventType());
+            ps.setString(4, log.getDetails());
+            ps.setTimestamp(5, Timestamp.valueOf(log.getTimestamp()));
+            return ps;
+        }, keys);
+        log.setId(keys.getKey().longValue());
+        stageEventTypeRepository.index(List.of(log));
+    }
+}
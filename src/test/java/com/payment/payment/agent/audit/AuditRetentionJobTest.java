@@ -0,0 +1,198 @@
+package com.payment.payment.agent.audit;
+
+import com.payment.payment.agent.audit.AuditArchive.Segment;
+import com.payment.payment.agent.audit.AuditArchive.SegmentWriter;
+import com.payment.payment.agent.model.AuditQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for audit retention and the archive against an embedded H2 database
+ * (the single-table layout) with the real migrations
+ */
+class AuditRetentionJobTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 0, 0);
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AuditArchive archive;
+    private AuditRetentionJob job;
+    private AuditQueryService queryService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V1__create_tables.sql")
+            .addScript("db/migration/V4__audit_log_transaction_index.sql")
+            .addScript("db/migration/V7__audit_log_query_indexes.sql")
+            .addScript("db/vendor/h2/V8__partition_audit_log.sql")
+            .addScript("db/migration/V11__create_audit_stage_event_types.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+
+        archive = new AuditArchive();
+        ReflectionTestUtils.setField(archive, "dir", dir.toString());
+        AuditPartitionManager partitionManager = new AuditPartitionManager();
+        ReflectionTestUtils.setField(partitionManager, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(partitionManager, "transactionManager", new DataSourceTransactionManager(database));
+
+        AuditStageEventTypeRepository stageEventTypeRepository = new AuditStageEventTypeRepository();
+        ReflectionTestUtils.setField(stageEventTypeRepository, "jdbcTemplate", jdbcTemplate);
+
+        job = new AuditRetentionJob();
+        ReflectionTestUtils.setField(job, "stageEventTypeRepository", stageEventTypeRepository);
+        ReflectionTestUtils.setField(job, "partitionManager", partitionManager);
+        ReflectionTestUtils.setField(job, "auditArchive", archive);
+        ReflectionTestUtils.setField(job, "keep", Duration.ofDays(30));
+        ReflectionTestUtils.setField(job, "batchSize", 7);
+        ReflectionTestUtils.setField(job, "segmentMaxRows", 40);
+        job.setClock(Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+        AuditQueryRepository queryRepository = new AuditQueryRepository();
+        ReflectionTestUtils.setField(queryRepository, "jdbcTemplate", jdbcTemplate);
+        queryService = new AuditQueryService();
+        ReflectionTestUtils.setField(queryService, "auditQueryRepository", queryRepository);
+        ReflectionTestUtils.setField(queryService, "auditArchive", archive);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void archive_MovesExpiredRowsToVerifiedSegments() throws IOException {
+        // Given - 100 rows from 90 days ago onwards, one per day
+        for (int i = 0; i < 100; i++) {
+            insert("tx-" + i, "agent-" + (i % 2), NOW.minusDays(90).plusDays(i));
+        }
+
+        // When
+        long archived = job.archive();
+
+        // Then - the 60 rows older than 30 days left the table, in segments of at most 40 rows
+        assertEquals(60, archived);
+        assertEquals(40, count());
+        List<Segment> segments = archive.segments();
+        assertEquals(List.of(40L, 20L), segments.stream().map(Segment::rows).toList());
+        for (Segment segment : segments) {
+            assertTrue(archive.verify(segment));
+        }
+        assertEquals(0, job.archive());
+    }
+
+    @Test
+    void archive_DropsTheStageIndexEntriesOfArchivedRows() throws IOException {
+        // Given - index entries of an expired and a live stage row
+        jdbcTemplate.update("INSERT INTO audit_stage_event_type (event_type, audit_id, timestamp) VALUES (?, ?, ?)",
+            "PURCHASE_APPROVED", 1L, Timestamp.valueOf(NOW.minusDays(60)));
+        jdbcTemplate.update("INSERT INTO audit_stage_event_type (event_type, audit_id, timestamp) VALUES (?, ?, ?)",
+            "PURCHASE_APPROVED", 2L, Timestamp.valueOf(NOW.minusDays(1)));
+
+        // When
+        job.archive();
+
+        // Then
+        assertEquals(List.of(2L), jdbcTemplate.queryForList("SELECT audit_id FROM audit_stage_event_type", Long.class));
+    }
+
+    @Test
+    void export_WithArchived_ReadsArchiveThenLiveTableInOrder() throws IOException {
+        // Given
+        for (int i = 0; i < 100; i++) {
+            insert("tx-" + i, "agent-" + (i % 2), NOW.minusDays(90).plusDays(i));
+        }
+        job.archive();
+
+        // When
+        List<AuditLog> all = queryService.export(AuditQuery.builder().build(), true).collectList().block();
+        List<AuditLog> liveOnly = queryService.export(AuditQuery.builder().build()).collectList().block();
+        List<AuditLog> agentWindow = queryService.export(AuditQuery.builder()
+            .agentId("agent-0").from(NOW.minusDays(80)).to(NOW.minusDays(20)).build(), true).collectList().block();
+
+        // Then
+        assertEquals(100, all.size());
+        assertEquals(all.stream().map(AuditLog::getId).sorted().toList(), all.stream().map(AuditLog::getId).toList());
+        assertEquals(40, liveOnly.size());
+        assertEquals(30, agentWindow.size());
+        assertTrue(agentWindow.stream().allMatch(e -> "agent-0".equals(e.getAgentId())));
+    }
+
+    @Test
+    void read_TamperedSegment_FailsVerification() throws IOException {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            insert("tx-" + i, "agent-1", NOW.minusDays(60));
+        }
+        job.archive();
+        Segment segment = archive.segments().get(0);
+        Path file = dir.resolve(segment.name() + ".ndjson.gz");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(file, bytes);
+
+        // When & Then
+        assertFalse(archive.verify(segment));
+        assertThrows(IllegalStateException.class,
+            () -> archive.read(AuditQuery.builder().build()).collectList().block());
+    }
+
+    @Test
+    void segmentWriter_NotCommitted_LeavesNothingBehind() throws IOException {
+        // When
+        try (SegmentWriter writer = archive.open()) {
+            AuditLog row = AuditLog.of("tx-1", "PURCHASE_APPROVED", "{}");
+            row.setId(1L);
+            writer.append(row);
+        }
+
+        // Then
+        assertTrue(archive.segments().isEmpty());
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void partitionNames_RoundTripMonths() {
+        assertEquals("audit_log_p202501", AuditPartitionManager.partitionName(YearMonth.of(2025, 1)));
+        assertEquals(YearMonth.of(2025, 12), AuditPartitionManager.monthOf("audit_log_p202512"));
+        assertNull(AuditPartitionManager.monthOf("audit_log_default"));
+    }
+
+    private void insert(String transactionId, String agentId, LocalDateTime at) {
+        jdbcTemplate.update("INSERT INTO audit_log (transaction_id, agent_id, event_type, details, timestamp) VALUES (?, ?, ?, ?, ?)",
+            transactionId, agentId, "PURCHASE_APPROVED", "{\"agentId\":\"" + agentId + "\"}", Timestamp.valueOf(at));
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM audit_log", Integer.class);
+    }
+}
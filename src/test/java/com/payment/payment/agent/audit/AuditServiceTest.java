@@ -1,5 +1,9 @@
 package com.payment.payment.agent.audit;
 
+import com.payment.payment.agent.ledger.AuditLedger;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.outbox.OutboxRecord;
+import com.payment.payment.agent.outbox.OutboxRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -7,7 +11,10 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -24,6 +31,12 @@ class AuditServiceTest {
     @Mock
     private AuditLogRepository auditLogRepository;
 
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private AuditStageEventTypeRepository stageEventTypeRepository;
+
     @InjectMocks
     private AuditService auditService;
 
@@ -242,4 +255,127 @@ class AuditServiceTest {
         assertTrue(savedLog.getTimestamp().isBefore(afterCall.plusSeconds(1)));
         assertTrue(savedLog.getTimestamp().isAfter(beforeCall.minusSeconds(1)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void logEvents_SavesAllInOneCall() {
+        // Given
+        List<AuditLog> events = List.of(
+            AuditLog.of(testTransactionId, "EVENT_1", "Details 1"),
+            AuditLog.of(testTransactionId, "EVENT_2", "Details 2"));
+
+        // When
+        auditService.logEvents(events);
+
+        // Then
+        verify(auditLogRepository).saveAll(events);
+        verify(auditLogRepository, never()).save(any());
+    }
+
+    @Test
+    void logEvents_EmptyList_DoesNothing() {
+        // When
+        auditService.logEvents(List.of());
+
+        // Then
+        verifyNoInteractions(auditLogRepository);
+    }
+
+    @Test
+    void logEvent_OutboxMode_AppendsToOutboxInsteadOfAuditLog() {
+        // Given
+        ReflectionTestUtils.setField(auditService, "mode", "outbox");
+
+        // When
+        auditService.logEvent(testTransactionId, testEventType, testDetails);
+
+        // Then
+        ArgumentCaptor<List<OutboxRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository).append(captor.capture());
+        OutboxRecord record = captor.getValue().get(0);
+        assertEquals(OutboxRecord.AUDIT, record.kind());
+        assertEquals(testTransactionId, record.aggregateId());
+        assertEquals(testEventType, record.eventType());
+        verifyNoInteractions(auditLogRepository);
+    }
+
+    @Test
+    void logEvents_OutboxMode_AppendsOneBatchKeepingEventTimes() {
+        // Given
+        ReflectionTestUtils.setField(auditService, "mode", "outbox");
+        AuditLog first = AuditLog.of(testTransactionId, "EVENT_1", "Details 1");
+        first.setTimestamp(LocalDateTime.of(2025, 1, 1, 12, 0));
+
+        // When
+        auditService.logEvents(List.of(first, AuditLog.of(testTransactionId, "EVENT_2", "Details 2")));
+
+        // Then
+        ArgumentCaptor<List<OutboxRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository, times(1)).append(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 12, 0), captor.getValue().get(0).occurredAt());
+        verifyNoInteractions(auditLogRepository);
+    }
+
+    @Test
+    void logEvents_OutboxModeWithOutcome_AppendsAuditAndDomainEventTogether() {
+        // Given
+        ReflectionTestUtils.setField(auditService, "mode", "outbox");
+        PurchaseOutcomeEvent outcome = PurchaseOutcomeEvent.builder()
+            .type(PurchaseOutcomeEvent.APPROVED).transactionId(testTransactionId).agentId("agent-1").build();
+
+        // When
+        auditService.logEvents(List.of(AuditLog.of(testTransactionId, "PURCHASE_APPROVED", "{}")), List.of(outcome));
+
+        // Then - one append, so both are stored or neither is
+        ArgumentCaptor<List<OutboxRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository, times(1)).append(captor.capture());
+        assertEquals(List.of(OutboxRecord.AUDIT, OutboxRecord.DOMAIN), captor.getValue().stream().map(OutboxRecord::kind).toList());
+        assertEquals(PurchaseOutcomeEvent.APPROVED, captor.getValue().get(1).eventType());
+        assertTrue(captor.getValue().get(1).payload().contains("\"agentId\":\"agent-1\""));
+    }
+
+    @Test
+    void logEvents_DirectModeWithOutcome_StoresOnlyTheAuditRows() {
+        // Given
+        PurchaseOutcomeEvent outcome = PurchaseOutcomeEvent.builder()
+            .type(PurchaseOutcomeEvent.DENIED).transactionId(testTransactionId).build();
+
+        // When
+        auditService.logEvents(List.of(AuditLog.of(testTransactionId, "PURCHASE_DENIED", "{}")), List.of(outcome));
+
+        // Then
+        verify(auditLogRepository, times(1)).saveAll(anyList());
+        verifyNoInteractions(outboxRepository);
+    }
+
+    @Test
+    void logEvent_LedgerEnabled_AppendsAfterPersisting() {
+        // Given
+        AuditLedger ledger = mock(AuditLedger.class);
+        ReflectionTestUtils.setField(auditService, "auditLedger", ledger);
+
+        // When
+        auditService.logEvent(testTransactionId, testEventType, testDetails);
+
+        // Then
+        var order = inOrder(auditLogRepository, ledger);
+        order.verify(auditLogRepository).save(any(AuditLog.class));
+        order.verify(ledger).append(eq(testTransactionId), eq(testEventType), eq(testDetails), any(LocalDateTime.class));
+    }
+
+    @Test
+    void logEvents_LedgerFails_KeepsStoredEventsAndDoesNotThrow() {
+        // Given
+        AuditLedger ledger = mock(AuditLedger.class);
+        when(ledger.append(any(), any(), any(), any())).thenThrow(new UncheckedIOException(new IOException("disk full")));
+        ReflectionTestUtils.setField(auditService, "auditLedger", ledger);
+        List<AuditLog> events = List.of(AuditLog.of("tx-1", "A", "{}"), AuditLog.of("tx-1", "B", "{}"));
+
+        // When
+        assertDoesNotThrow(() -> auditService.logEvents(events));
+
+        // Then - every event is still offered to the ledger
+        verify(auditLogRepository).saveAll(events);
+        verify(ledger, times(2)).append(any(), any(), any(), any());
+    }
+}
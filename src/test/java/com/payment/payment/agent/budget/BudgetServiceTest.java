@@ -0,0 +1,368 @@
+package com.payment.payment.agent.budget;
+
+import com.payment.payment.agent.budget.BudgetService.Level;
+import com.payment.payment.agent.model.AgentContext;
+import com.payment.payment.agent.model.BudgetStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for owner and delegated daily budgets (embedded H2, real migrations)
+ * Covers the owner cap across agents, delegation chains, release, day rollover and concurrency
+ */
+class BudgetServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 2, 10, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private BudgetService budgetService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V2__create_agent_tables.sql")
+            .addScript("db/migration/V10__create_budget_tables.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        insertAgent("agent-1", "owner-1", 100.0);
+        insertAgent("agent-2", "owner-1", 100.0);
+        insertAgent("sub-agent", "owner-1", null);
+        insertAgent("other-agent", "owner-2", null);
+
+        BudgetRepository repository = new BudgetRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+        budgetService = new BudgetService();
+        ReflectionTestUtils.setField(budgetService, "budgetRepository", repository);
+        ReflectionTestUtils.setField(budgetService, "stripes", 4);
+        at(T0);
+        budgetService.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void ownerBudget_IsSharedByAllAgentsOfTheOwner() {
+        // Given
+        budgetService.setOwnerLimit("owner-1", 150.0);
+
+        // When
+        BudgetReservation first = budgetService.reserve(agent("agent-1", 100.0), 80.0);
+        BudgetReservation second = budgetService.reserve(agent("agent-2", 100.0), 80.0);
+        BudgetReservation third = budgetService.reserve(agent("agent-2", 100.0), 70.0);
+
+        // Then - each agent is within its own limit, the second purchase is over the owner's
+        assertTrue(first.isGranted());
+        assertFalse(second.isGranted());
+        assertEquals("Daily budget of 150.00 for owner owner-1 would be exceeded", second.getExceeded());
+        assertTrue(third.isGranted());
+        assertEquals(0.0, budgetService.status(Level.OWNER, "owner-1").getRemaining());
+        assertEquals(70.0, budgetService.status(Level.AGENT, "agent-2").getUsed());
+    }
+
+    @Test
+    void agentLimit_AppliesWithoutAnOwnerBudget() {
+        // When
+        BudgetReservation first = budgetService.reserve(agent("agent-1", 100.0), 60.0);
+        BudgetReservation second = budgetService.reserve(agent("agent-1", 100.0), 60.0);
+
+        // Then
+        assertTrue(first.isGranted());
+        assertEquals("Daily budget of 100.00 for agent agent-1 would be exceeded", second.getExceeded());
+        assertNull(budgetService.status(Level.OWNER, "owner-1").getDailyLimit());
+        assertEquals(60.0, budgetService.status(Level.OWNER, "owner-1").getUsed());
+    }
+
+    @Test
+    void delegation_SubAgentSpendsFromItsOwnAndItsParentsBudget() {
+        // Given - sub-agent may spend 50 a day out of agent-1's 100
+        BudgetStatus delegated = budgetService.delegate("sub-agent", "agent-1", 50.0);
+        budgetService.reserve(agent("agent-1", 100.0), 40.0);
+
+        // When
+        BudgetReservation withinBoth = budgetService.reserve(agent("sub-agent", null), 30.0);
+        BudgetReservation overOwn = budgetService.reserve(agent("sub-agent", null), 25.0);
+        BudgetReservation upToOwn = budgetService.reserve(agent("sub-agent", null), 20.0);
+        BudgetReservation overParent = budgetService.reserve(agent("agent-1", 100.0), 15.0);
+
+        // Then
+        assertEquals("agent-1", delegated.getParentAgentId());
+        assertEquals(50.0, delegated.getDailyLimit());
+        assertTrue(withinBoth.isGranted());
+        assertEquals("Daily budget of 50.00 for agent sub-agent would be exceeded", overOwn.getExceeded());
+        assertTrue(upToOwn.isGranted());
+        assertEquals("Daily budget of 100.00 for agent agent-1 would be exceeded", overParent.getExceeded());
+        assertEquals(50.0, budgetService.status(Level.AGENT, "sub-agent").getUsed());
+        assertEquals(90.0, budgetService.status(Level.AGENT, "agent-1").getUsed());
+    }
+
+    @Test
+    void delegation_RejectsOtherOwnersAndCycles() {
+        // Given
+        budgetService.delegate("sub-agent", "agent-1", null);
+
+        // Then
+        assertThrows(IllegalArgumentException.class, () -> budgetService.delegate("sub-agent", "sub-agent", null));
+        assertThrows(IllegalArgumentException.class, () -> budgetService.delegate("other-agent", "agent-1", null));
+        assertThrows(IllegalArgumentException.class, () -> budgetService.delegate("agent-1", "sub-agent", null));
+        assertThrows(IllegalArgumentException.class, () -> budgetService.delegate("sub-agent", "unknown-agent", null));
+        assertTrue(budgetService.removeDelegation("sub-agent"));
+        assertFalse(budgetService.removeDelegation("sub-agent"));
+        assertNull(budgetService.status(Level.AGENT, "sub-agent").getParentAgentId());
+    }
+
+    @Test
+    void release_ReturnsTheAmountToEveryBudgetOnce() {
+        // Given
+        budgetService.setOwnerLimit("owner-1", 100.0);
+        budgetService.delegate("sub-agent", "agent-1", null);
+        BudgetReservation reservation = budgetService.reserve(agent("sub-agent", null), 100.0);
+
+        // When
+        reservation.release();
+        reservation.release();
+
+        // Then
+        assertTrue(reservation.isGranted());
+        assertEquals(0.0, budgetService.status(Level.AGENT, "sub-agent").getUsed());
+        assertEquals(0.0, budgetService.status(Level.AGENT, "agent-1").getUsed());
+        assertEquals(100.0, budgetService.status(Level.OWNER, "owner-1").getRemaining());
+        assertTrue(budgetService.reserve(agent("agent-2", 100.0), 100.0).isGranted());
+    }
+
+    @Test
+    void budgets_ResetAtMidnightAndOverridesAreCountedWithoutACheck() {
+        // Given
+        budgetService.setOwnerLimit("owner-1", 100.0);
+        assertTrue(budgetService.reserve(agent("agent-1", 100.0), 90.0).isGranted());
+
+        // When - an override on top, then the next day
+        budgetService.record("agent-1", "owner-1", 50.0);
+        BudgetStatus overdrawn = budgetService.status(Level.OWNER, "owner-1");
+        at(T0.plusDays(1));
+        BudgetReservation nextDay = budgetService.reserve(agent("agent-1", 100.0), 90.0);
+
+        // Then
+        assertEquals(140.0, overdrawn.getUsed());
+        assertEquals(0.0, overdrawn.getRemaining());
+        assertTrue(nextDay.isGranted());
+        assertEquals(90.0, budgetService.status(Level.OWNER, "owner-1").getUsed());
+    }
+
+    @Test
+    void concurrentReservations_NeverExceedTheOwnerBudget() throws Exception {
+        // Given - 400 purchases of 1.00 from 8 threads against an owner budget of 250
+        budgetService.setOwnerLimit("owner-2", 250.0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < 8; t++) {
+            results.add(executor.submit(() -> {
+                int granted = 0;
+                for (int i = 0; i < 50; i++) {
+                    BudgetReservation reservation = budgetService.reserve(agent("other-agent", null), 1.0);
+                    if (reservation.isGranted()) {
+                        granted++;
+                        if (i % 5 == 0) {
+                            reservation.release();
+                            granted--;
+                        }
+                    }
+                }
+                return granted;
+            }));
+        }
+        int granted = 0;
+        for (Future<Integer> result : results) {
+            granted += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Then - what was kept is what was used, and only what's left can still be reserved
+        assertTrue(granted <= 250);
+        assertEquals(granted, budgetService.status(Level.OWNER, "owner-2").getUsed());
+        while (budgetService.reserve(agent("other-agent", null), 1.0).isGranted()) {
+            granted++;
+        }
+        assertEquals(250, granted);
+    }
+
+    @Test
+    void agentLimit_ComesFromAgentCredentialsWhetherBuyingOrDelegating() {
+        // Given - agent-1's token still claims 500, its row says 100
+        budgetService.delegate("sub-agent", "agent-1", null);
+
+        // When
+        BudgetReservation overRow = budgetService.reserve(agent("agent-1", 500.0), 150.0);
+        BudgetReservation withinRow = budgetService.reserve(agent("agent-1", 500.0), 60.0);
+        BudgetReservation viaSubAgent = budgetService.reserve(agent("sub-agent", null), 50.0);
+        jdbcTemplate.update("UPDATE agent_credentials SET daily_spend_limit = 200 WHERE agent_id = 'agent-1'");
+        budgetService.refresh();
+        BudgetReservation afterRaise = budgetService.reserve(agent("sub-agent", null), 50.0);
+
+        // Then
+        assertEquals("Daily budget of 100.00 for agent agent-1 would be exceeded", overRow.getExceeded());
+        assertTrue(withinRow.isGranted());
+        assertEquals("Daily budget of 100.00 for agent agent-1 would be exceeded", viaSubAgent.getExceeded());
+        assertTrue(afterRaise.isGranted());
+        assertEquals(200.0, budgetService.status(Level.AGENT, "agent-1").getDailyLimit());
+        assertEquals(110.0, budgetService.status(Level.AGENT, "agent-1").getUsed());
+    }
+
+    @Test
+    void limitChange_KeepsReservationsMadeUnderTheOldLimit() {
+        // Given
+        budgetService.setOwnerLimit("owner-2", 100.0);
+        BudgetReservation held = budgetService.reserve(agent("other-agent", null), 60.0);
+
+        // When - raised, then cut below what is used, while the first reservation is held
+        budgetService.setOwnerLimit("owner-2", 150.0);
+        BudgetReservation raised = budgetService.reserve(agent("other-agent", null), 90.0);
+        budgetService.setOwnerLimit("owner-2", 120.0);
+        BudgetReservation cut = budgetService.reserve(agent("other-agent", null), 1.0);
+        held.release();
+
+        // Then - the release is credited once, against the current limit
+        assertTrue(raised.isGranted());
+        assertFalse(cut.isGranted());
+        assertEquals(90.0, budgetService.status(Level.OWNER, "owner-2").getUsed());
+        assertEquals(30.0, budgetService.status(Level.OWNER, "owner-2").getRemaining());
+    }
+
+    @Test
+    void concurrentLimitChanges_NeverLoseOrDuplicateReservations() throws Exception {
+        // Given - purchases against an owner budget whose limit keeps moving
+        budgetService.setOwnerLimit("owner-2", 5000.0);
+        budgetService.reserve(agent("other-agent", null), 0.0);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        // When
+        Future<?> changer = executor.submit(() -> {
+            for (int i = 0; i < 5000; i++) {
+                budgetService.setOwnerLimit("owner-2", i % 2 == 0 ? 4000.0 : 6000.0);
+                budgetService.reserve(agent("other-agent", null), 0.0);
+            }
+            budgetService.setOwnerLimit("owner-2", 5000.0);
+            return null;
+        });
+        for (int t = 0; t < 4; t++) {
+            results.add(executor.submit(() -> {
+                int granted = 0;
+                for (int i = 0; i < 2000; i++) {
+                    BudgetReservation reservation = budgetService.reserve(agent("other-agent", null), 1.0);
+                    if (reservation.isGranted()) {
+                        granted++;
+                        if (i % 2 == 0) {
+                            reservation.release();
+                            granted--;
+                        }
+                    }
+                }
+                return granted;
+            }));
+        }
+        changer.get();
+        int granted = 0;
+        for (Future<Integer> result : results) {
+            granted += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        budgetService.reserve(agent("other-agent", null), 0.0);
+
+        // Then - what was kept is exactly what is used
+        assertEquals(granted, budgetService.status(Level.OWNER, "owner-2").getUsed());
+        assertEquals(5000.0 - granted, budgetService.status(Level.OWNER, "owner-2").getRemaining());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reserve_TakesNoMonitorWhileTheLimitIsUnchanged() throws Exception {
+        // Given - another thread holds every lock on the agent's and owner's budgets
+        budgetService.setOwnerLimit("owner-1", 150.0);
+        budgetService.reserve(agent("agent-1", 100.0), 10.0);
+        List<Object> monitors = new ArrayList<>();
+        for (String field : List.of("agents", "owners")) {
+            Map<String, BudgetNode> nodes = (Map<String, BudgetNode>) ReflectionTestUtils.getField(budgetService, field);
+            BudgetNode node = nodes.get(field.equals("agents") ? "agent-1" : "owner-1");
+            monitors.add(node);
+            monitors.add(((AtomicReference<BudgetNode.Period>) ReflectionTestUtils.getField(node, "period")).get().budget());
+        }
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread(() -> holdAll(monitors, locked, done));
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // When
+            Future<BudgetReservation> reservation = executor.submit(() -> budgetService.reserve(agent("agent-1", 100.0), 20.0));
+
+            // Then - the purchase completes while the locks are held
+            assertTrue(reservation.get(5, TimeUnit.SECONDS).isGranted());
+        } finally {
+            done.countDown();
+            holder.join();
+            executor.shutdown();
+        }
+    }
+
+    private static void holdAll(List<Object> monitors, CountDownLatch locked, CountDownLatch done) {
+        if (monitors.isEmpty()) {
+            locked.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        synchronized (monitors.get(0)) {
+            holdAll(monitors.subList(1, monitors.size()), locked, done);
+        }
+    }
+
+    private void insertAgent(String agentId, String ownerId, Double dailyLimit) {
+        jdbcTemplate.update("INSERT INTO agent_credentials (agent_id, owner_id, api_key_hash, agent_type, daily_spend_limit) VALUES (?, ?, ?, ?, ?)",
+            agentId, ownerId, "hash-" + agentId, "custom-bot", dailyLimit);
+    }
+
+    private void at(LocalDateTime time) {
+        budgetService.setClock(Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private static AgentContext agent(String agentId, Double dailySpendLimit) {
+        String ownerId = agentId.equals("other-agent") ? "owner-2" : "owner-1";
+        return AgentContext.builder().agentId(agentId).ownerId(ownerId).dailySpendLimit(dailySpendLimit).build();
+    }
+}
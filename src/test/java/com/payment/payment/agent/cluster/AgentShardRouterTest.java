@@ -0,0 +1,243 @@
+package com.payment.payment.agent.cluster;
+
+import com.payment.payment.agent.cluster.ClusterRegistry.Node;
+import com.payment.payment.agent.velocity.VelocityEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the agent shard ring, membership changes and the handoff of agent state
+ */
+class AgentShardRouterTest {
+
+    private static final Node NODE_A = new Node("node-a", "http://a:8080");
+    private static final Node NODE_B = new Node("node-b", "http://b:8080");
+
+    private FakeRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new FakeRegistry();
+    }
+
+    @Test
+    void ring_SpreadsAgentsEvenlyAndMovesOnlyTheNewNodesShare() {
+        // Given
+        List<Node> four = List.of(node("n1"), node("n2"), node("n3"), node("n4"));
+        List<Node> five = new ArrayList<>(four);
+        five.add(node("n5"));
+        HashRing before = new HashRing(four, 128);
+        HashRing after = new HashRing(five, 128);
+
+        // When
+        Map<String, Integer> owned = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String agentId = "agent-" + i;
+            Node owner = before.owner(agentId);
+            owned.merge(owner.id(), 1, Integer::sum);
+            Node newOwner = after.owner(agentId);
+            if (!newOwner.equals(owner)) {
+                moved++;
+                assertEquals("n5", newOwner.id(), "keys only move to the added node");
+            }
+        }
+
+        // Then - about a quarter each, and about a fifth moves
+        owned.values().forEach(count -> assertTrue(count > 4_000 && count < 6_000, "share " + count));
+        assertTrue(moved > 3_000 && moved < 5_000, "moved " + moved);
+        assertEquals(before.owner("agent-42"), new HashRing(List.of(node("n4"), node("n3"), node("n2"), node("n1")), 128).owner("agent-42"));
+    }
+
+    @Test
+    void singleInstance_OwnsEveryAgent() {
+        // Given - no members registered yet
+        AgentShardRouter router = router(NODE_A, engine());
+
+        // Then
+        assertTrue(router.isLocal("agent-1"));
+        assertEquals(List.of(NODE_A), router.members());
+    }
+
+    @Test
+    void ringChange_HandsVelocityStateToTheNewOwner() {
+        // Given - node-a alone counts purchases of 50 agents
+        registry.join(NODE_A);
+        VelocityEngine velocityA = engine();
+        AgentShardRouter routerA = router(NODE_A, velocityA);
+        for (int i = 0; i < 50; i++) {
+            velocityA.record("agent-" + i, "udemy", 10.0);
+            velocityA.record("agent-" + i, "envato_market", 5.0);
+        }
+
+        // When - node-b joins and both see the new ring
+        registry.join(NODE_B);
+        VelocityEngine velocityB = engine();
+        AgentShardRouter routerB = router(NODE_B, velocityB);
+        routerA.refresh();
+
+        // Then - agents now owned by node-b continue from their counts there
+        int movedAgents = 0;
+        for (int i = 0; i < 50; i++) {
+            String agentId = "agent-" + i;
+            assertEquals(routerA.owner(agentId), routerB.owner(agentId));
+            if (routerB.isLocal(agentId)) {
+                movedAgents++;
+                routerB.claim(agentId).block();
+                assertEquals(0, velocityA.snapshot(agentId).getHour().getCount());
+                assertEquals(2, velocityB.snapshot(agentId).getHour().getCount());
+                assertEquals(15.0, velocityB.snapshot(agentId).getDay().getAmount());
+                assertEquals(2, velocityB.snapshot(agentId).getHour().getDistinctMerchants());
+            } else {
+                assertEquals(2, velocityA.snapshot(agentId).getHour().getCount());
+            }
+        }
+        assertTrue(movedAgents > 0 && movedAgents < 50);
+        assertTrue(registry.parked.isEmpty());
+    }
+
+    @Test
+    void claim_TakesParkedStateOnceAndAgainAfterTheNextRefresh() {
+        // Given - node-b joins node-a, and an agent node-a keeps
+        registry.join(NODE_A);
+        VelocityEngine velocity = engine();
+        AgentShardRouter router = router(NODE_A, velocity);
+        registry.join(NODE_B);
+        router.refresh();
+        String agentId = "agent-0";
+        for (int i = 1; !router.isLocal(agentId); i++) {
+            agentId = "agent-" + i;
+        }
+        VelocityEngine elsewhere = engine();
+
+        // When - state parked before and after the agent's first request here
+        elsewhere.record(agentId, "udemy", 10.0);
+        registry.handOff(agentId, Map.of("velocity", elsewhere.release(agentId)), Duration.ofMinutes(1)).block();
+        router.claim(agentId).block();
+        elsewhere.record(agentId, "udemy", 10.0);
+        registry.handOff(agentId, Map.of("velocity", elsewhere.release(agentId)), Duration.ofMinutes(1)).block();
+        router.claim(agentId).block();
+        long afterFirstRequests = velocity.snapshot(agentId).getHour().getCount();
+        router.refresh();
+        router.claim(agentId).block();
+
+        // Then - the late state is taken on the first refresh after the change
+        assertEquals(1, afterFirstRequests);
+        assertEquals(2, velocity.snapshot(agentId).getHour().getCount());
+    }
+
+    @Test
+    void claim_StopsAndForgetsClaimedAgentsWhenParkedStateHasExpired() {
+        // Given - a ring change at T0 with the default ten minute handoff TTL
+        Instant t0 = Instant.parse("2025-01-01T12:00:00Z");
+        registry.join(NODE_A);
+        AgentShardRouter router = router(NODE_A, engine());
+        router.setClock(Clock.fixed(t0, ZoneOffset.UTC));
+        registry.join(NODE_B);
+        router.refresh();
+        router.refresh();
+        for (int i = 0; i < 100; i++) {
+            router.claim("agent-" + i).block();
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> claimed = (Set<String>) ReflectionTestUtils.getField(router, "claimed");
+        int withinWindow = claimed.size();
+
+        // When - the window ends under a stable ring
+        router.setClock(Clock.fixed(t0.plusSeconds(600), ZoneOffset.UTC));
+        router.refresh();
+        registry.handOff("agent-0", Map.of("velocity", new byte[0]), Duration.ofMinutes(1)).block();
+        router.claim("agent-0").block();
+
+        // Then
+        assertEquals(100, withinWindow);
+        assertTrue(claimed.isEmpty());
+        assertTrue(registry.parked.containsKey("agent-0"));
+    }
+
+    @Test
+    void staticRegistry_ParsesNodesAndRejectsMalformedEntries() {
+        // Given
+        StaticClusterRegistry valid = new StaticClusterRegistry();
+        ReflectionTestUtils.setField(valid, "nodes", "node-b=http://b:8080, node-a=http://a:8080");
+        StaticClusterRegistry invalid = new StaticClusterRegistry();
+        ReflectionTestUtils.setField(invalid, "nodes", "node-a");
+
+        // When
+        valid.init();
+
+        // Then
+        assertEquals(List.of(NODE_A, NODE_B), valid.members().block());
+        assertThrows(IllegalArgumentException.class, invalid::init);
+    }
+
+    private AgentShardRouter router(Node self, AgentStateHandoff... handoffs) {
+        AgentShardRouter router = new AgentShardRouter();
+        ReflectionTestUtils.setField(router, "registry", registry);
+        ReflectionTestUtils.setField(router, "handoffs", List.of(handoffs));
+        ReflectionTestUtils.setField(router, "nodeId", self.id());
+        ReflectionTestUtils.setField(router, "nodeUrl", self.url());
+        router.init();
+        return router;
+    }
+
+    private static VelocityEngine engine() {
+        VelocityEngine engine = new VelocityEngine();
+        ReflectionTestUtils.setField(engine, "capacity", 256);
+        engine.init();
+        return engine;
+    }
+
+    private static Node node(String id) {
+        return new Node(id, "http://" + id + ":8080");
+    }
+
+    /**
+     * Registry shared by the routers of a test, standing in for Redis
+     */
+    private static class FakeRegistry implements ClusterRegistry {
+
+        private final Map<String, Node> members = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, byte[]>> parked = new ConcurrentHashMap<>();
+
+        void join(Node node) {
+            members.put(node.id(), node);
+        }
+
+        @Override
+        public Mono<Void> heartbeat(Node self, Duration ttl) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<List<Node>> members() {
+            return Mono.fromSupplier(() -> members.values().stream().sorted(Comparator.comparing(Node::id)).toList());
+        }
+
+        @Override
+        public Mono<Void> handOff(String agentId, Map<String, byte[]> states, Duration ttl) {
+            return Mono.fromRunnable(() -> parked.computeIfAbsent(agentId, k -> new ConcurrentHashMap<>()).putAll(states));
+        }
+
+        @Override
+        public Mono<Map<String, byte[]>> claim(String agentId) {
+            return Mono.justOrEmpty(parked.remove(agentId));
+        }
+    }
+}
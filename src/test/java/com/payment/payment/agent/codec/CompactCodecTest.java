@@ -0,0 +1,120 @@
+package com.payment.payment.agent.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.model.PurchaseRequest;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compact binary codec
+ * Covers typed round trips, dictionary and back-reference encoding, the JSON view and versioning
+ */
+class CompactCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CompactCodec codec = new CompactCodec(objectMapper);
+
+    @Test
+    void purchaseRequest_RoundTripsAndIsSmallerThanJson() throws Exception {
+        // Given
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAgentId("agent-7f3a");
+        request.setAmount(49.99);
+        request.setMerchant("udemy");
+        request.setProductType("course");
+        request.setProductId("spring-webflux-101");
+        request.setCategory("education");
+        request.setLicenseType("single_use");
+        request.setQuantity(3);
+
+        // When
+        byte[] encoded = codec.encode(request);
+        PurchaseRequest decoded = codec.decode(encoded, PurchaseRequest.class);
+
+        // Then
+        assertEquals(request, decoded);
+        int json = objectMapper.writeValueAsBytes(request).length;
+        assertTrue(encoded.length * 3 < json, encoded.length + " bytes vs " + json + " bytes of JSON");
+    }
+
+    @Test
+    void purchaseResponse_RoundTrips() {
+        // Given
+        PurchaseResponse response = new PurchaseResponse();
+        response.setStatus("APPROVED");
+        response.setTransactionId("tx-123");
+        response.setMessage("Purchase approved");
+        response.setPaymentReference("pay-9");
+
+        // When
+        PurchaseResponse decoded = codec.decode(codec.encode(response), PurchaseResponse.class);
+
+        // Then
+        assertEquals(response, decoded);
+    }
+
+    @Test
+    void auditDetails_JsonView_MatchesTheOriginalDocument() throws Exception {
+        // Given - numbers of every kind, nesting, nulls, unicode and unknown keys
+        String json = "{\"stage\":\"decision\",\"events\":[{\"eventType\":\"PURCHASE_DENIED\",\"details\":"
+            + "{\"allowed\":false,\"explanation\":null,\"limit\":-500,\"big\":123456789012345678901234567890,"
+            + "\"ratio\":0.25,\"note\":\"café – ☃\",\"tags\":[]}},{\"eventType\":\"CUSTOM\",\"details\":{}}]}";
+
+        // When
+        byte[] encoded = codec.encodeJson(json);
+        String rendered = codec.toJson(encoded);
+
+        // Then
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(rendered));
+    }
+
+    @Test
+    void repeatedStrings_AreWrittenOnce() {
+        // Given - the same unknown merchant in 50 events
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("events", Collections.nCopies(50, Map.of("merchant", "acme_software_store")));
+
+        // When
+        byte[] encoded = codec.encode(details);
+
+        // Then
+        String raw = new String(encoded, StandardCharsets.ISO_8859_1);
+        assertEquals(raw.indexOf("acme_software_store"), raw.lastIndexOf("acme_software_store"));
+        assertEquals(objectMapper.valueToTree(details), objectMapper.valueToTree(codec.decode(encoded, Map.class)));
+    }
+
+    @Test
+    void header_NamesTheDictionaryVersion() {
+        // When
+        byte[] encoded = codec.encode(Map.of("merchant", "udemy"));
+
+        // Then - magic, version, then one dictionary byte each for the name and the value
+        assertEquals(CompactCodec.MAGIC, encoded[0]);
+        assertEquals(CompactCodec.VERSION, encoded[1]);
+        assertEquals(6, encoded.length);
+        assertTrue(CompactCodec.dictionary(CompactCodec.VERSION).size() <= CompactCodec.MAX_DICTIONARY_SIZE);
+    }
+
+    @Test
+    void decode_UnknownVersionOrTruncatedPayload_IsRejected() {
+        // Given
+        byte[] encoded = codec.encode(List.of("udemy", "something else"));
+        byte[] futureVersion = encoded.clone();
+        futureVersion[1] = (byte) (CompactCodec.VERSION + 1);
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        // Then
+        assertThrows(IllegalArgumentException.class, () -> codec.toJson(futureVersion));
+        assertThrows(IllegalArgumentException.class, () -> codec.toJson(truncated));
+        assertThrows(IllegalArgumentException.class, () -> codec.toJson("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -1,6 +1,8 @@
 package com.payment.payment.agent.controller;
 
+import com.payment.payment.agent.idempotency.IdempotencyConflictException;
 import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.service.PurchaseQueueFullException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -49,4 +51,31 @@ class GlobalExceptionHandlerTest {
         assertEquals("INVALID_REQUEST", response.getBody().getStatus());
         assertTrue(response.getBody().getMessage().contains("Invalid request"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void handleIdempotencyConflict_ShouldReturnConflict() {
+        // Arrange
+        IdempotencyConflictException exception = new IdempotencyConflictException("Idempotency-Key k1 was already used with a different request");
+
+        // Act
+        ResponseEntity<PurchaseResponse> response = globalExceptionHandler.handleIdempotencyConflict(exception);
+
+        // Assert
+        assertEquals(409, response.getStatusCode().value());
+        assertEquals("IDEMPOTENCY_CONFLICT", response.getBody().getStatus());
+    }
+
+    @Test
+    void handlePurchaseQueueFull_ShouldReturnServiceUnavailableWithRetryAfter() {
+        // Arrange
+        PurchaseQueueFullException exception = new PurchaseQueueFullException("Purchase queue is full (1000 waiting)");
+
+        // Act
+        ResponseEntity<PurchaseResponse> response = globalExceptionHandler.handlePurchaseQueueFull(exception);
+
+        // Assert
+        assertEquals(503, response.getStatusCode().value());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+        assertEquals("BUSY", response.getBody().getStatus());
+    }
+}
@@ -0,0 +1,168 @@
+package com.payment.payment.agent.controller;
+
+import com.payment.payment.agent.service.OpaPolicyService;
+import com.payment.payment.agent.service.OpaPolicyService.PolicyVersion;
+import com.payment.payment.agent.service.OpaReferenceDataSyncService;
+import com.payment.payment.agent.service.PolicyBundleService;
+import com.payment.payment.agent.support.LocalOpaStandIn;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the OPA bundle endpoint
+ * Covers ETag handling, long polling and bundle contents
+ */
+class PolicyBundleControllerTest {
+
+    private Sinks.Many<PolicyVersion> versions;
+    private PolicyBundleController controller;
+
+    @BeforeEach
+    void setUp() {
+        versions = Sinks.many().replay().latest();
+        OpaPolicyService opaPolicyService = mock(OpaPolicyService.class);
+        when(opaPolicyService.policyVersions()).thenReturn(versions.asFlux());
+
+        OpaReferenceDataSyncService referenceData = new OpaReferenceDataSyncService();
+        ReflectionTestUtils.setField(referenceData, "digitalGoodsMerchants", new ArrayList<>(List.of("udemy")));
+
+        PolicyBundleService bundleService = new PolicyBundleService();
+        ReflectionTestUtils.setField(bundleService, "opaPolicyService", opaPolicyService);
+        ReflectionTestUtils.setField(bundleService, "referenceDataService", referenceData);
+        bundleService.init();
+
+        controller = new PolicyBundleController();
+        ReflectionTestUtils.setField(controller, "bundleService", bundleService);
+        ReflectionTestUtils.setField(controller, "bundleToken", "s3cret");
+        controller.init();
+    }
+
+    @Test
+    void getBundle_NoPolicyYet_ReturnsServiceUnavailable() {
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, get("payments", null, null).getStatusCode());
+    }
+
+    @Test
+    void getBundle_ReturnsBundleWithPolicyAndReferenceData() throws Exception {
+        // Given
+        versions.tryEmitNext(version(1, "package payments\n"));
+
+        // When
+        ResponseEntity<byte[]> response = get("payments", null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getHeaders().getETag());
+        assertEquals(PolicyBundleController.BUNDLE_MEDIA_TYPE, response.getHeaders().getContentType());
+        Map<String, String> entries = LocalOpaStandIn.readBundle(response.getBody());
+        assertEquals("package payments\n", entries.get("/payments/policy.rego"));
+        assertEquals("{\"digital_goods_merchants\":{\"udemy\":true}}", entries.get("/reference/data.json"));
+        assertTrue(entries.get("/.manifest").contains("\"roots\":[\"payments\",\"reference\"]"));
+    }
+
+    @Test
+    void getBundle_MatchingEtag_ReturnsNotModified() {
+        // Given
+        versions.tryEmitNext(version(1, "package payments\n"));
+        String etag = currentEtag();
+
+        // When
+        ResponseEntity<byte[]> response = get("payments", etag, null);
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void getBundle_LongPoll_ReturnsNewBundleWhenPublished() {
+        // Given
+        versions.tryEmitNext(version(1, "package payments\n"));
+        String etag = currentEtag();
+        Schedulers.parallel().schedule(() -> versions.tryEmitNext(version(2, "package payments\nallow := true\n")),
+            200, TimeUnit.MILLISECONDS);
+
+        // When
+        ResponseEntity<byte[]> response = get("payments", etag, "wait=5");
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void getBundle_LongPollTimesOut_ReturnsNotModified() {
+        // Given
+        versions.tryEmitNext(version(1, "package payments\n"));
+        String etag = currentEtag();
+
+        // When
+        ResponseEntity<byte[]> response = get("payments", etag, "wait=1");
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+
+    @Test
+    void getBundle_UnknownName_ReturnsNotFound() {
+        versions.tryEmitNext(version(1, "package payments\n"));
+        assertEquals(HttpStatus.NOT_FOUND, get("other", null, null).getStatusCode());
+    }
+
+    @Test
+    void getBundle_RejectsMissingOrWrongBearer() {
+        // Given
+        versions.tryEmitNext(version(1, "package payments\n"));
+
+        // When & Then
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.getBundle("payments", null, null, null)
+            .block(Duration.ofSeconds(10)).getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.getBundle("payments", null, null, "Bearer other")
+            .block(Duration.ofSeconds(10)).getStatusCode());
+        assertEquals(HttpStatus.OK, get("payments", null, null).getStatusCode());
+    }
+
+    @Test
+    void init_WithoutToken_RefusesToStart() {
+        // Given
+        PolicyBundleController unprotected = new PolicyBundleController();
+        ReflectionTestUtils.setField(unprotected, "bundleToken", " ");
+
+        // When & Then
+        assertThrows(IllegalStateException.class, unprotected::init);
+    }
+
+    @Test
+    void parseWait_ReadsPreferHeader() {
+        assertEquals(30, PolicyBundleController.parseWait("wait=30"));
+        assertEquals(0, PolicyBundleController.parseWait(null));
+        assertEquals(0, PolicyBundleController.parseWait("respond-async"));
+    }
+
+    private ResponseEntity<byte[]> get(String name, String ifNoneMatch, String prefer) {
+        return controller.getBundle(name, ifNoneMatch, prefer, "Bearer s3cret").block(Duration.ofSeconds(10));
+    }
+
+    private String currentEtag() {
+        return get("payments", null, null).getHeaders().getETag();
+    }
+
+    private PolicyVersion version(long v, String policy) {
+        return new PolicyVersion(v, "hash-" + v, policy, Instant.now());
+    }
+}
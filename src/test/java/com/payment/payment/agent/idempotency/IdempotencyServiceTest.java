@@ -0,0 +1,187 @@
+package com.payment.payment.agent.idempotency;
+
+import com.payment.payment.agent.idempotency.IdempotencyStore.StoredResult;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Idempotency-Key handling
+ * Covers in-flight coalescing, stored replays, conflicts and expiry
+ */
+class IdempotencyServiceTest {
+
+    private InMemoryIdempotencyStore store;
+    private IdempotencyService service;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryIdempotencyStore(100);
+        service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "store", store);
+        executions = new AtomicInteger();
+    }
+
+    @Test
+    void execute_ConcurrentRetries_ShareOneExecution() {
+        // Given - the first attempt is still running when the retries arrive
+        Sinks.One<PurchaseResponse> pending = Sinks.one();
+        Supplier<Mono<PurchaseResponse>> action = () -> {
+            executions.incrementAndGet();
+            return pending.asMono();
+        };
+
+        // When
+        Mono<List<PurchaseResponse>> all = Flux.range(0, 5)
+            .flatMap(i -> service.execute("agent-1", "key-1", "fp", action))
+            .collectList()
+            .cache();
+        all.subscribe();
+        pending.tryEmitValue(response("APPROVED"));
+        List<PurchaseResponse> responses = all.block(Duration.ofSeconds(5));
+
+        // Then
+        assertEquals(1, executions.get());
+        assertEquals(5, responses.size());
+        assertEquals(1, responses.stream().map(PurchaseResponse::getTransactionId).distinct().count());
+        assertEquals(0, service.inFlightCount());
+    }
+
+    @Test
+    void execute_LaterRetry_ReplaysStoredResult() {
+        // Given
+        PurchaseResponse first = service.execute("agent-1", "key-1", "fp", counting("APPROVED")).block();
+
+        // When
+        PurchaseResponse retry = service.execute("agent-1", "key-1", "fp", counting("DENIED")).block();
+
+        // Then
+        assertEquals(1, executions.get());
+        assertEquals(first.getTransactionId(), retry.getTransactionId());
+        assertEquals("APPROVED", retry.getStatus());
+    }
+
+    @Test
+    void execute_SameKeyDifferentPayload_Conflicts() {
+        // Given
+        service.execute("agent-1", "key-1", "fp-a", counting("APPROVED")).block();
+
+        // When & Then
+        assertThrows(IdempotencyConflictException.class,
+            () -> service.execute("agent-1", "key-1", "fp-b", counting("APPROVED")).block());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_SameKeyDifferentPayloadWhileInFlight_Conflicts() {
+        // Given
+        Sinks.One<PurchaseResponse> pending = Sinks.one();
+        service.execute("agent-1", "key-1", "fp-a", pending::asMono).subscribe();
+
+        // When & Then
+        assertThrows(IdempotencyConflictException.class,
+            () -> service.execute("agent-1", "key-1", "fp-b", counting("APPROVED")).block());
+        pending.tryEmitValue(response("APPROVED"));
+    }
+
+    @Test
+    void execute_KeysAreScopedPerAgent() {
+        // When
+        service.execute("agent-1", "key-1", "fp", counting("APPROVED")).block();
+        service.execute("agent-2", "key-1", "fp-other", counting("APPROVED")).block();
+
+        // Then
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_FailedAttempt_IsNotStored() {
+        // Given
+        assertThrows(RuntimeException.class, () -> service.execute("agent-1", "key-1", "fp",
+            () -> Mono.error(new RuntimeException("OPA timeout"))).block());
+
+        // When
+        PurchaseResponse retry = service.execute("agent-1", "key-1", "fp", counting("APPROVED")).block();
+
+        // Then
+        assertEquals("APPROVED", retry.getStatus());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_RetryableOutcome_IsNotReplayed() {
+        // Given - a fail-closed denial while OPA was unreachable
+        service.execute("agent-1", "key-1", "fp", () -> {
+            PurchaseResponse denied = response("DENIED");
+            denied.setRetryable(true);
+            return Mono.just(denied);
+        }).block();
+
+        // When
+        PurchaseResponse retry = service.execute("agent-1", "key-1", "fp", counting("APPROVED")).block();
+
+        // Then
+        assertEquals("APPROVED", retry.getStatus());
+    }
+
+    @Test
+    void execute_InvalidKey_IsRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> service.execute("agent-1", " ", "fp", counting("APPROVED")).block());
+        assertThrows(IllegalArgumentException.class,
+            () -> service.execute("agent-1", "k".repeat(256), "fp", counting("APPROVED")).block());
+    }
+
+    @Test
+    void inMemoryStore_ExpiresAndEvictsOldestEntries() {
+        // Given
+        InMemoryIdempotencyStore small = new InMemoryIdempotencyStore(2);
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        small.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        StoredResult result = new StoredResult("fp", response("APPROVED"));
+
+        // When
+        small.put("a", result, Duration.ofMinutes(1)).block();
+        small.put("b", result, Duration.ofMinutes(10)).block();
+        small.put("c", result, Duration.ofMinutes(10)).block();
+
+        // Then - "a" evicted by size
+        assertEquals(2, small.size());
+        assertNull(small.get("a").block());
+        assertNotNull(small.get("b").block());
+
+        // And - entries disappear once their TTL passes
+        small.setClock(Clock.fixed(now.plus(Duration.ofMinutes(11)), ZoneOffset.UTC));
+        assertNull(small.get("b").block());
+    }
+
+    private Supplier<Mono<PurchaseResponse>> counting(String status) {
+        return () -> {
+            executions.incrementAndGet();
+            return Mono.just(response(status));
+        };
+    }
+
+    private static PurchaseResponse response(String status) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(UUID.randomUUID().toString());
+        response.setStatus(status);
+        return response;
+    }
+}
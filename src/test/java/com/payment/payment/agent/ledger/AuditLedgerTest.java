@@ -0,0 +1,236 @@
+package com.payment.payment.agent.ledger;
+
+import com.payment.payment.agent.ledger.LedgerVerifier.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the hash-chained audit ledger and its verifier
+ */
+class AuditLedgerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void verify_ChainAcrossSegments_IsValid() throws IOException {
+        // Given - 1 MB segments, so 25,000 events span several of them
+        AuditLedger ledger = ledger(1);
+        for (int i = 0; i < 25_000; i++) {
+            assertEquals(i, ledger.append("tx-" + i, "PURCHASE_APPROVED", details(i), T0.plusSeconds(i)));
+        }
+        ledger.close();
+
+        // When
+        Report report = verifier(4).verify(dir);
+
+        // Then
+        assertTrue(report.isValid(), report.getReason());
+        assertTrue(report.getSegments() > 2, "segments=" + report.getSegments());
+        assertEquals(25_000, report.getRecords());
+        assertNotNull(report.getLastHash());
+    }
+
+    @Test
+    void verify_ModifiedRecord_ReportsFirstBrokenLink() throws IOException {
+        // Given - three segments of 100 records
+        AuditLedger ledger = ledger(1);
+        for (int i = 0; i < 300; i++) {
+            ledger.append("tx-" + i, "PURCHASE_APPROVED", details(i), T0);
+            if (i % 100 == 99) {
+                ledger.roll();
+            }
+        }
+        ledger.close();
+
+        // When - amounts of seq 150 and seq 250 rewritten in place
+        rewrite(segment(1), "\"amount\":150.0", "\"amount\":950.0");
+        rewrite(segment(2), "\"amount\":250.0", "\"amount\":850.0");
+        Report report = verifier(4).verify(dir);
+
+        // Then
+        assertFalse(report.isValid());
+        assertEquals(150L, report.getBrokenSeq());
+        assertEquals(segment(1).getFileName().toString(), report.getBrokenSegment());
+        assertTrue(report.getReason().contains("hash mismatch"));
+    }
+
+    @Test
+    void verify_RemovedSegment_IsDetected() throws IOException {
+        // Given
+        AuditLedger ledger = ledger(1);
+        for (int i = 0; i < 30; i++) {
+            ledger.append("tx-" + i, "PURCHASE_APPROVED", details(i), T0);
+            if (i % 10 == 9) {
+                ledger.roll();
+            }
+        }
+        ledger.close();
+
+        // When
+        Files.delete(segment(1));
+        Report report = verifier(2).verify(dir);
+
+        // Then
+        assertFalse(report.isValid());
+        assertEquals(10L, report.getBrokenSeq());
+        assertTrue(report.getReason().contains("missing segment 1"));
+    }
+
+    @Test
+    void verify_RewrittenFooter_FailsMerkleCheck() throws IOException {
+        // Given
+        AuditLedger ledger = ledger(1);
+        for (int i = 0; i < 5; i++) {
+            ledger.append("tx-" + i, "PURCHASE_APPROVED", details(i), T0);
+        }
+        ledger.close();
+
+        // When - overwrite the last byte of the Merkle root
+        try (FileChannel channel = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x42}), channel.size() - 1);
+        }
+        Report report = verifier(1).verify(dir);
+
+        // Then
+        assertFalse(report.isValid());
+        assertEquals("Merkle root mismatch", report.getReason());
+    }
+
+    @Test
+    void open_AfterCrash_SealsLastSegmentAndContinuesChain() throws IOException {
+        // Given - a writer that never closed its segment
+        AuditLedger crashed = ledger(1);
+        for (int i = 0; i < 50; i++) {
+            crashed.append("tx-" + i, "PURCHASE_APPROVED", details(i), T0);
+        }
+        crashed.sync();
+
+        // When
+        AuditLedger restarted = ledger(1);
+        long seq = restarted.append("tx-50", "PURCHASE_APPROVED", details(50), T0);
+        restarted.close();
+        Report report = verifier(2).verify(dir);
+
+        // Then
+        assertEquals(50, seq);
+        assertTrue(report.isValid(), report.getReason());
+        assertEquals(51, report.getRecords());
+        assertEquals(2, report.getSegments());
+    }
+
+    @Test
+    void roll_KeepsSealedSegmentsAtTheirMappedSize() throws IOException {
+        // Given
+        AuditLedger ledger = ledger(1);
+        ledger.append("tx-0", "PURCHASE_APPROVED", details(0), T0);
+
+        // When
+        ledger.roll();
+        ledger.append("tx-1", "PURCHASE_APPROVED", details(1), T0);
+        ledger.close();
+
+        // Then - nothing was truncated while mapped, and the footer still closes the file
+        assertEquals(1024 * 1024, Files.size(segment(0)));
+        Report report = verifier(1).verify(dir);
+        assertTrue(report.isValid(), report.getReason());
+        assertEquals(2, report.getRecords());
+    }
+
+    @Test
+    void merkleRoot_DependsOnEveryLeafAndItsPosition() {
+        byte[] a = LedgerFormat.sha256().digest(new byte[]{1});
+        byte[] b = LedgerFormat.sha256().digest(new byte[]{2});
+        byte[] c = LedgerFormat.sha256().digest(new byte[]{3});
+
+        assertArrayEquals(a, LedgerFormat.merkleRoot(List.of(a)));
+        assertFalse(Arrays.equals(LedgerFormat.merkleRoot(List.of(a, b, c)), LedgerFormat.merkleRoot(List.of(b, a, c))));
+        assertFalse(Arrays.equals(LedgerFormat.merkleRoot(List.of(a, b)), LedgerFormat.merkleRoot(List.of(a, b, c))));
+    }
+
+    @Test
+    void merkleBuilder_MatchesTheLevelByLevelRootForEveryCount() {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int n = 0; n <= 70; n++) {
+            LedgerFormat.MerkleBuilder builder = new LedgerFormat.MerkleBuilder();
+            leaves.forEach(builder::add);
+
+            assertArrayEquals(levelByLevelRoot(leaves), builder.root(), "records=" + n);
+            leaves.add(LedgerFormat.sha256().digest(new byte[]{(byte) n}));
+        }
+    }
+
+    // The root as LedgerFormat defines it: pair each level, carry an odd node up unchanged
+    private static byte[] levelByLevelRoot(List<byte[]> leaves) {
+        MessageDigest digest = LedgerFormat.sha256();
+        if (leaves.isEmpty()) {
+            return digest.digest();
+        }
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    parents.add(level.get(i));
+                    continue;
+                }
+                digest.update((byte) 0x01);
+                digest.update(level.get(i));
+                digest.update(level.get(i + 1));
+                parents.add(digest.digest());
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    private AuditLedger ledger(int segmentSizeMb) throws IOException {
+        AuditLedger ledger = new AuditLedger();
+        ReflectionTestUtils.setField(ledger, "dir", dir.toString());
+        ReflectionTestUtils.setField(ledger, "segmentSizeMb", segmentSizeMb);
+        ledger.open();
+        return ledger;
+    }
+
+    private static LedgerVerifier verifier(int parallelism) {
+        LedgerVerifier verifier = new LedgerVerifier();
+        ReflectionTestUtils.setField(verifier, "parallelism", parallelism);
+        return verifier;
+    }
+
+    private Path segment(long index) {
+        return dir.resolve(LedgerFormat.fileName(index));
+    }
+
+    private static String details(int i) {
+        return "{\"agentId\":\"agent-1\",\"amount\":" + i + ".0,\"merchant\":\"udemy\",\"productType\":\"course\"}";
+    }
+
+    private static void rewrite(Path file, String from, String to) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        int at = content.indexOf(from);
+        assertTrue(at >= 0, from + " not found in " + file);
+        byte[] replacement = to.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(replacement, 0, bytes, at, replacement.length);
+        Files.write(file, bytes);
+    }
+}
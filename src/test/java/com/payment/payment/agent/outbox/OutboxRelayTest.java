@@ -0,0 +1,231 @@
+package com.payment.payment.agent.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.audit.AuditStageEventTypeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the outbox relay against an embedded H2 database with the real migrations
+ */
+class OutboxRelayTest {
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private OutboxRepository repository;
+    private OutboxRelay relay;
+    private final List<OutboxRecord> published = new CopyOnWriteArrayList<>();
+    private volatile boolean sinkDown;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V1__create_tables.sql")
+            .addScript("db/migration/V6__create_outbox_tables.sql")
+            .addScript("db/migration/V7__audit_log_query_indexes.sql")
+            .addScript("db/migration/V11__create_audit_stage_event_types.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        AuditStageEventTypeRepository stageEventTypeRepository = new AuditStageEventTypeRepository();
+        ReflectionTestUtils.setField(stageEventTypeRepository, "jdbcTemplate", jdbcTemplate);
+        repository = new OutboxRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(repository, "stageEventTypeRepository", stageEventTypeRepository);
+
+        relay = new OutboxRelay();
+        ReflectionTestUtils.setField(relay, "outboxRepository", repository);
+        ReflectionTestUtils.setField(relay, "transactionManager", new DataSourceTransactionManager(database));
+        ReflectionTestUtils.setField(relay, "eventSink", (EventSink) events -> {
+            if (sinkDown) {
+                throw new IllegalStateException("sink unavailable");
+            }
+            published.addAll(events);
+        });
+        ReflectionTestUtils.setField(relay, "batchSize", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void relay_CopiesAuditEventsInOrderAndPublishesDomainEvents() {
+        // Given - 250 audit events interleaved with domain events
+        List<OutboxRecord> records = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            records.add(OutboxRecord.audit("tx-" + i, "EVENT_" + i, "{}", LocalDateTime.of(2025, 1, 1, 0, 0).plusSeconds(i)));
+            if (i % 50 == 0) {
+                records.add(OutboxRecord.domain("tx-" + i, "purchase.approved", "{\"transactionId\":\"tx-" + i + "\"}"));
+            }
+        }
+        repository.append(records);
+
+        // When
+        relay.relay();
+
+        // Then
+        List<String> types = jdbcTemplate.queryForList("SELECT event_type FROM audit_log ORDER BY id", String.class);
+        assertEquals(250, types.size());
+        assertEquals("EVENT_0", types.get(0));
+        assertEquals("EVENT_249", types.get(249));
+        assertEquals(LocalDateTime.of(2025, 1, 1, 0, 0, 5),
+            jdbcTemplate.queryForObject("SELECT timestamp FROM audit_log WHERE event_type = 'EVENT_5'", LocalDateTime.class));
+        assertEquals(5, published.size());
+        assertEquals("tx-0", published.get(0).aggregateId());
+        assertEquals(255L, repository.checkpoint(OutboxRelay.AUDIT_CONSUMER));
+        assertEquals(255L, repository.checkpoint(OutboxRelay.SINK_CONSUMER));
+        assertEquals(0, count("outbox_event"));
+    }
+
+    @Test
+    void relay_SinkFailure_RetriesBatchWithoutDuplicatingAuditRows() {
+        // Given
+        repository.append(List.of(
+            OutboxRecord.audit("tx-1", "PURCHASE_DENIED", "{}", LocalDateTime.now()),
+            OutboxRecord.domain("tx-1", "purchase.denied", "{}")));
+        sinkDown = true;
+
+        // When
+        relay.relay();
+
+        // Then - audit copied, domain event kept for the sink
+        assertEquals(1, count("audit_log"));
+        assertEquals(0L, repository.checkpoint(OutboxRelay.SINK_CONSUMER));
+        assertEquals(2, count("outbox_event"));
+
+        // When - the sink recovers
+        sinkDown = false;
+        relay.relay();
+
+        // Then
+        assertEquals(1, published.size());
+        assertEquals(1, count("audit_log"));
+        assertEquals(0, count("outbox_event"));
+    }
+
+    @Test
+    void relay_StageRow_IndexesItsEventTypes() {
+        // Given - a consolidated stage between two plain events
+        LocalDateTime at = LocalDateTime.of(2025, 1, 1, 0, 0);
+        AuditLog received = AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{}");
+        received.setTimestamp(at);
+        AuditLog approved = AuditLog.of("tx-1", "PURCHASE_APPROVED", "{}");
+        approved.setTimestamp(at);
+        AuditLog stage = AuditStage.consolidate("tx-1", "decision", List.of(received, approved));
+        repository.append(List.of(
+            OutboxRecord.audit("tx-0", "PURCHASE_DENIED", "{}", at),
+            OutboxRecord.audit("tx-1", stage.getEventType(), stage.getDetails(), at),
+            OutboxRecord.audit("tx-2", "PURCHASE_DENIED", "{}", at)));
+
+        // When
+        relay.relay();
+
+        // Then - both event types point at the stage row
+        Long stageId = jdbcTemplate.queryForObject("SELECT id FROM audit_log WHERE event_type = 'AUDIT_STAGE'", Long.class);
+        assertEquals(List.of("PURCHASE_APPROVED", "PURCHASE_REQUEST_RECEIVED"), jdbcTemplate.queryForList(
+            "SELECT event_type FROM audit_stage_event_type WHERE audit_id = ? ORDER BY event_type", String.class, stageId));
+        assertEquals(2, count("audit_stage_event_type"));
+    }
+
+    @Test
+    void relay_EmptyOutbox_DoesNothing() {
+        relay.relay();
+
+        assertEquals(0L, repository.checkpoint(OutboxRelay.AUDIT_CONSUMER));
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    void contiguous_StopsAtRecentGapButSkipsOldOne() {
+        // Given - id 3 is missing
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxRecord> rows = List.of(row(1, now), row(2, now), row(4, now), row(5, now));
+
+        // When
+        List<OutboxRecord> recent = OutboxRelay.contiguous(0, rows, now.minusSeconds(5));
+        List<OutboxRecord> expired = OutboxRelay.contiguous(0, rows, now.plusSeconds(1));
+
+        // Then
+        assertEquals(List.of(1L, 2L), recent.stream().map(OutboxRecord::id).toList());
+        assertEquals(4, expired.size());
+    }
+
+    @Test
+    void fileEventSink_AppendsNdjsonLines() throws Exception {
+        // Given
+        FileEventSink sink = new FileEventSink();
+        ReflectionTestUtils.setField(sink, "dir", dir.resolve("events").toString());
+        Path file = dir.resolve("events").resolve(FileEventSink.CURRENT);
+        LocalDateTime now = LocalDateTime.now();
+
+        // When
+        sink.publish(List.of(new OutboxRecord(7L, OutboxRecord.DOMAIN, "tx-1", "purchase.approved", "{\"status\":\"APPROVED\"}", now, now)));
+        sink.publish(List.of(new OutboxRecord(8L, OutboxRecord.DOMAIN, "tx-2", "purchase.denied", "{\"status\":\"DENIED\"}", now, now)));
+
+        // Then
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        var first = new ObjectMapper().readTree(lines.get(0));
+        assertEquals(7, first.get("id").asLong());
+        assertEquals("APPROVED", first.get("payload").get("status").asText());
+    }
+
+    @Test
+    void fileEventSink_RotatesFullFilesAndKeepsTheNewest() throws Exception {
+        // Given - room for about two events per file, three files kept
+        FileEventSink sink = new FileEventSink();
+        Path events = dir.resolve("events");
+        ReflectionTestUtils.setField(sink, "dir", events.toString());
+        ReflectionTestUtils.setField(sink, "maxFiles", 3);
+        ReflectionTestUtils.setField(sink, "maxFileBytes", 250L);
+        LocalDateTime now = LocalDateTime.now();
+
+        // When
+        for (long id = 1; id <= 10; id++) {
+            sink.publish(List.of(new OutboxRecord(id, OutboxRecord.DOMAIN, "tx-" + id, "purchase.approved", "{\"status\":\"APPROVED\"}", now, now)));
+        }
+
+        // Then - the newest events are kept, in files no larger than the bound
+        List<Path> files;
+        try (var listing = Files.list(events)) {
+            files = listing.sorted().toList();
+        }
+        assertEquals(3, files.size());
+        assertTrue(files.stream().allMatch(f -> f.toFile().length() <= 250), files.toString());
+        List<String> current = Files.readAllLines(events.resolve(FileEventSink.CURRENT));
+        assertEquals(10, new ObjectMapper().readTree(current.get(current.size() - 1)).get("id").asLong());
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static OutboxRecord row(long id, LocalDateTime createdAt) {
+        return new OutboxRecord(id, OutboxRecord.AUDIT, "tx", "E", "{}", createdAt, createdAt);
+    }
+}
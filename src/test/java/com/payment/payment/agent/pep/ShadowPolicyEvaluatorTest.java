@@ -0,0 +1,165 @@
+package com.payment.payment.agent.pep;
+
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
+import com.payment.payment.agent.pep.ShadowPolicyEvaluator.ShadowReport;
+import com.payment.payment.agent.pep.ShadowPolicyEvaluator.ShadowResult;
+import com.payment.payment.agent.service.OpaPolicyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ShadowPolicyEvaluator
+ * Tests divergence recording, bounded buffering and failure isolation
+ */
+class ShadowPolicyEvaluatorTest {
+
+    private ShadowPolicyEvaluator evaluator;
+    private String candidateBody;
+    private HttpStatus candidateStatus;
+    private HttpStatus pushStatus;
+
+    @BeforeEach
+    void setUp() {
+        candidateBody = "{\"result\":{\"allow\":false,\"explanation\":[\"candidate denies\"]}}";
+        candidateStatus = HttpStatus.OK;
+        pushStatus = HttpStatus.OK;
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                if (request.method() == HttpMethod.PUT) {
+                    return Mono.just(ClientResponse.create(pushStatus).build());
+                }
+                return Mono.just(ClientResponse.create(candidateStatus)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(candidateBody)
+                    .build());
+            })
+            .build();
+        OpaPolicyService opaPolicyService = new OpaPolicyService();
+        ReflectionTestUtils.setField(opaPolicyService, "opaWebClient", webClient);
+        ReflectionTestUtils.setField(opaPolicyService, "pushRetries", 0);
+
+        evaluator = new ShadowPolicyEvaluator();
+        ReflectionTestUtils.setField(evaluator, "opaWebClient", webClient);
+        ReflectionTestUtils.setField(evaluator, "opaPolicyService", opaPolicyService);
+        ReflectionTestUtils.setField(evaluator, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(evaluator, "enabled", true);
+        ReflectionTestUtils.setField(evaluator, "sampleRate", 1.0);
+        ReflectionTestUtils.setField(evaluator, "bufferSize", 3);
+        evaluator.init();
+    }
+
+    @Test
+    void evaluate_CandidateDisagrees_RecordsDivergence() {
+        // When
+        ShadowResult result = evaluator.evaluate(Map.of("input", Map.of()), decision(true), 1_000_000).block();
+
+        // Then
+        assertNotNull(result);
+        assertTrue(result.isDiverged());
+        assertEquals(List.of("candidate denies"), result.getShadowExplanation());
+        ShadowReport report = evaluator.report();
+        assertEquals(1, report.getEvaluated());
+        assertEquals(1, report.getDivergences());
+        assertEquals(1, report.getRecentDivergences().size());
+        assertEquals(1000, report.getPrimaryLatencyP50Micros());
+    }
+
+    @Test
+    void evaluate_CandidateAgrees_NoDivergence() {
+        // When
+        evaluator.evaluate(Map.of("input", Map.of()), decision(false), 1_000_000).block();
+
+        // Then
+        ShadowReport report = evaluator.report();
+        assertEquals(1, report.getEvaluated());
+        assertEquals(0, report.getDivergences());
+        assertEquals(0.0, report.getWindowDivergenceRate());
+    }
+
+    @Test
+    void report_BufferIsBounded() {
+        // When
+        for (int i = 0; i < 10; i++) {
+            evaluator.evaluate(Map.of("input", Map.of()), decision(true), 1_000_000).block();
+        }
+
+        // Then
+        ShadowReport report = evaluator.report();
+        assertEquals(10, report.getEvaluated());
+        assertEquals(3, report.getWindowSize());
+    }
+
+    @Test
+    void maybeEvaluate_CandidateFails_DoesNotThrow() {
+        // Given
+        candidateStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+        candidateBody = "{}";
+
+        // When & Then
+        assertDoesNotThrow(() -> evaluator.maybeEvaluate(Map.of("input", Map.of()), decision(true), 1_000_000));
+        assertEquals(1, evaluator.report().getErrors());
+        assertEquals(0, evaluator.report().getEvaluated());
+    }
+
+    @Test
+    void evaluate_CandidateUndefined_CountsAnErrorNotADivergence() {
+        // Given - OPA answers without a result when the package isn't loaded
+        candidateBody = "{}";
+
+        // When
+        assertThrows(IllegalStateException.class,
+            () -> evaluator.evaluate(Map.of("input", Map.of()), decision(true), 1_000_000).block());
+
+        // Then
+        ShadowReport report = evaluator.report();
+        assertEquals(1, report.getErrors());
+        assertEquals(0, report.getEvaluated());
+        assertEquals(0, report.getDivergences());
+    }
+
+    @Test
+    void maybeEvaluate_CandidatePushFailed_SkipsUntilARecheckLoadsIt() {
+        // Given - OPA is not up when the candidate is first pushed
+        pushStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        ReflectionTestUtils.setField(evaluator, "candidatePolicyPath", "classpath:policies/agent_policy.rego");
+        evaluator.init();
+
+        // When
+        evaluator.maybeEvaluate(Map.of("input", Map.of()), decision(true), 1_000_000);
+
+        // Then - nothing is compared against a package OPA doesn't have
+        assertFalse(evaluator.report().isCandidateLoaded());
+        assertEquals(1, evaluator.report().getSkipped());
+        assertEquals(0, evaluator.report().getEvaluated());
+
+        // When - OPA comes up
+        pushStatus = HttpStatus.OK;
+        evaluator.recheck();
+        evaluator.maybeEvaluate(Map.of("input", Map.of()), decision(true), 1_000_000);
+
+        // Then
+        assertTrue(evaluator.report().isCandidateLoaded());
+        assertEquals(1, evaluator.report().getEvaluated());
+    }
+
+    private PolicyDecision decision(boolean allowed) {
+        PolicyDecision decision = new PolicyDecision();
+        decision.setAllowed(allowed);
+        decision.setExplanation(List.of(allowed ? "approved" : "denied"));
+        return decision;
+    }
+}
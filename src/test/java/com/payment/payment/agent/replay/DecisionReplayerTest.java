@@ -0,0 +1,207 @@
+package com.payment.payment.agent.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
+import com.payment.payment.agent.replay.DecisionReplayer.ReplayReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionReplayerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replay_WithoutBaseline_CountsDecisionsAndWritesThemInInputOrder() throws IOException {
+        // Given - wrapped and bare inputs, a blank line, and random evaluation delays
+        Path input = write("input.ndjson",
+            "{\"input\":{\"purchase\":{\"amount\":100}}}",
+            "",
+            "{\"purchase\":{\"amount\":900}}",
+            "{\"input\":{\"purchase\":{\"amount\":50}}}");
+        Path decisions = dir.resolve("decisions.ndjson");
+        DecisionReplayer replayer = new DecisionReplayer(jittered(limitPolicy(500)), 8);
+
+        // When
+        ReplayReport report = replayer.replay(input, null, decisions, null);
+
+        // Then
+        assertEquals(3, report.getRecords());
+        assertEquals(2, report.getAllowed());
+        assertEquals(1, report.getDenied());
+        assertEquals(0, report.getErrors());
+        assertFalse(report.hasRegressions());
+        List<String> lines = Files.readAllLines(decisions);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"line\":1,\"allow\":true"));
+        assertTrue(lines.get(1).startsWith("{\"line\":3,\"allow\":false"));
+        assertTrue(lines.get(2).startsWith("{\"line\":4,\"allow\":true"));
+    }
+
+    @Test
+    void replay_AgainstOwnOutput_ReportsNoDiffs() throws IOException {
+        // Given
+        Path input = write("input.ndjson", inputs(200));
+        Path decisions = dir.resolve("decisions.ndjson");
+        new DecisionReplayer(limitPolicy(500), 16).replay(input, null, decisions, null);
+
+        // When
+        ReplayReport report = new DecisionReplayer(jittered(limitPolicy(500)), 16).replay(input, decisions, null, null);
+
+        // Then
+        assertEquals(200, report.getCompared());
+        assertFalse(report.hasRegressions());
+        assertEquals(0, report.getExplanationChanges());
+        assertTrue(report.getSampleDiffs().isEmpty());
+    }
+
+    @Test
+    void replay_ChangedPolicy_ReportsFlippedDecisions() throws IOException {
+        // Given - baseline limit 500, candidate limit 300; amounts are 0..990 step 10
+        Path input = write("input.ndjson", inputs(100));
+        Path baseline = dir.resolve("baseline.ndjson");
+        Path diffs = dir.resolve("diffs.ndjson");
+        new DecisionReplayer(limitPolicy(500), 4).replay(input, null, baseline, null);
+
+        // When
+        ReplayReport report = new DecisionReplayer(limitPolicy(300), 4).replay(input, baseline, null, diffs);
+
+        // Then - amounts 310..500 flip from allow to deny
+        assertEquals(20, report.getAllowToDeny());
+        assertEquals(0, report.getDenyToAllow());
+        assertTrue(report.hasRegressions());
+        List<String> diffLines = Files.readAllLines(diffs);
+        assertEquals(20, diffLines.size());
+        assertTrue(diffLines.get(0).contains("\"kind\":\"allow_to_deny\""));
+    }
+
+    @Test
+    void replay_AcceptsRawOpaResponsesAsBaseline() throws IOException {
+        // Given
+        Path input = write("input.ndjson",
+            "{\"input\":{\"purchase\":{\"amount\":100}}}",
+            "{\"input\":{\"purchase\":{\"amount\":900}}}");
+        Path baseline = write("baseline.ndjson",
+            "{\"result\":{\"allow\":true,\"explanation\":[\"ok\"]}}",
+            "{\"result\":{\"allow\":true,\"explanation\":[\"ok\"]}}");
+
+        // When
+        ReplayReport report = new DecisionReplayer(limitPolicy(500), 2).replay(input, baseline, null, null);
+
+        // Then
+        assertEquals(1, report.getAllowToDeny());
+        assertEquals(0, report.getExplanationChanges());
+    }
+
+    @Test
+    void replay_EvaluatorErrorsAndBadLines_AreCountedNotFatal() throws IOException {
+        // Given
+        Path input = write("input.ndjson",
+            "{\"input\":{\"purchase\":{\"amount\":100}}}",
+            "not json",
+            "{\"input\":{\"purchase\":{\"amount\":-1}}}");
+        Function<JsonNode, Mono<PolicyDecision>> failing = in -> in.path("purchase").path("amount").asDouble() < 0
+            ? Mono.error(new IllegalStateException("OPA returned 500"))
+            : limitPolicy(500).apply(in);
+
+        // When
+        ReplayReport report = new DecisionReplayer(failing, 4).replay(input, null, null, null);
+
+        // Then
+        assertEquals(3, report.getRecords());
+        assertEquals(1, report.getAllowed());
+        assertEquals(2, report.getErrors());
+        assertTrue(report.hasRegressions());
+    }
+
+    @Test
+    void replay_BaselineLengthMismatch_IsReported() throws IOException {
+        // Given
+        Path input = write("input.ndjson", inputs(3));
+        Path baseline = write("baseline.ndjson", "{\"allow\":true,\"explanation\":[\"ok\"]}");
+
+        // When
+        ReplayReport report = new DecisionReplayer(limitPolicy(500), 2).replay(input, baseline, null, null);
+
+        // Then
+        assertEquals(1, report.getCompared());
+        assertEquals(2, report.getBaselineMissing());
+    }
+
+    @Test
+    void replay_BoundsInFlightEvaluations() throws IOException {
+        // Given
+        Path input = write("input.ndjson", inputs(500));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Function<JsonNode, Mono<PolicyDecision>> tracking = in -> Mono.defer(() -> {
+                peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return jittered(limitPolicy(500)).apply(in);
+            })
+            .doOnNext(d -> inFlight.decrementAndGet());
+
+        // When
+        ReplayReport report = new DecisionReplayer(tracking, 32).replay(input, null, null, null);
+
+        // Then
+        assertEquals(500, report.getRecords());
+        assertTrue(peak.get() <= 32, "peak in-flight was " + peak.get());
+        assertTrue(report.getLatencyP50Micros() > 0);
+        assertTrue(report.getLatencyP99Micros() >= report.getLatencyP50Micros());
+    }
+
+    @Test
+    void latencyHistogram_PercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000, histogram.max());
+        assertEquals(5_000, histogram.percentile(0.50), 5_000 * 0.07);
+        assertEquals(9_900, histogram.percentile(0.99), 9_900 * 0.07);
+        for (int b = 16; b < 200; b++) {
+            assertEquals(b, LatencyHistogram.bucketFor(LatencyHistogram.lowerBound(b)));
+            assertEquals(b, LatencyHistogram.bucketFor(LatencyHistogram.upperBound(b)));
+        }
+    }
+
+    private static Function<JsonNode, Mono<PolicyDecision>> limitPolicy(double limit) {
+        return in -> {
+            PolicyDecision decision = new PolicyDecision();
+            boolean allow = in.path("purchase").path("amount").asDouble() <= limit;
+            decision.setAllowed(allow);
+            decision.setExplanation(List.of(allow ? "ok" : "Amount exceeds agent limit"));
+            return Mono.just(decision);
+        };
+    }
+
+    private static Function<JsonNode, Mono<PolicyDecision>> jittered(Function<JsonNode, Mono<PolicyDecision>> policy) {
+        return in -> policy.apply(in).delayElement(Duration.ofMillis(ThreadLocalRandom.current().nextInt(3)));
+    }
+
+    private static String[] inputs(int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = "{\"input\":{\"purchase\":{\"amount\":" + (i * 10) + "}}}";
+        }
+        return lines;
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(dir.resolve(name), List.of(lines));
+    }
+}
@@ -1,15 +1,25 @@
 package com.payment.payment.agent.service;
 
+import com.payment.payment.agent.support.LocalOpaStandIn;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -17,92 +27,209 @@ import static org.mockito.Mockito.*;
 class OpaPolicyServiceTest {
 
     @Mock
-    private WebClient opaWebClient;
+    private ResourceLoader resourceLoader;
 
-    @Mock
-    private WebClient.RequestHeadersUriSpec requestHeadersUriSpec;
+    @InjectMocks
+    private OpaPolicyService opaPolicyService;
 
-    @Mock
-    private WebClient.RequestBodyUriSpec requestBodyUriSpec;
+    private final AtomicInteger putCount = new AtomicInteger();
 
-    @Mock
-    private WebClient.RequestBodySpec requestBodySpec;
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(opaPolicyService, "policyPath", "classpath:policies/agent_policy.rego");
+        ReflectionTestUtils.setField(opaPolicyService, "pushBackoffMs", 1L);
+        ReflectionTestUtils.setField(opaPolicyService, "pushRetries", 2);
+    }
 
-    @Mock
-    private WebClient.RequestHeadersSpec requestHeadersSpec;
+    @Test
+    void updateOpaPolicy_WhenOpaReturnsSuccess_ShouldUpdatePolicy() {
+        // Arrange
+        useOpaResponding(HttpStatus.OK);
+        setCurrentPolicy("package payments\n\ndefault allow = false");
 
-    @Mock
-    private WebClient.ResponseSpec responseSpec;
+        // Act
+        OpaPolicyService.PolicyVersion version = opaPolicyService.updateOpaPolicy().block();
 
-    @InjectMocks
-    private OpaPolicyService opaPolicyService;
+        // Assert
+        assertNotNull(version);
+        assertEquals(1L, version.getVersion());
+        assertEquals(1L, opaPolicyService.getPolicyVersion());
+        assertEquals(1, putCount.get());
+    }
 
     @Test
-    void updateOpaPolicy_WhenOpaReturnsSuccess_ShouldUpdatePolicy() {
+    void updateOpaPolicy_WhenOpaReturnsError_ShouldHandleError() {
         // Arrange
-        when(opaWebClient.put()).thenReturn(requestBodyUriSpec);
-        when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.body(any(Mono.class), any(Class.class))).thenReturn(requestHeadersSpec);
-        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just("Policy updated successfully"));
-
-        // Use reflection to set the current policy
-        try {
-            java.lang.reflect.Field field = OpaPolicyService.class.getDeclaredField("currentPolicy");
-            field.setAccessible(true);
-            field.set(opaPolicyService, "package payments\n\ndefault allow = false");
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to set current policy", e);
-        }
+        useOpaResponding(HttpStatus.INTERNAL_SERVER_ERROR);
+        setCurrentPolicy("package payments\n\ndefault allow = false");
 
         // Act & Assert
-        assertDoesNotThrow(() -> {
-            java.lang.reflect.Method method = OpaPolicyService.class.getDeclaredMethod("updateOpaPolicy");
-            method.setAccessible(true);
-            method.invoke(opaPolicyService);
-        });
+        assertThrows(WebClientResponseException.class, () -> opaPolicyService.updateOpaPolicy().block());
+        assertEquals(0L, opaPolicyService.getPolicyVersion());
+        assertEquals(3, putCount.get()); // initial attempt + 2 retries
     }
 
     @Test
-    void updateOpaPolicy_WhenOpaReturnsError_ShouldHandleError() {
+    void updateOpaPolicy_WhenOpaRejectsPolicy_DoesNotRetry() {
         // Arrange
-        when(opaWebClient.put()).thenReturn(requestBodyUriSpec);
-        when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.body(any(Mono.class), any(Class.class))).thenReturn(requestHeadersSpec);
-        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class))
-                .thenReturn(Mono.error(new WebClientResponseException(500, "Internal Server Error", null, null, null)));
-
-        // Use reflection to set the current policy
-        try {
-            java.lang.reflect.Field field = OpaPolicyService.class.getDeclaredField("currentPolicy");
-            field.setAccessible(true);
-            field.set(opaPolicyService, "package payments\n\ndefault allow = false");
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to set current policy", e);
-        }
+        useOpaResponding(HttpStatus.BAD_REQUEST);
+        setCurrentPolicy("package payments\n\nnot rego");
+
+        // Act & Assert
+        assertThrows(WebClientResponseException.class, () -> opaPolicyService.updateOpaPolicy().block());
+        assertEquals(1, putCount.get());
+    }
+
+    @Test
+    void updateOpaPolicy_SameHashAlreadyLive_SkipsPush() {
+        // Arrange
+        useOpaResponding(HttpStatus.OK);
+        setCurrentPolicy("package payments\n\ndefault allow = false");
+        opaPolicyService.updateOpaPolicy().block();
+
+        // Act
+        OpaPolicyService.PolicyVersion version = opaPolicyService.updateOpaPolicy().block();
+
+        // Assert
+        assertEquals(1L, version.getVersion());
+        assertEquals(1, putCount.get());
+    }
+
+    @Test
+    void loadPolicyFromPath_NonFileResource_DetectsChangesByHash() throws Exception {
+        // Arrange - ByteArrayResource behaves like a classpath entry inside a jar
+        when(resourceLoader.getResource(anyString()))
+            .thenReturn(new ByteArrayResource("package payments\n".getBytes(StandardCharsets.UTF_8)))
+            .thenReturn(new ByteArrayResource("package payments\n".getBytes(StandardCharsets.UTF_8)))
+            .thenReturn(new ByteArrayResource("package payments\nallow := true\n".getBytes(StandardCharsets.UTF_8)));
 
         // Act & Assert
-        assertDoesNotThrow(() -> {
-            java.lang.reflect.Method method = OpaPolicyService.class.getDeclaredMethod("updateOpaPolicy");
-            method.setAccessible(true);
-            method.invoke(opaPolicyService);
-        });
+        assertTrue(opaPolicyService.loadPolicyFromPath());
+        assertFalse(opaPolicyService.loadPolicyFromPath());
+        assertTrue(opaPolicyService.loadPolicyFromPath());
+        assertEquals("package payments\nallow := true\n", opaPolicyService.getCurrentPolicy());
+    }
+
+    @Test
+    void recheck_RetriesAPushThatFailedUntilOpaAcknowledgesIt() {
+        // Arrange - a classpath policy (never watched) and OPA down at startup
+        when(resourceLoader.getResource(anyString()))
+            .thenAnswer(inv -> new ByteArrayResource("package payments\n".getBytes(StandardCharsets.UTF_8)));
+        ReflectionTestUtils.setField(opaPolicyService, "pushRetries", 0);
+        useOpaResponding(HttpStatus.SERVICE_UNAVAILABLE);
+        opaPolicyService.loadInitialPolicy();
+        assertEquals(0L, opaPolicyService.getPolicyVersion());
+
+        // Act - OPA comes up; the file hasn't changed
+        useOpaResponding(HttpStatus.OK);
+        putCount.set(0);
+        opaPolicyService.recheck();
+        opaPolicyService.recheck();
+
+        // Assert - pushed once, then nothing more to do
+        assertEquals(1L, opaPolicyService.getPolicyVersion());
+        assertEquals(1, putCount.get());
+    }
+
+    @Test
+    void recheck_PolicyLive_DoesNotRereadThePolicy() {
+        // Arrange
+        when(resourceLoader.getResource(anyString()))
+            .thenAnswer(inv -> new ByteArrayResource("package payments\n".getBytes(StandardCharsets.UTF_8)));
+        useOpaResponding(HttpStatus.OK);
+        opaPolicyService.loadInitialPolicy();
+        assertEquals(1L, opaPolicyService.getPolicyVersion());
+        clearInvocations(resourceLoader);
+
+        // Act
+        opaPolicyService.recheck();
+        opaPolicyService.recheck();
+
+        // Assert
+        verifyNoInteractions(resourceLoader);
+        assertEquals(1, putCount.get());
+    }
+
+    @Test
+    void recheck_OpaLostThePolicy_ReinstallsItWithoutANewVersion() {
+        // Arrange - OPA restarted after acknowledging version 1
+        AtomicInteger getCount = new AtomicInteger();
+        setCurrentPolicy("package payments\n\ndefault allow = false");
+        useOpaResponding(HttpStatus.OK);
+        opaPolicyService.updateOpaPolicy().block();
+        WebClient restarted = WebClient.builder()
+            .exchangeFunction(request -> {
+                if (request.method() == HttpMethod.GET) {
+                    getCount.incrementAndGet();
+                    return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+                }
+                putCount.incrementAndGet();
+                return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+            })
+            .build();
+        ReflectionTestUtils.setField(opaPolicyService, "opaWebClient", restarted);
+
+        // Act
+        opaPolicyService.recheck();
+
+        // Assert
+        assertEquals(1, getCount.get());
+        assertEquals(2, putCount.get());
+        assertEquals(1L, opaPolicyService.getPolicyVersion());
+    }
+
+    @Test
+    void policyVersions_EmitsLatestVersionToNewSubscribers() {
+        // Arrange
+        useOpaResponding(HttpStatus.OK);
+        setCurrentPolicy("package payments\n\ndefault allow = false");
+        opaPolicyService.updateOpaPolicy().block();
+
+        // Act
+        OpaPolicyService.PolicyVersion latest = opaPolicyService.policyVersions().blockFirst();
+
+        // Assert
+        assertEquals(1L, latest.getVersion());
+        assertEquals(OpaPolicyService.sha256("package payments\n\ndefault allow = false"), latest.getHash());
+    }
+
+    @Test
+    void updateOpaPolicy_AgainstLocalOpa_InstallsPolicyAfterTransientFailure() throws Exception {
+        try (LocalOpaStandIn opa = new LocalOpaStandIn()) {
+            // Arrange
+            ReflectionTestUtils.setField(opaPolicyService, "opaWebClient", WebClient.create(opa.baseUrl()));
+            setCurrentPolicy("package payments\n\ndefault allow = false");
+            opa.failNext(1, 503);
+
+            // Act
+            OpaPolicyService.PolicyVersion version = opaPolicyService.updateOpaPolicy().block();
+
+            // Assert
+            assertEquals(1L, version.getVersion());
+            assertEquals("package payments\n\ndefault allow = false", opa.policies().get("payments"));
+        }
+    }
+
+    @Test
+    void updateOpaPolicy_BundleDistribution_PublishesWithoutPush() {
+        // Arrange
+        useOpaResponding(HttpStatus.INTERNAL_SERVER_ERROR);
+        ReflectionTestUtils.setField(opaPolicyService, "distributionMode", "bundle");
+        setCurrentPolicy("package payments\n\ndefault allow = false");
+
+        // Act
+        OpaPolicyService.PolicyVersion version = opaPolicyService.updateOpaPolicy().block();
+
+        // Assert
+        assertEquals(1L, version.getVersion());
+        assertEquals(0, putCount.get());
     }
 
     @Test
     void getCurrentPolicy_WhenPolicyIsSet_ShouldReturnPolicy() {
         // Arrange
         String policy = "package payments\n\ndefault allow = false";
-        
-        // Use reflection to set the current policy
-        try {
-            java.lang.reflect.Field field = OpaPolicyService.class.getDeclaredField("currentPolicy");
-            field.setAccessible(true);
-            field.set(opaPolicyService, policy);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to set current policy", e);
-        }
+        setCurrentPolicy(policy);
 
         // Act
         String result = opaPolicyService.getCurrentPolicy();
@@ -110,4 +237,21 @@ class OpaPolicyServiceTest {
         // Assert
         assertEquals(policy, result);
     }
-}
\ No newline at end of file
+
+    private void useOpaResponding(HttpStatus status) {
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                if (request.method() == HttpMethod.PUT) {
+                    putCount.incrementAndGet();
+                }
+                return Mono.just(ClientResponse.create(status).build());
+            })
+            .build();
+        ReflectionTestUtils.setField(opaPolicyService, "opaWebClient", webClient);
+    }
+
+    private void setCurrentPolicy(String policy) {
+        ReflectionTestUtils.setField(opaPolicyService, "currentPolicy", policy);
+        ReflectionTestUtils.setField(opaPolicyService, "currentPolicyHash", OpaPolicyService.sha256(policy));
+    }
+}
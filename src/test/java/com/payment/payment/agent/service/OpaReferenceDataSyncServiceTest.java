@@ -0,0 +1,115 @@
+package com.payment.payment.agent.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OpaReferenceDataSyncService
+ * Verifies full PUT on first sync and incremental JSON Patch afterwards
+ */
+class OpaReferenceDataSyncServiceTest {
+
+    private final List<ClientRequest> requests = new ArrayList<>();
+    private HttpStatus responseStatus;
+    private OpaReferenceDataSyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        responseStatus = HttpStatus.NO_CONTENT;
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                requests.add(request);
+                return Mono.just(ClientResponse.create(responseStatus).build());
+            })
+            .build();
+
+        syncService = new OpaReferenceDataSyncService();
+        ReflectionTestUtils.setField(syncService, "opaWebClient", webClient);
+        ReflectionTestUtils.setField(syncService, "fullResyncEvery", 0);
+        ReflectionTestUtils.setField(syncService, "digitalGoodsMerchants", new ArrayList<>(List.of("udemy", "coursera")));
+    }
+
+    @Test
+    void sync_FirstRun_PutsFullDocument() {
+        // When
+        Long changed = syncService.sync().block();
+
+        // Then
+        assertEquals(1L, changed);
+        assertEquals(1, requests.size());
+        assertEquals(HttpMethod.PUT, requests.get(0).method());
+        assertEquals("/v1/data/reference/digital_goods_merchants", requests.get(0).url().getPath());
+    }
+
+    @Test
+    void sync_Unchanged_SendsNothing() {
+        // Given
+        syncService.sync().block();
+        requests.clear();
+
+        // When
+        Long changed = syncService.sync().block();
+
+        // Then
+        assertEquals(0L, changed);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void sync_MemberAdded_SendsPatch() {
+        // Given
+        syncService.sync().block();
+        requests.clear();
+        ReflectionTestUtils.setField(syncService, "digitalGoodsMerchants", new ArrayList<>(List.of("udemy", "coursera", "figma_templates")));
+
+        // When
+        syncService.sync().block();
+
+        // Then
+        assertEquals(1, requests.size());
+        assertEquals(HttpMethod.PATCH, requests.get(0).method());
+    }
+
+    @Test
+    void sync_PatchFails_FallsBackToPut() {
+        // Given
+        syncService.sync().block();
+        ReflectionTestUtils.setField(syncService, "digitalGoodsMerchants", new ArrayList<>(List.of("udemy")));
+        responseStatus = HttpStatus.NOT_FOUND;
+        syncService.sync().block();
+        requests.clear();
+        responseStatus = HttpStatus.NO_CONTENT;
+
+        // When
+        syncService.sync().block();
+
+        // Then
+        assertEquals(HttpMethod.PUT, requests.get(0).method());
+    }
+
+    @Test
+    void patchOperations_ComputesAddAndRemove() {
+        // When
+        List<Map<String, Object>> ops = OpaReferenceDataSyncService.patchOperations(
+            Set.of("udemy", "coursera"), Set.of("udemy", "a/b"));
+
+        // Then
+        assertEquals(2, ops.size());
+        assertTrue(ops.contains(Map.of("op", "remove", "path", "/coursera")));
+        assertTrue(ops.contains(Map.of("op", "add", "path", "/a~1b", "value", true)));
+    }
+}
@@ -0,0 +1,176 @@
+package com.payment.payment.agent.service;
+
+import com.payment.payment.agent.model.PaymentResult;
+import com.payment.payment.agent.model.PurchaseRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the payment execution stage
+ * Covers retries, timeouts, declines and per-merchant bulkheads
+ */
+@ExtendWith(MockitoExtension.class)
+class PaymentExecutionServiceTest {
+
+    @Mock
+    private PaymentGateway paymentGateway;
+
+    @InjectMocks
+    private PaymentExecutionService paymentExecutionService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(paymentExecutionService, "maxConcurrentPerMerchant", 2);
+        ReflectionTestUtils.setField(paymentExecutionService, "attemptTimeoutMs", 200L);
+        ReflectionTestUtils.setField(paymentExecutionService, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(paymentExecutionService, "maxRetries", 2);
+        paymentExecutionService.init();
+    }
+
+    @Test
+    void execute_TransientFailure_RetriesWithSameIdempotencyKey() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        when(paymentGateway.processPayment(any(PurchaseRequest.class), eq("tx-1"))).thenAnswer(inv ->
+            attempts.incrementAndGet() < 3
+                ? Mono.error(new PaymentGatewayException("gateway unavailable", true))
+                : Mono.just(success()));
+
+        // When
+        PaymentResult result = paymentExecutionService.execute(request("udemy"), "tx-1").block();
+
+        // Then
+        assertTrue(result.isSuccess());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void execute_AttemptTimesOut_RetriesThenReportsRetryableFailure() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        when(paymentGateway.processPayment(any(PurchaseRequest.class), anyString())).thenAnswer(inv -> {
+            attempts.incrementAndGet();
+            return Mono.never();
+        });
+
+        // When
+        PaymentResult result = paymentExecutionService.execute(request("udemy"), "tx-1").block(Duration.ofSeconds(5));
+
+        // Then
+        assertFalse(result.isSuccess());
+        assertTrue(result.isRetryable());
+        assertTrue(result.getMessage().contains("timed out"));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void execute_Decline_IsNotRetried() {
+        // Given
+        when(paymentGateway.processPayment(any(PurchaseRequest.class), anyString()))
+            .thenReturn(Mono.just(PaymentResult.builder().success(false).message("Payment failed: Merchant not supported").build()));
+
+        // When
+        PaymentResult result = paymentExecutionService.execute(request("test_fail_shop"), "tx-1").block();
+
+        // Then
+        assertFalse(result.isSuccess());
+        assertFalse(result.isRetryable());
+        verify(paymentGateway, times(1)).processPayment(any(PurchaseRequest.class), anyString());
+    }
+
+    @Test
+    void execute_PermanentGatewayError_IsNotRetried() {
+        // Given
+        when(paymentGateway.processPayment(any(PurchaseRequest.class), anyString()))
+            .thenReturn(Mono.error(new PaymentGatewayException("invalid credentials", false)));
+
+        // When
+        PaymentResult result = paymentExecutionService.execute(request("udemy"), "tx-1").block();
+
+        // Then
+        assertFalse(result.isRetryable());
+        verify(paymentGateway, times(1)).processPayment(any(PurchaseRequest.class), anyString());
+    }
+
+    @Test
+    void execute_MerchantBulkheadFull_RejectsWithoutAffectingOtherMerchants() {
+        // Given - two payments to "slow" are pending
+        Sinks.One<PaymentResult> slow = Sinks.one();
+        when(paymentGateway.processPayment(argThat(r -> r != null && "slow".equals(r.getMerchant())), anyString()))
+            .thenReturn(slow.asMono());
+        when(paymentGateway.processPayment(argThat(r -> r != null && "fast".equals(r.getMerchant())), anyString()))
+            .thenReturn(Mono.just(success()));
+        ReflectionTestUtils.setField(paymentExecutionService, "attemptTimeoutMs", 5_000L);
+        Mono<PaymentResult> first = paymentExecutionService.execute(request("slow"), "tx-1").cache();
+        Mono<PaymentResult> second = paymentExecutionService.execute(request("slow"), "tx-2").cache();
+        first.subscribe();
+        second.subscribe();
+
+        // When
+        PaymentResult rejected = paymentExecutionService.execute(request("slow"), "tx-3").block();
+        PaymentResult other = paymentExecutionService.execute(request("fast"), "tx-4").block();
+
+        // Then
+        assertFalse(rejected.isSuccess());
+        assertTrue(rejected.isRetryable());
+        assertTrue(rejected.getMessage().contains("busy"));
+        assertTrue(other.isSuccess());
+
+        // And - permits are released when the slow payments finish
+        slow.tryEmitValue(success());
+        assertTrue(first.block().isSuccess());
+        assertTrue(second.block().isSuccess());
+        assertEquals(0, paymentExecutionService.inUse("slow"));
+    }
+
+    @Test
+    void execute_ManyConcurrentPayments_DoNotHoldThreads() {
+        // Given - the mock gateway waits on timers, not threads
+        ReflectionTestUtils.setField(paymentExecutionService, "maxConcurrentPerMerchant", 1_000);
+        ReflectionTestUtils.setField(paymentExecutionService, "paymentGateway", new MockPaymentProcessor());
+        ReflectionTestUtils.setField(paymentExecutionService, "attemptTimeoutMs", 5_000L);
+        paymentExecutionService.init();
+
+        // When - 500 payments of 100-300ms each
+        long start = System.nanoTime();
+        List<PaymentResult> results = Flux.range(0, 500)
+            .flatMap(i -> paymentExecutionService.execute(request("udemy"), "tx-" + i), 500)
+            .collectList()
+            .block(Duration.ofSeconds(10));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Then - far below the 50s+ a thread-per-payment sleep on a small pool would take
+        assertEquals(500, results.size());
+        assertTrue(elapsedMs < 5_000, "took " + elapsedMs + "ms");
+    }
+
+    private static PurchaseRequest request(String merchant) {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAmount(25.0);
+        request.setMerchant(merchant);
+        request.setProductType("api_credits");
+        request.setProductId("credits-25");
+        return request;
+    }
+
+    private static PaymentResult success() {
+        return PaymentResult.builder().success(true).transactionId("pay-1").build();
+    }
+}
@@ -1,15 +1,23 @@
 package com.payment.payment.agent.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.payment.payment.agent.admission.PriorityAdmissionScheduler;
 import com.payment.payment.agent.audit.AuditLog;
 import com.payment.payment.agent.audit.AuditLogRepository;
 import com.payment.payment.agent.audit.AuditService;
+import com.payment.payment.agent.audit.AuditStage;
 import com.payment.payment.agent.model.AgentContext;
+import com.payment.payment.agent.model.BatchPurchaseRequest;
+import com.payment.payment.agent.model.BatchPurchaseResponse;
 import com.payment.payment.agent.model.OverrideRequest;
+import com.payment.payment.agent.model.PaymentResult;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
 import com.payment.payment.agent.model.PurchaseRequest;
 import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.model.VelocitySnapshot;
 import com.payment.payment.agent.pep.PolicyEnforcementPoint.PolicyDecision;
 import com.payment.payment.agent.pep.PolicyEnforcementPoint;
+import com.payment.payment.agent.velocity.VelocityEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,13 +25,18 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -50,6 +63,18 @@ class PurchaseServiceAuditIntegrationTest {
     @Mock
     private AuditLogRepository auditLogRepository;
 
+    @Mock
+    private PaymentExecutionService paymentExecutionService;
+
+    @Mock
+    private PurchaseWorkQueue purchaseWorkQueue;
+
+    @Mock
+    private PurchaseStatusService purchaseStatusService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private PurchaseServiceImpl purchaseService;
 
@@ -66,6 +91,8 @@ class PurchaseServiceAuditIntegrationTest {
         approvedDecision = createApprovedDecision();
         deniedDecision = createDeniedDecision();
         testOverrideRequest = createTestOverrideRequest();
+        lenient().when(paymentExecutionService.execute(any(PurchaseRequest.class), anyString()))
+            .thenReturn(Mono.just(PaymentResult.builder().success(true).transactionId("pay-123").build()));
     }
 
     @Test
@@ -73,7 +100,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(approvedDecision));
 
         // When
@@ -111,7 +138,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(deniedDecision));
 
         // When
@@ -182,7 +209,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.error(new RuntimeException("Policy service unavailable")));
 
         // When & Then
@@ -235,12 +262,15 @@ class PurchaseServiceAuditIntegrationTest {
         assertNotNull(response);
         assertEquals("OVERRIDE_APPROVED", response.getStatus());
 
-        // Verify audit event was logged
-        verify(auditService, times(1)).logEvent(
-            eq(transactionId),
-            eq("PURCHASE_OVERRIDE_APPROVED"),
-            anyString()
-        );
+        // Verify audit event was logged together with the outcome
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PurchaseOutcomeEvent>> outcomesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), outcomesCaptor.capture());
+        assertEquals("PURCHASE_OVERRIDE_APPROVED", eventsCaptor.getValue().get(0).getEventType());
+        assertEquals(transactionId, eventsCaptor.getValue().get(0).getTransactionId());
+        assertEquals(PurchaseOutcomeEvent.OVERRIDE_APPROVED, outcomesCaptor.getValue().get(0).getType());
     }
 
     @Test
@@ -270,7 +300,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(approvedDecision));
         doThrow(new RuntimeException("Audit service unavailable"))
             .when(auditService).logEvent(anyString(), anyString(), anyString());
@@ -286,7 +316,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(approvedDecision));
         doThrow(new RuntimeException("JSON serialization failed"))
             .when(auditService).logEvent(anyString(), anyString(), anyString());
@@ -309,7 +339,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(approvedDecision));
 
         // When
@@ -334,7 +364,7 @@ class PurchaseServiceAuditIntegrationTest {
         // Given
         when(authenticationContextService.getCurrentAgentContext())
             .thenReturn(Mono.just(testAgentContext));
-        when(pep.evaluatePolicy(any(PurchaseRequest.class), anyString()))
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
             .thenReturn(Mono.just(approvedDecision));
 
         // Create request with large description
@@ -356,6 +386,477 @@ class PurchaseServiceAuditIntegrationTest {
         );
     }
 
+    @Test
+    void processBatch_MixedResults_ReturnsPerItemResultsAndWritesAuditOnce() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenAnswer(inv -> Mono.just(((PurchaseRequest) inv.getArgument(0)).getAmount() > 100 ? deniedDecision : approvedDecision));
+        PurchaseRequest expensive = createTestPurchaseRequest();
+        expensive.setAmount(400.0);
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(createTestPurchaseRequest(), expensive, createTestPurchaseRequest()));
+
+        // When
+        BatchPurchaseResponse response = purchaseService.processBatch(batch).block();
+
+        // Then
+        assertNotNull(response);
+        assertEquals(3, response.getTotal());
+        assertEquals(2, response.getApproved());
+        assertEquals(1, response.getDenied());
+        assertEquals(List.of("APPROVED", "DENIED", "APPROVED"),
+            response.getResults().stream().map(PurchaseResponse::getStatus).toList());
+        assertEquals(3, response.getResults().stream().map(PurchaseResponse::getTransactionId).distinct().count());
+        verify(authenticationContextService, times(1)).getCurrentAgentContext();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), anyList());
+        verify(auditService, never()).logEvent(anyString(), anyString(), anyString());
+        assertEquals(9, eventsCaptor.getValue().size());
+        assertEquals(3, eventsCaptor.getValue().stream().filter(e -> "PURCHASE_REQUEST_RECEIVED".equals(e.getEventType())).count());
+    }
+
+    @Test
+    void processPurchase_ConsolidatedAudit_WritesOneRowPerStage() {
+        // Given
+        ReflectionTestUtils.setField(purchaseService, "consolidateAudit", true);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+
+        // When
+        PurchaseResponse response = purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // Then - one insert instead of three
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> rowsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(rowsCaptor.capture(), anyList());
+        assertEquals(1, rowsCaptor.getValue().size());
+        AuditLog row = rowsCaptor.getValue().get(0);
+        assertEquals(AuditStage.EVENT_TYPE, row.getEventType());
+        assertEquals(response.getTransactionId(), row.getTransactionId());
+
+        // And - readers still see the individual events, in order
+        List<AuditLog> events = AuditStage.expand(List.of(row));
+        assertEquals(List.of("PURCHASE_REQUEST_RECEIVED", "POLICY_EVALUATION_COMPLETED", "PURCHASE_APPROVED"),
+            events.stream().map(AuditLog::getEventType).toList());
+        assertTrue(events.get(2).getDetails().contains("\"paymentReference\":\"pay-123\""));
+        assertTrue(events.stream().allMatch(e -> response.getTransactionId().equals(e.getTransactionId())));
+    }
+
+    @Test
+    void processPurchase_ConsolidatedAudit_FailedStageIsStillWritten() {
+        // Given
+        ReflectionTestUtils.setField(purchaseService, "consolidateAudit", true);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.error(new RuntimeException("OPA unavailable")));
+
+        // When
+        assertThrows(RuntimeException.class, () -> purchaseService.processPurchase(testPurchaseRequest).block());
+
+        // Then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> rowsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(rowsCaptor.capture(), anyList());
+        assertEquals("PURCHASE_REQUEST_RECEIVED", AuditStage.expand(rowsCaptor.getValue()).get(0).getEventType());
+    }
+
+    @Test
+    void processPurchase_OutboxMode_WritesAuditAndOutcomeInOneCall() {
+        // Given
+        when(auditService.isOutbox()).thenReturn(true);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+
+        // When
+        PurchaseResponse response = purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // Then - one outbox append holds the audit trail and the outcome event
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PurchaseOutcomeEvent>> outcomesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), outcomesCaptor.capture());
+        verify(auditService, never()).logEvent(anyString(), anyString(), anyString());
+        assertEquals(List.of("PURCHASE_REQUEST_RECEIVED", "POLICY_EVALUATION_COMPLETED", "PURCHASE_APPROVED"),
+            eventsCaptor.getValue().stream().map(AuditLog::getEventType).toList());
+        assertEquals(1, outcomesCaptor.getValue().size());
+        assertEquals(PurchaseOutcomeEvent.APPROVED, outcomesCaptor.getValue().get(0).getType());
+        assertEquals(response.getTransactionId(), outcomesCaptor.getValue().get(0).getTransactionId());
+    }
+
+    @Test
+    void processBatch_ConsolidatedAudit_WritesOneRowPerItem() {
+        // Given
+        ReflectionTestUtils.setField(purchaseService, "consolidateAudit", true);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(createTestPurchaseRequest(), createTestPurchaseRequest(), createTestPurchaseRequest()));
+
+        // When
+        BatchPurchaseResponse response = purchaseService.processBatch(batch).block();
+
+        // Then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), anyList());
+        List<AuditLog> rows = eventsCaptor.getValue();
+        assertEquals(3, rows.size());
+        assertTrue(rows.stream().allMatch(r -> AuditStage.EVENT_TYPE.equals(r.getEventType())));
+        assertEquals(9, AuditStage.expand(rows).size());
+        assertEquals(response.getResults().stream().map(PurchaseResponse::getTransactionId).sorted().toList(),
+            rows.stream().map(AuditLog::getTransactionId).sorted().toList());
+    }
+
+    @Test
+    void processBatch_InvalidItem_DoesNotRejectOtherItems() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+        PurchaseRequest noMerchant = createTestPurchaseRequest();
+        noMerchant.setMerchant(null);
+        doThrow(new IllegalArgumentException("Merchant information is required"))
+            .when(requestValidationService).validatePurchaseRequest(argThat(r -> r != null && r.getMerchant() == null));
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(noMerchant, createTestPurchaseRequest()));
+
+        // When
+        BatchPurchaseResponse response = purchaseService.processBatch(batch).block();
+
+        // Then
+        assertEquals("INVALID_REQUEST", response.getResults().get(0).getStatus());
+        assertEquals("APPROVED", response.getResults().get(1).getStatus());
+        assertEquals(1, response.getInvalid());
+        verify(pep, times(1)).evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class));
+    }
+
+    @Test
+    void processBatch_FailedItem_KeepsOtherResultsAndTheirAudit() {
+        // Given - the second item's policy call fails
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision))
+            .thenReturn(Mono.error(new RuntimeException("boom")))
+            .thenReturn(Mono.just(approvedDecision));
+        ReflectionTestUtils.setField(purchaseService, "batchConcurrency", 1);
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(createTestPurchaseRequest(), createTestPurchaseRequest(), createTestPurchaseRequest()));
+
+        // When
+        BatchPurchaseResponse response = purchaseService.processBatch(batch).block();
+
+        // Then
+        assertEquals(List.of("APPROVED", "ERROR", "APPROVED"),
+            response.getResults().stream().map(PurchaseResponse::getStatus).toList());
+        assertEquals(1, response.getFailed());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), anyList());
+        assertEquals(3, eventsCaptor.getValue().stream().filter(e -> "PURCHASE_REQUEST_RECEIVED".equals(e.getEventType())).count());
+        assertEquals(2, eventsCaptor.getValue().stream().filter(e -> "PURCHASE_APPROVED".equals(e.getEventType())).count());
+    }
+
+    @Test
+    void processBatch_ItemsAreAdmittedLikeSinglePurchases() {
+        // Given - one sandbox slot and no queue, so items running at once are shed
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision).delayElement(Duration.ofMillis(100)));
+        PriorityAdmissionScheduler scheduler = new PriorityAdmissionScheduler();
+        ReflectionTestUtils.setField(scheduler, "capacity", 5);
+        ReflectionTestUtils.setField(scheduler, "premiumReserved", 2);
+        ReflectionTestUtils.setField(scheduler, "productionReserved", 2);
+        ReflectionTestUtils.setField(scheduler, "maxQueue", 0);
+        scheduler.init();
+        ReflectionTestUtils.setField(purchaseService, "admissionScheduler", scheduler);
+        ReflectionTestUtils.setField(purchaseService, "batchConcurrency", 3);
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(createTestPurchaseRequest(), createTestPurchaseRequest(), createTestPurchaseRequest()));
+
+        // When
+        BatchPurchaseResponse response = purchaseService.processBatch(batch).block();
+
+        // Then
+        assertEquals(List.of("APPROVED", "ERROR", "ERROR"),
+            response.getResults().stream().map(PurchaseResponse::getStatus).toList());
+        assertEquals(1L, scheduler.status().get(2).getAdmitted());
+        assertEquals(2L, scheduler.status().get(2).getRejected());
+    }
+
+    @Test
+    void processBatch_Cancelled_WritesTheBufferedAudit() {
+        // Given - the second item never decides
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision))
+            .thenReturn(Mono.never());
+        ReflectionTestUtils.setField(purchaseService, "batchConcurrency", 1);
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(List.of(createTestPurchaseRequest(), createTestPurchaseRequest()));
+
+        // When
+        purchaseService.processBatch(batch).subscribe().dispose();
+
+        // Then - the first item's decision is audited
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AuditLog>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(auditService, times(1)).logEvents(eventsCaptor.capture(), anyList());
+        assertEquals(1, eventsCaptor.getValue().stream().filter(e -> "PURCHASE_APPROVED".equals(e.getEventType())).count());
+    }
+
+    @Test
+    void processBatch_TooManyItems_IsRejected() {
+        // Given
+        BatchPurchaseRequest batch = new BatchPurchaseRequest();
+        batch.setPurchases(java.util.Collections.nCopies(51, createTestPurchaseRequest()));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> purchaseService.processBatch(batch).block());
+        verifyNoInteractions(pep, auditService);
+    }
+
+    @Test
+    void processStream_EmitsResponsesAsDecisionsComplete() {
+        // Given - the first item takes longer than the second
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenAnswer(inv -> {
+                PurchaseRequest r = inv.getArgument(0);
+                return Mono.just(approvedDecision).delayElement(Duration.ofMillis("slow".equals(r.getRequestId()) ? 200 : 10));
+            });
+        PurchaseRequest slow = createTestPurchaseRequest();
+        slow.setRequestId("slow");
+        PurchaseRequest fast = createTestPurchaseRequest();
+        fast.setRequestId("fast");
+
+        // When
+        List<PurchaseResponse> responses = purchaseService.processStream(Flux.just(slow, fast), 4).collectList().block();
+
+        // Then
+        assertEquals(List.of("fast", "slow"), responses.stream().map(PurchaseResponse::getRequestId).toList());
+        assertTrue(responses.stream().allMatch(r -> "APPROVED".equals(r.getStatus())));
+        verify(authenticationContextService, times(1)).getCurrentAgentContext();
+    }
+
+    @Test
+    void processStream_BoundsInFlightItemsToWindow() {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenAnswer(inv -> Mono.defer(() -> {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return Mono.just(approvedDecision).delayElement(Duration.ofMillis(5));
+                })
+                .doOnNext(d -> inFlight.decrementAndGet()));
+        Flux<PurchaseRequest> requests = Flux.range(0, 100).map(i -> createTestPurchaseRequest());
+
+        // When
+        Long count = purchaseService.processStream(requests, 3).count().block();
+
+        // Then
+        assertEquals(100L, count);
+        assertTrue(peak.get() <= 3, "peak in-flight was " + peak.get());
+    }
+
+    @Test
+    void processStream_FailedItem_DoesNotEndStream() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.error(new RuntimeException("boom")))
+            .thenReturn(Mono.just(approvedDecision));
+
+        // When
+        List<PurchaseResponse> responses = purchaseService
+            .processStream(Flux.just(createTestPurchaseRequest(), createTestPurchaseRequest()), 1)
+            .collectList().block();
+
+        // Then
+        assertEquals(List.of("ERROR", "APPROVED"), responses.stream().map(PurchaseResponse::getStatus).toList());
+    }
+
+    @Test
+    void processPurchase_PaymentFails_ReturnsPaymentFailedAndAudits() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+        when(paymentExecutionService.execute(any(PurchaseRequest.class), anyString()))
+            .thenReturn(Mono.just(PaymentResult.builder().success(false).retryable(true)
+                .message("Payment failed: Payment provider timed out").build()));
+
+        // When
+        PurchaseResponse response = purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // Then
+        assertEquals("PAYMENT_FAILED", response.getStatus());
+        assertTrue(response.isRetryable());
+        assertNull(response.getPaymentReference());
+        verify(auditService).logEvent(eq(response.getTransactionId()), eq("PAYMENT_FAILED"), anyString());
+        verify(auditService, never()).logEvent(anyString(), eq("PURCHASE_APPROVED"), anyString());
+    }
+
+    @Test
+    void processPurchase_Approved_ReturnsPaymentReference() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision));
+
+        // When
+        PurchaseResponse response = purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // Then
+        assertEquals("APPROVED", response.getStatus());
+        assertEquals("pay-123", response.getPaymentReference());
+        verify(paymentExecutionService).execute(testPurchaseRequest, response.getTransactionId());
+    }
+
+    @Test
+    void processPurchase_Denied_DoesNotExecutePayment() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(deniedDecision));
+
+        // When
+        purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // Then
+        verify(paymentExecutionService, never()).execute(any(), anyString());
+    }
+
+    @Test
+    void overridePurchase_PublishesDeniedThenOverrideApprovedOutcomes() {
+        // Given
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(authenticationContextService.validateUserAccess(anyString()))
+            .thenReturn(Mono.empty());
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(deniedDecision));
+        PurchaseResponse denied = purchaseService.processPurchase(testPurchaseRequest).block();
+
+        // When
+        purchaseService.overridePurchase(denied.getTransactionId(), testOverrideRequest).block();
+
+        // Then
+        ArgumentCaptor<PurchaseOutcomeEvent> events = ArgumentCaptor.forClass(PurchaseOutcomeEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of(PurchaseOutcomeEvent.DENIED, PurchaseOutcomeEvent.OVERRIDE_APPROVED),
+            events.getAllValues().stream().map(PurchaseOutcomeEvent::getType).toList());
+        assertTrue(events.getAllValues().stream().allMatch(e -> "demo-agent-001".equals(e.getAgentId())
+            && denied.getTransactionId().equals(e.getTransactionId())));
+        assertEquals("pay-123", events.getAllValues().get(1).getPaymentReference());
+    }
+
+    @Test
+    void submitPurchase_ReturnsPendingThenStatusReportsOutcome() {
+        // Given
+        useAsyncPipeline(10, 2);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.just(approvedDecision).delayElement(Duration.ofMillis(50)));
+
+        // When
+        PurchaseResponse accepted = purchaseService.submitPurchase(testPurchaseRequest, null).block();
+        PurchaseResponse status = Mono.defer(() -> purchaseService.getPurchaseStatus(accepted.getTransactionId()))
+            .filter(r -> !"PENDING".equals(r.getStatus()))
+            .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(10)))
+            .block(Duration.ofSeconds(5));
+
+        // Then
+        assertEquals("PENDING", accepted.getStatus());
+        assertEquals(accepted.getTransactionId(), status.getTransactionId());
+        assertEquals("APPROVED", status.getStatus());
+        assertEquals("pay-123", status.getPaymentReference());
+        verify(auditService).logEvent(eq(accepted.getTransactionId()), eq("PURCHASE_ACCEPTED"), anyString());
+        verify(auditService).logEvent(eq(accepted.getTransactionId()), eq("PURCHASE_APPROVED"), anyString());
+    }
+
+    @Test
+    void submitPurchase_QueueFull_RejectsWithoutTrackingTransaction() {
+        // Given - one purchase running, one waiting, capacity for one waiting
+        PurchaseStatusService statusService = useAsyncPipeline(1, 1);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        lenient().when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class)))
+            .thenReturn(Mono.never());
+        purchaseService.submitPurchase(createTestPurchaseRequest(), null).block();
+        purchaseService.submitPurchase(createTestPurchaseRequest(), null).block();
+
+        // When & Then
+        assertThrows(PurchaseQueueFullException.class,
+            () -> purchaseService.submitPurchase(createTestPurchaseRequest(), null).block());
+        assertEquals(2, statusService.size());
+    }
+
+    @Test
+    void processPurchase_VelocityLimitExceeded_DeniesWithoutCallingOpa() {
+        // Given - at most two purchases a minute
+        VelocityEngine velocityEngine = new VelocityEngine();
+        ReflectionTestUtils.setField(velocityEngine, "maxPurchasesPerMinute", 2L);
+        velocityEngine.init();
+        ReflectionTestUtils.setField(purchaseService, "velocityEngine", velocityEngine);
+        when(authenticationContextService.getCurrentAgentContext())
+            .thenReturn(Mono.just(testAgentContext));
+        ArgumentCaptor<VelocitySnapshot> velocity = ArgumentCaptor.forClass(VelocitySnapshot.class);
+        when(pep.evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class), velocity.capture()))
+            .thenReturn(Mono.just(approvedDecision));
+
+        // When
+        purchaseService.processPurchase(createTestPurchaseRequest()).block();
+        purchaseService.processPurchase(createTestPurchaseRequest()).block();
+        PurchaseResponse third = purchaseService.processPurchase(createTestPurchaseRequest()).block();
+
+        // Then - the first two reach OPA with their windows, the third is denied before it
+        assertEquals("DENIED", third.getStatus());
+        verify(pep, times(2)).evaluatePolicy(any(PurchaseRequest.class), any(AgentContext.class), any(VelocitySnapshot.class));
+        assertEquals(List.of(1L, 2L), velocity.getAllValues().stream().map(v -> v.getMinute().getCount()).toList());
+        assertEquals(100.0, velocity.getAllValues().get(1).getHour().getAmount());
+        verify(auditService).logEvent(eq(third.getTransactionId()), eq("VELOCITY_LIMIT_EXCEEDED"), contains("3 purchases in the last minute"));
+        verify(auditService).logEvent(eq(third.getTransactionId()), eq("PURCHASE_DENIED"), anyString());
+        verify(eventPublisher).publishEvent(argThat((Object e) -> e instanceof PurchaseOutcomeEvent outcome
+            && PurchaseOutcomeEvent.DENIED.equals(outcome.getType())));
+    }
+
+    private PurchaseStatusService useAsyncPipeline(int capacity, int workers) {
+        PurchaseWorkQueue queue = new PurchaseWorkQueue();
+        ReflectionTestUtils.setField(queue, "capacity", capacity);
+        ReflectionTestUtils.setField(queue, "workers", workers);
+        queue.start();
+        PurchaseStatusService statusService = new PurchaseStatusService(100);
+        ReflectionTestUtils.setField(statusService, "auditLogRepository", auditLogRepository);
+        ReflectionTestUtils.setField(purchaseService, "purchaseWorkQueue", queue);
+        ReflectionTestUtils.setField(purchaseService, "purchaseStatusService", statusService);
+        return statusService;
+    }
+
     private PurchaseRequest createTestPurchaseRequest() {
         PurchaseRequest request = new PurchaseRequest();
         request.setAmount(50.0);
@@ -0,0 +1,144 @@
+package com.payment.payment.agent.service;
+
+import com.payment.payment.agent.audit.AuditLog;
+import com.payment.payment.agent.audit.AuditLogRepository;
+import com.payment.payment.agent.audit.AuditStage;
+import com.payment.payment.agent.model.PurchaseResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for purchase status lookups
+ * Covers the in-memory index, ownership checks and the audit-trail fallback
+ */
+@ExtendWith(MockitoExtension.class)
+class PurchaseStatusServiceTest {
+
+    @Mock
+    private AuditLogRepository auditLogRepository;
+
+    private PurchaseStatusService statusService;
+
+    @BeforeEach
+    void setUp() {
+        statusService = new PurchaseStatusService(100);
+        ReflectionTestUtils.setField(statusService, "auditLogRepository", auditLogRepository);
+    }
+
+    @Test
+    void find_TrackedTransaction_IsServedFromIndexForOwnerOnly() {
+        // Given
+        statusService.track("agent-1", response("tx-1", "PENDING"));
+
+        // When
+        PurchaseResponse own = statusService.find("agent-1", "tx-1").block();
+        PurchaseResponse other = statusService.find("agent-2", "tx-1").block();
+
+        // Then
+        assertEquals("PENDING", own.getStatus());
+        assertNull(other);
+        verifyNoInteractions(auditLogRepository);
+    }
+
+    @Test
+    void find_UntrackedTransaction_RebuildsStatusFromAuditTrail() {
+        // Given - the worker's events were written before PURCHASE_ACCEPTED
+        when(auditLogRepository.findByTransactionIdOrderByIdAsc("tx-1")).thenReturn(List.of(
+            AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"agentId\":\"agent-1\",\"amount\":50.0}"),
+            AuditLog.of("tx-1", "POLICY_EVALUATION_COMPLETED", "{\"allowed\":true,\"agentId\":\"agent-1\"}"),
+            AuditLog.of("tx-1", "PURCHASE_APPROVED", "{\"status\":\"APPROVED\",\"message\":\"Purchase approved.\",\"paymentReference\":\"pay-9\"}"),
+            AuditLog.of("tx-1", "PURCHASE_ACCEPTED", "{\"agentId\":\"agent-1\"}")));
+
+        // When
+        PurchaseResponse response = statusService.find("agent-1", "tx-1").block();
+
+        // Then
+        assertEquals("APPROVED", response.getStatus());
+        assertEquals("Purchase approved.", response.getMessage());
+        assertEquals("pay-9", response.getPaymentReference());
+    }
+
+    @Test
+    void find_ConsolidatedAuditRows_AreReadAsIndividualEvents() {
+        // Given - the decision stage was written as one row, the acceptance separately
+        AuditLog stage = AuditStage.consolidate("tx-1", "decision", List.of(
+            AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"agentId\":\"agent-1\",\"amount\":500.0}"),
+            AuditLog.of("tx-1", "POLICY_EVALUATION_COMPLETED", "{\"allowed\":false,\"agentId\":\"agent-1\"}"),
+            AuditLog.of("tx-1", "PURCHASE_DENIED", "{\"message\":\"Purchase denied by policy.\"}")));
+        when(auditLogRepository.findByTransactionIdOrderByIdAsc("tx-1")).thenReturn(List.of(
+            AuditLog.of("tx-1", "PURCHASE_ACCEPTED", "{\"agentId\":\"agent-1\"}"), stage));
+
+        // When
+        PurchaseResponse response = statusService.find("agent-1", "tx-1").block();
+
+        // Then
+        assertEquals("DENIED", response.getStatus());
+        assertEquals("Purchase denied by policy.", response.getMessage());
+        assertNull(statusService.find("agent-2", "tx-1").block());
+    }
+
+    @Test
+    void find_AuditTrailOfAnotherAgent_IsNotFound() {
+        // Given
+        when(auditLogRepository.findByTransactionIdOrderByIdAsc("tx-1")).thenReturn(List.of(
+            AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"agentId\":\"agent-1\"}"),
+            AuditLog.of("tx-1", "PURCHASE_DENIED", "{\"message\":\"Purchase denied by policy.\"}")));
+
+        // When & Then
+        assertNull(statusService.find("agent-2", "tx-1").block());
+        assertNull(statusService.find("agent-1", "unknown").block());
+    }
+
+    @Test
+    void find_ExpiredEntry_FallsBackToAuditTrail() {
+        // Given
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        statusService.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        statusService.track("agent-1", response("tx-1", "PENDING"));
+        when(auditLogRepository.findByTransactionIdOrderByIdAsc("tx-1")).thenReturn(List.of(
+            AuditLog.of("tx-1", "PURCHASE_ACCEPTED", "{\"agentId\":\"agent-1\"}"),
+            AuditLog.of("tx-1", "PURCHASE_REQUEST_RECEIVED", "{\"agentId\":\"agent-1\"}")));
+
+        // When
+        statusService.setClock(Clock.fixed(now.plus(Duration.ofHours(2)), ZoneOffset.UTC));
+        PurchaseResponse response = statusService.find("agent-1", "tx-1").block();
+
+        // Then
+        assertEquals("PROCESSING", response.getStatus());
+        assertEquals(0, statusService.size());
+    }
+
+    @Test
+    void update_OnlyChangesTrackedTransactions() {
+        // Given
+        statusService.track("agent-1", response("tx-1", "DENIED"));
+
+        // When
+        statusService.update(response("tx-1", "OVERRIDE_APPROVED"));
+        statusService.update(response("tx-2", "OVERRIDE_APPROVED"));
+
+        // Then
+        assertEquals("OVERRIDE_APPROVED", statusService.find("agent-1", "tx-1").block().getStatus());
+        assertEquals(1, statusService.size());
+    }
+
+    private static PurchaseResponse response(String transactionId, String status) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus(status);
+        return response;
+    }
+}
@@ -0,0 +1,196 @@
+package com.payment.payment.agent.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for an OPA server, for tests that need real HTTP.
+ *
+ * Supports policy PUTs, data PUT/PATCH and decision POSTs with a configurable
+ * result. Also provides helpers to unpack bundles the way an OPA sidecar would.
+ */
+public class LocalOpaStandIn implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, String> policies = new ConcurrentHashMap<>();
+    private final Map<String, String> data = new ConcurrentHashMap<>();
+    private final List<String> decisionInputs = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private volatile int failureStatus = 500;
+    private volatile String decisionBody = "{\"result\":{\"allow\":true,\"explanation\":[\"Purchase approved by policy\"]}}";
+
+    public LocalOpaStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/v1/policies/", this::handlePolicy);
+        server.createContext("/v1/data/", this::handleData);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Map<String, String> policies() {
+        return policies;
+    }
+
+    public Map<String, String> data() {
+        return data;
+    }
+
+    public List<String> decisionInputs() {
+        return decisionInputs;
+    }
+
+    /**
+     * Answer decision queries with the given allow flag and explanation
+     */
+    public void respondWith(boolean allow, String explanation) {
+        decisionBody = "{\"result\":{\"allow\":" + allow + ",\"explanation\":[\"" + explanation + "\"]}}";
+    }
+
+    /**
+     * Fail the next {@code count} requests with the given status
+     */
+    public void failNext(int count, int status) {
+        failureStatus = status;
+        failuresRemaining.set(count);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handlePolicy(HttpExchange exchange) throws IOException {
+        if (maybeFail(exchange)) {
+            return;
+        }
+        String id = exchange.getRequestURI().getPath().substring("/v1/policies/".length());
+        if ("PUT".equals(exchange.getRequestMethod())) {
+            policies.put(id, read(exchange));
+            respond(exchange, 200, "{}");
+        } else if ("GET".equals(exchange.getRequestMethod()) && policies.containsKey(id)) {
+            respond(exchange, 200, "{\"result\":{\"raw\":" + quote(policies.get(id)) + "}}");
+        } else {
+            respond(exchange, 404, "{}");
+        }
+    }
+
+    private void handleData(HttpExchange exchange) throws IOException {
+        if (maybeFail(exchange)) {
+            return;
+        }
+        String path = exchange.getRequestURI().getPath().substring("/v1/data/".length());
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                data.put(path, read(exchange));
+                respond(exchange, 204, null);
+            }
+            case "PATCH" -> {
+                if (!data.containsKey(path)) {
+                    respond(exchange, 404, "{\"code\":\"resource_not_found\"}");
+                    return;
+                }
+                data.put(path + "#patch", read(exchange));
+                respond(exchange, 204, null);
+            }
+            case "POST" -> {
+                decisionInputs.add(read(exchange));
+                respond(exchange, 200, decisionBody);
+            }
+            default -> respond(exchange, 405, "{}");
+        }
+    }
+
+    private boolean maybeFail(HttpExchange exchange) throws IOException {
+        if (failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            read(exchange);
+            respond(exchange, failureStatus, "{\"code\":\"internal_error\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private static String read(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * Unpack a gzipped tar bundle into path -> content, as OPA's bundle loader would
+     */
+    public static Map<String, String> readBundle(byte[] bundle) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        byte[] tar;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bundle))) {
+            tar = gzip.readAllBytes();
+        }
+        int offset = 0;
+        while (offset + 512 <= tar.length) {
+            if (tar[offset] == 0) {
+                break;
+            }
+            String name = cString(tar, offset, 100);
+            long size = Long.parseLong(cString(tar, offset + 124, 12).trim(), 8);
+            if (!verifyChecksum(tar, offset)) {
+                throw new IOException("Bad tar header checksum for " + name);
+            }
+            entries.put(name, new String(tar, offset + 512, (int) size, StandardCharsets.UTF_8));
+            offset += 512 + (int) ((size + 511) / 512) * 512;
+        }
+        return entries;
+    }
+
+    private static boolean verifyChecksum(byte[] tar, int offset) {
+        long expected = Long.parseLong(cString(tar, offset + 148, 8).trim(), 8);
+        long sum = 0;
+        for (int i = 0; i < 512; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : (tar[offset + i] & 0xFF);
+        }
+        return sum == expected;
+    }
+
+    private static String cString(byte[] buf, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+}
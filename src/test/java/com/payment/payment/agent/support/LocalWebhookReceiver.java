@@ -0,0 +1,104 @@
+package com.payment.payment.agent.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process webhook receiver, for tests that need real HTTP.
+ *
+ * Records every request, can fail the next N requests with a given status or
+ * delay its responses, and tracks peak concurrency and client connections.
+ */
+public class LocalWebhookReceiver implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<Received> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile int failureStatus = 500;
+    private volatile long delayMillis;
+
+    public LocalWebhookReceiver() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    public List<Received> requests() {
+        return requests;
+    }
+
+    /**
+     * Fail the next {@code count} requests with the given status
+     */
+    public void failNext(int count, int status) {
+        failureStatus = status;
+        failuresRemaining.set(count);
+    }
+
+    public void delayResponses(long millis) {
+        delayMillis = millis;
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Distinct client ports seen; with connection reuse this stays well below the request count
+     */
+    public long connections() {
+        return requests.stream().map(Received::clientPort).distinct().count();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            int status = failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? failureStatus : 204;
+            requests.add(new Received(exchange.getRequestURI().getPath(), Map.of(
+                "id", String.valueOf(exchange.getRequestHeaders().getFirst("X-Webhook-Id")),
+                "timestamp", String.valueOf(exchange.getRequestHeaders().getFirst("X-Webhook-Timestamp")),
+                "signature", String.valueOf(exchange.getRequestHeaders().getFirst("X-Webhook-Signature"))),
+                body, status, exchange.getRemoteAddress().getPort()));
+            inFlight.decrementAndGet();
+            exchange.sendResponseHeaders(status, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.decrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public record Received(String path, Map<String, String> headers, String body, int status, int clientPort) {
+    }
+}
@@ -0,0 +1,156 @@
+package com.payment.payment.agent.velocity;
+
+import com.payment.payment.agent.model.VelocitySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the per-agent velocity windows and thresholds
+ */
+class VelocityEngineTest {
+
+    private static final Instant T0 = Instant.parse("2025-06-02T10:00:00Z");
+
+    private VelocityEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new VelocityEngine();
+        ReflectionTestUtils.setField(engine, "capacity", 64);
+        engine.init();
+        at(T0);
+    }
+
+    @Test
+    void record_CountsPurchasesAmountsAndMerchantsPerWindow() {
+        // Given - purchases 3 hours, 30 minutes and 20 seconds ago
+        at(T0.minusSeconds(3 * 3600));
+        engine.record("agent-1", "udemy", 100.0);
+        at(T0.minusSeconds(1800));
+        engine.record("agent-1", "envato_market", 20.0);
+        at(T0.minusSeconds(20));
+        engine.record("agent-1", "udemy", 2.5);
+        at(T0);
+
+        // When
+        VelocitySnapshot snapshot = engine.record("agent-1", "openai_api", 0.5);
+
+        // Then
+        assertEquals(2, snapshot.getMinute().getCount());
+        assertEquals(3.0, snapshot.getMinute().getAmount());
+        assertEquals(3, snapshot.getHour().getCount());
+        assertEquals(3, snapshot.getHour().getDistinctMerchants());
+        assertEquals(4, snapshot.getDay().getCount());
+        assertEquals(123.0, snapshot.getDay().getAmount());
+        assertTrue(snapshot.getExceeded().isEmpty());
+        assertEquals(0, engine.snapshot("agent-2").getDay().getCount());
+    }
+
+    @Test
+    void record_OverThresholds_ReportsEachExceededLimit() {
+        // Given
+        ReflectionTestUtils.setField(engine, "maxPurchasesPerMinute", 2L);
+        ReflectionTestUtils.setField(engine, "maxAmountPerDay", 100.0);
+        engine.record("agent-1", "udemy", 40.0);
+        engine.record("agent-1", "udemy", 40.0);
+
+        // When
+        VelocitySnapshot third = engine.record("agent-1", "udemy", 40.0);
+        at(T0.plusSeconds(70));
+        VelocitySnapshot later = engine.record("agent-1", "udemy", 1.0);
+
+        // Then - the minute window has moved on, the day window has not
+        assertEquals(List.of(
+            "3 purchases in the last minute exceeds the agent velocity limit of 2",
+            "120 amount in the last day exceeds the agent velocity limit of 100"), third.getExceeded());
+        assertEquals(List.of("121 amount in the last day exceeds the agent velocity limit of 100"), later.getExceeded());
+    }
+
+    @Test
+    void record_MoreAgentsThanCapacity_KeepsMemoryFixedAndEvictsIdleAgents() {
+        // Given - the active agent, then many agents that purchased once a day ago
+        engine.record("agent-active", "udemy", 1.0);
+        at(T0.minusSeconds(86_000));
+        for (int i = 0; i < 500; i++) {
+            engine.record("agent-" + i, "udemy", 1.0);
+        }
+        at(T0);
+
+        // When
+        engine.record("agent-active", "udemy", 1.0);
+
+        // Then
+        VelocityWheel wheel = (VelocityWheel) ReflectionTestUtils.getField(engine, "wheel");
+        assertEquals(64, wheel.capacity());
+        assertTrue(wheel.evictions() > 0);
+        assertEquals(2, engine.snapshot("agent-active").getMinute().getCount());
+    }
+
+    @Test
+    void record_ConcurrentPurchases_AreAllCounted() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < 8; t++) {
+            String merchant = "merchant-" + t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    engine.record("agent-1", merchant, 0.01);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        // Then
+        VelocitySnapshot snapshot = engine.snapshot("agent-1");
+        assertEquals(8000, snapshot.getMinute().getCount());
+        assertEquals(80.0, snapshot.getMinute().getAmount(), 1e-9);
+        assertTrue(snapshot.getMinute().getDistinctMerchants() >= 6 && snapshot.getMinute().getDistinctMerchants() <= 10);
+    }
+
+    @Test
+    void record_HugeAmounts_SaturateWithoutWrappingOrInflatingTheCount() {
+        // Given
+        engine.record("agent-1", "merchant-a", 10.0);
+
+        // When - enough huge amounts to overflow any fixed-width slot sum
+        for (int i = 0; i < 40; i++) {
+            engine.record("agent-1", "merchant-a", 1e15);
+        }
+        VelocitySnapshot snapshot = engine.record("agent-1", "merchant-a", Double.MAX_VALUE);
+
+        // Then
+        assertEquals(42, snapshot.getHour().getCount());
+        assertEquals(42, snapshot.getDay().getCount());
+        assertEquals(Long.MAX_VALUE / 100.0, snapshot.getHour().getAmount(), 1.0);
+        assertEquals(Long.MAX_VALUE / 100.0, snapshot.getDay().getAmount(), 1.0);
+    }
+
+    @Test
+    void distinct_EstimatesFromTheBitmap() {
+        assertEquals(0, VelocityWheel.distinct(0L));
+        assertEquals(1, VelocityWheel.distinct(1L));
+        assertEquals(3, VelocityWheel.distinct(0b1011L));
+    }
+
+    private void at(Instant time) {
+        engine.setClock(Clock.fixed(time, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,280 @@
+package com.payment.payment.agent.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payment.payment.agent.model.PurchaseOutcomeEvent;
+import com.payment.payment.agent.model.PurchaseResponse;
+import com.payment.payment.agent.service.EncryptionService;
+import com.payment.payment.agent.support.LocalWebhookReceiver;
+import com.payment.payment.agent.support.LocalWebhookReceiver.Received;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for outbound webhook delivery against a local HTTP receiver
+ * Covers batching, signing, retries, dead letters and per-endpoint limits
+ */
+class WebhookDispatcherTest {
+
+    private static final String SECRET = "whsec_test";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LocalWebhookReceiver receiver;
+    private WebhookEndpointRepository endpointRepository;
+    private final List<WebhookDeadLetter> deadLetters = new CopyOnWriteArrayList<>();
+    private final List<WebhookEndpoint> endpoints = new CopyOnWriteArrayList<>();
+    private EncryptionService encryptionService;
+    private WebhookUrlValidator urlValidator;
+    private WebhookDispatcher dispatcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        receiver = new LocalWebhookReceiver();
+        encryptionService = new EncryptionService();
+        ReflectionTestUtils.setField(encryptionService, "encryptionKey", "change-me-in-production-32-chars");
+
+        endpointRepository = mock(WebhookEndpointRepository.class);
+        when(endpointRepository.findByAgentIdInAndActiveTrue(anyCollection())).thenAnswer(inv -> {
+            Collection<String> agentIds = inv.getArgument(0);
+            return endpoints.stream().filter(e -> agentIds.contains(e.getAgentId())).toList();
+        });
+        WebhookDeadLetterRepository deadLetterRepository = mock(WebhookDeadLetterRepository.class);
+        when(deadLetterRepository.saveAll(any())).thenAnswer(inv -> {
+            deadLetters.addAll((List<WebhookDeadLetter>) inv.getArgument(0));
+            return inv.getArgument(0);
+        });
+
+        // The receiver listens on loopback over plain http
+        urlValidator = new WebhookUrlValidator();
+        ReflectionTestUtils.setField(urlValidator, "allowHttp", true);
+        ReflectionTestUtils.setField(urlValidator, "allowPrivateAddresses", true);
+
+        dispatcher = new WebhookDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "urlValidator", urlValidator);
+        ReflectionTestUtils.setField(dispatcher, "endpointRepository", endpointRepository);
+        ReflectionTestUtils.setField(dispatcher, "deadLetterRepository", deadLetterRepository);
+        ReflectionTestUtils.setField(dispatcher, "encryptionService", encryptionService);
+        ReflectionTestUtils.setField(dispatcher, "batchWindowMs", 20L);
+        ReflectionTestUtils.setField(dispatcher, "backoffMs", 5L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 20L);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "timeoutMs", 2000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+        receiver.close();
+    }
+
+    @Test
+    void publish_BatchesEventsPerEndpointAndSignsThem() throws Exception {
+        // Given
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        dispatcher.publish(event(PurchaseOutcomeEvent.DENIED, "agent-1", "tx-2"));
+        await(() -> receiver.requests().size() >= 1);
+
+        // Then - both events in one request
+        Received request = receiver.requests().get(0);
+        JsonNode events = objectMapper.readTree(request.body()).get("events");
+        assertEquals(2, events.size());
+        assertEquals("tx-1", events.get(0).get("transactionId").asText());
+        assertEquals("purchase.denied", events.get(1).get("type").asText());
+        String expected = "sha256=" + WebhookDispatcher.sign(SECRET, request.headers().get("timestamp") + "." + request.body());
+        assertEquals(expected, request.headers().get("signature"));
+    }
+
+    @Test
+    void publish_OnlyDeliversSubscribedEventsToTheAgentsOwnEndpoints() throws Exception {
+        // Given
+        endpoint("ep-1", "agent-1", "/hooks/denials", PurchaseOutcomeEvent.DENIED);
+        endpoint("ep-2", "agent-2", "/hooks/other", "");
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        dispatcher.publish(event(PurchaseOutcomeEvent.DENIED, "agent-1", "tx-2"));
+        await(() -> receiver.requests().size() >= 1);
+        Thread.sleep(100);
+
+        // Then
+        assertEquals(1, receiver.requests().size());
+        assertEquals("/hooks/denials", receiver.requests().get(0).path());
+        JsonNode events = objectMapper.readTree(receiver.requests().get(0).body()).get("events");
+        assertEquals(1, events.size());
+        assertEquals("tx-2", events.get(0).get("transactionId").asText());
+    }
+
+    @Test
+    void publish_TransientFailure_IsRetriedWithSameDeliveryId() {
+        // Given
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        receiver.failNext(2, 503);
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        await(() -> receiver.requests().stream().anyMatch(r -> r.status() == 204));
+
+        // Then
+        assertEquals(3, receiver.requests().size());
+        assertEquals(1, receiver.requests().stream().map(r -> r.headers().get("id")).distinct().count());
+        assertTrue(deadLetters.isEmpty());
+    }
+
+    @Test
+    void publish_PermanentFailure_GoesToDeadLetterWithoutRetry() throws Exception {
+        // Given
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        receiver.failNext(1, 400);
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.DENIED, "agent-1", "tx-1"));
+        await(() -> !deadLetters.isEmpty());
+        Thread.sleep(50);
+
+        // Then
+        assertEquals(1, receiver.requests().size());
+        WebhookDeadLetter deadLetter = deadLetters.get(0);
+        assertEquals("ep-1", deadLetter.getEndpointId());
+        assertEquals("tx-1", deadLetter.getTransactionId());
+        assertEquals(1, deadLetter.getAttempts());
+        assertEquals("HTTP 400", deadLetter.getLastError());
+    }
+
+    @Test
+    void publish_RetriesExhausted_GoesToDeadLetter() {
+        // Given
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        receiver.failNext(10, 500);
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        await(() -> !deadLetters.isEmpty());
+
+        // Then
+        assertEquals(3, receiver.requests().size());
+        assertEquals(3, deadLetters.get(0).getAttempts());
+        assertEquals("HTTP 500", deadLetters.get(0).getLastError());
+    }
+
+    @Test
+    void publish_HostNowResolvingToInternalAddress_IsDeadLetteredWithoutARequest() throws Exception {
+        // Given - registered while public, the host now resolves to loopback
+        ReflectionTestUtils.setField(urlValidator, "allowPrivateAddresses", false);
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        dispatcher.start();
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        await(() -> !deadLetters.isEmpty());
+        Thread.sleep(50);
+
+        // Then
+        assertTrue(receiver.requests().isEmpty());
+        assertEquals(1, deadLetters.get(0).getAttempts());
+        assertTrue(deadLetters.get(0).getLastError().contains("non-public address"), deadLetters.get(0).getLastError());
+    }
+
+    @Test
+    void publish_LimitsConcurrentRequestsPerEndpointAndReusesConnections() {
+        // Given - one event per batch so each is its own delivery
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 1);
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentPerEndpoint", 2);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 50);
+        endpoint("ep-1", "agent-1", "/hooks/a", "");
+        receiver.delayResponses(30);
+        dispatcher.start();
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-" + i));
+        }
+        await(() -> receiver.requests().size() >= 20);
+
+        // Then
+        assertTrue(receiver.peakInFlight() <= 2, "peak concurrent requests was " + receiver.peakInFlight());
+        assertTrue(receiver.connections() <= 4, "opened " + receiver.connections() + " connections");
+        assertTrue(deadLetters.isEmpty());
+    }
+
+    @Test
+    void publish_QueueFull_DeadLettersInsteadOfBlocking() {
+        // Given - not started, so nothing drains the queue
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", 1);
+
+        // When
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-1"));
+        dispatcher.publish(event(PurchaseOutcomeEvent.APPROVED, "agent-1", "tx-2"));
+        await(() -> !deadLetters.isEmpty());
+
+        // Then
+        assertEquals(1, dispatcher.queued());
+        assertEquals("tx-2", deadLetters.get(0).getTransactionId());
+        assertNull(deadLetters.get(0).getEndpointId());
+    }
+
+    @Test
+    void isTransient_ClassifiesFailures() {
+        assertTrue(WebhookDispatcher.isTransient(new java.util.concurrent.TimeoutException()));
+        assertTrue(WebhookDispatcher.isTransient(new com.payment.payment.agent.service.KeyedBulkhead.BulkheadFullException("busy")));
+        assertFalse(WebhookDispatcher.isTransient(new IllegalStateException("bad payload")));
+    }
+
+    private void endpoint(String id, String agentId, String path, String eventTypes) {
+        WebhookEndpoint endpoint = new WebhookEndpoint();
+        endpoint.setId(id);
+        endpoint.setAgentId(agentId);
+        endpoint.setUrl(receiver.url(path));
+        endpoint.setEventTypes(eventTypes);
+        try {
+            endpoint.setEncryptedSecret(encryptionService.encrypt(SECRET));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        endpoints.add(endpoint);
+    }
+
+    private static PurchaseOutcomeEvent event(String type, String agentId, String transactionId) {
+        PurchaseResponse response = new PurchaseResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus(type.substring("purchase.".length()).toUpperCase());
+        response.setMessage("test");
+        return PurchaseOutcomeEvent.of(type, agentId, response);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("condition not met within 10s");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.payment.payment.agent.webhook;
+
+import com.payment.payment.agent.model.WebhookRegistration;
+import com.payment.payment.agent.model.WebhookRegistrationRequest;
+import com.payment.payment.agent.service.EncryptionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for webhook registration
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookServiceTest {
+
+    @Mock
+    private WebhookEndpointRepository endpointRepository;
+
+    @Mock
+    private WebhookDeadLetterRepository deadLetterRepository;
+
+    @Mock
+    private EncryptionService encryptionService;
+
+    @InjectMocks
+    private WebhookService webhookService;
+
+    private WebhookUrlValidator urlValidator;
+
+    @BeforeEach
+    void setUp() {
+        // agent.example.com is public, internal.example.com points into the private network
+        urlValidator = new WebhookUrlValidator();
+        urlValidator.setResolver(host -> switch (host) {
+            case "agent.example.com" -> new InetAddress[]{InetAddress.getByName("93.184.216.34")};
+            case "internal.example.com" -> new InetAddress[]{InetAddress.getByName("93.184.216.34"), InetAddress.getByName("10.0.4.2")};
+            default -> InetAddress.getAllByName(host);
+        });
+        ReflectionTestUtils.setField(webhookService, "urlValidator", urlValidator);
+    }
+
+    @Test
+    void register_ValidRequest_StoresEncryptedSecretAndReturnsItOnce() throws Exception {
+        // Given
+        when(encryptionService.encrypt(anyString())).thenReturn("encrypted");
+        WebhookRegistrationRequest request = request("https://agent.example.com/hooks", List.of("purchase.denied"));
+
+        // When
+        WebhookRegistration registration = webhookService.register("agent-1", request);
+
+        // Then
+        ArgumentCaptor<WebhookEndpoint> saved = ArgumentCaptor.forClass(WebhookEndpoint.class);
+        verify(endpointRepository).save(saved.capture());
+        assertEquals("agent-1", saved.getValue().getAgentId());
+        assertEquals("encrypted", saved.getValue().getEncryptedSecret());
+        assertEquals("purchase.denied", saved.getValue().getEventTypes());
+        assertTrue(registration.getSecret().startsWith("whsec_"));
+        verify(encryptionService).encrypt(registration.getSecret());
+        assertEquals(List.of("purchase.denied"), registration.getEventTypes());
+    }
+
+    @Test
+    void register_PlainHttp_IsRejectedUnlessAllowed() throws Exception {
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+            () -> webhookService.register("agent-1", request("http://agent.example.com/hooks", null)));
+
+        // And - allowed for local development
+        ReflectionTestUtils.setField(urlValidator, "allowHttp", true);
+        when(encryptionService.encrypt(anyString())).thenReturn("encrypted");
+        assertNotNull(webhookService.register("agent-1", request("http://agent.example.com/hooks", null)));
+    }
+
+    @Test
+    void register_InternalAddresses_AreRejected() {
+        // When & Then - metadata service, OPA on loopback, private ranges and any host resolving to one
+        for (String url : List.of(
+                "https://169.254.169.254/latest/meta-data/",
+                "https://127.0.0.1:8181/v1/policies/payments",
+                "https://localhost/hooks",
+                "https://0.0.0.0/hooks",
+                "https://192.168.1.10/hooks",
+                "https://172.16.0.5/hooks",
+                "https://[::1]/hooks",
+                "https://[fd00::1]/hooks",
+                "https://[fe80::1]/hooks",
+                "https://224.0.0.1/hooks",
+                "https://internal.example.com/hooks")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> webhookService.register("agent-1", request(url, null)), url);
+            assertTrue(e.getMessage().contains("non-public address"), url + ": " + e.getMessage());
+        }
+        verify(endpointRepository, never()).save(any());
+    }
+
+    @Test
+    void register_InternalAddresses_AllowedOnlyWhenConfiguredForLocalDevelopment() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(urlValidator, "allowHttp", true);
+        ReflectionTestUtils.setField(urlValidator, "allowPrivateAddresses", true);
+        when(encryptionService.encrypt(anyString())).thenReturn("encrypted");
+
+        // When & Then
+        assertNotNull(webhookService.register("agent-1", request("http://localhost:9000/hooks", null)));
+    }
+
+    @Test
+    void register_UnknownEventTypeOrTooManyEndpoints_IsRejected() {
+        // Given
+        when(endpointRepository.countByAgentIdAndActiveTrue("agent-1")).thenReturn(5L);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+            () -> webhookService.register("agent-1", request("https://agent.example.com/hooks", List.of("purchase.refunded"))));
+        assertThrows(IllegalArgumentException.class,
+            () -> webhookService.register("agent-1", request("https://agent.example.com/hooks", null)));
+        verify(endpointRepository, never()).save(any());
+    }
+
+    @Test
+    void delete_OtherAgentsEndpoint_IsNotFound() {
+        // Given
+        when(endpointRepository.findByIdAndAgentId("ep-1", "agent-2")).thenReturn(Optional.empty());
+
+        // When & Then
+        assertFalse(webhookService.delete("agent-2", "ep-1"));
+        verify(endpointRepository, never()).save(any());
+    }
+
+    private static WebhookRegistrationRequest request(String url, List<String> eventTypes) {
+        WebhookRegistrationRequest request = new WebhookRegistrationRequest();
+        request.setUrl(url);
+        request.setEventTypes(eventTypes);
+        return request;
+    }
+}